@@ -0,0 +1,139 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import com.fasterxml.jackson.databind.node.ArrayNode
+import okhttp3.Call
+import okhttp3.Callback
+import okhttp3.ConnectionPool
+import okhttp3.Dispatcher
+import okhttp3.Headers.Companion.toHeaders
+import okhttp3.OkHttpClient
+import okhttp3.RequestBody.Companion.toRequestBody
+import org.web3j.protocol.core.BatchRequest
+import org.web3j.protocol.core.BatchResponse
+import org.web3j.protocol.core.Request
+import org.web3j.protocol.core.Response
+import org.web3j.protocol.exceptions.ClientConnectionException
+import org.web3j.protocol.http.HttpService
+import java.io.IOException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+
+/**
+ * An [HttpService] that sends asynchronous requests with OkHttp's asynchronous [Call.enqueue] rather than by blocking
+ * a thread of Web3j's own executor on a synchronous call, so that the [CompletableFuture]s returned by [sendAsync] and
+ * [sendBatchAsync] complete from OkHttp's callbacks and the coroutines awaiting them (with
+ * [kotlinx.coroutines.future.await] or [kotlinx.coroutines.future.asDeferred]) resume without any thread waiting for
+ * them.
+ *
+ * Requests beyond [maxConcurrentRequests] wait in OkHttp's [Dispatcher] queue without occupying a thread, so
+ * [BlockchainService] can issue hundreds of concurrent requests while the number of threads and connections stays
+ * bounded. Synchronous [send] and [sendBatch] calls behave exactly as they do with [HttpService].
+ *
+ * @param url The URL of the blockchain node.
+ * @param maxConcurrentRequests The maximum number of requests that are executed at once, which is also the maximum
+ * number of idle connections kept alive. This is ignored if [httpClient] is specified.
+ * @property httpClient The [OkHttpClient] with which requests are sent.
+ */
+class AsyncHttpService(
+    url: String,
+    maxConcurrentRequests: Int = 64,
+    private val httpClient: OkHttpClient = createOkHttpClient(maxConcurrentRequests),
+) : HttpService(url, httpClient) {
+
+    override fun <T : Response<*>> sendAsync(request: Request<*, *>, responseType: Class<T>): CompletableFuture<T> {
+        return enqueue(objectMapper.writeValueAsString(request)) { responseBody ->
+            objectMapper.readValue(responseBody, responseType)
+        }
+    }
+
+    /**
+     * Sends [batchRequest] asynchronously, and parses each response with the response type of the request with the
+     * same ID, since the JSON-RPC specification allows a node to return batch responses in any order.
+     */
+    override fun sendBatchAsync(batchRequest: BatchRequest): CompletableFuture<BatchResponse> {
+        if (batchRequest.requests.isEmpty()) {
+            return CompletableFuture.completedFuture(BatchResponse(listOf(), listOf()))
+        }
+        val requestsByID = batchRequest.requests.associateBy { it.id }
+        return enqueue(objectMapper.writeValueAsString(batchRequest.requests)) { responseBody ->
+            val responseNodes = objectMapper.readTree(responseBody) as? ArrayNode
+                ?: throw ClientConnectionException("Invalid batch response received: $responseBody")
+            val responses = responseNodes.mapIndexed { index, responseNode ->
+                val request = requestsByID[responseNode.get("id")?.asLong()] ?: batchRequest.requests[index]
+                objectMapper.treeToValue(responseNode, request.responseType)
+            }
+            BatchResponse(batchRequest.requests, responses)
+        }
+    }
+
+    /**
+     * Posts [payload] to [url] with [Call.enqueue], and returns a [CompletableFuture] that completes with the result
+     * of [parseResponse] once a successful response is received, or exceptionally if the call fails or the node
+     * responds with an unsuccessful status, in which case the exception is the same as that thrown by [HttpService].
+     * Cancelling the returned future cancels the call.
+     *
+     * @param payload The JSON-RPC request or batch request to send.
+     * @param parseResponse A function that parses the body of a successful response.
+     */
+    private fun <T> enqueue(payload: String, parseResponse: (String) -> T): CompletableFuture<T> {
+        val future = CompletableFuture<T>()
+        val httpRequest = okhttp3.Request.Builder()
+            .url(url)
+            .headers(headers.toHeaders())
+            .post(payload.toRequestBody(HttpService.JSON_MEDIA_TYPE))
+            .build()
+        val call = httpClient.newCall(httpRequest)
+        call.enqueue(object : Callback {
+            override fun onFailure(call: Call, e: IOException) {
+                future.completeExceptionally(e)
+            }
+
+            override fun onResponse(call: Call, response: okhttp3.Response) {
+                try {
+                    response.use {
+                        processHeaders(it.headers)
+                        val responseBody = it.body?.string()
+                        if (!it.isSuccessful) {
+                            throw ClientConnectionException(
+                                "Invalid response received: ${it.code}; ${responseBody ?: "N/A"}"
+                            )
+                        }
+                        future.complete(parseResponse(responseBody ?: ""))
+                    }
+                } catch (exception: Exception) {
+                    future.completeExceptionally(exception)
+                }
+            }
+        })
+        future.whenComplete { _, _ ->
+            if (future.isCancelled) {
+                call.cancel()
+            }
+        }
+        return future
+    }
+
+    companion object {
+
+        /**
+         * Creates an [OkHttpClient] configured as [HttpService] configures its own, but which executes at most
+         * [maxConcurrentRequests] requests at once (rather than OkHttp's default of five per host, since every request
+         * is sent to the same node) and keeps as many idle connections alive.
+         */
+        fun createOkHttpClient(maxConcurrentRequests: Int): OkHttpClient {
+            require(maxConcurrentRequests > 0) {
+                "AsyncHttpService maxConcurrentRequests must be positive"
+            }
+            val dispatcher = Dispatcher().apply {
+                maxRequests = maxConcurrentRequests
+                maxRequestsPerHost = maxConcurrentRequests
+            }
+            return HttpService.getOkHttpClientBuilder()
+                .dispatcher(dispatcher)
+                .connectionPool(ConnectionPool(maxConcurrentRequests, 5L, TimeUnit.MINUTES))
+                .build()
+        }
+
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import java.math.BigInteger
+
+/**
+ * The progress of a backfill, in which [BlockchainService] replays the events of a long range of blocks by requesting
+ * the logs of several smaller ranges in parallel.
+ *
+ * @property fromBlockNumber The number of the first block of the backfill. If a backfill is interrupted, this is the
+ * block after the last block that was replayed before the interruption.
+ * @property toBlockNumber The number of the last block of the backfill.
+ * @property completedThroughBlockNumber The number of the last block whose events have been replayed, which is one
+ * less than [fromBlockNumber] if no events have been replayed yet.
+ */
+data class BackfillProgress(
+    val fromBlockNumber: BigInteger,
+    val toBlockNumber: BigInteger,
+    val completedThroughBlockNumber: BigInteger,
+) {
+
+    /**
+     * The proportion of the blocks of the backfill whose events have been replayed, between zero and one.
+     */
+    val fraction: Double
+        get() {
+            val blockCount = toBlockNumber - fromBlockNumber + BigInteger.ONE
+            val completedBlockCount = completedThroughBlockNumber - fromBlockNumber + BigInteger.ONE
+            return if (blockCount > BigInteger.ZERO) {
+                completedBlockCount.toDouble() / blockCount.toDouble()
+            } else {
+                1.0
+            }
+        }
+
+    /**
+     * Indicates whether the events of every block of the backfill have been replayed.
+     */
+    val isComplete: Boolean
+        get() = completedThroughBlockNumber >= toBlockNumber
+
+}
@@ -0,0 +1,20 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.protocol.core.methods.response.Log as Web3jLog
+import java.math.BigInteger
+
+/**
+ * The relevant logs of a range of blocks, which [BlockchainService] requests ahead of the range that it is currently
+ * parsing during a backfill.
+ *
+ * @property fromBlockNumber The number of the first block of the range.
+ * @property toBlockNumber The number of the last block of the range.
+ * @property logs The relevant logs of the blocks in the range, in the order in which they were emitted.
+ * @property toBlockHash The hash of the last block of the range, or `null` if it was not requested.
+ */
+data class BlockRangeLogs(
+    val fromBlockNumber: BigInteger,
+    val toBlockNumber: BigInteger,
+    val logs: List<Web3jLog>,
+    val toBlockHash: String?,
+)
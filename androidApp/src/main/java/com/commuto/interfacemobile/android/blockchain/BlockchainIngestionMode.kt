@@ -0,0 +1,18 @@
+package com.commuto.interfacemobile.android.blockchain
+
+/**
+ * Describes how [BlockchainService] gets events from the blockchain.
+ *
+ * @property BLOCKS Indicates that [BlockchainService] gets every new block and the receipt of every transaction in it,
+ * and then parses receipts of transactions sent to CommutoSwap for events.
+ * @property FULL_BLOCKS Indicates that [BlockchainService] gets every new block with full transaction objects, and only
+ * requests the receipts of monitored transactions and of transactions that its [TransactionFilter] considers relevant.
+ * Otherwise, this is the same as [BLOCKS].
+ * @property LOGS Indicates that [BlockchainService] uses `eth_getLogs` to get only logs emitted by CommutoSwap (and
+ * ERC20 `Approval` logs for monitored token transfer approval transactions) over ranges of blocks.
+ */
+enum class BlockchainIngestionMode {
+    BLOCKS,
+    FULL_BLOCKS,
+    LOGS;
+}
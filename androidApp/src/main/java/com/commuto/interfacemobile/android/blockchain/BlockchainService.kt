@@ -1,5 +1,6 @@
 package com.commuto.interfacemobile.android.blockchain
 
+import android.content.Context
 import android.util.Log
 import com.commuto.interfacemobile.android.blockchain.events.commutoswap.*
 import com.commuto.interfacemobile.android.blockchain.events.erc20.ApprovalEvent
@@ -9,40 +10,51 @@ import com.commuto.interfacemobile.android.blockchain.structs.OfferStruct
 import com.commuto.interfacemobile.android.blockchain.structs.SwapStruct
 import com.commuto.interfacemobile.android.contractwrapper.CommutoFunctionEncoder
 import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
+import com.commuto.interfacemobile.android.database.DatabaseService
 import com.commuto.interfacemobile.android.extension.asByteArray
 import com.commuto.interfacemobile.android.offer.OfferNotifiable
 import com.commuto.interfacemobile.android.offer.OfferService
 import com.commuto.interfacemobile.android.swap.SwapNotifiable
+import dagger.hilt.android.qualifiers.ApplicationContext
 import kotlinx.coroutines.*
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.first
 import kotlinx.coroutines.future.asDeferred
 import kotlinx.coroutines.future.await
 import org.web3j.contracts.eip20.generated.ERC20
 import org.web3j.crypto.Credentials
+import org.web3j.crypto.Hash
 import org.web3j.crypto.RawTransaction
+import org.web3j.crypto.transaction.type.Transaction1559
 import org.web3j.protocol.Web3j
 import org.web3j.protocol.core.DefaultBlockParameter
+import org.web3j.protocol.core.methods.request.EthFilter
 import org.web3j.protocol.core.methods.request.Transaction
 import org.web3j.protocol.core.methods.response.*
-import org.web3j.protocol.http.HttpService
+import org.web3j.protocol.core.methods.response.Log as Web3jLog
+import org.web3j.protocol.exceptions.ClientConnectionException
 import org.web3j.service.TxSignServiceImpl
 import org.web3j.tx.ChainIdLong
 import org.web3j.utils.Numeric
+import java.io.File
+import java.io.IOException
 import java.math.BigInteger
-import java.net.ConnectException
 import java.nio.ByteBuffer
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.DelayQueue
+import java.util.concurrent.atomic.AtomicLong
 import javax.inject.Inject
 import javax.inject.Singleton
-import kotlin.math.floor
 
 /**
  * The main Blockchain Service. It is responsible for listening to the blockchain and detecting the
  * emission of events by parsing transaction receipts, and then passing relevant detected events to
  * other services as necessary.
  *
- * @constructor Creates a new [BlockchainService] instance with the specified
- * [BlockchainExceptionNotifiable], [OfferNotifiable], [Web3j] instance and CommutoSwap contract
- * address.
+ * @constructor Creates a new [BlockchainService] instance with the specified [BlockchainExceptionNotifiable],
+ * [OfferNotifiable], [SwapNotifiable], [Web3j] instance and CommutoSwap contract address.
  *
  * @property logTag The tag passed to [Log] calls.
  * @property exceptionHandler An object to which [BlockchainService] will pass exceptions when they
@@ -52,14 +64,89 @@ import kotlin.math.floor
  * @property swapService An object to which [BlockchainService] will pass swap-related events when they occur.
  * @property web3 The [Web3j] instance that [BlockchainService] uses to interact with the
  * EVM-compatible blockchain.
+ * @param commutoSwapAddress The address of the CommutoSwap contract whose events [BlockchainService] handles.
+ * @property databaseService The [DatabaseService] in which [BlockchainService] persistently stores the number and hash
+ * of the most recently parsed block, so that it can resume listening from that block after a restart. If this is
+ * `null`, [BlockchainService] begins listening from the first block of the chain.
+ * @property receiptBatchSize The maximum number of transaction receipt requests that [BlockchainService] will put in a
+ * single JSON-RPC batch request when getting the receipts of a block's transactions. If this is less than two,
+ * receipts are requested one at a time.
+ * @property ingestionMode Indicates whether [BlockchainService] gets events by parsing every block and transaction
+ * receipt, by parsing every block with full transaction objects and only the receipts of relevant transactions, or by
+ * requesting only relevant logs with `eth_getLogs`.
+ * @property logBlockRangeSize When [ingestionMode] is [BlockchainIngestionMode.LOGS], or during a [backfill], the
+ * maximum number of blocks for which [BlockchainService] will request logs in a single `eth_getLogs` call.
+ * @property catchUpPrefetchWindowSize When [ingestionMode] is not [BlockchainIngestionMode.LOGS] and more than one
+ * block must be parsed, the maximum number of blocks (and their transaction receipts) that [BlockchainService] will
+ * request ahead of the block that it is currently parsing. If this is less than two, blocks are always requested one
+ * at a time.
+ * @property recentBlockBufferSize The maximum number of recently parsed blocks that [BlockchainService] keeps in
+ * [recentBlocks] in order to handle chain reorganizations. If a reorganization replaces more blocks than this, events
+ * in the replaced blocks that are older than those in [recentBlocks] are not reported to [offerService] and
+ * [swapService] as affected by the reorganization.
+ * @property confirmationDepth The number of blocks that must be built on top of a block before [BlockchainService]
+ * parses it. Since reorganizations are not detected when [ingestionMode] is [BlockchainIngestionMode.LOGS], this
+ * should be greater than zero when [ingestionMode] is [BlockchainIngestionMode.LOGS].
+ * @param newHeadsWebSocketURL The URL of a WebSocket endpoint of the node to which [web3] is connected, used to
+ * subscribe to new block headers. If this is `null`, [BlockchainService] always polls for the newest block number.
+ * @property maxListenInterval The maximum number of milliseconds that [BlockchainService] will wait before checking for
+ * a new block again, when no new block has been found.
+ * @property callBatchSize The maximum number of `eth_call` requests that [BlockchainService] will put in a single
+ * JSON-RPC batch request when getting many offers or swaps with [getOffers] or [getSwaps].
+ * @param structCacheSize The maximum number of [OfferStruct]s, and the maximum number of [SwapStruct]s, that
+ * [BlockchainService] keeps in [offerStructCache] and [swapStructCache].
+ * @property monitoredTransactionTimeout The number of milliseconds after its creation after which [BlockchainService]
+ * considers a monitored transaction that has not been confirmed to have failed.
+ * @param feeStrategy The [FeeStrategy] with which [feeOracle] estimates the fees of transactions.
+ * @property confirmationTrackingLag The number of blocks by which the newest parseable block must be ahead of the last
+ * parsed block before [BlockchainService] polls for the receipts of monitored transactions with
+ * [trackConfirmations], rather than waiting to find them in the blocks it parses.
+ * @param feeBumpBlockCounts The numbers of blocks after the sending of a transaction after which [BlockchainService]
+ * replaces it with one with the same nonce and higher fees if it has not been confirmed, in ascending order.
+ * @param minErrorBackoff The number of milliseconds, before jitter, that [listenLoop] waits after the first of a series
+ * of consecutive exceptions.
+ * @param maxErrorBackoff The maximum number of milliseconds, before jitter, that [listenLoop] waits after an exception.
+ * @property backfillThreshold The minimum number of blocks by which the newest parseable block must be ahead of the
+ * last parsed block for [listenLoop] to call [backfill] rather than parsing them as it otherwise would, such as after
+ * a fresh install.
+ * @property backfillConcurrency The maximum number of ranges of [logBlockRangeSize] blocks for which [backfill]
+ * requests logs at once.
+ * @property eventJournalDirectory The directory in which [BlockchainService] keeps an [EventJournal] of the CommutoSwap
+ * events it handles for each chain, or `null` if events should not be journaled.
+ * @property transactionFilter The [TransactionFilter] that decides which transactions' receipts [BlockchainService]
+ * requests when [ingestionMode] is [BlockchainIngestionMode.FULL_BLOCKS], in addition to those of monitored
+ * transactions.
  * @property creds Blockchain credentials used for signing transactions.
  * @property lastParsedBlockNum The block number of the most recently parsed block.
+ * @property lastParsedBlockHash The hash of the most recently parsed block, or `null` if it is not known.
+ * @property hasRestoredBlockCheckpoint Indicates whether [restoreBlockCheckpoint] has completed since this was created.
+ * @property chainID The ID of the blockchain to which [web3] is connected, or `null` if it has not yet been requested.
+ * This never changes for a given connection, so it is requested once by [getChainID] and reused for every block,
+ * event and struct lookup, rather than requested each time. It is verified by [verifyChainID] when listening begins
+ * and after any exception that may indicate a lost connection.
+ * @property isChainIDVerified Indicates whether [verifyChainID] has completed since listening began or since the most
+ * recent exception that may indicate a lost connection.
+ * @property recentBlocks A [ArrayDeque] of at most [recentBlockBufferSize] of the most recently parsed blocks, ordered
+ * from oldest to newest, used to find the point at which the chain forked when a chain reorganization is detected.
  * @property newestBlockNum The block number of the most recently confirmed block.
+ * @property catchUpBlocksPerSecond The number of blocks per second that [BlockchainService] parsed during the most
+ * recent call to [catchUp], or zero if [catchUp] has never been called.
  * @property transactionsToMonitor A dictionary mapping transaction hashes to corresponding [BlockchainTransaction]s
  * created by this interface that [BlockchainService] will monitor for confirmation, transaction dropping, transaction
- * failure and transaction success.
- * @property listenInterval The number of milliseconds that [BlockchainService] should wait after
- * parsing a block before it begins parsing another block.
+ * failure and transaction success. This is accessed both by the listen loop and by coroutines that send transactions,
+ * so it is a [ConcurrentHashMap].
+ * @property monitoredTransactionDeadlines A [DelayQueue] of the times at which monitored transactions must be checked
+ * by [handleExpiredMonitoredTransactions], which releases only those that have passed. Entries for transactions that
+ * are no longer monitored are not removed from this, but are skipped when they are released.
+ * @property listenInterval The minimum number of milliseconds that [BlockchainService] will wait before it next polls
+ * for the newest block number, if it finds no new block.
+ * @property listenScheduler The [ListenScheduler] that paces the iterations of [listenLoop]: it decides how long
+ * [waitForNewBlock] waits for a new block when polling, between [listenInterval] and [maxListenInterval] milliseconds,
+ * and how long [listenLoop] backs off after an exception.
+ * @property newHeadsSubscription The [NewHeadsSubscription] from which [BlockchainService] gets the newest block number
+ * while it is subscribed, instead of polling, or `null` if no new heads WebSocket URL was specified.
+ * @property nextNewHeadsSubscriptionAttemptTime The time, in milliseconds since the epoch, after which
+ * [BlockchainService] may next try to subscribe to new heads with [newHeadsSubscription].
  * @property listenJob The coroutine [Job] in which [BlockchainService] listens to the blockchain.
  * @property runLoop Boolean that indicates whether [listenLoop] should continue to execute its
  * loop.
@@ -68,24 +155,90 @@ import kotlin.math.floor
  * @property commutoSwap A [CommutoSwap] instance that [BlockchainService] uses to parse transaction
  * receipts for CommutoSwap events and interact with the [CommutoSwap contract](https://github.com/jimmyneutront/commuto-protocol/blob/main/CommutoSwap.sol)
  * on chain.
+ * @property eventDecoder A [CommutoEventDecoder] that [BlockchainService] uses to decode CommutoSwap and ERC20
+ * [Approval](https://eips.ethereum.org/EIPS/eip-20) events from the logs of transaction receipts in a single pass, and
+ * which provides the topics (event signature hashes) used to filter logs when [ingestionMode] is
+ * [BlockchainIngestionMode.LOGS].
+ * @property eventJournal The [EventJournal] of the chain with ID [eventJournalChainID], which is opened by
+ * [getEventJournal].
+ * @property eventJournalChainID The ID of the chain whose events are journaled in [eventJournal].
+ * @property isListening Indicates whether [listenLoop] is running. [offerStructCache] and [swapStructCache] are only
+ * used while this is true, since only then are their entries invalidated as offers and swaps change.
+ * @property offerStructCache A [StructCache] of the [OfferStruct]s most recently read by [getOffer] and [getOffers],
+ * the entries of which are invalidated by [refreshStructCaches] when events affecting those offers are handled.
+ * @property swapStructCache A [StructCache] of the [SwapStruct]s most recently read by [getSwap] and [getSwaps], the
+ * entries of which are invalidated by [refreshStructCaches] when events affecting those swaps are handled.
+ * @property feeOracle The [FeeOracle] that estimates the fees of every transaction created by [BlockchainService],
+ * using [feeStrategy]. While [listenLoop] is running, this caches its estimate for
+ * [newestBlockNum], so fee history is requested at most once per block.
+ * @property nonceManager The [NonceManager] that hands out the nonces of transactions sent by [BlockchainService] when
+ * [assignNonce] is called, and which is told when they are sent, when sending them fails, and when they are confirmed
+ * or dropped.
+ * @property confirmationTracker The [ConfirmationTracker] that schedules the polls of [trackConfirmations] and records
+ * the monitored transactions that they handle, so that these are skipped when the blocks containing them are parsed.
+ * @property transactionReplacementEngine The [TransactionReplacementEngine] that decides when
+ * [replaceStuckTransactions] replaces a monitored transaction that has not been confirmed, and that keeps track of the
+ * hashes of all replacements of each monitored transaction.
+ * @property commutoSwapBloomBitIndices The [LogsBloom] bit indices of the address of [commutoSwap].
+ * @property commutoSwapEventBloomBitIndices The [LogsBloom] bit indices of each topic in
+ * [CommutoEventDecoder.commutoSwapEventTopics].
+ * @property approvalEventBloomBitIndices The [LogsBloom] bit indices of [CommutoEventDecoder.approvalEventTopic].
+ * @property logsBloomCheckedBlockCount The number of blocks containing transactions with a `logsBloom` field that
+ * [getDeferredBlockReceiptOptionals] has checked.
+ * @property logsBloomSkippedBlockCount The number of blocks for which [getDeferredBlockReceiptOptionals] has skipped
+ * requesting receipts, because their `logsBloom` fields showed that they contain no relevant logs.
+ * @property supportsBlockReceipts Indicates whether the node supports `eth_getBlockReceipts`, or `null` if this has not
+ * yet been detected by [getBlockReceiptOptionals]. This is detected again after any exception that may indicate a lost
+ * connection, since the node we reconnect to may be different.
+ * @property backfillProgress The [BackfillProgress] of the current or most recent [backfill], or `null` if there has
+ * been none.
+ * @property requestCoalescer The [RequestCoalescer] through which concurrent identical reads of the chain ID, the
+ * newest block number, the service fee rate and offer and swap structs share a single in-flight request.
  */
 @Singleton
 class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifiable,
                          private val offerService: OfferNotifiable,
                          private val swapService: SwapNotifiable,
                          private val web3: CommutoWeb3j,
-                         commutoSwapAddress: String) {
+                         commutoSwapAddress: String,
+                         private val databaseService: DatabaseService? = null,
+                         private val receiptBatchSize: Int = 100,
+                         private val ingestionMode: BlockchainIngestionMode = BlockchainIngestionMode.BLOCKS,
+                         private val logBlockRangeSize: Long = 1_000L,
+                         private val catchUpPrefetchWindowSize: Int = 10,
+                         private val recentBlockBufferSize: Int = 64,
+                         private val confirmationDepth: Long = 0L,
+                         newHeadsWebSocketURL: String? = null,
+                         private val maxListenInterval: Long = 2_000L,
+                         private val callBatchSize: Int = 100,
+                         structCacheSize: Int = 1_000,
+                         private val monitoredTransactionTimeout: Long = 86_400_000L,
+                         feeStrategy: FeeStrategy = PercentileFeeStrategy(),
+                         private val confirmationTrackingLag: Long = 10L,
+                         feeBumpBlockCounts: List<Long> = listOf(3L, 6L, 12L, 24L),
+                         private val transactionFilter: TransactionFilter =
+                             CommutoSwapTransactionFilter(commutoSwapAddress),
+                         minErrorBackoff: Long = 100L,
+                         maxErrorBackoff: Long = 30_000L,
+                         private val backfillThreshold: Long = 10_000L,
+                         private val backfillConcurrency: Int = 4,
+                         private val eventJournalDirectory: File? = null) {
 
     @Inject constructor(
         errorHandler: BlockchainExceptionNotifiable,
         offerService: OfferNotifiable,
-        swapService: SwapNotifiable
+        swapService: SwapNotifiable,
+        databaseService: DatabaseService,
+        @ApplicationContext context: Context
     ):
             this(errorHandler,
                 offerService,
                 swapService,
-                CommutoWeb3j(HttpService(System.getenv("BLOCKCHAIN_NODE"))),
-                "0x687F36336FCAB8747be1D41366A416b41E7E1a96"
+                CommutoWeb3j(MultiEndpointService.fromURLs(System.getenv("BLOCKCHAIN_NODE"))),
+                "0x687F36336FCAB8747be1D41366A416b41E7E1a96",
+                databaseService,
+                newHeadsWebSocketURL = System.getenv("BLOCKCHAIN_NODE_WEBSOCKET"),
+                eventJournalDirectory = File(context.filesDir, "event_journals")
             )
 
     init {
@@ -107,16 +260,95 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
 
     private var lastParsedBlockNum: BigInteger = BigInteger.ZERO
 
+    private var lastParsedBlockHash: String? = null
+
+    private var hasRestoredBlockCheckpoint = false
+
+    @Volatile
+    private var chainID: BigInteger? = null
+
+    private var isChainIDVerified = false
+
+    private val recentBlocks = ArrayDeque<RecentBlock>()
+
+    @Volatile
+    private var isListening = false
+
+    val offerStructCache = StructCache<OfferStruct>(structCacheSize)
+
+    val swapStructCache = StructCache<SwapStruct>(structCacheSize)
+
     var newestBlockNum: BigInteger = BigInteger.ZERO
         get() = field
         private set(value) {
             field = value
         }
 
-    private var transactionsToMonitor = HashMap<String, BlockchainTransaction>()
+    var catchUpBlocksPerSecond: Double = 0.0
+        get() = field
+        private set(value) {
+            field = value
+        }
+
+    @Volatile
+    private var supportsBlockReceipts: Boolean? = null
+
+    private val logsBloomCheckedBlockCount = AtomicLong(0L)
+
+    private val logsBloomSkippedBlockCount = AtomicLong(0L)
+
+    /**
+     * The proportion of blocks containing transactions with a `logsBloom` field for which [BlockchainService] has not
+     * requested receipts, because their `logsBloom` fields showed that they contain no relevant logs, or zero if no
+     * such block has been checked.
+     */
+    val logsBloomSkipRate: Double
+        get() {
+            val checkedBlockCount = logsBloomCheckedBlockCount.get()
+            return if (checkedBlockCount > 0L) {
+                logsBloomSkippedBlockCount.get().toDouble() / checkedBlockCount
+            } else {
+                0.0
+            }
+        }
+
+    private val _backfillProgress = MutableStateFlow<BackfillProgress?>(null)
+
+    /**
+     * The [BackfillProgress] of the current or most recent [backfill], or `null` if there has been none.
+     */
+    val backfillProgress: StateFlow<BackfillProgress?> = _backfillProgress
+
+    private val requestCoalescer = RequestCoalescer()
+
+    /**
+     * The proportion of reads made through [requestCoalescer] that shared an identical request that was already in
+     * flight, or zero if no such read has been made.
+     */
+    val requestDedupRate: Double
+        get() = requestCoalescer.dedupRate
+
+    private val transactionsToMonitor = ConcurrentHashMap<String, BlockchainTransaction>()
+
+    private val monitoredTransactionDeadlines = DelayQueue<MonitoredTransactionDeadline>()
+
+    private val confirmationTracker = ConfirmationTracker()
+
+    private val transactionReplacementEngine = TransactionReplacementEngine(feeBumpBlockCounts)
+
+    val nonceManager = NonceManager(web3)
+
+    val feeOracle = FeeOracle(web3, feeStrategy) {
+        newestBlockNum.takeIf { isListening && it > BigInteger.ZERO }
+    }
 
     fun addTransactionToMonitor(transaction: BlockchainTransaction) {
         transactionsToMonitor[transaction.transactionHash] = transaction
+        monitoredTransactionDeadlines.add(MonitoredTransactionDeadline(
+            transaction = transaction,
+            deadline = transaction.timeOfCreation.time + monitoredTransactionTimeout
+        ))
+        confirmationTracker.handleNewTransaction()
     }
 
     fun getMonitoredTransaction(transactionHash: String): BlockchainTransaction? {
@@ -125,18 +357,106 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
 
     // TODO: rename this as updateLastParsedBlockNumber
     /**
-     * Updates [lastParsedBlockNum]. Eventually, this function will store [blockNumber] in
-     * persistent storage.
+     * Updates [lastParsedBlockNum] and [lastParsedBlockHash]. If [databaseService] is not null, [blockHash] is not null
+     * and [restoreBlockCheckpoint] has completed, this also persistently stores [blockNumber] and [blockHash] as the
+     * block checkpoint for [chainID], so that listening can resume from this block after a restart.
      *
      * @param blockNumber The block number of the block that has been most recently parsed by
      * [BlockchainService], to be set as [lastParsedBlockNum].
+     * @param blockHash The hash of the block that has been most recently parsed by [BlockchainService], to be set as
+     * [lastParsedBlockHash].
      */
-    private fun setLastParsedBlockNumber(blockNumber: BigInteger) {
+    private suspend fun setLastParsedBlockNumber(blockNumber: BigInteger, blockHash: String?) {
         lastParsedBlockNum = blockNumber
+        lastParsedBlockHash = blockHash
+        val chainID = chainID
+        if (databaseService != null && hasRestoredBlockCheckpoint && chainID != null && blockHash != null) {
+            databaseService.storeBlockCheckpoint(
+                chainID = chainID.toString(),
+                blockNumber = blockNumber.toLong(),
+                blockHash = blockHash
+            )
+        }
+    }
+
+    /**
+     * Returns the ID of the blockchain to which [web3] is connected. If [chainID] is not null, this returns it without
+     * making a request. Otherwise, this requests the chain ID with [Web3j.ethChainId] through [requestCoalescer],
+     * stores it in [chainID] and returns it.
+     *
+     * @return The ID of the blockchain to which [web3] is connected.
+     */
+    suspend fun getChainID(): BigInteger {
+        return chainID ?: requestCoalescer.coalesce("eth_chainId", listOf(), null) {
+            web3.ethChainId().sendAsync().asDeferred()
+        }.await().chainId.also {
+            chainID = it
+        }
+    }
+
+    /**
+     * Requests the ID of the blockchain to which [web3] is connected with [Web3j.ethChainId] and stores it in
+     * [chainID], then sets [isChainIDVerified] to true. If a different chain ID was previously stored, the node is now
+     * serving a different blockchain, so the block checkpoint and recently parsed blocks of the previous chain no longer
+     * apply. In that case, this resets [lastParsedBlockNum], [lastParsedBlockHash] and [recentBlocks], and sets
+     * [hasRestoredBlockCheckpoint] to false so that the block checkpoint of the new chain is restored.
+     */
+    private suspend fun verifyChainID() {
+        val currentChainID = web3.ethChainId().sendAsync().await().chainId
+        val previousChainID = chainID
+        if (previousChainID != null && previousChainID != currentChainID) {
+            Log.w(logTag, "verifyChainID: chain ID changed from $previousChainID to $currentChainID, resetting " +
+                    "last parsed block")
+            lastParsedBlockNum = BigInteger.ZERO
+            lastParsedBlockHash = null
+            recentBlocks.clear()
+            hasRestoredBlockCheckpoint = false
+        }
+        chainID = currentChainID
+        isChainIDVerified = true
+    }
+
+    /**
+     * Gets the ID of the blockchain to which [web3] is connected with [getChainID]. Then, if
+     * [databaseService] is not null, this gets the block checkpoint stored for that chain ID, and if one is found, sets
+     * [lastParsedBlockNum] and [lastParsedBlockHash] to its block number and hash, so that listening resumes from the
+     * block after the checkpoint rather than from the first block of the chain. Finally, this sets
+     * [hasRestoredBlockCheckpoint] to true.
+     */
+    private suspend fun restoreBlockCheckpoint() {
+        if (databaseService != null) {
+            val chainID = getChainID()
+            val blockCheckpoint = databaseService.getBlockCheckpoint(chainID.toString())
+            if (blockCheckpoint != null) {
+                Log.i(logTag, "restoreBlockCheckpoint: resuming after block ${blockCheckpoint.blockNumber} for chain " +
+                        "ID $chainID")
+                lastParsedBlockNum = BigInteger.valueOf(blockCheckpoint.blockNumber)
+                lastParsedBlockHash = blockCheckpoint.blockHash
+            }
+        }
+        hasRestoredBlockCheckpoint = true
     }
 
     private val listenInterval = 30L
 
+    private val listenScheduler = ListenScheduler(
+        minPollInterval = listenInterval,
+        maxPollInterval = maxListenInterval,
+        minErrorBackoff = minErrorBackoff,
+        maxErrorBackoff = maxErrorBackoff,
+    )
+
+    /**
+     * The [ListenMode] describing how [listenLoop] is currently paced: catching up without waiting, following new
+     * blocks as they are created, or backing off after an exception.
+     */
+    val listenMode: StateFlow<ListenMode>
+        get() = listenScheduler.mode
+
+    private val newHeadsSubscription = newHeadsWebSocketURL?.let { NewHeadsSubscription(it) }
+
+    private var nextNewHeadsSubscriptionAttemptTime = 0L
+
     private var listenJob: Job = Job()
 
     private var runLoop = true
@@ -152,6 +472,20 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
         gasProvider
     )
 
+    private val eventDecoder = CommutoEventDecoder()
+
+    private var eventJournal: EventJournal? = null
+
+    private var eventJournalChainID: BigInteger? = null
+
+    private val commutoSwapBloomBitIndices = LogsBloom.getBitIndices(commutoSwap.contractAddress)
+
+    private val commutoSwapEventBloomBitIndices = eventDecoder.commutoSwapEventTopics.map {
+        LogsBloom.getBitIndices(it)
+    }
+
+    private val approvalEventBloomBitIndices = LogsBloom.getBitIndices(eventDecoder.approvalEventTopic)
+
     /**
      * Returns the contract address of [commutoSwap].
      */
@@ -179,6 +513,8 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
     fun stopListening() {
         Log.i(logTag, "Stopping listen loop")
         runLoop = false
+        // The listen loop may be waiting for a new block or backing off after an exception
+        listenScheduler.wake()
         Log.i(logTag, "Stopped listen loop")
     }
 
@@ -187,98 +523,660 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
      *
      * Listening Process:
      *
-     * First, we get the block number of the most recently confirmed block, and update
-     * [newestBlockNum] with this value. Then we compare this to the number of the most recently
-     * parsed block. If the newest block number is greater than that of the most recently parsed
-     * block, then there exists at least one new block that we must parse. If the newest block
-     * number is not greater than the last parsed block number, then we don't have a new block to
-     * parse, and we delay the coroutine in which we are running by [listenInterval] milliseconds.
+     * If we have not yet done so since listening began or since an exception that may indicate a lost connection, we
+     * first call [verifyChainID] to get and cache the ID of the chain to which we are connected. If we have not yet done
+     * so, we then call [restoreBlockCheckpoint] to resume from the most recently parsed block
+     * stored in persistent storage, if any. Then we call [subscribeToNewHeadsIfDue]. Then we get the block number of
+     * the most recently confirmed block (from [newHeadsSubscription] if it is subscribed and has received a block
+     * header, or else by requesting it from the node), update [newestBlockNum] with this value, and pass it to
+     * [listenScheduler], which updates [listenMode]. Then we call [trackConfirmations], which handles monitored
+     * transactions directly if we are far behind the newest block. Then we compare the newest block number, less
+     * [confirmationDepth], to the number of the most recently parsed block. If
+     * the newest block number is greater than that of the most recently parsed block, then there exists at least one
+     * new block that we must parse. If the newest block number is not greater than the last parsed block number, then
+     * we don't have a new block to parse, and we call [waitForNewBlock].
+     *
+     * If the newest parseable block is more than [backfillThreshold] blocks ahead of the most recently parsed block, as
+     * after a fresh install, we call [backfill] to replay the events of all but the newest blocks by requesting the
+     * logs of several ranges of blocks in parallel, rather than parsing every block one after another.
      *
-     * If we do have at least one new block to parse, we get the block with a block number one
-     * greater than that of the last parsed block. Then we parse this new block, and then set the
-     * last parsed block number as the block number of this newly parsed block.
+     * Otherwise, if we do have at least one new block to parse and [ingestionMode] is not
+     * [BlockchainIngestionMode.LOGS], we get the block with a block number one greater than that of the last parsed
+     * block. If this block is not a child of the last parsed block, a chain reorganization has occurred, so we call
+     * [handleChainReorganization]. Otherwise, we parse this new block, and then set the last parsed block number as the
+     * block number of this newly parsed block. If [ingestionMode] is [BlockchainIngestionMode.LOGS], we instead parse
+     * the logs of a range of at most [logBlockRangeSize] blocks beginning with the block after the last parsed block,
+     * and then set the last parsed block number as the number of the last block in this range. If [ingestionMode] is
+     * not [BlockchainIngestionMode.LOGS] and there is more than one new block to parse, we call [catchUp] to parse all
+     * new blocks with a bounded window of prefetched blocks.
      *
-     * If we encounter an [Exception], we pass it to [exceptionHandler]. Additionally, if the
-     * exception is a [ConnectException], indicating that we are having problems communicating with
-     * the network node, then we stop listening.
+     * If we encounter an [Exception], we pass it to [exceptionHandler]. If the exception is an [IOException] or a
+     * [ClientConnectionException], we may have lost our connection to the node, so we call [verifyChainID] again in
+     * the next iteration. Then, even if every node is unreachable, we back off for an exponentially increasing,
+     * randomly jittered interval given by [listenScheduler] before the next iteration, so that we do not flood a
+     * node that is having problems, and keep listening until [stopListening] is called. Once we stop listening, we
+     * cancel any subscription to new heads and clear [offerStructCache] and [swapStructCache], since their entries
+     * are no longer invalidated.
      */
     suspend fun listenLoop() {
+        isChainIDVerified = false
+        isListening = true
+        // Transactions may have been sent from this account while we were not listening
+        nonceManager.requestReconciliation(address = creds.address)
         while (runLoop) {
             try {
+                if (!isChainIDVerified) {
+                    verifyChainID()
+                }
+                if (!hasRestoredBlockCheckpoint) {
+                    restoreBlockCheckpoint()
+                }
                 Log.i(logTag, "Beginning iteration of listen loop, last parsed block number: $lastParsedBlockNum")
-                newestBlockNum = getNewestBlockNumberAsync().await().blockNumber
-                if (newestBlockNum > lastParsedBlockNum) {
+                subscribeToNewHeadsIfDue()
+                val newestHeadBlockNum = newHeadsSubscription?.takeIf { it.isSubscribed }?.newestBlockNumber?.value
+                newestBlockNum = newestHeadBlockNum ?: getNewestBlockNumberAsync().await().blockNumber
+                val newestParseableBlockNum = newestBlockNum - BigInteger.valueOf(confirmationDepth)
+                listenScheduler.handleNewestBlock(newestParseableBlockNum, lastParsedBlockNum)
+                trackConfirmations()
+                replaceStuckTransactions()
+                if (newestParseableBlockNum - lastParsedBlockNum > BigInteger.valueOf(backfillThreshold) &&
+                    getBackfillEndBlockNumber(newestParseableBlockNum) > lastParsedBlockNum) {
+                    Log.i(logTag, "Newest parseable block number $newestParseableBlockNum is more than " +
+                            "$backfillThreshold blocks after last parsed block number $lastParsedBlockNum, backfilling")
+                    backfill(getBackfillEndBlockNumber(newestParseableBlockNum))
+                } else if (newestParseableBlockNum > lastParsedBlockNum &&
+                    ingestionMode == BlockchainIngestionMode.LOGS) {
+                    val fromBlockNumber = lastParsedBlockNum + BigInteger.ONE
+                    val toBlockNumber = newestParseableBlockNum
+                        .min(lastParsedBlockNum + BigInteger.valueOf(logBlockRangeSize))
                     Log.i(logTag, "Newest block number $newestBlockNum > last parsed block number " +
+                            "$lastParsedBlockNum, parsing logs from $fromBlockNumber to $toBlockNumber")
+                    parseBlockRange(fromBlockNumber, toBlockNumber)
+                    Log.i(logTag, "Parsed logs from $fromBlockNumber to $toBlockNumber")
+                    // We only need the hash of the last block in the range if we are storing block checkpoints
+                    val toBlockHash = if (databaseService != null) {
+                        getBlock(toBlockNumber).hash
+                    } else {
+                        null
+                    }
+                    setLastParsedBlockNumber(toBlockNumber, toBlockHash)
+                    Log.i(logTag, "Updated last parsed block number as $toBlockNumber")
+                } else if (newestParseableBlockNum > lastParsedBlockNum + BigInteger.ONE &&
+                    catchUpPrefetchWindowSize > 1) {
+                    Log.i(logTag, "Newest parseable block number $newestParseableBlockNum > last parsed block number " +
+                            "$lastParsedBlockNum + 1, catching up")
+                    catchUp(newestParseableBlockNum)
+                } else if (newestParseableBlockNum > lastParsedBlockNum) {
+                    Log.i(logTag, "Newest parseable block number $newestParseableBlockNum > last parsed block number " +
                             "$lastParsedBlockNum")
-                    val block = getBlockAsync(lastParsedBlockNum + BigInteger.ONE)
-                        .await().block
+                    val block = getBlock(
+                        blockNumber = lastParsedBlockNum + BigInteger.ONE,
+                        fullTransactionObjects = ingestionMode == BlockchainIngestionMode.FULL_BLOCKS
+                    )
                     Log.i(logTag, "Got block ${block.number}")
-                    parseBlock(block)
-                    Log.i(logTag, "Parsed block ${block.number}")
-                    setLastParsedBlockNumber(block.number)
-                    Log.i(logTag, "Updated last parsed block number as ${block.number}")
+                    if (isChildOfLastParsedBlock(block)) {
+                        parseBlock(block)
+                        Log.i(logTag, "Parsed block ${block.number}")
+                        setLastParsedBlockNumber(block.number, block.hash)
+                        Log.i(logTag, "Updated last parsed block number as ${block.number}")
+                    } else {
+                        handleChainReorganization()
+                    }
                 } else {
-                    Log.i(logTag, "Newest block number $newestBlockNum <= last parsed block number " +
-                            "$lastParsedBlockNum, delaying for $listenInterval ms")
-                    delay(listenInterval)
+                    Log.i(logTag, "Newest parseable block number $newestParseableBlockNum <= last parsed block " +
+                            "number $lastParsedBlockNum, waiting for new block")
+                    waitForNewBlock()
                 }
+                listenScheduler.handleSuccess()
             } catch (e: Exception) {
                 Log.e(logTag, "Got an exception during listen loop, calling exception handler", e)
                 exceptionHandler.handleBlockchainException(e)
-                if (e is ConnectException) {
-                    Log.e(logTag, "Caught ConnectionException, stopping listening loop", e)
-                    stopListening()
+                if (e is IOException || e is ClientConnectionException) {
+                    // We may have lost our connection to the node, and the node we reconnect to may serve another chain
+                    isChainIDVerified = false
+                    supportsBlockReceipts = null
+                }
+                if (runLoop) {
+                    val errorBackoff = listenScheduler.handleError()
+                    Log.i(logTag, "Backing off for $errorBackoff ms before the next iteration of listen loop")
+                    listenScheduler.sleep(errorBackoff)
                 }
             }
             Log.i(logTag, "Completed iteration of listen loop")
         }
+        newHeadsSubscription?.unsubscribe()
+        nextNewHeadsSubscriptionAttemptTime = 0L
+        // Cached structs are no longer invalidated once we stop listening
+        isListening = false
+        offerStructCache.clear()
+        swapStructCache.clear()
+    }
+
+    /**
+     * If [newHeadsSubscription] exists and is not subscribed, and the current time is after
+     * [nextNewHeadsSubscriptionAttemptTime], this tries to subscribe to new heads with [newHeadsSubscription], and sets
+     * [nextNewHeadsSubscriptionAttemptTime] to [maxListenInterval] milliseconds from now, so that a node without a
+     * working WebSocket endpoint is not asked to accept a connection more often than that.
+     */
+    private suspend fun subscribeToNewHeadsIfDue() {
+        val subscription = newHeadsSubscription ?: return
+        if (!subscription.isSubscribed && System.currentTimeMillis() >= nextNewHeadsSubscriptionAttemptTime) {
+            nextNewHeadsSubscriptionAttemptTime = System.currentTimeMillis() + maxListenInterval
+            Log.i(logTag, "subscribeToNewHeadsIfDue: subscribing to new heads")
+            withContext(Dispatchers.IO) {
+                subscription.subscribe()
+            }
+        }
+    }
+
+    /**
+     * Waits for a block newer than [newestBlockNum] to be created.
+     *
+     * If [newHeadsSubscription] is subscribed, this waits until it receives the header of such a block, or until
+     * [maxListenInterval] milliseconds have passed, whichever happens first. Otherwise, this delays the coroutine in
+     * which we are running for the number of milliseconds given by [ListenScheduler.getIdleDelay]: about the time
+     * until the next block is expected, or, if it is overdue, an interval that doubles each time no new block is found.
+     * This delay ends early if [stopListening] is called.
+     */
+    private suspend fun waitForNewBlock() {
+        val subscription = newHeadsSubscription
+        if (subscription != null && subscription.isSubscribed) {
+            Log.i(logTag, "waitForNewBlock: waiting up to $maxListenInterval ms for a new head")
+            withTimeoutOrNull(maxListenInterval) {
+                subscription.newestBlockNumber.first { it != null && it > newestBlockNum }
+            }
+        } else {
+            val idleDelay = listenScheduler.getIdleDelay()
+            Log.i(logTag, "waitForNewBlock: delaying for $idleDelay ms")
+            listenScheduler.sleep(idleDelay)
+        }
+    }
+
+    /**
+     * Parses every block after the last parsed block up to and including the block with block number [toBlockNumber],
+     * requesting blocks and their transaction receipts ahead of the block currently being parsed.
+     *
+     * This keeps a window of at most [catchUpPrefetchWindowSize] blocks that have been requested but not yet parsed.
+     * Blocks are parsed strictly in order, and the last parsed block number is updated after each block is parsed, so
+     * events are passed to [offerService] and [swapService] in the same order in which they would be passed if blocks
+     * were requested one at a time. Each time a block is parsed, a request for another block is added to the window,
+     * until all blocks through [toBlockNumber] have been requested. This stops early if [runLoop] becomes false, or if
+     * a block is not a child of the last parsed block, in which case this calls [handleChainReorganization]. After each
+     * block is parsed, this calls [trackConfirmations], so that monitored transactions are handled while we catch up.
+     * Once this finishes, it updates [catchUpBlocksPerSecond].
+     *
+     * @param toBlockNumber The block number of the last block to be parsed.
+     */
+    private suspend fun catchUp(toBlockNumber: BigInteger) {
+        val startTime = System.nanoTime()
+        var parsedBlockCount = 0
+        var nextBlockNumber = lastParsedBlockNum + BigInteger.ONE
+        coroutineScope {
+            val prefetchWindow = ArrayDeque<Deferred<Pair<EthBlock.Block, List<Deferred<EthGetTransactionReceipt>>>>>()
+            while (runLoop && (prefetchWindow.isNotEmpty() || nextBlockNumber <= toBlockNumber)) {
+                while (prefetchWindow.size < catchUpPrefetchWindowSize && nextBlockNumber <= toBlockNumber) {
+                    val blockNumber = nextBlockNumber
+                    prefetchWindow.addLast(async {
+                        val block = getBlock(
+                            blockNumber = blockNumber,
+                            fullTransactionObjects = ingestionMode == BlockchainIngestionMode.FULL_BLOCKS
+                        )
+                        Pair(block, getDeferredBlockReceiptOptionals(block))
+                    })
+                    nextBlockNumber += BigInteger.ONE
+                }
+                val (block, deferredTxReceiptOptionals) = prefetchWindow.removeFirst().await()
+                if (!isChildOfLastParsedBlock(block)) {
+                    handleChainReorganization()
+                    break
+                }
+                parseBlock(block, deferredTxReceiptOptionals)
+                setLastParsedBlockNumber(block.number, block.hash)
+                parsedBlockCount++
+                trackConfirmations()
+            }
+            // If listening was stopped or the chain was reorganized, we don't need the blocks remaining in the window
+            prefetchWindow.forEach { it.cancel() }
+        }
+        val elapsedSeconds = (System.nanoTime() - startTime) / 1_000_000_000.0
+        if (parsedBlockCount > 0 && elapsedSeconds > 0) {
+            catchUpBlocksPerSecond = parsedBlockCount / elapsedSeconds
+        }
+        Log.i(logTag, "catchUp: parsed $parsedBlockCount blocks through $lastParsedBlockNum at " +
+                "$catchUpBlocksPerSecond blocks per second")
     }
 
     /**
-     * A [Deferred] wrapper around Web3j's [Web3j.ethBlockNumber] method.
+     * Returns the number of the last block that [backfill] should replay when the newest parseable block has the
+     * specified number. When [ingestionMode] is not [BlockchainIngestionMode.LOGS], the newest [recentBlockBufferSize]
+     * blocks are left to be parsed one at a time, so that they are in [recentBlocks] if a chain reorganization replaces
+     * them.
+     *
+     * @param newestParseableBlockNumber The number of the newest parseable block.
+     */
+    private fun getBackfillEndBlockNumber(newestParseableBlockNumber: BigInteger): BigInteger {
+        return if (ingestionMode == BlockchainIngestionMode.LOGS) {
+            newestParseableBlockNumber
+        } else {
+            newestParseableBlockNumber - BigInteger.valueOf(recentBlockBufferSize.toLong())
+        }
+    }
+
+    /**
+     * Replays the events of every block after the last parsed block up to and including the block with block
+     * number [toBlockNumber], by splitting these blocks into ranges of at most [logBlockRangeSize] blocks and
+     * getting the logs of several ranges at once with [getRangeLogs].
+     *
+     * This keeps a window of at most [backfillConcurrency] ranges whose logs have been requested but not yet
+     * parsed, in the same way as [catchUp] keeps a window of blocks. Ranges are parsed strictly in order with
+     * [parseLogs], which handles the events of each range in `(blockNumber, logIndex)` order, so events are
+     * passed to [offerService] and [swapService] in the order in which they were emitted. After each range is
+     * parsed, the last parsed block number is set to that of its last block, which [setLastParsedBlockNumber]
+     * stores as the block checkpoint, and [backfillProgress] is updated. If the backfill is interrupted, by an
+     * exception, by [stopListening] or by the app being closed, [listenLoop] therefore resumes it after the last
+     * range that was parsed. Since blocks are not parsed one at a time, this clears [recentBlocks], which would
+     * otherwise no longer end with the last parsed block.
+     *
+     * @param toBlockNumber The block number of the last block to be replayed.
+     */
+    private suspend fun backfill(toBlockNumber: BigInteger) {
+        val fromBlockNumber = lastParsedBlockNum + BigInteger.ONE
+        val rangeSize = BigInteger.valueOf(maxOf(logBlockRangeSize, 1L))
+        var nextRangeStart = fromBlockNumber
+        recentBlocks.clear()
+        _backfillProgress.value = BackfillProgress(fromBlockNumber, toBlockNumber, lastParsedBlockNum)
+        Log.i(logTag, "backfill: replaying events from $fromBlockNumber to $toBlockNumber")
+        coroutineScope {
+            val rangeWindow = ArrayDeque<Deferred<BlockRangeLogs>>()
+            while (runLoop && (rangeWindow.isNotEmpty() || nextRangeStart <= toBlockNumber)) {
+                while (rangeWindow.size < maxOf(backfillConcurrency, 1) && nextRangeStart <= toBlockNumber) {
+                    val rangeStart = nextRangeStart
+                    val rangeEnd = toBlockNumber.min(rangeStart + rangeSize - BigInteger.ONE)
+                    rangeWindow.addLast(async {
+                        val logs = getRangeLogs(rangeStart, rangeEnd)
+                        // We only need the hash of the last block in the range if we are storing block checkpoints
+                        val rangeEndHash = if (databaseService != null) {
+                            getBlock(rangeEnd).hash
+                        } else {
+                            null
+                        }
+                        BlockRangeLogs(rangeStart, rangeEnd, logs, rangeEndHash)
+                    })
+                    nextRangeStart = rangeEnd + BigInteger.ONE
+                }
+                val rangeLogs = rangeWindow.removeFirst().await()
+                parseLogs(rangeLogs.fromBlockNumber, rangeLogs.toBlockNumber, rangeLogs.logs)
+                setLastParsedBlockNumber(rangeLogs.toBlockNumber, rangeLogs.toBlockHash)
+                _backfillProgress.value = BackfillProgress(fromBlockNumber, toBlockNumber, rangeLogs.toBlockNumber)
+            }
+            // If listening was stopped, we don't need the ranges remaining in the window
+            rangeWindow.forEach { it.cancel() }
+        }
+        Log.i(logTag, "backfill: replayed events through $lastParsedBlockNum")
+    }
+
+    /**
+     * A [Deferred] wrapper around Web3j's [Web3j.ethBlockNumber] method, which shares concurrent calls through
+     * [requestCoalescer].
      *
      * @return A [Deferred] with an [EthBlockNumber] result.
      */
     private fun getNewestBlockNumberAsync(): Deferred<EthBlockNumber> {
-        return web3.ethBlockNumber().sendAsync().asDeferred()
+        return requestCoalescer.coalesce("eth_blockNumber", listOf(), null) {
+            web3.ethBlockNumber().sendAsync().asDeferred()
+        }
     }
 
     /**
      * A [Deferred] wrapper around Web3j's [Web3j.ethGetBlockByNumber] method.
      *
-     * Note: Blocks returned by this function do not contain complete transactions, they contain
-     * transaction hashes instead.
+     * Note: Unless [fullTransactionObjects] is `true`, blocks returned by this function do not contain complete
+     * transactions, they contain transaction hashes instead.
      *
      * @param blockNumber The block number of the block to be returned.
+     * @param fullTransactionObjects Whether the block should contain full transaction objects rather than transaction
+     * hashes.
      *
      * @return A [Deferred] with an [EthBlock] result.
      */
-    private fun getBlockAsync(blockNumber: BigInteger): Deferred<EthBlock> {
+    private fun getBlockAsync(blockNumber: BigInteger, fullTransactionObjects: Boolean = false): Deferred<EthBlock> {
         return web3.ethGetBlockByNumber(
             DefaultBlockParameter.valueOf(blockNumber),
-            false
+            fullTransactionObjects
         ).sendAsync().asDeferred()
     }
 
     /**
-     * Gets full transaction receipts for transactions with the specified hashes.
+     * Gets the block with the specified block number with [getBlockAsync].
+     *
+     * Every block that this requests has a number no greater than that of the newest block, so if the node returns no
+     * block, it has not yet reached the block (for example because it is behind the node that returned the newest
+     * block number) rather than the block not existing. Treating this as an error ensures that the block is requested
+     * again in the next iteration of [listenLoop], rather than skipped or taken to have been removed by a chain
+     * reorganization.
+     *
+     * @param blockNumber The block number of the block to be returned.
+     * @param fullTransactionObjects Whether the block should contain full transaction objects rather than transaction
+     * hashes.
+     *
+     * @return The [EthBlock.Block] with number [blockNumber].
+     *
+     * @throws BlockchainServiceException if the node returns an error or no block.
+     */
+    private suspend fun getBlock(blockNumber: BigInteger, fullTransactionObjects: Boolean = false): EthBlock.Block {
+        val ethBlock = getBlockAsync(blockNumber, fullTransactionObjects).await()
+        if (ethBlock.hasError()) {
+            throw BlockchainServiceException("Got error getting block $blockNumber: ${ethBlock.error.message}")
+        }
+        return ethBlock.block ?: throw BlockchainServiceException("Node has not yet reached block $blockNumber")
+    }
+
+    /**
+     * Gets full transaction receipts for the relevant transactions in the given [EthBlock.Block] with
+     * [getReceiptOptionals], which uses `eth_getBlockReceipts` if the node supports it, unless the block's `logsBloom`
+     * field shows that none of them can be relevant.
+     *
+     * Receipts are relevant if they belong to monitored transactions, which must be parsed even if they failed and so
+     * emitted no logs, or if they may contain CommutoSwap events that [BlockchainService] handles, or ERC20
+     * [Approval](https://eips.ethereum.org/EIPS/eip-20) events while token transfer approval transactions are being
+     * monitored. If the block contains no monitored transaction, and its [LogsBloom] definitely contains neither the
+     * address of [commutoSwap] together with any handled CommutoSwap event topic, nor the Approval event topic when it
+     * is relevant, this requests no receipts at all and returns an empty list. This updates
+     * [logsBloomCheckedBlockCount] and [logsBloomSkippedBlockCount] for every block with transactions and a
+     * `logsBloom` field.
+     *
+     * @param block The [EthBlock.Block] containing the transactions.
+     *
+     * @return A [List] of [Deferred]s with [EthGetTransactionReceipt] results, in the order in which the transactions
+     * appear in [block], or an empty [List] if no receipt in [block] can be relevant.
+     */
+    private suspend fun getDeferredBlockReceiptOptionals(
+        block: EthBlock.Block
+    ): List<Deferred<EthGetTransactionReceipt>> {
+        val transactionHashes = getTransactionHashes(block)
+        if (transactionHashes.isEmpty()) {
+            return emptyList()
+        }
+        val logsBloom = LogsBloom.fromHex(block.logsBloom)
+        if (logsBloom == null || transactionHashes.any { transactionsToMonitor.containsKey(it) }) {
+            return getReceiptOptionals(block, transactionHashes)
+        }
+        logsBloomCheckedBlockCount.incrementAndGet()
+        val mayContainCommutoSwapEvents = logsBloom.mightContain(commutoSwapBloomBitIndices) &&
+                commutoSwapEventBloomBitIndices.any { logsBloom.mightContain(it) }
+        val mayContainApprovalEvents = transactionsToMonitor.values.any {
+            it.type == BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER ||
+                    it.type == BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER ||
+                    it.type == BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP
+        } && logsBloom.mightContain(approvalEventBloomBitIndices)
+        if (mayContainCommutoSwapEvents || mayContainApprovalEvents) {
+            return getReceiptOptionals(block, transactionHashes)
+        }
+        logsBloomSkippedBlockCount.incrementAndGet()
+        Log.i(logTag, "getDeferredBlockReceiptOptionals: logsBloom of block ${block.number} contains no relevant " +
+                "logs, skipping ${transactionHashes.size} receipts")
+        return emptyList()
+    }
+
+    /**
+     * Gets full transaction receipts for the relevant transactions in the given [EthBlock.Block], as determined by
+     * [getRelevantTransactionHashes]. If only some transactions are relevant, their receipts are requested with
+     * [getDeferredTxReceiptOptionals]. Otherwise, receipts are requested with [getBlockReceiptOptionals], or with
+     * [getDeferredTxReceiptOptionals] if that returns `null`.
+     *
+     * @param block The [EthBlock.Block] containing the transactions.
+     * @param transactionHashes The hashes of the transactions in [block], in the order in which they appear in [block].
+     *
+     * @return A [List] of [Deferred]s with [EthGetTransactionReceipt] results for the relevant transactions, in the
+     * order in which they appear in [block].
+     */
+    private suspend fun getReceiptOptionals(
+        block: EthBlock.Block,
+        transactionHashes: List<String>
+    ): List<Deferred<EthGetTransactionReceipt>> {
+        val relevantTransactionHashes = getRelevantTransactionHashes(block)
+        if (relevantTransactionHashes.size < transactionHashes.size) {
+            Log.i(logTag, "getReceiptOptionals: ${relevantTransactionHashes.size} of ${transactionHashes.size} txs " +
+                    "in block ${block.number} are relevant")
+            return getDeferredTxReceiptOptionals(relevantTransactionHashes)
+        }
+        return getBlockReceiptOptionals(block, transactionHashes)?.map { CompletableDeferred(it) }
+            ?: getDeferredTxReceiptOptionals(transactionHashes)
+    }
+
+    /**
+     * Returns the hashes of the transactions in the given [EthBlock.Block] whose receipts [BlockchainService] should
+     * parse, in the order in which they appear in the block. If the block contains full transaction objects, which it
+     * does when [ingestionMode] is [BlockchainIngestionMode.FULL_BLOCKS], these are the monitored transactions and the
+     * transactions that [transactionFilter] considers relevant. Transactions for which the block contains only hashes
+     * are always considered relevant.
+     *
+     * @param block The [EthBlock.Block] containing the transactions.
+     *
+     * @return A [List] of transaction hashes, as [String]s.
+     */
+    private fun getRelevantTransactionHashes(block: EthBlock.Block): List<String> {
+        return block.transactions.mapNotNull {
+            when (it) {
+                is EthBlock.TransactionHash -> {
+                    it.get()
+                }
+                is EthBlock.TransactionObject -> {
+                    val transaction = it.get()
+                    transaction.hash.takeIf {
+                        transactionsToMonitor.containsKey(transaction.hash) || transactionFilter.isRelevant(transaction)
+                    }
+                }
+                else -> {
+                    null
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets full transaction receipts for every transaction in the given [EthBlock.Block] with a single call to
+     * [eth_getBlockReceipts](https://ethereum.github.io/execution-apis/api-documentation/), if the node supports it.
+     *
+     * The receipts are requested by block hash, so that they cannot belong to a block with the same number that
+     * replaced [block] in a chain reorganization. If the node answers with a "Method not found" (-32601) error, it does
+     * not support `eth_getBlockReceipts`, so [supportsBlockReceipts] is set to `false`, and receipts are requested per
+     * transaction with [getDeferredTxReceiptOptionals] until support is detected again after an exception that may
+     * indicate a lost connection. Any other error only makes this return `null` for the given block, since it may be
+     * caused by the node being briefly overloaded or not yet having the block, as does a response that lacks the
+     * receipt of any transaction in the block. Otherwise, [supportsBlockReceipts] is set to `true`.
+     *
+     * @param block The [EthBlock.Block] containing the transactions.
+     * @param transactionHashes The hashes of the transactions in [block], in the order in which they appear in [block].
+     *
+     * @return A [List] of [EthGetTransactionReceipt]s, in the same order as [transactionHashes], or `null` if the
+     * receipts could not be obtained in this way.
+     */
+    private suspend fun getBlockReceiptOptionals(
+        block: EthBlock.Block,
+        transactionHashes: List<String>
+    ): List<EthGetTransactionReceipt>? {
+        if (supportsBlockReceipts == false) {
+            return null
+        }
+        val response = web3.ethGetBlockReceipts(block.hash).sendAsync().await()
+        if (response.hasError()) {
+            if (response.error.code == -32601) {
+                Log.i(logTag, "getBlockReceiptOptionals: node does not support eth_getBlockReceipts, requesting " +
+                        "receipts per tx: ${response.error.message}")
+                supportsBlockReceipts = false
+            } else {
+                Log.w(logTag, "getBlockReceiptOptionals: got error getting receipts of block ${block.number}, " +
+                        "requesting receipts per tx: ${response.error.message}")
+            }
+            return null
+        }
+        supportsBlockReceipts = true
+        val receiptsByHash = response.blockReceipts?.associateBy { it.transactionHash.lowercase() } ?: return null
+        // A node that has not fully indexed the block may omit receipts, which we then request per tx instead
+        if (!transactionHashes.all { receiptsByHash.containsKey(it.lowercase()) }) {
+            return null
+        }
+        return transactionHashes.map { transactionHash ->
+            EthGetTransactionReceipt().apply { result = receiptsByHash[transactionHash.lowercase()] }
+        }
+    }
+
+    /**
+     * Gets full transaction receipts for transactions with the specified hashes. The hashes are split into chunks of at
+     * most [receiptBatchSize] hashes, and the receipts for each chunk are requested with a single JSON-RPC batch
+     * request, so that getting the receipts of a block requires a few HTTP requests rather than one per transaction.
      *
      * @param txHashes A list of transaction hashes (as [String]s) for which to get full
      * transaction receipts (as [EthGetTransactionReceipt]s).
      *
-     * @return A [List] of [Deferred]s with [EthGetTransactionReceipt] results.
+     * @return A [List] of [Deferred]s with [EthGetTransactionReceipt] results, in the same order as [txHashes].
      */
     private fun getDeferredTxReceiptOptionals (
         txHashes: List<String>
     ): List<Deferred<EthGetTransactionReceipt>> {
-        return txHashes.map {
-            web3.ethGetTransactionReceipt(it).sendAsync().asDeferred()
+        if (receiptBatchSize < 2) {
+            return txHashes.map {
+                web3.ethGetTransactionReceipt(it).sendAsync().asDeferred()
+            }
+        }
+        return txHashes.chunked(receiptBatchSize).flatMap { txHashChunk ->
+            val batchFuture = web3.ethGetTransactionReceiptBatch(txHashChunk)
+            txHashChunk.indices.map { index ->
+                batchFuture.thenApply { it[index] }.asDeferred()
+            }
         }
     }
 
     /**
-     * Uses the [CommutoSwap.getOffer] method and [Web3j.ethChainId] to get the current chain ID and all on-chain data
-     * about the offer with the specified ID, and creates and returns an [OfferStruct] with the results.
+     * Gets all logs matching the specified [EthFilter] with Web3j's [Web3j.ethGetLogs] method.
+     *
+     * @param filter The [EthFilter] specifying the block range, addresses and topics of the logs to get.
+     *
+     * @return A [List] of the matching [Web3jLog]s.
+     *
+     * @throws BlockchainServiceException if the node returns an error.
+     */
+    private suspend fun getLogs(filter: EthFilter): List<Web3jLog> {
+        val ethLog = web3.ethGetLogs(filter).sendAsync().await()
+        if (ethLog.hasError()) {
+            throw BlockchainServiceException("Got error getting logs: ${ethLog.error.message}")
+        }
+        return ethLog.logs.mapNotNull { it.get() as? Web3jLog }
+    }
+
+    /**
+     * Creates a message call to the CommutoSwap function with the specified name, with the specified ID as its only
+     * argument.
+     *
+     * @param functionName The name of the CommutoSwap function to call, which must accept a single `bytes16`.
+     * @param id The ID to pass to the function.
+     *
+     * @return A [Transaction] that can be executed with `eth_call`.
+     */
+    private fun createCommutoSwapCallWithID(functionName: String, id: UUID): Transaction {
+        val function = org.web3j.abi.datatypes.Function(
+            functionName,
+            listOf(org.web3j.abi.datatypes.generated.Bytes16(id.asByteArray())),
+            listOf()
+        )
+        return Transaction.createEthCallTransaction(
+            creds.address,
+            commutoSwap.contractAddress,
+            CommutoFunctionEncoder.encode(function)
+        )
+    }
+
+    /**
+     * Gets the raw ABI-encoded return data of a call to the CommutoSwap function with the specified name from an
+     * [EthCall] response.
+     *
+     * @param functionName The name of the CommutoSwap function that was called.
+     * @param ethCall The response to the call.
+     *
+     * @return The ABI-encoded return data of the call.
+     *
+     * @throws BlockchainServiceException if the call failed, reverted, or returned no data.
+     */
+    private fun getReturnData(functionName: String, ethCall: EthCall): ByteArray {
+        if (ethCall.hasError()) {
+            throw BlockchainServiceException("Got error calling $functionName: ${ethCall.error.message}")
+        } else if (ethCall.isReverted) {
+            throw BlockchainServiceException("Call to $functionName reverted: ${ethCall.revertReason}")
+        }
+        val returnData = Numeric.hexStringToByteArray(ethCall.value ?: "0x")
+        if (returnData.isEmpty()) {
+            throw BlockchainServiceException("Empty value (0x) returned from $functionName call")
+        }
+        return returnData
+    }
+
+    /**
+     * Calls the CommutoSwap function with the specified name and the specified ID as its only argument using
+     * [eth_call](https://ethereum.github.io/execution-apis/api-documentation/), and returns the raw ABI-encoded
+     * return data, so that it can be decoded directly rather than by [CommutoSwap]'s reflective decoder. Concurrent
+     * identical calls share a single request through [requestCoalescer], but only if they were made with the same
+     * [readStamp], so that no struct read before an invalidation is cached with a stamp taken after it.
+     *
+     * @param functionName The name of the CommutoSwap function to call, which must accept a single `bytes16`.
+     * @param id The ID to pass to the function.
+     * @param readStamp The [StructCache.readStamp] that the caller got before making this call.
+     *
+     * @return The ABI-encoded return data of the call.
+     *
+     * @throws BlockchainServiceException if the call fails, reverts, or returns no data.
+     */
+    private suspend fun callCommutoSwapWithID(functionName: String, id: UUID, readStamp: Long): ByteArray {
+        val ethCall = requestCoalescer.coalesce("eth_call", listOf(functionName, id, readStamp), "latest") {
+            web3.ethCall(
+                createCommutoSwapCallWithID(functionName, id),
+                DefaultBlockParameter.valueOf("latest")
+            ).sendAsync().asDeferred()
+        }.await()
+        return getReturnData(functionName, ethCall)
+    }
+
+    /**
+     * Calls the CommutoSwap function with the specified name once for each of the specified IDs, in the same way as
+     * [callCommutoSwapWithID], but using JSON-RPC batch requests of at most [callBatchSize] calls each, so that many
+     * calls require only a few HTTP requests. Every call is executed against the state of the same block.
+     *
+     * @param functionName The name of the CommutoSwap function to call, which must accept a single `bytes16`.
+     * @param ids The IDs with which to call the function.
+     * @param blockNumber The number of the block against the state of which every call is executed, or `null` if they
+     * should be executed against the state of the latest block.
+     *
+     * @return A [Map] of each ID in [ids] to the ABI-encoded return data of the call made with it.
+     *
+     * @throws BlockchainServiceException if any call fails, reverts, or returns no data.
+     */
+    private suspend fun callCommutoSwapWithIDs(
+        functionName: String,
+        ids: Collection<UUID>,
+        blockNumber: BigInteger?
+    ): Map<UUID, ByteArray> {
+        val block = if (blockNumber == null) {
+            DefaultBlockParameter.valueOf("latest")
+        } else {
+            DefaultBlockParameter.valueOf(blockNumber)
+        }
+        val returnData = mutableMapOf<UUID, ByteArray>()
+        for (idChunk in ids.distinct().chunked(maxOf(callBatchSize, 1))) {
+            val ethCalls = web3.ethCallBatch(
+                idChunk.map { createCommutoSwapCallWithID(functionName, it) },
+                block
+            ).await()
+            idChunk.zip(ethCalls).forEach { (id, ethCall) ->
+                returnData[id] = getReturnData(functionName, ethCall)
+            }
+        }
+        return returnData
+    }
+
+    /**
+     * Calls CommutoSwap's `getOffer` function and uses [getChainID] to get the current chain ID and all on-chain data
+     * about the offer with the specified ID, and creates and returns an [OfferStruct] with the results, using
+     * [offerStructCache] as described in [getThroughStructCache].
      *
      * @param id The ID of the offer to return.
      *
@@ -286,28 +1184,131 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
      * offer exists.
      */
     suspend fun getOffer(id: UUID): OfferStruct? {
-        val offerIdByteBuffer = ByteBuffer.wrap(ByteArray(16))
-        offerIdByteBuffer.putLong(id.mostSignificantBits)
-        offerIdByteBuffer.putLong(id.leastSignificantBits)
-        val offer = commutoSwap.getOffer(offerIdByteBuffer.array()).sendAsync().asDeferred()
-        val chainID = web3.ethChainId().sendAsync().asDeferred()
-        return OfferStruct.createFromGetOfferResponse(offer.await(), chainID.await().chainId)
+        return getThroughStructCache(offerStructCache, CommutoSwap.FUNC_GETOFFER, id) { returnData, chainID ->
+            OfferStruct.createFromGetOfferReturnData(returnData, chainID)
+        }
+    }
+
+    /**
+     * Calls CommutoSwap's `getOffer` function for each of the specified offer IDs against the state of the same block,
+     * using as few JSON-RPC batch requests as possible, and creates [OfferStruct]s with the results in the same way as
+     * [getOffer]. This does not return cached offers, but stores the results in [offerStructCache] as described in
+     * [getAllAndStoreInStructCache].
+     *
+     * @param ids The IDs of the offers to return.
+     * @param blockNumber The number of the block as of which the offers should be returned, or `null` if they should
+     * be returned as of the latest block.
+     *
+     * @return A [Map] of each ID in [ids] to an [OfferStruct] containing all on-chain data of the offer with that ID,
+     * or to `null` if no such offer exists.
+     *
+     * @throws BlockchainServiceException if any call to `getOffer` fails.
+     */
+    suspend fun getOffers(ids: Collection<UUID>, blockNumber: BigInteger? = null): Map<UUID, OfferStruct?> {
+        return getAllAndStoreInStructCache(
+            offerStructCache,
+            CommutoSwap.FUNC_GETOFFER,
+            ids,
+            blockNumber
+        ) { returnData, chainID ->
+            OfferStruct.createFromGetOfferReturnData(returnData, chainID)
+        }
     }
 
     /**
-     * A [Deferred] wrapper around [CommutoSwap.serviceFeeRate] method.
+     * Returns the struct of the offer or swap with the specified ID from [cache] if [BlockchainService] is listening
+     * and the struct is cached. Otherwise, this calls the CommutoSwap function with the specified name using
+     * [callCommutoSwapWithID], creates the struct from the return data, and, if [BlockchainService] is listening,
+     * stores it in [cache], tagged with [newestBlockNum] as of the start of the call.
+     *
+     * @param cache The [StructCache] of the type of struct to return.
+     * @param functionName The name of the CommutoSwap function that returns the struct, such as `getOffer`.
+     * @param id The ID of the offer or swap.
+     * @param createStruct A function that accepts the return data of the call and the current chain ID, and creates
+     * the struct, or returns `null` if no such offer or swap exists.
+     *
+     * @return The struct of the offer or swap with the specified ID, or `null` if no such offer or swap exists.
+     */
+    private suspend fun <T> getThroughStructCache(
+        cache: StructCache<T>,
+        functionName: String,
+        id: UUID,
+        createStruct: (ByteArray, BigInteger) -> T?,
+    ): T? {
+        val chainID = getChainID()
+        val isCaching = isListening
+        if (isCaching) {
+            val entry = cache.get(chainID, id)
+            if (entry != null) {
+                return entry.struct
+            }
+        }
+        val readStamp = cache.readStamp()
+        val blockNumber = newestBlockNum
+        val struct = createStruct(callCommutoSwapWithID(functionName, id, readStamp), chainID)
+        if (isCaching) {
+            cache.put(chainID, id, struct, blockNumber, readStamp)
+        }
+        return struct
+    }
+
+    /**
+     * Calls the CommutoSwap function with the specified name for each of the specified IDs using
+     * [callCommutoSwapWithIDs], and creates structs from the return data. If [BlockchainService] is listening, this
+     * stores every struct in [cache], tagged with the specified block number, or with [newestBlockNum] as of the start
+     * of the calls if no block number is specified.
+     *
+     * @param cache The [StructCache] of the type of struct to return.
+     * @param functionName The name of the CommutoSwap function that returns the struct, such as `getOffer`.
+     * @param ids The IDs of the offers or swaps.
+     * @param blockNumber The number of the block as of which the structs should be returned, or `null` if they should
+     * be returned as of the latest block.
+     * @param createStruct A function that accepts the return data of a call and the current chain ID, and creates the
+     * struct, or returns `null` if no such offer or swap exists.
+     *
+     * @return A [Map] of each ID in [ids] to the struct of the offer or swap with that ID, or to `null` if no such
+     * offer or swap exists.
+     */
+    private suspend fun <T> getAllAndStoreInStructCache(
+        cache: StructCache<T>,
+        functionName: String,
+        ids: Collection<UUID>,
+        blockNumber: BigInteger?,
+        createStruct: (ByteArray, BigInteger) -> T?,
+    ): Map<UUID, T?> {
+        val chainID = getChainID()
+        val isCaching = isListening
+        val readStamp = cache.readStamp()
+        val readBlockNumber = blockNumber ?: newestBlockNum
+        val structs = callCommutoSwapWithIDs(functionName, ids, blockNumber).mapValues {
+            createStruct(it.value, chainID)
+        }
+        if (isCaching) {
+            for ((id, struct) in structs) {
+                cache.put(chainID, id, struct, readBlockNumber, readStamp)
+            }
+        }
+        return structs
+    }
+
+    /**
+     * A [Deferred] wrapper around [CommutoSwap.serviceFeeRate] method, which shares concurrent calls through
+     * [requestCoalescer].
      *
      * @return A [Deferred] with a [BigInteger] result.
      */
     fun getServiceFeeRateAsync(): Deferred<BigInteger> {
-        return commutoSwap.serviceFeeRate.sendAsync().asDeferred()
+        return requestCoalescer.coalesce("eth_call", listOf(CommutoSwap.FUNC_SERVICEFEERATE), "latest") {
+            commutoSwap.serviceFeeRate.sendAsync().asDeferred()
+        }
     }
 
     /**
-     * Stores [transaction] in [transactionsToMonitor] and then sends the wrapped [RawTransaction] to the blockchain
-     * node via a call to [eth_sendRawTransaction](https://ethereum.github.io/execution-apis/api-documentation/). This
-     * signs [transaction] with [creds] and [chainID] and then converts the result to a hex string. If this hex string
-     * is not equal to [signedRawTransactionDataAsHex], this throws an [IllegalStateException].
+     * Stores [transaction] in [transactionsToMonitor] with [addTransactionToMonitor] and then sends the wrapped
+     * [RawTransaction] to the blockchain node via a call to
+     * [eth_sendRawTransaction](https://ethereum.github.io/execution-apis/api-documentation/). This signs [transaction]
+     * with [creds] and [chainID] and then converts the result to a hex string. If this hex string is not equal to
+     * [signedRawTransactionDataAsHex], this throws an [IllegalStateException].
      *
      * @param transaction The [BlockchainTransaction] containing the [RawTransaction] from which
      * [signedRawTransactionDataAsHex] was created, to be sent to t he node as a raw transaction.
@@ -334,13 +1335,49 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
         ) {
             "Supplied signed transaction data and actual signed transaction data do not match"
         }
-        transactionsToMonitor[transaction.transactionHash] = transaction
-        try {
-            return web3.ethSendRawTransaction(signedRawTransactionDataAsHex).sendAsync().await()
+        addTransactionToMonitor(transaction)
+        val response = try {
+            web3.ethSendRawTransaction(signedRawTransactionDataAsHex).sendAsync().await()
         } catch (exception: Exception) {
             transactionsToMonitor.remove(transaction.transactionHash)
+            nonceManager.handleSendFailure(address = creds.address, nonce = wrappedTransaction.nonce)
             throw exception
         }
+        if (response.hasError()) {
+            nonceManager.handleSendFailure(address = creds.address, nonce = wrappedTransaction.nonce)
+        } else {
+            nonceManager.markSent(address = creds.address, nonce = wrappedTransaction.nonce)
+            transactionReplacementEngine.handleSentTransaction(
+                transaction = transaction,
+                blockNumber = newestBlockNum.max(transaction.latestBlockNumberAtCreation)
+            )
+        }
+        return response
+    }
+
+    /**
+     * Returns a copy of the given EIP1559 transaction with a nonce reserved for it by [nonceManager]. This must be
+     * called right before the returned transaction is signed and sent with [sendTransaction], which ends the
+     * reservation, since the nonce is handed out to no other transaction until then.
+     *
+     * @param transaction The [RawTransaction] created by [createEIP1559Transaction], which has a placeholder nonce.
+     *
+     * @return A [RawTransaction] identical to [transaction] except for its nonce.
+     *
+     * @throws BlockchainServiceException if the account must be reconciled and the node responds with an error.
+     */
+    suspend fun assignNonce(transaction: RawTransaction): RawTransaction {
+        val fees = transaction.transaction as Transaction1559
+        return RawTransaction.createTransaction(
+            fees.chainId,
+            nonceManager.reserveNonce(address = creds.address),
+            transaction.gasLimit,
+            transaction.to,
+            transaction.value,
+            transaction.data,
+            fees.maxPriorityFeePerGas,
+            fees.maxFeePerGas
+        )
     }
 
     /**
@@ -409,11 +1446,55 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
         return commutoSwap.cancelOffer(iDByteArray).sendAsync().asDeferred()
     }
 
+    /**
+     * Creates and returns an EIP1559 [RawTransaction] from the user's account to the specified address with the
+     * specified data, with estimated gas limit, with max priority fee per gas and max fee per gas estimated by
+     * [feeOracle], and with a placeholder nonce. Transactions are created so that their fees can be shown to the user,
+     * and may never be sent, so no nonce is reserved until [assignNonce] is called right before the transaction is
+     * signed. The gas limit and fee estimate are requested concurrently.
+     *
+     * @param to The address of the contract to call.
+     * @param encodedFunction The encoded function call that the transaction will contain as data.
+     * @param chainID The ID of the blockchain on which the transaction will be sent.
+     *
+     * @return A [RawTransaction] as described above.
+     */
+    private suspend fun createEIP1559Transaction(
+        to: String,
+        encodedFunction: String,
+        chainID: BigInteger,
+    ): RawTransaction = coroutineScope {
+        val transactionForGasEstimate = Transaction(
+            creds.address.toString(),
+            BigInteger.ZERO,
+            null, // No gasPrice because we are specifying maxFeePerGas
+            BigInteger.valueOf(30_000_000),
+            to,
+            BigInteger.ZERO,
+            encodedFunction,
+            chainID.toLong(),
+            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
+            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
+        )
+        val feeEstimate = async { feeOracle.getFeeEstimate() }
+        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
+        RawTransaction.createTransaction(
+            chainID.toLong(),
+            BigInteger.ZERO, // nonce (placeholder, replaced by assignNonce)
+            gasLimit,
+            to,
+            BigInteger.ZERO, // value
+            encodedFunction,
+            feeEstimate.await().maxPriorityFeePerGas,
+            feeEstimate.await().maxFeePerGas
+        )
+    }
+
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the user's account to call the
-     * [approve](https://ethereum.org/en/developers/docs/standards/tokens/erc-20/) function of an ERC20 contract, with
-     * estimated gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from all currently
-     * known transactions, including those that are still pending.
+     * [approve](https://ethereum.org/en/developers/docs/standards/tokens/erc-20/) function of an ERC20 contract,
+     * with estimated gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which
+     * [assignNonce] replaces right before the transaction is signed.
      *
      * @param tokenAddress The address of the ERC20 contract to call.
      * @param spender The address that will be given permission to spend some of the user's balance of [tokenAddress]
@@ -434,60 +1515,19 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val chainID = web3.ethChainId().sendAsync().asDeferred().await().chainId
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            tokenAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        val chainID = getChainID()
+        return createEIP1559Transaction(
+            to = tokenAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the user's account to call CommutoSwap's
      * [openOffer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#open-offer) function, with estimated
-     * gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from all currently known
-     * transactions, including those that are still pending.
+     * gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which [assignNonce]
+     * replaces right before the transaction is signed.
      *
      * @param offerID The ID of the new [Offer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offer) to
      * be opened.
@@ -499,64 +1539,23 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
      */
     suspend fun createOpenOfferTransaction(offerID: UUID, offerStruct: OfferStruct): RawTransaction {
         val function = org.web3j.abi.datatypes.Function(
-            "openOffer",
-            listOf(org.web3j.abi.datatypes.generated.Bytes16(offerID.asByteArray()), offerStruct.toCommutoSwapOffer()),
-            listOf()
-        )
-        val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            offerStruct.chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            offerStruct.chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+            "openOffer",
+            listOf(org.web3j.abi.datatypes.generated.Bytes16(offerID.asByteArray()), offerStruct.toCommutoSwapOffer()),
+            listOf()
+        )
+        val encodedFunction = CommutoFunctionEncoder.encode(function)
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = offerStruct.chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the users account to call CommutoSwap's
      * [cancelOffer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#cancel-offer) function, with
-     * estimated gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from all currently
-     * known transactions, including those that are still pending.
+     * estimated gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which
+     * [assignNonce] replaces right before the transaction is signed.
      *
      * @param offerID The ID of the [Offer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offer) to be
      * canceled.
@@ -572,59 +1571,18 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the users account to call CommutoSwap's
-     * [editOffer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#edit-offer) function, with
-     * estimated gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from all currently
-     * known transactions, including those that are still pending.
+     * [editOffer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#edit-offer) function, with estimated
+     * gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which [assignNonce]
+     * replaces right before the transaction is signed.
      *
      * @param offerID The ID of the [Offer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offer) to be
      * edited.
@@ -659,59 +1617,18 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the user's account to call CommutoSwap's
      * [takeOffer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#take-offer) function, with estimated
-     * gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from all currently known
-     * transactions, including those that are still pending.
+     * gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which [assignNonce]
+     * replaces right before the transaction is signed.
      *
      * @param offerID The ID of the [Offer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offer) to be
      * taken.
@@ -728,59 +1645,18 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            swapStruct.chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            swapStruct.chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = swapStruct.chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the users account to call CommutoSwap's
-     * [fillSwap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#fill-swap) function, with estimated gas
-     * limit, max priority fee per gas, max fee per gas, and with a nonce determined from all currently known
-     * transactions, including those that are still pending.
+     * [fillSwap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#fill-swap) function, with estimated
+     * gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which [assignNonce]
+     * replaces right before the transaction is signed.
      *
      * @param swapID The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) to be
      * filled.
@@ -797,59 +1673,18 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the users account to call CommutoSwap's
-     * [reportPaymentSent](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#report-payment-sent) function,
-     * with estimated gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from all
-     * currently known transactions, including those that are still pending.
+     * [reportPaymentSent](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#report-payment-sent)
+     * function, with estimated gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce,
+     * which [assignNonce] replaces right before the transaction is signed.
      *
      * @param swapID The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) for which
      * payment sending will be reported.
@@ -866,59 +1701,18 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the users account to call CommutoSwap's
      * [reportPaymentReceived](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#report-payment-received)
-     * function, with estimated gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from
-     * all currently known transactions, including those that are still pending.
+     * function, with estimated gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce,
+     * which [assignNonce] replaces right before the transaction is signed.
      *
      * @param swapID The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) for which
      * payment receiving will be reported.
@@ -935,59 +1729,18 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
     /**
      * Creates and returns an EIP1559 [RawTransaction] from the users account to call CommutoSwap's
-     * [closeSwap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#close-swap)
-     * function, with estimated gas limit, max priority fee per gas, max fee per gas, and with a nonce determined from
-     * all currently known transactions, including those that are still pending.
+     * [closeSwap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#close-swap) function, with estimated
+     * gas limit, max priority fee per gas, max fee per gas, and with a placeholder nonce, which [assignNonce]
+     * replaces right before the transaction is signed.
      *
      * @param swapID The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) that will
      * be closed.
@@ -1004,51 +1757,10 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
             listOf()
         )
         val encodedFunction = CommutoFunctionEncoder.encode(function)
-        val transactionForGasEstimate = Transaction(
-            creds.address.toString(),
-            BigInteger.ZERO,
-            null, // No gasPrice because we are specifying maxFeePerGas
-            BigInteger.valueOf(30_000_000),
-            commutoSwap.contractAddress,
-            BigInteger.ZERO,
-            encodedFunction,
-            chainID.toLong(),
-            BigInteger.valueOf(1_000_000), // maxPriorityFeePerGas (temporary value)
-            BigInteger.valueOf(875_000_000), // maxFeePerGas (temporary value)
-        )
-        val nonce = web3.ethGetTransactionCount(
-            creds.address,
-            DefaultBlockParameter.valueOf("pending")
-        ).sendAsync().asDeferred()
-        val gasLimit = web3.ethEstimateGas(transactionForGasEstimate).sendAsync().asDeferred().await().amountUsed
-        // Get the fee history from the last 20 blocks, from the 75th to the 100th percentile.
-        val feeHistory = web3.ethFeeHistory(
-            20,
-            DefaultBlockParameter.valueOf("latest"),
-            listOf(75.0)
-        ).sendAsync().asDeferred().await().feeHistory
-        // Calculate the average of the 75th percentile reward values from the last 20 blocks and use this as the
-        // maxPriorityFeePerGas
-        val maxPriorityFeePerGas = BigInteger.ZERO.let { finalTipFee ->
-            feeHistory.reward.map { it.first() }.forEach { finalTipFee.add(it) }
-            finalTipFee.divide(BigInteger.valueOf(feeHistory.reward.count().toLong()))
-        }
-        // Calculate the 75th percentile base fee per gas value from the last 20 blocks and use this as the
-        // baseFeePerGas
-        val baseFeePerGas = BigInteger.ZERO.let {
-            val percentileIndex = floor(0.75 * feeHistory.baseFeePerGas.count()).toInt()
-            feeHistory.baseFeePerGas.sorted()[percentileIndex]
-        }
-        val maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas
-        return RawTransaction.createTransaction(
-            chainID.toLong(),
-            nonce.await().transactionCount,
-            gasLimit,
-            transactionForGasEstimate.to,
-            BigInteger.ZERO, // value
-            transactionForGasEstimate.data,
-            maxPriorityFeePerGas,
-            maxFeePerGas
+        return createEIP1559Transaction(
+            to = commutoSwap.contractAddress,
+            encodedFunction = encodedFunction,
+            chainID = chainID,
         )
     }
 
@@ -1088,301 +1800,805 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
     }
 
     /**
-     * A [Deferred] wrapper around the [CommutoSwap.takeOffer] method.
-     *
-     * @param id The ID of the [Offer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offer) to be taken.
-     * @param swapStruct The [SwapStruct] containing data necessary to take the offer.
+     * A [Deferred] wrapper around the [CommutoSwap.takeOffer] method.
+     *
+     * @param id The ID of the [Offer](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offer) to be taken.
+     * @param swapStruct The [SwapStruct] containing data necessary to take the offer.
+     *
+     * @return A [Deferred] with a [TransactionReceipt] result.
+     */
+    fun takeOfferAsync(id: UUID, swapStruct: SwapStruct): Deferred<TransactionReceipt> {
+        return commutoSwap.takeOffer(id.asByteArray(), swapStruct.toCommutoSwapSwap()).sendAsync().asDeferred()
+    }
+
+    /**
+     * Calls CommutoSwap's `getSwap` function and uses [getChainID] to get the current chain ID and all on-chain data
+     * about the swap with the specified ID, and creates and returns an [SwapStruct] with the results, using
+     * [swapStructCache] as described in [getThroughStructCache].
+     *
+     * @param id The ID of the swap to return.
+     *
+     * @return A [SwapStruct] containing all on-chain data of the swap with the specified ID, or null if no such swap
+     * exists.
+     */
+    suspend fun getSwap(id: UUID): SwapStruct? {
+        return getThroughStructCache(swapStructCache, CommutoSwap.FUNC_GETSWAP, id) { returnData, chainID ->
+            SwapStruct.createFromGetSwapReturnData(returnData, chainID)
+        }
+    }
+
+    /**
+     * Calls CommutoSwap's `getSwap` function for each of the specified swap IDs against the state of the same block,
+     * using as few JSON-RPC batch requests as possible, and creates [SwapStruct]s with the results in the same way as
+     * [getSwap]. This does not return cached swaps, but stores the results in [swapStructCache] as described in
+     * [getAllAndStoreInStructCache].
+     *
+     * @param ids The IDs of the swaps to return.
+     * @param blockNumber The number of the block as of which the swaps should be returned, or `null` if they should be
+     * returned as of the latest block.
+     *
+     * @return A [Map] of each ID in [ids] to a [SwapStruct] containing all on-chain data of the swap with that ID, or
+     * to `null` if no such swap exists.
+     *
+     * @throws BlockchainServiceException if any call to `getSwap` fails.
+     */
+    suspend fun getSwaps(ids: Collection<UUID>, blockNumber: BigInteger? = null): Map<UUID, SwapStruct?> {
+        return getAllAndStoreInStructCache(
+            swapStructCache,
+            CommutoSwap.FUNC_GETSWAP,
+            ids,
+            blockNumber
+        ) { returnData, chainID ->
+            SwapStruct.createFromGetSwapReturnData(returnData, chainID)
+        }
+    }
+
+    /**
+     * A [Deferred] wrapper around the [CommutoSwap.fillSwap] method.
+     *
+     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) to be filled.
+     *
+     * @return A [Deferred] with a [TransactionReceipt] result.
+     */
+    fun fillSwapAsync(id: UUID): Deferred<TransactionReceipt> {
+        return commutoSwap.fillSwap(id.asByteArray()).sendAsync().asDeferred()
+    }
+
+    /**
+     * A [Deferred] wrapper around the [CommutoSwap.reportPaymentSent] method.
+     *
+     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) for which to
+     * report sending payment.
+     *
+     * @return A [Deferred] with a [TransactionReceipt] result.
+     */
+    fun reportPaymentSentAsync(id: UUID): Deferred<TransactionReceipt> {
+        return commutoSwap.reportPaymentSent(id.asByteArray()).sendAsync().asDeferred()
+    }
+
+    /**
+     * A [Deferred] wrapper around the [CommutoSwap.reportPaymentReceived] method.
+     *
+     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) for which to
+     * report receiving payment.
+     *
+     * @return A [Deferred] with a [TransactionReceipt] result.
+     */
+    fun reportPaymentReceivedAsync(id: UUID): Deferred<TransactionReceipt> {
+        return commutoSwap.reportPaymentReceived(id.asByteArray()).sendAsync().asDeferred()
+    }
+
+    /**
+     * A [Deferred] wrapper around the [CommutoSwap.closeSwap] method.
+     *
+     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) to close.
+     *
+     * @return A [Deferred] with a [TransactionReceipt] result.
+     */
+    fun closeSwapAsync(id: UUID): Deferred<TransactionReceipt> {
+        return commutoSwap.closeSwap(id.asByteArray()).sendAsync().asDeferred()
+    }
+
+    /**
+     * Parses the given [EthBlock.Block] in search of
+     * [CommutoSwap](https://github.com/jimmyneutront/commuto-protocol/blob/main/CommutoSwap.sol)
+     * events, and creates a list of all such events that it finds. Then this calls
+     * [handleExpiredMonitoredTransactions], and then calls [handleEventResponses], passing said list of events.
+     * (Specifically, the events are [BaseEventResponse]s) Finally, this adds the block and the IDs of the offers and
+     * swaps affected by its events to [recentBlocks], removing the oldest block if necessary. Receipts are requested
+     * with [getDeferredBlockReceiptOptionals], so none are requested for a block that the `logsBloom` field shows to
+     * contain no relevant logs.
+     *
+     * @param block The [EthBlock.Block] to be parsed.
+     */
+    private suspend fun parseBlock(block: EthBlock.Block) {
+        parseBlock(block, getDeferredBlockReceiptOptionals(block))
+    }
+
+    /**
+     * Parses the given [EthBlock.Block] in the same way as [parseBlock], but using receipts that have already been
+     * requested.
+     *
+     * @param block The [EthBlock.Block] to be parsed.
+     * @param deferredTxReceiptOptionals A [List] of [Deferred]s with the [EthGetTransactionReceipt]s of the
+     * transactions in [block], in the order in which the transactions appear in [block], or an empty [List] if no
+     * receipt in [block] can be relevant.
+     */
+    private suspend fun parseBlock(
+        block: EthBlock.Block,
+        deferredTxReceiptOptionals: List<Deferred<EthGetTransactionReceipt>>
+    ) {
+        val chainID = getChainID()
+        val eventResponses: MutableList<List<BaseEventResponse>> = mutableListOf()
+        for (deferredReceiptOptional in deferredTxReceiptOptionals) {
+            eventResponses.add(parseDeferredReceiptOptional(deferredReceiptOptional, block.number))
+        }
+        handleExpiredMonitoredTransactions()
+        val (offerIDs, swapIDs) = handleEventResponses(eventResponses, chainID, block.number)
+        // Transactions handled by trackConfirmations were skipped, but their events still happened in this block
+        val handledTransactions = confirmationTracker.removeHandledTransactions(block.number)
+        recentBlocks.addLast(RecentBlock(
+            number = block.number,
+            hash = block.hash,
+            offerIDs = offerIDs + handledTransactions.flatMap { it.offerIDs },
+            swapIDs = swapIDs + handledTransactions.flatMap { it.swapIDs },
+        ))
+        while (recentBlocks.size > recentBlockBufferSize) {
+            recentBlocks.removeFirst()
+        }
+    }
+
+    /**
+     * Determines whether the given [EthBlock.Block] is a child of the most recently parsed block, by comparing its
+     * parent hash to [lastParsedBlockHash]. If [lastParsedBlockHash] is not known, this assumes that it is.
+     *
+     * @param block The [EthBlock.Block] that should be a child of the most recently parsed block.
+     *
+     * @return `false` if the parent hash of [block] does not match [lastParsedBlockHash], or `true` otherwise.
+     */
+    private fun isChildOfLastParsedBlock(block: EthBlock.Block): Boolean {
+        val lastHash = lastParsedBlockHash ?: return true
+        return block.parentHash.equals(lastHash, ignoreCase = true)
+    }
+
+    /**
+     * Handles a chain reorganization, which has replaced the most recently parsed block with a different one.
+     *
+     * Starting with the newest block in [recentBlocks], this gets the block that currently has the same number with
+     * [getBlock], which throws rather than returning no block if the node has not yet reached that block, and if its
+     * hash does not match that in [recentBlocks], removes the block from [recentBlocks] and collects the IDs of the
+     * offers and swaps affected by its events. This continues until this finds a block with a matching hash, which
+     * is the last block before the chain forked. If [recentBlocks] is emptied first, the fork point is assumed to be
+     * the block before the oldest block that was removed (or, if no block was removed, the block before the most
+     * recently parsed block), and this logs a warning, since the reorganization may be deeper than
+     * [recentBlockBufferSize]. Then this sets the last parsed block number to that of the fork point, so that the
+     * listen loop parses the blocks that replaced the removed ones, and clears [offerStructCache] and
+     * [swapStructCache]. Finally, this passes the IDs of the affected offers and swaps to [offerService] and
+     * [swapService] so that they can re-derive the state of those offers and swaps. The events of the removed blocks
+     * are also discarded from the [EventJournal] of the chain, if there is one, with [rewindEventJournal].
+     */
+    private suspend fun handleChainReorganization() {
+        Log.w(logTag, "handleChainReorganization: block after $lastParsedBlockNum is not a child of " +
+                "$lastParsedBlockHash")
+        val affectedOfferIDs = mutableSetOf<UUID>()
+        val affectedSwapIDs = mutableSetOf<UUID>()
+        var forkBlockNumber: BigInteger? = null
+        var forkBlockHash: String? = null
+        var oldestRemovedBlockNumber = lastParsedBlockNum
+        while (recentBlocks.isNotEmpty()) {
+            val recentBlock = recentBlocks.last()
+            val canonicalBlockHash = getBlock(recentBlock.number).hash
+            if (recentBlock.hash.equals(canonicalBlockHash, ignoreCase = true)) {
+                forkBlockNumber = recentBlock.number
+                forkBlockHash = recentBlock.hash
+                break
+            }
+            Log.i(logTag, "handleChainReorganization: block ${recentBlock.number} with hash ${recentBlock.hash} is " +
+                    "no longer part of the chain")
+            recentBlocks.removeLast()
+            affectedOfferIDs.addAll(recentBlock.offerIDs)
+            affectedSwapIDs.addAll(recentBlock.swapIDs)
+            oldestRemovedBlockNumber = recentBlock.number
+        }
+        if (forkBlockNumber == null) {
+            forkBlockNumber = (oldestRemovedBlockNumber - BigInteger.ONE).max(BigInteger.ZERO)
+            forkBlockHash = if (forkBlockNumber > BigInteger.ZERO) {
+                getBlock(forkBlockNumber).hash
+            } else {
+                null
+            }
+            Log.w(logTag, "handleChainReorganization: found no recently parsed block that is still part of the " +
+                    "chain, assuming fork after block $forkBlockNumber")
+        }
+        Log.i(logTag, "handleChainReorganization: rewinding to block $forkBlockNumber, " +
+                "${affectedOfferIDs.size} offers and ${affectedSwapIDs.size} swaps affected")
+        setLastParsedBlockNumber(forkBlockNumber, forkBlockHash)
+        rewindEventJournal(forkBlockNumber, getChainID())
+        // Events older than those in recentBlocks may also have been removed, so no cached struct can be trusted
+        offerStructCache.clear()
+        swapStructCache.clear()
+        if (affectedOfferIDs.isNotEmpty() || affectedSwapIDs.isNotEmpty()) {
+            val chainID = getChainID()
+            offerService.handleChainReorganization(affectedOfferIDs, chainID)
+            swapService.handleChainReorganization(affectedSwapIDs, chainID)
+        }
+    }
+
+    /**
+     * Returns the hashes of the transactions in the given [EthBlock.Block], in the order in which they appear in the
+     * block.
+     *
+     * @param block The [EthBlock.Block] containing the transactions.
+     *
+     * @return A [List] of transaction hashes, as [String]s.
+     */
+    private fun getTransactionHashes(block: EthBlock.Block): List<String> {
+        return block.transactions.mapNotNull {
+            when (it) {
+                is EthBlock.TransactionHash -> {
+                    it.get()
+                }
+                is EthBlock.TransactionObject -> {
+                    it.get().hash
+                }
+                else -> {
+                    null
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets all logs in blocks [fromBlockNumber] through [toBlockNumber] (inclusive) with [getRangeLogs], and parses
+     * them with [parseLogs].
      *
-     * @return A [Deferred] with a [TransactionReceipt] result.
+     * @param fromBlockNumber The number of the first block of the range to be parsed.
+     * @param toBlockNumber The number of the last block of the range to be parsed.
      */
-    fun takeOfferAsync(id: UUID, swapStruct: SwapStruct): Deferred<TransactionReceipt> {
-        return commutoSwap.takeOffer(id.asByteArray(), swapStruct.toCommutoSwapSwap()).sendAsync().asDeferred()
+    private suspend fun parseBlockRange(fromBlockNumber: BigInteger, toBlockNumber: BigInteger) {
+        parseLogs(fromBlockNumber, toBlockNumber, getRangeLogs(fromBlockNumber, toBlockNumber))
     }
 
     /**
-     * Uses the [CommutoSwap.getSwap] method and [Web3j.ethChainId] to get the current chain ID and all on-chain data
-     * about the swap with the specified ID, and creates and returns an [SwapStruct] with the results.
+     * Gets all logs emitted by CommutoSwap with the topic of an event that [BlockchainService] handles in blocks
+     * [fromBlockNumber] through [toBlockNumber] (inclusive), as well as all ERC20
+     * [Approval](https://eips.ethereum.org/EIPS/eip-20) logs emitted by the token contracts of monitored token transfer
+     * approval transactions in which the owner is the address of [creds], sorted in `(blockNumber, logIndex)` order.
      *
-     * @param id The ID of the swap to return.
+     * @param fromBlockNumber The number of the first block of the range.
+     * @param toBlockNumber The number of the last block of the range.
      *
-     * @return A [SwapStruct] containing all on-chain data of the swap with the specified ID, or null if no such swap
-     * exists.
+     * @return A [List] of the logs, in the order in which they were emitted.
      */
-    suspend fun getSwap(id: UUID): SwapStruct? {
-        val swap = commutoSwap.getSwap(id.asByteArray()).sendAsync().asDeferred()
-        val chainID = web3.ethChainId().sendAsync().asDeferred()
-        return SwapStruct.createFromGetSwapResponse(swap.await(), chainID.await().chainId)
+    private suspend fun getRangeLogs(fromBlockNumber: BigInteger, toBlockNumber: BigInteger): List<Web3jLog> {
+        val fromBlock = DefaultBlockParameter.valueOf(fromBlockNumber)
+        val toBlock = DefaultBlockParameter.valueOf(toBlockNumber)
+        val logs = mutableListOf<Web3jLog>()
+        logs.addAll(getLogs(
+            EthFilter(fromBlock, toBlock, commutoSwap.contractAddress)
+                .addOptionalTopics(*eventDecoder.commutoSwapEventTopics.toTypedArray())
+        ))
+        val approvedTokenAddresses = transactionsToMonitor.values.filter {
+            it.type == BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER ||
+                    it.type == BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER ||
+                    it.type == BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP
+        }.mapNotNull { it.transaction?.to?.lowercase() }.distinct()
+        if (approvedTokenAddresses.isNotEmpty()) {
+            logs.addAll(getLogs(
+                EthFilter(fromBlock, toBlock, approvedTokenAddresses)
+                    .addSingleTopic(eventDecoder.approvalEventTopic)
+                    .addSingleTopic(Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(creds.address), 64))
+            ))
+        }
+        logs.sortWith(compareBy({ it.blockNumber }, { it.logIndex }))
+        Log.i(logTag, "getRangeLogs: got ${logs.size} logs from $fromBlockNumber to $toBlockNumber")
+        return logs
     }
 
     /**
-     * A [Deferred] wrapper around the [CommutoSwap.fillSwap] method.
+     * Parses the specified logs, which were obtained from blocks [fromBlockNumber] through [toBlockNumber] (inclusive)
+     * with [getRangeLogs].
      *
-     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) to be filled.
+     * The logs are grouped by transaction, and each group is parsed in the same way as a transaction receipt would be.
+     * Since a transaction that fails emits no logs, this then gets the receipts of those monitored transactions that
+     * were not handled using logs but may have been confirmed in this range, as determined by
+     * [getPossiblyConfirmedTransactionHashes], and parses those that were confirmed in or before [toBlockNumber], so
+     * that failed monitored transactions are detected. Then this calls [handleExpiredMonitoredTransactions], and
+     * finally calls [handleEventResponses], passing the resulting list of events.
      *
-     * @return A [Deferred] with a [TransactionReceipt] result.
+     * @param fromBlockNumber The number of the first block of the range to be parsed.
+     * @param toBlockNumber The number of the last block of the range to be parsed.
+     * @param logs The logs of the range, in the order in which they were emitted.
      */
-    fun fillSwapAsync(id: UUID): Deferred<TransactionReceipt> {
-        return commutoSwap.fillSwap(id.asByteArray()).sendAsync().asDeferred()
+    private suspend fun parseLogs(fromBlockNumber: BigInteger, toBlockNumber: BigInteger, logs: List<Web3jLog>) {
+        val chainID = getChainID()
+        Log.i(logTag, "parseLogs: parsing ${logs.size} logs from $fromBlockNumber to $toBlockNumber")
+        val logsByTransactionHash = logs.groupBy { it.transactionHash.lowercase() }
+        val eventResponses: MutableList<List<BaseEventResponse>> = mutableListOf()
+        for ((transactionHash, transactionLogs) in logsByTransactionHash) {
+            if (confirmationTracker.isHandled(transactionHash)) {
+                Log.i(logTag, "parseLogs: skipping tx $transactionHash, which was handled by trackConfirmations")
+                continue
+            }
+            // Only successful transactions emit logs, so we can create a receipt with an OK status for them
+            val transactionReceipt = TransactionReceipt()
+            transactionReceipt.transactionHash = transactionHash
+            transactionReceipt.blockHash = transactionLogs.first().blockHash
+            transactionReceipt.setBlockNumber(transactionLogs.first().blockNumberRaw)
+            transactionReceipt.status = "0x1"
+            transactionReceipt.logs = transactionLogs
+            if (transactionsToMonitor.containsKey(transactionHash)) {
+                eventResponses.add(parseReceipt(transactionReceipt))
+            } else {
+                eventResponses.add(getCommutoSwapEventResponses(transactionReceipt))
+            }
+        }
+        val unhandledMonitoredTransactions = transactionsToMonitor.entries.filter {
+            !logsByTransactionHash.containsKey(it.key)
+        }.map { Pair(it.key, it.value) }
+        val possiblyConfirmedTransactionHashes = getPossiblyConfirmedTransactionHashes(
+            unhandledMonitoredTransactions,
+            toBlockNumber
+        )
+        for (deferredReceiptOptional in getDeferredTxReceiptOptionals(possiblyConfirmedTransactionHashes)) {
+            val receiptOptional = deferredReceiptOptional.await().transactionReceipt
+            if (receiptOptional.isPresent && receiptOptional.get().blockNumberRaw != null &&
+                receiptOptional.get().blockNumber <= toBlockNumber) {
+                eventResponses.add(parseReceipt(receiptOptional.get()))
+            }
+        }
+        handleExpiredMonitoredTransactions()
+        handleEventResponses(eventResponses, chainID, toBlockNumber)
+        confirmationTracker.removeHandledTransactions(toBlockNumber)
     }
 
     /**
-     * A [Deferred] wrapper around the [CommutoSwap.reportPaymentSent] method.
+     * Returns the hashes of those of the specified monitored transactions that may have been confirmed in or before
+     * the block with number [blockNumber]. A transaction is only confirmed by then if the number of transactions sent
+     * from our account as of that block, which this requests with
+     * [eth_getTransactionCount](https://ethereum.github.io/execution-apis/api-documentation/), is greater than its
+     * nonce, so this only requests that number, once, rather than the receipt of every monitored transaction. The
+     * nonces of transactions created before a restart of the application are not known, so their hashes are always
+     * returned.
      *
-     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) for which to
-     * report sending payment.
+     * @param monitoredTransactions Pairs of the hashes of monitored transactions and the [BlockchainTransaction]s to
+     * which they are mapped in [transactionsToMonitor].
+     * @param blockNumber The number of the block as of which the transactions may have been confirmed.
      *
-     * @return A [Deferred] with a [TransactionReceipt] result.
+     * @return The hashes of those of [monitoredTransactions] that may have been confirmed.
+     *
+     * @throws BlockchainServiceException if the node responds with an error.
      */
-    fun reportPaymentSentAsync(id: UUID): Deferred<TransactionReceipt> {
-        return commutoSwap.reportPaymentSent(id.asByteArray()).sendAsync().asDeferred()
+    private suspend fun getPossiblyConfirmedTransactionHashes(
+        monitoredTransactions: List<Pair<String, BlockchainTransaction>>,
+        blockNumber: BigInteger
+    ): List<String> {
+        if (monitoredTransactions.all { it.second.transaction == null }) {
+            return monitoredTransactions.map { it.first }
+        }
+        val response = web3.ethGetTransactionCount(creds.address, DefaultBlockParameter.valueOf(blockNumber))
+            .sendAsync().await()
+        if (response.hasError()) {
+            throw BlockchainServiceException("Got error getting transaction count of ${creds.address} as of block " +
+                    "$blockNumber: ${response.error.message}")
+        }
+        return monitoredTransactions.filter { (_, monitoredTransaction) ->
+            monitoredTransaction.transaction?.let { it.nonce < response.transactionCount } ?: true
+        }.map { it.first }
     }
 
     /**
-     * A [Deferred] wrapper around the [CommutoSwap.reportPaymentReceived] method.
-     *
-     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) for which to
-     * report receiving payment.
-     *
-     * @return A [Deferred] with a [TransactionReceipt] result.
+     * If the newest parseable block is more than [confirmationTrackingLag] blocks ahead of the last parsed block and
+     * [confirmationTracker] indicates that a poll is due, this gets the receipts of all monitored transactions with
+     * [getDeferredTxReceiptOptionals], which requests them in as few JSON-RPC batch requests as possible. Each receipt
+     * in a block no newer than the newest parseable block is parsed with [parseReceipt], which calls the appropriate
+     * failure handler or parses the receipt for the proper type of event and stops monitoring the transaction, and the
+     * resulting events are passed to [handleEventResponses]. This way, our own transactions are handled soon after
+     * they are confirmed, however far behind the newest block we are. Transactions in blocks that have not yet been
+     * parsed are recorded in [confirmationTracker], so that they are skipped when those blocks are parsed.
      */
-    fun reportPaymentReceivedAsync(id: UUID): Deferred<TransactionReceipt> {
-        return commutoSwap.reportPaymentReceived(id.asByteArray()).sendAsync().asDeferred()
+    private suspend fun trackConfirmations() {
+        val newestParseableBlockNum = newestBlockNum - BigInteger.valueOf(confirmationDepth)
+        if (newestParseableBlockNum - lastParsedBlockNum <= BigInteger.valueOf(confirmationTrackingLag) ||
+            !confirmationTracker.isPollDue) {
+            return
+        }
+        val monitoredTransactions = transactionsToMonitor.entries.map { Pair(it.key, it.value) }
+        if (monitoredTransactions.isEmpty()) {
+            return
+        }
+        Log.i(logTag, "trackConfirmations: last parsed block number $lastParsedBlockNum is far behind newest " +
+                "parseable block number $newestParseableBlockNum, getting receipts of ${monitoredTransactions.size} " +
+                "monitored txs")
+        val chainID = getChainID()
+        val receiptOptionals = getDeferredTxReceiptOptionals(monitoredTransactions.map { it.first }).map {
+            it.await().transactionReceipt
+        }
+        var foundReceipts = false
+        for ((monitoredTransaction, receiptOptional) in monitoredTransactions.zip(receiptOptionals)) {
+            val (transactionHash, transaction) = monitoredTransaction
+            val receipt = receiptOptional.orElse(null) ?: continue
+            // A transaction and its replacements share a nonce, so once one has been handled, the rest are removed
+            if (receipt.blockNumberRaw == null || receipt.blockNumber > newestParseableBlockNum ||
+                transactionsToMonitor[transactionHash] !== transaction) {
+                continue
+            }
+            foundReceipts = true
+            Log.i(logTag, "trackConfirmations: handling monitored tx $transactionHash confirmed in block " +
+                    "${receipt.blockNumber}")
+            val (offerIDs, swapIDs) = handleEventResponses(
+                mutableListOf(parseReceipt(receipt)),
+                chainID,
+                receipt.blockNumber
+            )
+            if (receipt.blockNumber > lastParsedBlockNum) {
+                confirmationTracker.addHandledTransaction(
+                    transactionHash = transactionHash,
+                    blockNumber = receipt.blockNumber,
+                    offerIDs = offerIDs,
+                    swapIDs = swapIDs,
+                )
+            }
+        }
+        confirmationTracker.handlePoll(foundReceipts)
     }
 
     /**
-     * A [Deferred] wrapper around the [CommutoSwap.closeSwap] method.
-     *
-     * @param id The ID of the [Swap](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#swap) to close.
-     *
-     * @return A [Deferred] with a [TransactionReceipt] result.
+     * Gets the monitored transactions that [transactionReplacementEngine] reports are due to be replaced, and for each,
+     * creates a replacement with the same nonce and higher fees based on an estimate from [feeOracle], signs it and
+     * sends it to the blockchain node via a call to
+     * [eth_sendRawTransaction](https://ethereum.github.io/execution-apis/api-documentation/). The hash of each
+     * replacement is added to [transactionsToMonitor], mapped to the original [BlockchainTransaction], and
+     * [parseReceipt] gives the events of a confirmed replacement the hash of the original with
+     * [getLogsOfMonitoredTransaction], so that offer and swap state, which refers to the original, is updated
+     * whichever of them is confirmed. If the node rejects a replacement, for example because the original has already
+     * been confirmed, the replacement is no longer monitored and the transaction is not replaced again. If sending a
+     * replacement throws an exception, the node may still have received it, so it is monitored as if it had been sent,
+     * and the remaining transactions are still replaced.
      */
-    fun closeSwapAsync(id: UUID): Deferred<TransactionReceipt> {
-        return commutoSwap.closeSwap(id.asByteArray()).sendAsync().asDeferred()
+    private suspend fun replaceStuckTransactions() {
+        val dueTransactions = transactionReplacementEngine.getTransactionsDueForReplacement(newestBlockNum)
+        if (dueTransactions.isEmpty()) {
+            return
+        }
+        val feeEstimate = feeOracle.getFeeEstimate()
+        for (logicalTransaction in dueTransactions) {
+            val monitoredTransaction = logicalTransaction.transaction
+            if (transactionsToMonitor[monitoredTransaction.transactionHash] !== monitoredTransaction) {
+                transactionReplacementEngine.remove(monitoredTransaction.transactionHash)
+                continue
+            }
+            val replacement = transactionReplacementEngine.createReplacement(logicalTransaction, feeEstimate)
+            val chainID = BigInteger.valueOf((replacement.transaction as Transaction1559).chainId)
+            val signedReplacementHex = Numeric.toHexString(signTransaction(replacement, chainID))
+            val replacementHash = Hash.sha3(signedReplacementHex)
+            Log.i(logTag, "replaceStuckTransactions: replacing monitored tx ${monitoredTransaction.transactionHash} " +
+                    "with $replacementHash, replacement ${logicalTransaction.replacementCount + 1}")
+            transactionsToMonitor[replacementHash] = monitoredTransaction
+            val response = try {
+                web3.ethSendRawTransaction(signedReplacementHex).sendAsync().await()
+            } catch (exception: Exception) {
+                // The node may have received the replacement, so it may yet be confirmed
+                Log.w(logTag, "replaceStuckTransactions: got exception sending replacement $replacementHash of " +
+                        "monitored tx ${monitoredTransaction.transactionHash}, still monitoring it", exception)
+                transactionReplacementEngine.handleSentReplacement(logicalTransaction, replacement, replacementHash)
+                continue
+            }
+            if (response.hasError()) {
+                Log.w(logTag, "replaceStuckTransactions: node rejected replacement of monitored tx " +
+                        "${monitoredTransaction.transactionHash}, no longer replacing it: ${response.error.message}")
+                transactionsToMonitor.remove(replacementHash, monitoredTransaction)
+                transactionReplacementEngine.stopReplacing(logicalTransaction)
+            } else {
+                transactionReplacementEngine.handleSentReplacement(logicalTransaction, replacement, replacementHash)
+            }
+        }
     }
 
     /**
-     * Parses the given [EthBlock.Block] in search of
-     * [CommutoSwap](https://github.com/jimmyneutront/commuto-protocol/blob/main/CommutoSwap.sol)
-     * events, and creates a list of all such events that it finds. Then this iterates through all remaining monitored
-     * transactions. Then this iterates through all remaining monitored transactions. If this finds transactions that
-     * have been dropped or have been pending for more than 24 hours, this removes them from [transactionsToMonitor] and
-     * calls the appropriate failure handler. Then this calls [handleEventResponses], passing said list of events.
-     * (Specifically, the events are [BaseEventResponse]s)
+     * Removes the hashes of [monitoredTransaction] and of any replacements sent for it from [transactionsToMonitor],
+     * and stops tracking it in [transactionReplacementEngine].
      *
-     * @param block The [EthBlock.Block] to be parsed.
+     * @param monitoredTransaction The original [BlockchainTransaction] that should no longer be monitored.
      */
-    private suspend fun parseBlock(block: EthBlock.Block) {
-        val chainID = web3.ethChainId().sendAsync().await().chainId
-        val txHashes: List<String> = block.transactions.mapNotNull {
-            when (it) {
-                is EthBlock.TransactionHash -> {
-                    it.get()
-                }
-                is EthBlock.TransactionObject -> {
-                    it.get().hash
-                }
-                else -> {
-                    null
-                }
+    private fun stopMonitoring(monitoredTransaction: BlockchainTransaction) {
+        for (transactionHash in transactionReplacementEngine.remove(monitoredTransaction.transactionHash)) {
+            transactionsToMonitor.remove(transactionHash, monitoredTransaction)
+        }
+    }
+
+    /**
+     * Takes every deadline that has passed from [monitoredTransactionDeadlines], skipping those of transactions that
+     * are no longer monitored, and gets the receipts of the corresponding transactions with
+     * [getDeferredTxReceiptOptionals], which requests them in as few JSON-RPC batch requests as possible. If this finds
+     * transactions that have been dropped or have been pending for more than [monitoredTransactionTimeout]
+     * milliseconds, this removes them from [transactionsToMonitor] and calls the appropriate failure handler.
+     * Transactions that have been confirmed in blocks that have not yet been parsed are checked again once another
+     * [monitoredTransactionTimeout] has passed. If the receipts cannot be requested, the deadlines are returned to
+     * [monitoredTransactionDeadlines] before the exception is rethrown.
+     */
+    private suspend fun handleExpiredMonitoredTransactions() {
+        val expiredDeadlines = mutableListOf<MonitoredTransactionDeadline>()
+        while (true) {
+            val expiredDeadline = monitoredTransactionDeadlines.poll() ?: break
+            if (transactionsToMonitor[expiredDeadline.transaction.transactionHash] === expiredDeadline.transaction) {
+                expiredDeadlines.add(expiredDeadline)
             }
         }
-        val deferredTxReceiptOptionals = getDeferredTxReceiptOptionals(txHashes)
-        val eventResponses: MutableList<List<BaseEventResponse>> = mutableListOf()
-        for (deferredReceiptOptional in deferredTxReceiptOptionals) {
-            eventResponses.add(parseDeferredReceiptOptional(deferredReceiptOptional))
-        }
-        for (monitoredTransaction in transactionsToMonitor.values) {
-            Log.i(logTag, "parseBlock: checking if unconfirmed tx ${monitoredTransaction.transactionHash} is " +
-                    "dropped or pending")
-            // 86_400_000 milliseconds = 24 hours
-            if (Date().time - monitoredTransaction.timeOfCreation.time > 86_400_000) {
-                Log.i(logTag, "parseBlock: monitored tx ${monitoredTransaction.transactionHash} is more than 24 " +
-                        "hours old")
-                var monitoredTransactionException: BlockchainTransactionException? = null
-                val monitoredTransactionReceiptOptional = web3
-                    .ethGetTransactionReceipt(monitoredTransaction.transactionHash).sendAsync().asDeferred().await()
-                    .transactionReceipt
-                var isTransactionNotComfirmed = false
-                if (monitoredTransactionReceiptOptional.isPresent) {
-                    val monitoredTransactionReceipt = monitoredTransactionReceiptOptional.get()
-                    if (monitoredTransactionReceipt.status == null) {
-                        isTransactionNotComfirmed = true
-                    }
+        if (expiredDeadlines.isEmpty()) {
+            return
+        }
+        Log.i(logTag, "handleExpiredMonitoredTransactions: checking if ${expiredDeadlines.size} unconfirmed txs are " +
+                "dropped or pending")
+        // A transaction that has been replaced is confirmed if the original or any of its replacements is
+        val transactionHashes = expiredDeadlines.map {
+            transactionReplacementEngine.getTransactionHashes(it.transaction.transactionHash)
+        }
+        val receiptOptionals = try {
+            getDeferredTxReceiptOptionals(transactionHashes.flatten()).map {
+                it.await().transactionReceipt
+            }.iterator()
+        } catch (exception: Exception) {
+            monitoredTransactionDeadlines.addAll(expiredDeadlines)
+            throw exception
+        }
+        for ((expiredDeadline, monitoredTransactionHashes) in expiredDeadlines.zip(transactionHashes)) {
+            val monitoredTransaction = expiredDeadline.transaction
+            Log.i(logTag, "handleExpiredMonitoredTransactions: monitored tx " +
+                    "${monitoredTransaction.transactionHash} is more than $monitoredTransactionTimeout ms old")
+            var monitoredTransactionException: BlockchainTransactionException? = null
+            val monitoredTransactionReceiptOptionals = monitoredTransactionHashes.map { receiptOptionals.next() }
+            val isTransactionNotComfirmed = monitoredTransactionReceiptOptionals.none {
+                it.isPresent && it.get().status != null
+            }
+            if (isTransactionNotComfirmed) {
+                monitoredTransactionException = BlockchainTransactionException("Transaction " +
+                        "${monitoredTransaction.transactionHash} has been pending for more than " +
+                        "$monitoredTransactionTimeout ms.")
+            } else {
+                // The transaction will be handled when the block containing it is parsed
+                monitoredTransactionDeadlines.add(MonitoredTransactionDeadline(
+                    transaction = monitoredTransaction,
+                    deadline = System.currentTimeMillis() + monitoredTransactionTimeout
+                ))
+            }
+            if (monitoredTransactionException != null) {
+                Log.i(logTag, "handleExpiredMonitoredTransactions: removing from transactionsToMonitor and " +
+                        "handling failed monitored tx ${monitoredTransaction.transactionHash} of type " +
+                        "${monitoredTransaction.type.asString} for reason: " +
+                        "${monitoredTransactionException.message}")
+                stopMonitoring(monitoredTransaction)
+                // The transaction may have been dropped, leaving a gap in the account's nonces
+                val nonce = monitoredTransaction.transaction?.nonce
+                if (nonce != null) {
+                    nonceManager.markDropped(address = creds.address, nonce = nonce)
                 } else {
-                    isTransactionNotComfirmed = true
+                    nonceManager.requestReconciliation(address = creds.address)
                 }
-                if (isTransactionNotComfirmed) {
-                    monitoredTransactionException = BlockchainTransactionException("Transaction " +
-                            "${monitoredTransaction.transactionHash} has been pending for more than 24 hours.")
-                }
-                if (monitoredTransactionException != null) {
-                    Log.i(logTag, "parseBlock: removing from transactionsToMonitor and handling failed " +
-                            "monitored tx ${monitoredTransaction.transactionHash} of type ${monitoredTransaction.type
-                                .asString} for reason: ${monitoredTransactionException.message}")
-                    transactionsToMonitor.remove(monitoredTransaction.transactionHash)
-                    when (monitoredTransaction.type) {
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
-                        BlockchainTransactionType.OPEN_OFFER,
-                        BlockchainTransactionType.CANCEL_OFFER, BlockchainTransactionType.EDIT_OFFER,
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER,
-                        BlockchainTransactionType.TAKE_OFFER -> {
-                            offerService.handleFailedTransaction(
-                                transaction = monitoredTransaction,
-                                exception = monitoredTransactionException
-                            )
-                        }
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP,
-                        BlockchainTransactionType.FILL_SWAP,
-                        BlockchainTransactionType.REPORT_PAYMENT_SENT,
-                        BlockchainTransactionType.REPORT_PAYMENT_RECEIVED,
-                        BlockchainTransactionType.CLOSE_SWAP -> {
-                            swapService.handleFailedTransaction(
-                                transaction = monitoredTransaction,
-                                exception = monitoredTransactionException
-                            )
-                        }
+                when (monitoredTransaction.type) {
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
+                    BlockchainTransactionType.OPEN_OFFER,
+                    BlockchainTransactionType.CANCEL_OFFER, BlockchainTransactionType.EDIT_OFFER,
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER,
+                    BlockchainTransactionType.TAKE_OFFER -> {
+                        offerService.handleFailedTransaction(
+                            transaction = monitoredTransaction,
+                            exception = monitoredTransactionException
+                        )
+                    }
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP,
+                    BlockchainTransactionType.FILL_SWAP,
+                    BlockchainTransactionType.REPORT_PAYMENT_SENT,
+                    BlockchainTransactionType.REPORT_PAYMENT_RECEIVED,
+                    BlockchainTransactionType.CLOSE_SWAP -> {
+                        swapService.handleFailedTransaction(
+                            transaction = monitoredTransaction,
+                            exception = monitoredTransactionException
+                        )
                     }
                 }
             }
         }
-        handleEventResponses(eventResponses, chainID)
     }
 
     /**
-     * Awaits the given [Deferred] and attempts to get a [TransactionReceipt] from the resulting
-     * [EthGetTransactionReceipt]. If the [EthGetTransactionReceipt] does not contain a [TransactionReceipt], this
-     * returns an empty list, since a nonexistent transaction receipt contains no events. If this does get a
-     * [TransactionReceipt] from [EthGetTransactionReceipt], this searches for a monitored transaction with a matching
-     * transaction hash. If it finds such a transaction, it checks if the status of the corresponding
-     * [TransactionReceipt] is OK. If it is, then this parses it for the proper type of event and adds resulting events
-     * to a list of events that will be returned. If it is not OK, then this calls the appropriate failure handler. In
-     * either case, we then remove the transaction from [transactionsToMonitor]. If the hash specified in
-     * [TransactionReceipt] is not present in [transactionsToMonitor], then this parses it for events and appends any
-     * resulting events to the list of events that will be returned. Finally, this returns said list of events.
+     * Awaits the given [Deferred], gets a [TransactionReceipt] from the resulting [EthGetTransactionReceipt], parses it
+     * with [parseReceipt] and returns the resulting list of events. The receipt belongs to a transaction in a block
+     * that the node has already returned, so if the [EthGetTransactionReceipt] does not contain a
+     * [TransactionReceipt], the node that answered has not yet reached that block, and this throws rather than
+     * treating the transaction as if it had emitted no events.
      *
      * @param deferredReceiptOptional A [Deferred] with a [EthGetTransactionReceipt] result.
+     * @param blockNumber The number of the block containing the transaction.
      *
      * @return A [List] of [BaseEventResponse]s present in the [EthGetTransactionReceipt] of
      * [deferredReceiptOptional].
+     *
+     * @throws BlockchainServiceException if the [EthGetTransactionReceipt] contains no [TransactionReceipt].
      */
     private suspend fun parseDeferredReceiptOptional(
-        deferredReceiptOptional: Deferred<EthGetTransactionReceipt>
-    ): List<BaseEventResponse> = coroutineScope {
+        deferredReceiptOptional: Deferred<EthGetTransactionReceipt>,
+        blockNumber: BigInteger,
+    ): List<BaseEventResponse> {
         val receiptOptional = deferredReceiptOptional.await()
-        if (receiptOptional.transactionReceipt.isPresent) {
-            val transactionReceipt = receiptOptional.transactionReceipt.get()
-            val eventsInReceipt = mutableListOf<BaseEventResponse>()
-            val monitoredTransaction = transactionsToMonitor[transactionReceipt.transactionHash]
-            if (monitoredTransaction != null) {
-                Log.i(logTag, "parseDeferredReceiptOptional: ${transactionReceipt.transactionHash} is " +
-                        "monitored, working")
-                if (transactionReceipt.isStatusOK) {
-                    Log.i(logTag, "parseDeferredReceiptOptional: parsing monitored tx ${transactionReceipt
-                        .transactionHash} of type ${monitoredTransaction.type.asString} for events")
-                    // The tranaction has not failed, so we parse it for the proper event
-                    when (monitoredTransaction.type) {
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER,
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP -> {
-                            eventsInReceipt.addAll(parseApprovalTransaction(
-                                transactionReceipt = transactionReceipt,
-                                monitoredTransaction = monitoredTransaction
-                            ))
-                        }
-                        BlockchainTransactionType.OPEN_OFFER -> {
-                            eventsInReceipt.addAll(commutoSwap.getOfferOpenedEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.CANCEL_OFFER -> {
-                            eventsInReceipt.addAll(commutoSwap.getOfferCanceledEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.EDIT_OFFER -> {
-                            eventsInReceipt.addAll(commutoSwap.getOfferEditedEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.TAKE_OFFER -> {
-                            eventsInReceipt.addAll(commutoSwap.getOfferTakenEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.FILL_SWAP -> {
-                            eventsInReceipt.addAll(commutoSwap.getSwapFilledEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.REPORT_PAYMENT_SENT -> {
-                            eventsInReceipt.addAll(commutoSwap.getPaymentSentEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.REPORT_PAYMENT_RECEIVED -> {
-                            eventsInReceipt.addAll(commutoSwap.getPaymentReceivedEvents(transactionReceipt))
-                        }
-                        BlockchainTransactionType.CLOSE_SWAP -> {
-                            eventsInReceipt.addAll(commutoSwap.getBuyerClosedEvents(transactionReceipt))
-                            eventsInReceipt.addAll(commutoSwap.getSellerClosedEvents(transactionReceipt))
-                        }
+        if (!receiptOptional.transactionReceipt.isPresent) {
+            throw BlockchainServiceException("Got no receipt for a transaction in block $blockNumber: " +
+                    (receiptOptional.error?.message ?: "node has not yet reached the block"))
+        }
+        return parseReceipt(receiptOptional.transactionReceipt.get())
+    }
+
+    /**
+     * Parses the given [TransactionReceipt] for events. First, this searches for a monitored transaction with a
+     * transaction hash matching that of [transactionReceipt]. If it finds such a transaction, it checks if the status
+     * of the corresponding [TransactionReceipt] is OK. If it is, then this parses the logs returned by
+     * [getLogsOfMonitoredTransaction] for the proper type of event and adds resulting events to a list of events that
+     * will be returned. If it is not OK, then this calls the appropriate failure handler. In either case, we then
+     * remove the transaction from [transactionsToMonitor]. If the hash specified in [TransactionReceipt] is not
+     * present in [transactionsToMonitor], then this parses it for events and appends any resulting events to the list
+     * of events that will be returned. Finally, this returns said list of events. If the transaction has already been
+     * handled by [trackConfirmations], this returns an empty list.
+     *
+     * @param transactionReceipt The [TransactionReceipt] to be parsed.
+     *
+     * @return A [List] of [BaseEventResponse]s present in [transactionReceipt].
+     */
+    private suspend fun parseReceipt(transactionReceipt: TransactionReceipt): List<BaseEventResponse> {
+        if (confirmationTracker.isHandled(transactionReceipt.transactionHash)) {
+            Log.i(logTag, "parseReceipt: skipping tx ${transactionReceipt.transactionHash}, which was handled by " +
+                    "trackConfirmations")
+            return emptyList()
+        }
+        val eventsInReceipt = mutableListOf<BaseEventResponse>()
+        val monitoredTransaction = transactionsToMonitor[transactionReceipt.transactionHash]
+        if (monitoredTransaction != null) {
+            Log.i(logTag, "parseReceipt: ${transactionReceipt.transactionHash} is " +
+                    "monitored, working")
+            monitoredTransaction.transaction?.nonce?.let {
+                nonceManager.markConfirmed(address = creds.address, nonce = it)
+            }
+            val logs = getLogsOfMonitoredTransaction(transactionReceipt, monitoredTransaction)
+            if (transactionReceipt.isStatusOK) {
+                Log.i(logTag, "parseReceipt: parsing monitored tx ${transactionReceipt
+                    .transactionHash} of type ${monitoredTransaction.type.asString} for events")
+                // The tranaction has not failed, so we parse it for the proper event
+                when (monitoredTransaction.type) {
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER,
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP -> {
+                        eventsInReceipt.addAll(parseApprovalTransaction(
+                            logs = logs,
+                            monitoredTransaction = monitoredTransaction
+                        ))
                     }
-                } else {
-                    Log.w(logTag, "parseDeferredReceiptOptional: monitored tx ${transactionReceipt
-                        .transactionHash} of type ${monitoredTransaction.type.asString} failed, calling failure " +
-                            "handler")
-                    val exception = BlockchainTransactionException(
-                        message = "Transaction ${transactionReceipt.transactionHash} is confirmed, but failed for " +
-                                "unknown reason."
-                    )
-                    when (monitoredTransaction.type) {
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
-                        BlockchainTransactionType.OPEN_OFFER,
-                        BlockchainTransactionType.CANCEL_OFFER, BlockchainTransactionType.EDIT_OFFER,
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER,
-                        BlockchainTransactionType.TAKE_OFFER, -> {
-                            offerService.handleFailedTransaction(
-                                monitoredTransaction,
-                                exception = exception
-                            )
-                        }
-                        BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP,
-                        BlockchainTransactionType.FILL_SWAP,
-                        BlockchainTransactionType.REPORT_PAYMENT_SENT,
-                        BlockchainTransactionType.REPORT_PAYMENT_RECEIVED,
-                        BlockchainTransactionType.CLOSE_SWAP -> {
-                            swapService.handleFailedTransaction(
-                                monitoredTransaction,
-                                exception = exception
-                            )
-                        }
+                    BlockchainTransactionType.OPEN_OFFER -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.OfferOpenedEventResponse>())
+                    }
+                    BlockchainTransactionType.CANCEL_OFFER -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.OfferCanceledEventResponse>())
+                    }
+                    BlockchainTransactionType.EDIT_OFFER -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.OfferEditedEventResponse>())
+                    }
+                    BlockchainTransactionType.TAKE_OFFER -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.OfferTakenEventResponse>())
+                    }
+                    BlockchainTransactionType.FILL_SWAP -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.SwapFilledEventResponse>())
+                    }
+                    BlockchainTransactionType.REPORT_PAYMENT_SENT -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.PaymentSentEventResponse>())
+                    }
+                    BlockchainTransactionType.REPORT_PAYMENT_RECEIVED -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs)
+                            .filterIsInstance<CommutoSwap.PaymentReceivedEventResponse>())
+                    }
+                    BlockchainTransactionType.CLOSE_SWAP -> {
+                        eventsInReceipt.addAll(eventDecoder.decodeCommutoSwapEvents(logs).filter {
+                            it is CommutoSwap.BuyerClosedEventResponse || it is CommutoSwap.SellerClosedEventResponse
+                        })
                     }
                 }
-                Log.i(logTag, "parseDeferredReceiptOptional: removing ${transactionReceipt.transactionHash} from " +
-                        "transactionsToMonitor")
-                // Remove monitored transaction now that it has been handled
-                transactionsToMonitor.remove(transactionReceipt.transactionHash)
             } else {
-                Log.i(logTag, "parseDeferredReceiptOptional: tx ${transactionReceipt.transactionHash} is not " +
-                        "monitored, parsing for events")
-                eventsInReceipt.addAll(getEventResponsesFromReceipt(transactionReceipt))
+                Log.w(logTag, "parseReceipt: monitored tx ${transactionReceipt
+                    .transactionHash} of type ${monitoredTransaction.type.asString} failed, calling failure " +
+                        "handler")
+                val exception = BlockchainTransactionException(
+                    message = "Transaction ${transactionReceipt.transactionHash} is confirmed, but failed for " +
+                            "unknown reason."
+                )
+                when (monitoredTransaction.type) {
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
+                    BlockchainTransactionType.OPEN_OFFER,
+                    BlockchainTransactionType.CANCEL_OFFER, BlockchainTransactionType.EDIT_OFFER,
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER,
+                    BlockchainTransactionType.TAKE_OFFER, -> {
+                        offerService.handleFailedTransaction(
+                            monitoredTransaction,
+                            exception = exception
+                        )
+                    }
+                    BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP,
+                    BlockchainTransactionType.FILL_SWAP,
+                    BlockchainTransactionType.REPORT_PAYMENT_SENT,
+                    BlockchainTransactionType.REPORT_PAYMENT_RECEIVED,
+                    BlockchainTransactionType.CLOSE_SWAP -> {
+                        swapService.handleFailedTransaction(
+                            monitoredTransaction,
+                            exception = exception
+                        )
+                    }
+                }
             }
-            eventsInReceipt
+            Log.i(logTag, "parseReceipt: removing ${transactionReceipt.transactionHash} from " +
+                    "transactionsToMonitor")
+            // Remove monitored transaction, and any replacements of it, now that it has been handled
+            stopMonitoring(monitoredTransaction)
         } else {
-            emptyList()
+            Log.i(logTag, "parseReceipt: tx ${transactionReceipt.transactionHash} is not " +
+                    "monitored, parsing for events")
+            eventsInReceipt.addAll(getEventResponsesFromReceipt(transactionReceipt))
+        }
+        return eventsInReceipt
+    }
+
+    /**
+     * Returns the logs of the given [TransactionReceipt] of a monitored transaction. If the receipt is that of a
+     * replacement sent by [replaceStuckTransactions], this returns copies of its logs carrying the hash of
+     * [monitoredTransaction] rather than that of the replacement. Offer and swap state refers to the original
+     * transaction by its hash, so this lets [offerService] and [swapService] find the offer or swap that the events
+     * concern whichever of the original and its replacements was confirmed.
+     *
+     * @param transactionReceipt The [TransactionReceipt] of [monitoredTransaction] or of one of its replacements.
+     * @param monitoredTransaction The original [BlockchainTransaction] corresponding to [transactionReceipt].
+     *
+     * @return A [List] of the logs of [transactionReceipt], with the transaction hash of [monitoredTransaction].
+     */
+    private fun getLogsOfMonitoredTransaction(
+        transactionReceipt: TransactionReceipt,
+        monitoredTransaction: BlockchainTransaction
+    ): List<Web3jLog> {
+        if (transactionReceipt.transactionHash.equals(monitoredTransaction.transactionHash, ignoreCase = true)) {
+            return transactionReceipt.logs
+        }
+        return transactionReceipt.logs.map {
+            Web3jLog(
+                it.isRemoved,
+                it.logIndexRaw,
+                it.transactionIndexRaw,
+                monitoredTransaction.transactionHash,
+                it.blockHash,
+                it.blockNumberRaw,
+                it.address,
+                it.data,
+                it.type,
+                it.topics
+            )
         }
     }
 
     /**
-     * Parses a given [TransactionReceipt] corresponding to a [BlockchainTransaction] in search of ERC20
+     * Parses the given logs of a [BlockchainTransaction] in search of ERC20
      * [Approve](https://eips.ethereum.org/EIPS/eip-20) events, and returns a corresponding list of
      * [CommutoApprovalEventResponse]s.
      *
-     * @param transactionReceipt The [TransactionReceipt] to be parsed.
-     * @param monitoredTransaction The [BlockchainTransaction] corresponding to [transactionReceipt].
+     * @param logs The logs of the transaction, as returned by [getLogsOfMonitoredTransaction].
+     * @param monitoredTransaction The [BlockchainTransaction] that emitted [logs].
      *
      * @return A [List] of [CommutoApprovalEventResponse]s created from all
      * [Approve](https://eips.ethereum.org/EIPS/eip-20) events emitted by the transaction.
      */
     private fun parseApprovalTransaction(
-        transactionReceipt: TransactionReceipt,
+        logs: List<Web3jLog>,
         monitoredTransaction: BlockchainTransaction
     ): List<CommutoApprovalEventResponse> {
-        val erc20Contract = ERC20.load(
-            "0x0000000000000000000000000000000000000000",
-            web3,
-            txManager,
-            gasProvider
-        )
-        return erc20Contract.getApprovalEvents(transactionReceipt).map {
+        return eventDecoder.decodeApprovalEvents(logs).map {
             CommutoApprovalEventResponse(
                 log = it.log,
                 owner = it._owner,
@@ -1413,36 +2629,249 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
      * @return A [List] of [BaseEventResponse]s, which are CommutoSwap events.
      */
     private fun getEventResponsesFromReceipt(receipt: TransactionReceipt): List<BaseEventResponse> {
-        val eventResponses: MutableList<List<BaseEventResponse>> = mutableListOf()
-        if (receipt.to.equals(commutoSwap.contractAddress, ignoreCase = true)) {
-            eventResponses.add(commutoSwap.getOfferOpenedEvents(receipt))
-            eventResponses.add(commutoSwap.getOfferEditedEvents(receipt))
-            eventResponses.add(commutoSwap.getOfferCanceledEvents(receipt))
-            eventResponses.add(commutoSwap.getOfferTakenEvents(receipt))
-            eventResponses.add(commutoSwap.getServiceFeeRateChangedEvents(receipt))
-            eventResponses.add(commutoSwap.getSwapFilledEvents(receipt))
-            eventResponses.add(commutoSwap.getPaymentSentEvents(receipt))
-            eventResponses.add(commutoSwap.getPaymentReceivedEvents(receipt))
-            eventResponses.add(commutoSwap.getBuyerClosedEvents(receipt))
-            eventResponses.add(commutoSwap.getSellerClosedEvents(receipt))
+        return if (receipt.to.equals(commutoSwap.contractAddress, ignoreCase = true)) {
+            getCommutoSwapEventResponses(receipt)
+        } else {
+            emptyList()
+        }
+    }
+
+    /**
+     * Parses the logs of a given [TransactionReceipt] in search of
+     * [CommutoSwap](https://github.com/jimmyneutront/commuto-protocol/blob/main/CommutoSwap.sol) events, regardless of
+     * the address to which the transaction was sent, and returns any such events that are found.
+     *
+     * @param receipt The [TransactionReceipt] to parse.
+     *
+     * @return A [List] of [BaseEventResponse]s, which are CommutoSwap events, in the order in which they were emitted.
+     */
+    private fun getCommutoSwapEventResponses(receipt: TransactionReceipt): List<BaseEventResponse> {
+        return eventDecoder.decodeCommutoSwapEvents(receipt.logs)
+    }
+
+    /**
+     * Invalidates the entries of [offerStructCache] and [swapStructCache] for the offers and swaps affected by events
+     * in [eventResponses]. Then this gets the [OfferStruct]s of the offers opened or edited by these events, and the
+     * [SwapStruct]s of the swaps created by offers taken by these events, as of the block with the specified number,
+     * using [getOffers] and [getSwaps], which store them in [offerStructCache] and [swapStructCache]. [OfferService]
+     * and [SwapService] get these structs while handling those events, so this lets a block with many such events
+     * require only a few HTTP requests for them, rather than one per event.
+     *
+     * If the structs cannot be fetched (for example, because the node no longer has the state of the block), this logs
+     * the exception and continues, so that the structs are requested individually as of the latest block when the
+     * events are handled, as they would be otherwise.
+     *
+     * @param eventResponses The [BaseEventResponse]s that are about to be handled.
+     * @param chainID The ID of the blockchain on which the events were emitted.
+     * @param blockNumber The number of the block as of which the structs should be fetched.
+     */
+    private suspend fun refreshStructCaches(
+        eventResponses: List<BaseEventResponse>,
+        chainID: BigInteger,
+        blockNumber: BigInteger
+    ) {
+        val affectedOfferIDs = mutableSetOf<UUID>()
+        val affectedSwapIDs = mutableSetOf<UUID>()
+        val offerIDsToFetch = mutableSetOf<UUID>()
+        val swapIDsToFetch = mutableSetOf<UUID>()
+        fun uuidFrom(id: ByteArray): UUID {
+            val idByteBuffer = ByteBuffer.wrap(id)
+            return UUID(idByteBuffer.long, idByteBuffer.long)
+        }
+        for (eventResponse in eventResponses) {
+            when (eventResponse) {
+                is CommutoSwap.OfferOpenedEventResponse -> offerIDsToFetch.add(uuidFrom(eventResponse.offerID))
+                is CommutoSwap.OfferEditedEventResponse -> offerIDsToFetch.add(uuidFrom(eventResponse.offerID))
+                is CommutoSwap.OfferCanceledEventResponse -> affectedOfferIDs.add(uuidFrom(eventResponse.offerID))
+                is CommutoSwap.OfferTakenEventResponse -> {
+                    // A swap has the same ID as the offer that was taken to create it
+                    affectedOfferIDs.add(uuidFrom(eventResponse.offerID))
+                    swapIDsToFetch.add(uuidFrom(eventResponse.offerID))
+                }
+                is CommutoSwap.SwapFilledEventResponse -> affectedSwapIDs.add(uuidFrom(eventResponse.swapID))
+                is CommutoSwap.PaymentSentEventResponse -> affectedSwapIDs.add(uuidFrom(eventResponse.swapID))
+                is CommutoSwap.PaymentReceivedEventResponse -> affectedSwapIDs.add(uuidFrom(eventResponse.swapID))
+                is CommutoSwap.BuyerClosedEventResponse -> affectedSwapIDs.add(uuidFrom(eventResponse.swapID))
+                is CommutoSwap.SellerClosedEventResponse -> affectedSwapIDs.add(uuidFrom(eventResponse.swapID))
+            }
+        }
+        affectedOfferIDs.addAll(offerIDsToFetch)
+        affectedSwapIDs.addAll(swapIDsToFetch)
+        if (affectedOfferIDs.isNotEmpty()) {
+            offerStructCache.invalidate(chainID, affectedOfferIDs)
+        }
+        if (affectedSwapIDs.isNotEmpty()) {
+            swapStructCache.invalidate(chainID, affectedSwapIDs)
+        }
+        try {
+            if (offerIDsToFetch.isNotEmpty()) {
+                Log.i(logTag, "refreshStructCaches: getting ${offerIDsToFetch.size} offers as of block $blockNumber")
+                getOffers(offerIDsToFetch, blockNumber)
+            }
+            if (swapIDsToFetch.isNotEmpty()) {
+                Log.i(logTag, "refreshStructCaches: getting ${swapIDsToFetch.size} swaps as of block $blockNumber")
+                getSwaps(swapIDsToFetch, blockNumber)
+            }
+        } catch (exception: Exception) {
+            if (exception is CancellationException) {
+                throw exception
+            }
+            Log.w(logTag, "refreshStructCaches: failed to get offers and swaps as of block $blockNumber, will get " +
+                    "them individually", exception)
+        }
+    }
+
+    /**
+     * Appends the logs of the CommutoSwap events in [eventResponses] to the [EventJournal] of the chain with the
+     * specified ID, if there is one. If this fails, it logs the exception rather than throwing it, so that a journal
+     * that cannot be written never prevents events from being handled.
+     *
+     * @param eventResponses The [BaseEventResponse]s that are about to be handled.
+     * @param chainID The ID of the blockchain on which the events were emitted.
+     */
+    private suspend fun journalEventResponses(eventResponses: List<BaseEventResponse>, chainID: BigInteger) {
+        if (eventJournalDirectory == null) {
+            return
+        }
+        try {
+            // CommutoApprovalEventResponses keep their logs in a property of their own, and aren't journaled anyway
+            val logs = eventResponses.filter { it !is CommutoApprovalEventResponse }.mapNotNull { it.log }.filter {
+                it.topics?.firstOrNull() in eventDecoder.commutoSwapEventTopics
+            }
+            if (logs.isEmpty()) {
+                return
+            }
+            withContext(Dispatchers.IO) {
+                getEventJournal(chainID)?.append(logs)
+            }
+        } catch (exception: Exception) {
+            if (exception is CancellationException) {
+                throw exception
+            }
+            Log.w(logTag, "journalEventResponses: failed to journal events", exception)
+        }
+    }
+
+    /**
+     * Appends a rewind record for the block with the specified number to the [EventJournal] of the chain with the
+     * specified ID, if there is one, so that the events of the later blocks removed by a chain reorganization are
+     * discarded. Like [journalEventResponses], this logs any exception rather than throwing it, so that a journal
+     * that cannot be written never prevents a chain reorganization from being handled.
+     *
+     * @param blockNumber The number of the last block whose events should be kept.
+     * @param chainID The ID of the blockchain that was reorganized.
+     */
+    private suspend fun rewindEventJournal(blockNumber: BigInteger, chainID: BigInteger) {
+        if (eventJournalDirectory == null) {
+            return
+        }
+        try {
+            withContext(Dispatchers.IO) {
+                getEventJournal(chainID)?.rewind(blockNumber)
+            }
+        } catch (exception: Exception) {
+            if (exception is CancellationException) {
+                throw exception
+            }
+            Log.w(logTag, "rewindEventJournal: failed to rewind event journal to block $blockNumber", exception)
+        }
+    }
+
+    /**
+     * Returns the [EventJournal] of the chain with the specified ID, which is stored in [eventJournalDirectory], or
+     * `null` if [eventJournalDirectory] is `null`. If [eventJournal] is that of a different chain, it is closed and
+     * replaced with the journal of the specified chain, which is created if it does not exist.
+     *
+     * @param chainID The ID of the chain whose journal should be returned.
+     */
+    @Synchronized
+    private fun getEventJournal(chainID: BigInteger): EventJournal? {
+        if (eventJournalDirectory == null) {
+            return null
+        }
+        val currentEventJournal = eventJournal
+        if (currentEventJournal != null && eventJournalChainID == chainID) {
+            return currentEventJournal
+        }
+        currentEventJournal?.close()
+        eventJournalDirectory.mkdirs()
+        return EventJournal(File(eventJournalDirectory, "events-$chainID.journal")).also {
+            eventJournal = it
+            eventJournalChainID = chainID
+        }
+    }
+
+    /**
+     * Handles the CommutoSwap events in the [EventJournal] of the chain to which [web3] is connected again, in the
+     * order in which they were emitted, by passing them to [handleEventResponses] block by block, so that
+     * [offerService] and [swapService] can re-derive their state from disk rather than by scanning the chain again.
+     * Token transfer approval events are not journaled, since they are only handled for monitored transactions.
+     *
+     * Replayed events are not appended to the journal again, and [refreshStructCaches] is not called for them, since
+     * the structs it would get as of old blocks are only cached while [BlockchainService] is listening.
+     *
+     * @param fromBlockNumber The number of the first block whose events should be replayed.
+     *
+     * @return The number of events that were replayed.
+     *
+     * @throws IllegalStateException if [eventJournalDirectory] is `null`, or if [BlockchainService] is listening, in
+     * which case replayed events could be interleaved with new ones.
+     */
+    suspend fun replayEventJournal(fromBlockNumber: BigInteger = BigInteger.ZERO): Int {
+        check(!isListening) {
+            "BlockchainService can't replay its event journal while listening"
+        }
+        val chainID = getChainID()
+        val eventJournal = checkNotNull(getEventJournal(chainID)) {
+            "BlockchainService has no event journal directory"
+        }
+        val logs = withContext(Dispatchers.IO) {
+            eventJournal.read(fromBlockNumber)
         }
-        return eventResponses.flatten()
+        Log.i(logTag, "replayEventJournal: replaying ${logs.size} events from block $fromBlockNumber")
+        for ((blockNumber, blockLogs) in logs.groupBy { it.blockNumber }) {
+            handleEventResponses(
+                mutableListOf(eventDecoder.decodeCommutoSwapEvents(blockLogs)),
+                chainID,
+                blockNumber,
+                isReplay = true
+            )
+        }
+        return logs.size
     }
 
     // TODO: include transaction hash string in Event structs
     /**
      * Flattens and then iterates through [eventResponseLists] in search of relevant
-     * [BaseEventResponse]s, and creates event objects and passes them to the proper service.
+     * [BaseEventResponse]s, and creates event objects and passes them to the proper service. Before handling any
+     * events, this calls [refreshStructCaches], and appends the logs of the CommutoSwap events to the [EventJournal] of
+     * the chain, if there is one, so that they can later be replayed with [replayEventJournal]. If the events cannot be
+     * journaled, this logs the exception and handles them anyway.
      *
      * @param eventResponseLists A [MutableList] of [List]s of [BaseEventResponse]s, which are
      * relevant events about which other services must be notified.
+     * @param blockNumber The number of the block containing these events, or of the last block of the range of blocks
+     * containing these events, as of which [refreshStructCaches] gets the offers and swaps that they affect.
+     * @param isReplay Indicates whether these events are being replayed from the [EventJournal] by
+     * [replayEventJournal], in which case they are neither journaled again nor passed to [refreshStructCaches].
+     *
+     * @return A [Pair] containing the IDs of the offers and the IDs of the swaps, respectively, for which events were
+     * found in [eventResponseLists].
      */
     private suspend fun handleEventResponses(
         eventResponseLists: MutableList<List<BaseEventResponse>>,
-        chainID: BigInteger
-    ) {
+        chainID: BigInteger,
+        blockNumber: BigInteger,
+        isReplay: Boolean = false
+    ): Pair<Set<UUID>, Set<UUID>> {
+        val offerIDs = mutableSetOf<UUID>()
+        val swapIDs = mutableSetOf<UUID>()
         val eventResponses = eventResponseLists.flatten()
         Log.i(logTag, "handleEventResponses: handling ${eventResponses.size} events")
+        if (!isReplay) {
+            refreshStructCaches(eventResponses, chainID, blockNumber)
+            journalEventResponses(eventResponses, chainID)
+        }
         for (eventResponse in eventResponses) {
             when (eventResponse) {
                 is CommutoApprovalEventResponse -> {
@@ -1480,19 +2909,27 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
                 }
                 is CommutoSwap.OfferOpenedEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling OfferOpenedEvent")
-                    offerService.handleOfferOpenedEvent(OfferOpenedEvent.fromEventResponse(eventResponse, chainID))
+                    val event = OfferOpenedEvent.fromEventResponse(eventResponse, chainID)
+                    offerIDs.add(event.offerID)
+                    offerService.handleOfferOpenedEvent(event)
                 }
                 is CommutoSwap.OfferEditedEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling OfferEditedEvent")
-                    offerService.handleOfferEditedEvent(OfferEditedEvent.fromEventResponse(eventResponse, chainID))
+                    val event = OfferEditedEvent.fromEventResponse(eventResponse, chainID)
+                    offerIDs.add(event.offerID)
+                    offerService.handleOfferEditedEvent(event)
                 }
                 is CommutoSwap.OfferCanceledEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling OfferCanceledEvent")
-                    offerService.handleOfferCanceledEvent(OfferCanceledEvent.fromEventResponse(eventResponse, chainID))
+                    val event = OfferCanceledEvent.fromEventResponse(eventResponse, chainID)
+                    offerIDs.add(event.offerID)
+                    offerService.handleOfferCanceledEvent(event)
                 }
                 is CommutoSwap.OfferTakenEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling OfferTakenEvent")
-                    offerService.handleOfferTakenEvent(OfferTakenEvent.fromEventResponse(eventResponse, chainID))
+                    val event = OfferTakenEvent.fromEventResponse(eventResponse, chainID)
+                    offerIDs.add(event.offerID)
+                    offerService.handleOfferTakenEvent(event)
                 }
                 is CommutoSwap.ServiceFeeRateChangedEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling ServiceFeeRateChangedEvent")
@@ -1502,36 +2939,37 @@ class BlockchainService (private val exceptionHandler: BlockchainExceptionNotifi
                 }
                 is CommutoSwap.SwapFilledEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling SwapFilledEventResponse")
-                    swapService.handleSwapFilledEvent(
-                        SwapFilledEvent.fromEventResponse(eventResponse, chainID)
-                    )
+                    val event = SwapFilledEvent.fromEventResponse(eventResponse, chainID)
+                    swapIDs.add(event.swapID)
+                    swapService.handleSwapFilledEvent(event)
                 }
                 is CommutoSwap.PaymentSentEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling PaymentSentEventResponse")
-                    swapService.handlePaymentSentEvent(
-                        PaymentSentEvent.fromEventResponse(eventResponse, chainID)
-                    )
+                    val event = PaymentSentEvent.fromEventResponse(eventResponse, chainID)
+                    swapIDs.add(event.swapID)
+                    swapService.handlePaymentSentEvent(event)
                 }
                 is CommutoSwap.PaymentReceivedEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling PaymentReceivedEventResponse")
-                    swapService.handlePaymentReceivedEvent(
-                        PaymentReceivedEvent.fromEventResponse(eventResponse, chainID)
-                    )
+                    val event = PaymentReceivedEvent.fromEventResponse(eventResponse, chainID)
+                    swapIDs.add(event.swapID)
+                    swapService.handlePaymentReceivedEvent(event)
                 }
                 is CommutoSwap.BuyerClosedEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling BuyerClosedEventResponse")
-                    swapService.handleBuyerClosedEvent(
-                        BuyerClosedEvent.fromEventResponse(eventResponse, chainID)
-                    )
+                    val event = BuyerClosedEvent.fromEventResponse(eventResponse, chainID)
+                    swapIDs.add(event.swapID)
+                    swapService.handleBuyerClosedEvent(event)
                 }
                 is CommutoSwap.SellerClosedEventResponse -> {
                     Log.i(logTag, "handleEventResponses: handling SellerClosedEventResponse")
-                    swapService.handleSellerClosedEvent(
-                        SellerClosedEvent.fromEventResponse(eventResponse, chainID)
-                    )
+                    val event = SellerClosedEvent.fromEventResponse(eventResponse, chainID)
+                    swapIDs.add(event.swapID)
+                    swapService.handleSellerClosedEvent(event)
                 }
             }
         }
+        return Pair(offerIDs, swapIDs)
     }
 
 }
\ No newline at end of file
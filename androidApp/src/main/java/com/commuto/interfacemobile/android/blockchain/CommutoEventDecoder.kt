@@ -0,0 +1,156 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import com.commuto.interfacemobile.android.contractwrapper.AbiReader
+import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
+import org.web3j.abi.EventEncoder
+import org.web3j.abi.datatypes.Event
+import org.web3j.contracts.eip20.generated.ERC20
+import org.web3j.protocol.core.methods.response.BaseEventResponse
+import org.web3j.protocol.core.methods.response.Log
+
+/**
+ * Decodes the [CommutoSwap](https://github.com/jimmyneutront/commuto-protocol/blob/main/CommutoSwap.sol) events that
+ * [BlockchainService] handles, as well as ERC20 [Approval](https://eips.ethereum.org/EIPS/eip-20) events, from [Log]s.
+ *
+ * The generated [CommutoSwap] event extractors each scan every log of a receipt and encode their event's signature
+ * each time they are called, so extracting every event type requires one pass over the logs per event type. Instead,
+ * this encodes each event's signature once, and keeps a table mapping each signature hash (the first topic of a log
+ * emitting the event) to a function that decodes that event, so each log is examined and decoded exactly once.
+ *
+ * Event data is read with an [AbiReader], which reads each value at its known offset instead of decoding the data
+ * reflectively.
+ *
+ * Like the generated extractors, this does not check the address of the contract that emitted a log.
+ *
+ * @property commutoSwapDecoders A [Map] of the signature hashes of the CommutoSwap events that [BlockchainService]
+ * handles to functions that decode logs emitting those events.
+ * @property commutoSwapEventTopics The signature hashes of the CommutoSwap events that [BlockchainService] handles.
+ * @property approvalEventTopic The signature hash of the ERC20 Approval event.
+ */
+class CommutoEventDecoder {
+
+    private val commutoSwapDecoders: Map<String, (Log) -> BaseEventResponse> = mapOf(
+        decoderFor(CommutoSwap.OFFEROPENED_EVENT) { log, data ->
+            CommutoSwap.OfferOpenedEventResponse().apply {
+                this.log = log
+                offerID = data.readFixedBytes(0, 16)
+                interfaceId = data.readDynamicBytes(1)
+            }
+        },
+        decoderFor(CommutoSwap.OFFEREDITED_EVENT) { log, data ->
+            CommutoSwap.OfferEditedEventResponse().apply {
+                this.log = log
+                offerID = data.readFixedBytes(0, 16)
+            }
+        },
+        decoderFor(CommutoSwap.OFFERCANCELED_EVENT) { log, data ->
+            CommutoSwap.OfferCanceledEventResponse().apply {
+                this.log = log
+                offerID = data.readFixedBytes(0, 16)
+            }
+        },
+        decoderFor(CommutoSwap.OFFERTAKEN_EVENT) { log, data ->
+            CommutoSwap.OfferTakenEventResponse().apply {
+                this.log = log
+                offerID = data.readFixedBytes(0, 16)
+                takerInterfaceId = data.readDynamicBytes(1)
+            }
+        },
+        decoderFor(CommutoSwap.SERVICEFEERATECHANGED_EVENT) { log, data ->
+            CommutoSwap.ServiceFeeRateChangedEventResponse().apply {
+                this.log = log
+                newServiceFeeRate = data.readUint(0)
+            }
+        },
+        decoderFor(CommutoSwap.SWAPFILLED_EVENT) { log, data ->
+            CommutoSwap.SwapFilledEventResponse().apply {
+                this.log = log
+                swapID = data.readFixedBytes(0, 16)
+            }
+        },
+        decoderFor(CommutoSwap.PAYMENTSENT_EVENT) { log, data ->
+            CommutoSwap.PaymentSentEventResponse().apply {
+                this.log = log
+                swapID = data.readFixedBytes(0, 16)
+            }
+        },
+        decoderFor(CommutoSwap.PAYMENTRECEIVED_EVENT) { log, data ->
+            CommutoSwap.PaymentReceivedEventResponse().apply {
+                this.log = log
+                swapID = data.readFixedBytes(0, 16)
+            }
+        },
+        decoderFor(CommutoSwap.BUYERCLOSED_EVENT) { log, data ->
+            CommutoSwap.BuyerClosedEventResponse().apply {
+                this.log = log
+                swapID = data.readFixedBytes(0, 16)
+            }
+        },
+        decoderFor(CommutoSwap.SELLERCLOSED_EVENT) { log, data ->
+            CommutoSwap.SellerClosedEventResponse().apply {
+                this.log = log
+                swapID = data.readFixedBytes(0, 16)
+            }
+        },
+    )
+
+    val commutoSwapEventTopics: Set<String> = commutoSwapDecoders.keys
+
+    val approvalEventTopic: String = EventEncoder.encode(ERC20.APPROVAL_EVENT)
+
+    /**
+     * Decodes every log in [logs] that emits a CommutoSwap event handled by [BlockchainService], in a single pass.
+     *
+     * @param logs The [Log]s to decode, such as those of a transaction receipt.
+     *
+     * @return A [List] of [BaseEventResponse]s, which are CommutoSwap events, in the order in which they appear in
+     * [logs].
+     */
+    fun decodeCommutoSwapEvents(logs: List<Log>): List<BaseEventResponse> {
+        return logs.mapNotNull { log ->
+            log.topics?.firstOrNull()?.let { commutoSwapDecoders[it] }?.invoke(log)
+        }
+    }
+
+    /**
+     * Decodes every log in [logs] that emits an ERC20 Approval event, in a single pass.
+     *
+     * @param logs The [Log]s to decode, such as those of a transaction receipt.
+     *
+     * @return A [List] of [ERC20.ApprovalEventResponse]s in the order in which they appear in [logs].
+     */
+    fun decodeApprovalEvents(logs: List<Log>): List<ERC20.ApprovalEventResponse> {
+        return logs.filter { it.topics?.firstOrNull() == approvalEventTopic }.map { log ->
+            ERC20.ApprovalEventResponse().apply {
+                this.log = log
+                _owner = AbiReader.fromHexString(log.topics[1]).readAddress(0)
+                _spender = AbiReader.fromHexString(log.topics[2]).readAddress(0)
+                _value = AbiReader.fromHexString(log.data).readUint(0)
+            }
+        }
+    }
+
+    companion object {
+
+        /**
+         * Creates an entry for [commutoSwapDecoders], by encoding the signature of [event] once, rather than each time
+         * a log is decoded.
+         *
+         * @param event The CommutoSwap [Event] that the decoder decodes. This must have no indexed parameters.
+         * @param createResponse A function that accepts a [Log] and an [AbiReader] for its data, and creates the
+         * corresponding [BaseEventResponse].
+         *
+         * @return A [Pair] of the signature hash of [event] and a function that decodes logs emitting [event].
+         */
+        private fun decoderFor(
+            event: Event,
+            createResponse: (Log, AbiReader) -> BaseEventResponse,
+        ): Pair<String, (Log) -> BaseEventResponse> {
+            return Pair(EventEncoder.encode(event)) { log ->
+                createResponse(log, AbiReader.fromHexString(log.data))
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,18 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.protocol.core.methods.response.Transaction
+
+/**
+ * The default [TransactionFilter], which considers a transaction relevant if and only if it was sent to the
+ * [CommutoSwap](https://github.com/jimmyneutront/commuto-protocol/blob/main/CommutoSwap.sol) contract, since
+ * [BlockchainService] only parses the receipts of such transactions for events unless they are monitored.
+ *
+ * @property commutoSwapAddress The address of the CommutoSwap contract.
+ */
+class CommutoSwapTransactionFilter(private val commutoSwapAddress: String) : TransactionFilter {
+
+    override fun isRelevant(transaction: Transaction): Boolean {
+        return transaction.to.equals(commutoSwapAddress, ignoreCase = true)
+    }
+
+}
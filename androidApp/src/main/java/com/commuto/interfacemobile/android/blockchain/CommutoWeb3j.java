@@ -1,20 +1,34 @@
 package com.commuto.interfacemobile.android.blockchain;
 
 import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.BatchRequest;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.JsonRpc2_0Web3j;
 import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.request.Transaction;
+import org.web3j.protocol.core.methods.response.EthCall;
 import org.web3j.protocol.core.methods.response.EthFeeHistory;
+import org.web3j.protocol.core.methods.response.EthGetTransactionReceipt;
 import org.web3j.utils.Numeric;
 
+import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * A Web3jService implementation that extends JsonRpc2_0Web3j but overrides JsonRpc2_0Web3j.ethFeeHistory in
  * order to serialize the newest block value correctly as specified
- * <a href="https://ethereum.github.io/execution-apis/api-documentation/">here</a>
+ * <a href="https://ethereum.github.io/execution-apis/api-documentation/">here</a>, adds support for getting many
+ * transaction receipts or executing many message calls with a single JSON-RPC batch request, and adds support for
+ * getting every receipt of a block with a single eth_getBlockReceipts call.
  */
 public class CommutoWeb3j extends JsonRpc2_0Web3j {
     public CommutoWeb3j(Web3jService web3jService) {
@@ -41,4 +55,93 @@ public class CommutoWeb3j extends JsonRpc2_0Web3j {
                 EthFeeHistory.class
         );
     }
+
+    /**
+     * Gets the receipts of every transaction in the block with the specified hash with a single
+     * <a href="https://ethereum.github.io/execution-apis/api-documentation/">eth_getBlockReceipts</a> call. Not every
+     * node supports this method, and those that don't respond with an error. The block is specified by hash rather than
+     * by number, so that the receipts cannot belong to another block with the same number that replaced it.
+     *
+     * @param blockHash The hash of the block for which receipts should be returned.
+     * @return A Request with an EthGetBlockReceipts response.
+     */
+    public Request<?, EthGetBlockReceipts> ethGetBlockReceipts(String blockHash) {
+        return new Request<>(
+                "eth_getBlockReceipts",
+                Collections.singletonList(blockHash),
+                this.web3jService,
+                EthGetBlockReceipts.class
+        );
+    }
+
+    /**
+     * Gets the receipts of the transactions with the specified hashes using a single JSON-RPC batch request, rather
+     * than one HTTP request per transaction.
+     *
+     * @param transactionHashes The hashes of the transactions for which receipts should be returned.
+     * @return A CompletableFuture with a list of EthGetTransactionReceipt responses, in the same order as
+     * transactionHashes.
+     */
+    public CompletableFuture<List<EthGetTransactionReceipt>> ethGetTransactionReceiptBatch(
+            List<String> transactionHashes
+    ) {
+        BatchRequest batchRequest = newBatch();
+        for (String transactionHash : transactionHashes) {
+            batchRequest.add(ethGetTransactionReceipt(transactionHash));
+        }
+        return sendBatch(batchRequest);
+    }
+
+    /**
+     * Executes the specified message calls using a single JSON-RPC batch request, rather than one HTTP request per
+     * call. Every call is executed against the state of the same block.
+     *
+     * @param transactions The message calls to execute.
+     * @param defaultBlockParameter The block against the state of which every call should be executed.
+     * @return A CompletableFuture with a list of EthCall responses, in the same order as transactions.
+     */
+    public CompletableFuture<List<EthCall>> ethCallBatch(
+            List<Transaction> transactions,
+            DefaultBlockParameter defaultBlockParameter
+    ) {
+        BatchRequest batchRequest = newBatch();
+        for (Transaction transaction : transactions) {
+            batchRequest.add(ethCall(transaction, defaultBlockParameter));
+        }
+        return sendBatch(batchRequest);
+    }
+
+    /**
+     * Sends batchRequest, and returns the responses to its requests in the order in which the requests were added.
+     * If the node does not return a response to every request, the returned CompletableFuture fails with an
+     * IOException, since a missing response could otherwise be mistaken for an empty result, such as a receipt that
+     * does not exist yet.
+     *
+     * @param batchRequest The batch request to send, the requests of which must all have responses of type T.
+     * @return A CompletableFuture with a list of responses, in the same order as the requests of batchRequest.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Response<?>> CompletableFuture<List<T>> sendBatch(BatchRequest batchRequest) {
+        return batchRequest.sendAsync().thenApply(batchResponse -> {
+            /*
+            The JSON-RPC specification allows a node to return batch responses in any order, so we match each response
+            to its request by ID rather than by position.
+             */
+            Map<Long, Response<?>> responsesByID = new HashMap<>();
+            for (Response<?> response : batchResponse.getResponses()) {
+                responsesByID.put(response.getId(), response);
+            }
+            List<T> responses = new ArrayList<>(batchRequest.getRequests().size());
+            for (Request<?, ? extends Response<?>> request : batchRequest.getRequests()) {
+                Response<?> response = responsesByID.get(request.getId());
+                if (response == null) {
+                    throw new CompletionException(new IOException(
+                            "Got no response to batched " + request.getMethod() + " request with ID " + request.getId()
+                    ));
+                }
+                responses.add((T) response);
+            }
+            return responses;
+        });
+    }
 }
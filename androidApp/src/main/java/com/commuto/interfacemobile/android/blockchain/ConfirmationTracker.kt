@@ -0,0 +1,120 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import java.math.BigInteger
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Schedules the polls with which [BlockchainService] gets the receipts of monitored transactions directly while it is
+ * far behind the newest block, and records the monitored transactions handled by these polls, so that they are not
+ * handled again when the block containing them is parsed.
+ *
+ * Polls are spaced by an adaptive interval: this begins at [minPollInterval], doubles after each poll that finds no
+ * receipt, up to [maxPollInterval], and returns to [minPollInterval] when a poll finds a receipt or when a new
+ * transaction is monitored, since that is when a receipt is most likely to appear soon.
+ *
+ * @property minPollInterval The minimum number of milliseconds between polls.
+ * @property maxPollInterval The maximum number of milliseconds between polls.
+ * @property pollInterval The number of milliseconds between the most recent poll and the next.
+ * @property nextPollTime The time, in milliseconds since the epoch, after which the next poll is due.
+ * @property handledTransactions A map of the hashes of monitored transactions handled by polls to the corresponding
+ * [HandledTransaction]s, which are removed once the blocks containing them have been parsed.
+ */
+class ConfirmationTracker(
+    private val minPollInterval: Long = 1_000L,
+    private val maxPollInterval: Long = 16_000L,
+) {
+
+    init {
+        require(minPollInterval in 1L..maxPollInterval) {
+            "ConfirmationTracker minPollInterval must be positive and no greater than maxPollInterval"
+        }
+    }
+
+    @Volatile
+    private var pollInterval = minPollInterval
+
+    @Volatile
+    private var nextPollTime = 0L
+
+    private val handledTransactions = ConcurrentHashMap<String, HandledTransaction>()
+
+    /**
+     * Indicates whether the next poll is due.
+     */
+    val isPollDue: Boolean
+        get() = System.currentTimeMillis() >= nextPollTime
+
+    /**
+     * Records that a new transaction is being monitored, so that the next poll happens at most [minPollInterval]
+     * milliseconds from now.
+     */
+    fun handleNewTransaction() {
+        pollInterval = minPollInterval
+        nextPollTime = minOf(nextPollTime, System.currentTimeMillis() + minPollInterval)
+    }
+
+    /**
+     * Records that a poll has happened, and schedules the next one.
+     *
+     * @param foundReceipts Whether the poll found the receipt of any monitored transaction.
+     */
+    fun handlePoll(foundReceipts: Boolean) {
+        pollInterval = if (foundReceipts) minPollInterval else (pollInterval * 2).coerceAtMost(maxPollInterval)
+        nextPollTime = System.currentTimeMillis() + pollInterval
+    }
+
+    /**
+     * Records that a poll has handled the monitored transaction with the specified hash before the block containing it
+     * was parsed.
+     *
+     * @param transactionHash The hash of the transaction.
+     * @param blockNumber The number of the block containing the transaction.
+     * @param offerIDs The IDs of the offers affected by the events of the transaction.
+     * @param swapIDs The IDs of the swaps affected by the events of the transaction.
+     */
+    fun addHandledTransaction(
+        transactionHash: String,
+        blockNumber: BigInteger,
+        offerIDs: Set<UUID>,
+        swapIDs: Set<UUID>,
+    ) {
+        handledTransactions[transactionHash.lowercase()] = HandledTransaction(blockNumber, offerIDs, swapIDs)
+    }
+
+    /**
+     * Indicates whether a poll has handled the transaction with the specified hash before the block containing it was
+     * parsed.
+     *
+     * @param transactionHash The hash of the transaction.
+     */
+    fun isHandled(transactionHash: String): Boolean {
+        return handledTransactions.containsKey(transactionHash.lowercase())
+    }
+
+    /**
+     * Removes and returns the [HandledTransaction]s of all transactions handled by polls that are contained in blocks
+     * with numbers no greater than the specified number. This should be called once such blocks have been parsed.
+     *
+     * @param blockNumber The number of the most recently parsed block.
+     *
+     * @return The removed [HandledTransaction]s.
+     */
+    fun removeHandledTransactions(blockNumber: BigInteger): List<HandledTransaction> {
+        val removedTransactions = mutableListOf<HandledTransaction>()
+        handledTransactions.entries.removeIf { entry ->
+            (entry.value.blockNumber <= blockNumber).also { if (it) removedTransactions.add(entry.value) }
+        }
+        return removedTransactions
+    }
+
+    /**
+     * A monitored transaction handled by a poll before the block containing it was parsed.
+     *
+     * @property blockNumber The number of the block containing the transaction.
+     * @property offerIDs The IDs of the offers affected by the events of the transaction.
+     * @property swapIDs The IDs of the swaps affected by the events of the transaction.
+     */
+    class HandledTransaction(val blockNumber: BigInteger, val offerIDs: Set<UUID>, val swapIDs: Set<UUID>)
+
+}
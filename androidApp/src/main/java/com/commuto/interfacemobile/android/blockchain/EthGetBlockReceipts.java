@@ -0,0 +1,22 @@
+package com.commuto.interfacemobile.android.blockchain;
+
+import org.web3j.protocol.core.Response;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.util.List;
+
+/**
+ * The response to an
+ * <a href="https://ethereum.github.io/execution-apis/api-documentation/">eth_getBlockReceipts</a> call, the result of
+ * which is the list of the receipts of every transaction in a block, in the order in which the transactions appear in
+ * the block, or null if the node does not know of the block.
+ */
+public class EthGetBlockReceipts extends Response<List<TransactionReceipt>> {
+
+    /**
+     * Returns the receipts of the transactions in the block, or null if the node does not know of the block.
+     */
+    public List<TransactionReceipt> getBlockReceipts() {
+        return getResult();
+    }
+}
@@ -0,0 +1,331 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import android.util.Log
+import org.web3j.protocol.core.methods.response.Log as Web3jLog
+import org.web3j.utils.Numeric
+import java.io.File
+import java.io.IOException
+import java.math.BigInteger
+import java.nio.ByteBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.TreeMap
+import java.util.zip.CRC32
+
+/**
+ * An append-only journal, stored in a compact binary format in a single file, of the logs of the CommutoSwap events
+ * that [BlockchainService] has handled on a single blockchain, so that these events can be handled again from disk,
+ * rather than by scanning the chain again, after a change to the way they are handled.
+ *
+ * The file begins with [MAGIC] and [VERSION], followed by a series of records. Each record consists of the length of
+ * its payload, the payload, and the [CRC32] checksum of the payload. The payload of an event record contains the
+ * block number, log index, transaction index, block hash, transaction hash, emitting address, topics and data of a
+ * log, as raw bytes rather than hex strings. The payload of a rewind record contains a block number, and discards
+ * the events of every later block appended before it, which were removed from the chain by a reorganization.
+ *
+ * Entries are keyed by block number and log index. Since [BlockchainService] may handle an event more than once (for
+ * example, if it is interrupted after handling a block's events but before storing its block checkpoint, or if a
+ * monitored transaction is handled before its block is parsed), records may be appended out of order and more than
+ * once; when read, a later event record with the same key replaces an earlier one. Records are only ever appended,
+ * except that a record left incomplete or corrupt by a crash while it was being written is truncated when the
+ * journal is opened.
+ *
+ * The journal is read through a [MappedByteBuffer], so that reading it requires no copying into intermediate buffers
+ * or system calls per record.
+ *
+ * @property file The file in which the journal is stored, which is created if it does not exist.
+ * @property logTag The tag passed to [Log] calls.
+ * @property channel The [FileChannel] through which the journal is read and written.
+ * @property endPosition The position in [file] after the last complete record.
+ */
+class EventJournal(val file: File) {
+
+    private val logTag = "EventJournal"
+
+    private val channel: FileChannel = FileChannel.open(
+        file.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.READ,
+        StandardOpenOption.WRITE
+    )
+
+    private var endPosition: Long
+
+    init {
+        try {
+            endPosition = if (channel.size() == 0L) {
+                val header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION)
+                header.flip()
+                channel.write(header, 0L)
+                channel.force(false)
+                HEADER_SIZE.toLong()
+            } else {
+                findEndPosition()
+            }
+            if (channel.size() > endPosition) {
+                Log.w(logTag, "init: truncating ${channel.size() - endPosition} bytes of incomplete or corrupt " +
+                        "records from ${file.name}")
+                channel.truncate(endPosition)
+            }
+        } catch (exception: Exception) {
+            channel.close()
+            throw exception
+        }
+    }
+
+    /**
+     * Ensures that [file] begins with [MAGIC] and [VERSION], and then returns the position after the last complete
+     * record with a valid checksum.
+     *
+     * @throws IOException if [file] is not an event journal of the current version.
+     */
+    private fun findEndPosition(): Long {
+        val buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0L, channel.size())
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw IOException("${file.name} is not an event journal of version $VERSION")
+        }
+        buffer.position(HEADER_SIZE)
+        while (readRecordPayload(buffer) != null) {
+            continue
+        }
+        return buffer.position().toLong()
+    }
+
+    /**
+     * Appends an event record for each of the specified logs, and then forces the records to be written to the
+     * storage device, so that a block checkpoint stored after this returns never refers to events that are not in
+     * the journal. If [logs] is empty, this does nothing.
+     *
+     * @param logs The logs of the CommutoSwap events to append, which must not have been removed.
+     */
+    @Synchronized
+    fun append(logs: List<Web3jLog>) {
+        if (logs.isEmpty()) {
+            return
+        }
+        val payloads = logs.map { createEventPayload(it) }
+        writeRecords(payloads)
+    }
+
+    /**
+     * Appends a rewind record, so that the events of every block after the block with the specified number that were
+     * appended before this call are discarded when the journal is read. This should be called when a chain
+     * reorganization removes those blocks from the chain.
+     *
+     * @param blockNumber The number of the last block whose events should be kept.
+     */
+    @Synchronized
+    fun rewind(blockNumber: BigInteger) {
+        writeRecords(listOf(
+            ByteBuffer.allocate(1 + 8).put(RECORD_TYPE_REWIND).putLong(blockNumber.longValueExact()).array()
+        ))
+    }
+
+    /**
+     * Writes a record for each of the specified payloads at [endPosition] in a single write, forces them to be written
+     * to the storage device, and then advances [endPosition] past them.
+     *
+     * @param payloads The payloads of the records to write.
+     */
+    private fun writeRecords(payloads: List<ByteArray>) {
+        val buffer = ByteBuffer.allocate(payloads.sumOf { it.size + RECORD_OVERHEAD })
+        val crc32 = CRC32()
+        for (payload in payloads) {
+            crc32.reset()
+            crc32.update(payload)
+            buffer.putInt(payload.size).put(payload).putInt(crc32.value.toInt())
+        }
+        buffer.flip()
+        var position = endPosition
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position)
+        }
+        channel.force(false)
+        endPosition = position
+    }
+
+    /**
+     * Reads the journal through a [MappedByteBuffer], and returns the logs of every event that has not been discarded
+     * by a later rewind record, in `(blockNumber, logIndex)` order, beginning with the block with the specified number.
+     *
+     * @param fromBlockNumber The number of the first block whose events should be returned.
+     *
+     * @return A [List] of the logs of the events in the journal, in the order in which they were emitted.
+     */
+    fun read(fromBlockNumber: BigInteger = BigInteger.ZERO): List<Web3jLog> {
+        val buffer = synchronized(this) {
+            channel.map(FileChannel.MapMode.READ_ONLY, 0L, endPosition)
+        }
+        // Maps the key of each event that has not been discarded to the position of its payload
+        val eventPositions = TreeMap<Key, Int>()
+        buffer.position(HEADER_SIZE)
+        while (true) {
+            val payloadPosition = buffer.position() + 4
+            val payload = readRecordPayload(buffer) ?: break
+            when (payload.get(0)) {
+                RECORD_TYPE_EVENT -> {
+                    eventPositions[Key(payload.getLong(1), payload.getInt(9))] = payloadPosition
+                }
+                RECORD_TYPE_REWIND -> {
+                    eventPositions.tailMap(Key(payload.getLong(1) + 1L, Int.MIN_VALUE), true).clear()
+                }
+                else -> throw IOException("Unknown record type ${payload.get(0)} in ${file.name}")
+            }
+        }
+        return eventPositions.tailMap(Key(fromBlockNumber.longValueExact(), Int.MIN_VALUE), true).values.map {
+            readEventPayload(buffer, it)
+        }
+    }
+
+    /**
+     * Closes [channel]. The journal cannot be used after this is called.
+     */
+    @Synchronized
+    fun close() {
+        channel.close()
+    }
+
+    /**
+     * Identifies an event in the journal.
+     *
+     * @property blockNumber The number of the block in which the event was emitted.
+     * @property logIndex The index of the event's log within its block.
+     */
+    private data class Key(val blockNumber: Long, val logIndex: Int) : Comparable<Key> {
+        override fun compareTo(other: Key): Int {
+            return compareValuesBy(this, other, { it.blockNumber }, { it.logIndex })
+        }
+    }
+
+    companion object {
+
+        /**
+         * The first four bytes of every event journal.
+         */
+        const val MAGIC = 0x434d454a
+
+        /**
+         * The version of the format of the records of an event journal, which is stored after [MAGIC].
+         */
+        const val VERSION = 1
+
+        private const val HEADER_SIZE = 8
+
+        /**
+         * The number of bytes of a record other than its payload: the length of its payload, and its checksum.
+         */
+        private const val RECORD_OVERHEAD = 8
+
+        private const val RECORD_TYPE_EVENT: Byte = 0
+
+        private const val RECORD_TYPE_REWIND: Byte = 1
+
+        /**
+         * Reads the record at the position of [buffer], and if it is complete and its checksum is valid, advances the
+         * position of [buffer] past it and returns a slice of [buffer] containing its payload. Otherwise, this leaves
+         * the position of [buffer] unchanged and returns `null`.
+         *
+         * @param buffer A [ByteBuffer] containing an event journal, positioned at the start of a record.
+         */
+        private fun readRecordPayload(buffer: ByteBuffer): ByteBuffer? {
+            val start = buffer.position()
+            if (buffer.limit() - start < RECORD_OVERHEAD + 1) {
+                return null
+            }
+            val payloadLength = buffer.getInt(start)
+            if (payloadLength <= 0 || payloadLength > buffer.limit() - start - RECORD_OVERHEAD) {
+                return null
+            }
+            val payload = buffer.duplicate()
+            payload.position(start + 4).limit(start + 4 + payloadLength)
+            val crc32 = CRC32()
+            crc32.update(payload.duplicate())
+            if (crc32.value.toInt() != buffer.getInt(start + 4 + payloadLength)) {
+                return null
+            }
+            buffer.position(start + RECORD_OVERHEAD + payloadLength)
+            return payload.slice()
+        }
+
+        /**
+         * Creates the payload of an event record for the specified log.
+         *
+         * @param log The log of a CommutoSwap event, with a block number, a log index, a transaction index, a block
+         * hash, a transaction hash, an address and at most 255 topics.
+         */
+        private fun createEventPayload(log: Web3jLog): ByteArray {
+            val topics = log.topics ?: listOf()
+            require(topics.size <= 255) { "EventJournal can't store a log with more than 255 topics" }
+            val data = Numeric.hexStringToByteArray(log.data ?: "0x")
+            val buffer = ByteBuffer.allocate(1 + 8 + 4 + 4 + 32 + 32 + 20 + 1 + 32 * topics.size + 4 + data.size)
+            buffer.put(RECORD_TYPE_EVENT)
+                .putLong(log.blockNumber.longValueExact())
+                .putInt(log.logIndex.intValueExact())
+                .putInt(log.transactionIndex.intValueExact())
+            putFixedBytes(buffer, log.blockHash, 32)
+            putFixedBytes(buffer, log.transactionHash, 32)
+            putFixedBytes(buffer, log.address, 20)
+            buffer.put(topics.size.toByte())
+            topics.forEach { putFixedBytes(buffer, it, 32) }
+            buffer.putInt(data.size).put(data)
+            return buffer.array()
+        }
+
+        /**
+         * Puts the bytes represented by the specified hex string into [buffer], left-padded with zeros to the
+         * specified length.
+         *
+         * @throws IllegalArgumentException if [hex] represents more than [length] bytes.
+         */
+        private fun putFixedBytes(buffer: ByteBuffer, hex: String, length: Int) {
+            val bytes = Numeric.hexStringToByteArray(hex)
+            require(bytes.size <= length) { "EventJournal can't store $hex in $length bytes" }
+            buffer.put(ByteArray(length - bytes.size)).put(bytes)
+        }
+
+        /**
+         * Reads the payload of the event record at the specified position in [buffer], and creates the corresponding
+         * log.
+         *
+         * @param buffer A [ByteBuffer] containing an event journal.
+         * @param position The position of the payload in [buffer].
+         */
+        private fun readEventPayload(buffer: ByteBuffer, position: Int): Web3jLog {
+            val payload = buffer.duplicate()
+            payload.position(position + 1)
+            val blockNumber = payload.long
+            val logIndex = payload.int
+            val transactionIndex = payload.int
+            val blockHash = getHexString(payload, 32)
+            val transactionHash = getHexString(payload, 32)
+            val address = getHexString(payload, 20)
+            val topicCount = payload.get().toInt() and 0xff
+            val topics = List(topicCount) { getHexString(payload, 32) }
+            val data = getHexString(payload, payload.int)
+            return Web3jLog(
+                false,
+                Numeric.encodeQuantity(BigInteger.valueOf(logIndex.toLong())),
+                Numeric.encodeQuantity(BigInteger.valueOf(transactionIndex.toLong())),
+                transactionHash,
+                blockHash,
+                Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                address,
+                data,
+                null,
+                topics
+            )
+        }
+
+        /**
+         * Gets the specified number of bytes from [buffer], and returns them as a hex string beginning with `0x`.
+         */
+        private fun getHexString(buffer: ByteBuffer, length: Int): String {
+            val bytes = ByteArray(length)
+            buffer.get(bytes)
+            return Numeric.toHexString(bytes)
+        }
+
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import java.math.BigInteger
+
+/**
+ * The fees that an EIP1559 transaction should specify, as estimated by a [FeeStrategy] from recent fee history.
+ *
+ * @property maxPriorityFeePerGas The maximum fee per gas, in wei, that the transaction should pay to the block
+ * producer.
+ * @property maxFeePerGas The maximum total fee per gas, in wei, that the transaction should pay, including both the
+ * base fee and [maxPriorityFeePerGas].
+ */
+data class FeeEstimate(
+    val maxPriorityFeePerGas: BigInteger,
+    val maxFeePerGas: BigInteger,
+)
@@ -0,0 +1,78 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.future.await
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.web3j.protocol.core.DefaultBlockParameter
+import org.web3j.protocol.core.methods.response.EthFeeHistory
+import java.math.BigInteger
+
+/**
+ * Estimates the fees that transactions created by [BlockchainService] should specify, using [strategy]. Fee history
+ * only changes when a new block is created, so while the number of the newest block is known, this requests fee
+ * history ending at that block once, and serves every estimate for that block from a single cached [FeeEstimate].
+ * When the newest block number is not known, this requests fee history ending at the latest block for every estimate.
+ *
+ * @property web3 The [CommutoWeb3j] instance from which this requests fee history.
+ * @property strategy The [FeeStrategy] that this uses to estimate fees from fee history.
+ * @property getNewestBlockNumber A function that returns the number of the newest block, or `null` if it is not
+ * known.
+ * @property mutex A [Mutex] that ensures only one request for the fee history ending at a given block is made, even if
+ * many transactions are created at once.
+ * @property cachedBlockNumber The number of the block at which the fee history used to get [cachedFeeEstimate] ends,
+ * or `null` if nothing is cached.
+ * @property cachedFeeEstimate The [FeeEstimate] obtained from the fee history ending at [cachedBlockNumber], or `null`
+ * if nothing is cached.
+ */
+class FeeOracle(
+    private val web3: CommutoWeb3j,
+    private val strategy: FeeStrategy = PercentileFeeStrategy(),
+    private val getNewestBlockNumber: () -> BigInteger?,
+) {
+
+    private val mutex = Mutex()
+
+    private var cachedBlockNumber: BigInteger? = null
+
+    private var cachedFeeEstimate: FeeEstimate? = null
+
+    /**
+     * Returns a [FeeEstimate] obtained by [strategy] from the fee history ending at the newest block, requesting this
+     * fee history only if no estimate for the newest block is cached.
+     *
+     * @return A [FeeEstimate] for a transaction to be included in one of the next blocks.
+     */
+    suspend fun getFeeEstimate(): FeeEstimate {
+        val newestBlockNumber = getNewestBlockNumber()
+            ?: return strategy.estimate(getFeeHistory(DefaultBlockParameter.valueOf("latest")))
+        return mutex.withLock {
+            val cachedFeeEstimate = cachedFeeEstimate
+            if (cachedFeeEstimate != null && cachedBlockNumber == newestBlockNumber) {
+                cachedFeeEstimate
+            } else {
+                val feeEstimate = strategy.estimate(getFeeHistory(DefaultBlockParameter.valueOf(newestBlockNumber)))
+                this.cachedBlockNumber = newestBlockNumber
+                this.cachedFeeEstimate = feeEstimate
+                feeEstimate
+            }
+        }
+    }
+
+    /**
+     * Requests the fee history of the [FeeStrategy.blockCount] blocks ending at the specified block, with rewards at
+     * [FeeStrategy.rewardPercentiles].
+     *
+     * @param newestBlock The block at which the requested fee history should end.
+     *
+     * @throws BlockchainServiceException if the node responds with an error.
+     */
+    private suspend fun getFeeHistory(newestBlock: DefaultBlockParameter): EthFeeHistory.FeeHistory {
+        val response = web3.ethFeeHistory(strategy.blockCount, newestBlock, strategy.rewardPercentiles)
+            .sendAsync().await()
+        if (response.hasError()) {
+            throw BlockchainServiceException("Got error getting fee history: ${response.error.message}")
+        }
+        return response.feeHistory
+    }
+
+}
@@ -0,0 +1,29 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.protocol.core.methods.response.EthFeeHistory
+
+/**
+ * A strategy by which [FeeOracle] estimates the fees that an EIP1559 transaction should specify from recent fee
+ * history. A [FeeStrategy] declares the fee history that it needs, which [FeeOracle] requests with
+ * [eth_feeHistory](https://ethereum.github.io/execution-apis/api-documentation/).
+ *
+ * @property blockCount The number of most recent blocks for which fee history should be requested.
+ * @property rewardPercentiles The percentiles of the effective priority fees per gas of each block's transactions that
+ * should be requested, in ascending order.
+ */
+interface FeeStrategy {
+
+    val blockCount: Int
+
+    val rewardPercentiles: List<Double>
+
+    /**
+     * Estimates the fees that an EIP1559 transaction should specify from the specified fee history.
+     *
+     * @param feeHistory Fee history for the most recent [blockCount] blocks, with rewards at [rewardPercentiles].
+     *
+     * @return A [FeeEstimate] containing the estimated fees.
+     */
+    fun estimate(feeHistory: EthFeeHistory.FeeHistory): FeeEstimate
+
+}
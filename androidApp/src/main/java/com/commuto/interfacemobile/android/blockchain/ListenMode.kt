@@ -0,0 +1,17 @@
+package com.commuto.interfacemobile.android.blockchain
+
+/**
+ * Describes how [BlockchainService]'s listen loop is currently paced by its [ListenScheduler].
+ *
+ * @property CATCHING_UP Indicates that the listen loop is more than one block behind the newest parseable block, and
+ * so parses blocks without waiting between iterations.
+ * @property FOLLOWING Indicates that the listen loop is at most one block behind the newest parseable block, and so
+ * waits for new blocks for about one block interval at a time.
+ * @property BACKING_OFF Indicates that the most recent iteration of the listen loop failed, and so the listen loop
+ * waits for an exponentially increasing, randomly jittered interval before trying again.
+ */
+enum class ListenMode {
+    CATCHING_UP,
+    FOLLOWING,
+    BACKING_OFF;
+}
@@ -0,0 +1,159 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import kotlinx.coroutines.flow.first
+import kotlinx.coroutines.withTimeoutOrNull
+import java.math.BigInteger
+import kotlin.random.Random
+
+/**
+ * Paces the iterations of [BlockchainService]'s listen loop, according to how far it is behind the newest parseable
+ * block, how often new blocks have recently been created, and whether recent iterations have failed.
+ *
+ * While the listen loop is more than one block behind, it should not wait at all. Once it has caught up, it should
+ * wait until the next block is expected, based on an exponential moving average of the time between recently observed
+ * blocks, and if no block has been created by then, poll again after [minPollInterval] milliseconds, doubling the
+ * interval after each poll that finds no new block, up to [maxPollInterval]. After a failed iteration, it should wait
+ * for an exponentially increasing interval, beginning at [minErrorBackoff] milliseconds and doubling after each
+ * consecutive failure up to [maxErrorBackoff], with "equal jitter": a random delay between half of the interval and
+ * the whole interval, so that many clients recovering from the same outage do not all retry at once.
+ *
+ * @property minPollInterval The minimum number of milliseconds to wait between polls for a new block.
+ * @property maxPollInterval The maximum number of milliseconds to wait between polls for a new block.
+ * @property minErrorBackoff The number of milliseconds to wait, before jitter, after the first of a series of
+ * consecutive failed iterations.
+ * @property maxErrorBackoff The maximum number of milliseconds to wait, before jitter, after a failed iteration.
+ * @property random The source of randomness for jitter.
+ * @property mode The current [ListenMode] of the listen loop.
+ * @property blockInterval The exponential moving average of the number of milliseconds between recently observed
+ * blocks, or `null` if no two blocks have been observed yet.
+ * @property newestBlockNumber The number of the newest block that has been observed, or `null` if none has been.
+ * @property newestBlockTime The time, in milliseconds since the epoch, at which the block with number
+ * [newestBlockNumber] was first observed.
+ * @property pollInterval The number of milliseconds to wait before next polling for a new block, if the next block is
+ * overdue.
+ * @property consecutiveErrorCount The number of consecutive failed iterations.
+ * @property wakeSignal A counter that [wake] increments, ending any [sleep] in progress.
+ */
+class ListenScheduler(
+    private val minPollInterval: Long = 30L,
+    private val maxPollInterval: Long = 2_000L,
+    private val minErrorBackoff: Long = 100L,
+    private val maxErrorBackoff: Long = 30_000L,
+    private val random: Random = Random.Default,
+) {
+
+    init {
+        require(minPollInterval in 1L..maxPollInterval) {
+            "ListenScheduler minPollInterval must be positive and no greater than maxPollInterval"
+        }
+        require(minErrorBackoff in 1L..maxErrorBackoff) {
+            "ListenScheduler minErrorBackoff must be positive and no greater than maxErrorBackoff"
+        }
+    }
+
+    private val _mode = MutableStateFlow(ListenMode.FOLLOWING)
+
+    val mode: StateFlow<ListenMode> = _mode
+
+    @Volatile
+    var blockInterval: Long? = null
+        private set
+
+    private var newestBlockNumber: BigInteger? = null
+
+    private var newestBlockTime = 0L
+
+    private var pollInterval = minPollInterval
+
+    private var consecutiveErrorCount = 0
+
+    private val wakeSignal = MutableStateFlow(0L)
+
+    /**
+     * Records the newest block number and the number of the last parsed block, updating [blockInterval] if a new block
+     * has been created since the newest block number was last recorded, and setting [mode] to
+     * [ListenMode.CATCHING_UP] if the listen loop is more than one block behind or to [ListenMode.FOLLOWING] otherwise.
+     *
+     * @param newestParseableBlockNumber The number of the newest block that the listen loop may parse.
+     * @param lastParsedBlockNumber The number of the most recently parsed block.
+     */
+    fun handleNewestBlock(newestParseableBlockNumber: BigInteger, lastParsedBlockNumber: BigInteger) {
+        val currentTime = System.currentTimeMillis()
+        val previousBlockNumber = newestBlockNumber
+        if (previousBlockNumber == null || newestParseableBlockNumber > previousBlockNumber) {
+            if (previousBlockNumber != null) {
+                val sample = (currentTime - newestBlockTime) /
+                        (newestParseableBlockNumber - previousBlockNumber).toLong().coerceAtLeast(1L)
+                blockInterval = blockInterval?.let { (it * 3L + sample) / 4L } ?: sample
+            }
+            newestBlockNumber = newestParseableBlockNumber
+            newestBlockTime = currentTime
+            pollInterval = minPollInterval
+        }
+        _mode.value = if (newestParseableBlockNumber - lastParsedBlockNumber > BigInteger.ONE) {
+            ListenMode.CATCHING_UP
+        } else {
+            ListenMode.FOLLOWING
+        }
+    }
+
+    /**
+     * Returns the number of milliseconds that the listen loop should wait for a new block, having found none. If the
+     * next block is expected more than [minPollInterval] milliseconds from now, this is the time until then, up to
+     * [maxPollInterval]. Otherwise, this is [pollInterval], which is then doubled, up to [maxPollInterval].
+     */
+    fun getIdleDelay(): Long {
+        val expectedBlockInterval = blockInterval
+        if (expectedBlockInterval != null) {
+            val timeUntilNextBlock = newestBlockTime + expectedBlockInterval - System.currentTimeMillis()
+            if (timeUntilNextBlock > minPollInterval) {
+                return timeUntilNextBlock.coerceAtMost(maxPollInterval)
+            }
+        }
+        val idleDelay = pollInterval
+        pollInterval = (pollInterval * 2L).coerceAtMost(maxPollInterval)
+        return idleDelay
+    }
+
+    /**
+     * Records that an iteration of the listen loop has succeeded, so that the next failure is backed off from
+     * [minErrorBackoff].
+     */
+    fun handleSuccess() {
+        consecutiveErrorCount = 0
+    }
+
+    /**
+     * Records that an iteration of the listen loop has failed, sets [mode] to [ListenMode.BACKING_OFF], and returns
+     * the number of milliseconds that the listen loop should wait before trying again.
+     */
+    fun handleError(): Long {
+        consecutiveErrorCount++
+        _mode.value = ListenMode.BACKING_OFF
+        val backoff = (minErrorBackoff shl (consecutiveErrorCount - 1).coerceAtMost(30))
+            .takeIf { it > 0L }?.coerceAtMost(maxErrorBackoff) ?: maxErrorBackoff
+        return backoff / 2L + random.nextLong(backoff - backoff / 2L + 1L)
+    }
+
+    /**
+     * Suspends for the specified number of milliseconds, or until [wake] is called, whichever happens first.
+     *
+     * @param milliseconds The maximum number of milliseconds for which to suspend.
+     */
+    suspend fun sleep(milliseconds: Long) {
+        val wakeCount = wakeSignal.value
+        withTimeoutOrNull(milliseconds) {
+            wakeSignal.first { it != wakeCount }
+        }
+    }
+
+    /**
+     * Ends any [sleep] in progress, such as when listening is stopped.
+     */
+    fun wake() {
+        wakeSignal.value++
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.crypto.Hash
+import org.web3j.utils.Numeric
+
+/**
+ * The 2048-bit bloom filter in a block header's `logsBloom` field, which contains the address of every contract that
+ * emitted a log in the block and every topic of every such log.
+ *
+ * Each value is added to the filter by setting three bits, the positions of which are given by the low 11 bits of each
+ * of the first three pairs of bytes of the value's Keccak-256 hash, as described in section 4.3.1 of the
+ * [Ethereum Yellow Paper](https://ethereum.github.io/yellowpaper/paper.pdf). If any of these bits is not set, the value
+ * is definitely not in the block's logs, so the block's receipts need not be requested in search of it. If all are
+ * set, the value may be in the block's logs.
+ *
+ * @property bloom The 256 bytes of the filter, with bit zero being the lowest bit of the last byte.
+ */
+class LogsBloom(private val bloom: ByteArray) {
+
+    init {
+        require(bloom.size == BLOOM_SIZE) {
+            "LogsBloom must be $BLOOM_SIZE bytes long"
+        }
+    }
+
+    /**
+     * Indicates whether the value with the specified bit indices may have been added to this filter.
+     *
+     * @param bitIndices The bit indices of the value, obtained from [getBitIndices].
+     *
+     * @return `false` if the value is definitely not in this filter, or `true` if it may be.
+     */
+    fun mightContain(bitIndices: IntArray): Boolean {
+        return bitIndices.all { bitIndex ->
+            bloom[BLOOM_SIZE - 1 - bitIndex / 8].toInt() and (1 shl (bitIndex % 8)) != 0
+        }
+    }
+
+    companion object {
+
+        private const val BLOOM_SIZE = 256
+
+        /**
+         * Parses a `logsBloom` field of a block header.
+         *
+         * @param logsBloom The hexadecimal `logsBloom` field, which may be `null` if the node did not include it.
+         *
+         * @return A [LogsBloom], or `null` if [logsBloom] is `null` or is not 256 bytes long.
+         */
+        fun fromHex(logsBloom: String?): LogsBloom? {
+            val bloom = logsBloom?.let { Numeric.hexStringToByteArray(it) } ?: return null
+            return if (bloom.size == BLOOM_SIZE) LogsBloom(bloom) else null
+        }
+
+        /**
+         * Returns the indices of the three bits that are set when the specified value is added to a [LogsBloom].
+         *
+         * @param value A hexadecimal contract address or log topic.
+         */
+        fun getBitIndices(value: String): IntArray {
+            val hash = Hash.sha3(Numeric.hexStringToByteArray(value))
+            return IntArray(3) { index ->
+                ((hash[2 * index].toInt() and 0x07) shl 8) or (hash[2 * index + 1].toInt() and 0xff)
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,40 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import java.util.concurrent.Delayed
+import java.util.concurrent.TimeUnit
+
+/**
+ * The time after which [BlockchainService] should check whether a monitored [BlockchainTransaction] has been dropped or
+ * has been pending for too long. [BlockchainService] keeps these in a [java.util.concurrent.DelayQueue], which orders
+ * them by [deadline] and only releases those whose deadline has passed, so that it never examines transactions that
+ * cannot yet have expired.
+ *
+ * @property transaction The monitored [BlockchainTransaction].
+ * @property deadline The time, in milliseconds since the epoch, after which [transaction] should be checked.
+ */
+class MonitoredTransactionDeadline(
+    val transaction: BlockchainTransaction,
+    val deadline: Long,
+) : Delayed {
+
+    /**
+     * Returns the time remaining until [deadline] in the specified [TimeUnit], which is zero or negative once
+     * [deadline] has passed.
+     */
+    override fun getDelay(unit: TimeUnit): Long {
+        return unit.convert(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS)
+    }
+
+    /**
+     * Compares this to another [Delayed] by the time remaining until each is released, so that the
+     * [MonitoredTransactionDeadline] with the earliest [deadline] is released first.
+     */
+    override fun compareTo(other: Delayed): Int {
+        return if (other is MonitoredTransactionDeadline) {
+            deadline.compareTo(other.deadline)
+        } else {
+            getDelay(TimeUnit.MILLISECONDS).compareTo(other.getDelay(TimeUnit.MILLISECONDS))
+        }
+    }
+
+}
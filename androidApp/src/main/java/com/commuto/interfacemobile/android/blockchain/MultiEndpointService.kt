@@ -0,0 +1,664 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import io.reactivex.Flowable
+import org.web3j.protocol.Web3jService
+import org.web3j.protocol.core.BatchRequest
+import org.web3j.protocol.core.BatchResponse
+import org.web3j.protocol.core.DefaultBlockParameterNumber
+import org.web3j.protocol.core.Request
+import org.web3j.protocol.core.Response
+import org.web3j.protocol.core.methods.request.EthFilter
+import org.web3j.protocol.core.methods.response.EthBlock
+import org.web3j.protocol.core.methods.response.EthBlockNumber
+import org.web3j.protocol.core.methods.response.EthSendTransaction
+import org.web3j.protocol.http.HttpService
+import org.web3j.protocol.websocket.events.Notification
+import java.io.IOException
+import java.io.InterruptedIOException
+import java.math.BigInteger
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledFuture
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.ceil
+
+/**
+ * A [Web3jService] that sends requests to several EVM-compatible blockchain nodes, keeping track of the latency and
+ * error rate of each.
+ *
+ * Reads are sent to the healthy endpoint with the lowest estimated latency, which is the average latency of the
+ * endpoint or, if it is greater, the time for which the endpoint's oldest unanswered request has been waiting. If a
+ * read has not been answered once the 95th percentile latency of that endpoint has passed (or [defaultHedgeDelay],
+ * until enough latencies have been recorded), or if that endpoint fails before then, a duplicate "hedged" request is
+ * sent to the next best endpoint, and whichever response arrives first is used. Endpoints that have never been used
+ * have an estimated latency of zero, so every endpoint is measured. An endpoint becomes unhealthy for
+ * [quarantinePeriod] milliseconds whenever its error rate reaches [unhealthyErrorRate], and unhealthy endpoints are
+ * only used if no endpoint is healthy.
+ *
+ * Transactions are sent to the best endpoint without hedging, and methods that depend on filters installed on a
+ * particular node are always sent to the first endpoint. Endpoints may be slightly behind one another, so this records
+ * the newest block number that each endpoint has returned, either as the result of `eth_blockNumber` or as the number
+ * of a block it has returned, and a read of a specific block (or of state or logs up to a specific block) is only sent
+ * to endpoints that have reached that block. Therefore, once an endpoint has returned a block number, every read of
+ * that block or an earlier one is answered by an endpoint that has it, rather than by a lagging endpoint that would
+ * answer as if the block did not exist or contained no logs. If no endpoint is known to have reached the block, each
+ * endpoint is first asked for its newest block number, and the read fails with an [IOException] if none has reached
+ * it.
+ *
+ * A transaction is only known to the endpoint that accepted it until it propagates, so this records which endpoint
+ * accepted each transaction. A request for the receipt of a transaction is sent to that endpoint first, and pending
+ * transaction counts are only requested from the endpoint that most recently accepted a transaction while it is
+ * healthy, since another endpoint would not count transactions it has not yet received. Receipts, and transaction
+ * counts that are not requested from that endpoint, are only read from endpoints that have reached the newest block
+ * returned by any endpoint, since a lagging endpoint would answer as if recently confirmed transactions were still
+ * pending.
+ *
+ * @property endpoints The [Web3jService]s of the nodes to which requests should be sent. The first is used for
+ * filter methods.
+ * @property defaultHedgeDelay The number of milliseconds after which a read sent to an endpoint with too few recorded
+ * latencies is hedged.
+ * @property minHedgeDelay The minimum number of milliseconds after which a read is hedged.
+ * @property unhealthyErrorRate The error rate, between zero and one, at which an endpoint becomes unhealthy.
+ * @property quarantinePeriod The number of milliseconds for which an endpoint remains unhealthy after its error rate
+ * reaches [unhealthyErrorRate].
+ * @property latencySampleCount The number of recent latencies of each endpoint from which its 95th percentile latency
+ * is computed.
+ * @property scheduler The executor that sends hedged requests once their hedge delays have passed.
+ * @property transactionEndpoints A map of the hashes of the [MAX_TRANSACTION_ENDPOINTS] most recently accepted
+ * transactions to the endpoints that accepted them.
+ * @property lastTransactionEndpoint The endpoint that most recently accepted a transaction, or `null` if none has.
+ */
+class MultiEndpointService(
+    endpoints: List<Web3jService>,
+    private val defaultHedgeDelay: Long = 500L,
+    private val minHedgeDelay: Long = 20L,
+    private val unhealthyErrorRate: Double = 0.5,
+    private val quarantinePeriod: Long = 5_000L,
+    private val latencySampleCount: Int = 64,
+) : Web3jService {
+
+    init {
+        require(endpoints.isNotEmpty()) {
+            "MultiEndpointService must have at least one endpoint"
+        }
+        require(unhealthyErrorRate > 0.0 && unhealthyErrorRate <= 1.0) {
+            "MultiEndpointService unhealthyErrorRate must be greater than zero and at most one"
+        }
+    }
+
+    private val endpoints = endpoints.map { Endpoint(it) }
+
+    private val scheduler = Executors.newSingleThreadScheduledExecutor { runnable ->
+        Thread(runnable, "MultiEndpointService").apply { isDaemon = true }
+    }
+
+    private val transactionEndpoints = object : LinkedHashMap<String, Endpoint>() {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Endpoint>?): Boolean {
+            return size > MAX_TRANSACTION_ENDPOINTS
+        }
+    }
+
+    @Volatile
+    private var lastTransactionEndpoint: Endpoint? = null
+
+    /**
+     * Returns the average latency in milliseconds, error rate, and health of each endpoint, in the order in which
+     * they were passed to this service.
+     */
+    val endpointStats: List<EndpointStats>
+        get() = endpoints.map { it.getStats() }
+
+    @Throws(IOException::class)
+    override fun <T : Response<*>> send(request: Request<*, *>, responseType: Class<T>): T {
+        return awaitResult(sendAsync(request, responseType))
+    }
+
+    override fun <T : Response<*>> sendAsync(request: Request<*, *>, responseType: Class<T>): CompletableFuture<T> {
+        return route(listOf(request)) { service -> service.sendAsync(request, responseType) }
+    }
+
+    @Throws(IOException::class)
+    override fun sendBatch(batchRequest: BatchRequest): BatchResponse {
+        return awaitResult(sendBatchAsync(batchRequest))
+    }
+
+    override fun sendBatchAsync(batchRequest: BatchRequest): CompletableFuture<BatchResponse> {
+        return route(batchRequest.requests) { service -> service.sendBatchAsync(batchRequest) }
+    }
+
+    /**
+     * Subscriptions are bound to a single node, so this passes the subscription to the first endpoint.
+     */
+    override fun <T : Notification<*>> subscribe(
+        request: Request<*, *>,
+        unsubscribeMethod: String,
+        responseType: Class<T>
+    ): Flowable<T> {
+        return endpoints.first().service.subscribe(request, unsubscribeMethod, responseType)
+    }
+
+    override fun close() {
+        scheduler.shutdownNow()
+        endpoints.forEach { it.service.close() }
+    }
+
+    /**
+     * Sends a request (or batch of requests) to the endpoint(s) that should handle it, as described in this class's
+     * documentation.
+     *
+     * @param requests The requests, of which there is more than one if they are sent as a batch.
+     * @param send A function that sends the request to the specified [Web3jService].
+     *
+     * @return A [CompletableFuture] that completes with the first successful response, or with the exception of the
+     * last endpoint to fail if no endpoint succeeds.
+     */
+    private fun <T> route(
+        requests: List<Request<*, *>>,
+        send: (Web3jService) -> CompletableFuture<T>
+    ): CompletableFuture<T> {
+        val methods = requests.map { it.method }
+        if (methods.any { it in filterMethods }) {
+            return sendToEndpoint(endpoints.first(), send)
+        }
+        val rankedEndpoints = rankEndpoints()
+        if (methods.any { it in transactionMethods }) {
+            val endpoint = rankedEndpoints.first()
+            return sendToEndpoint(endpoint, send).thenApply { response ->
+                recordAcceptedTransactions(endpoint, response)
+                response
+            }
+        }
+        if (rankedEndpoints.size == 1) {
+            return sendToEndpoint(rankedEndpoints.first(), send)
+        }
+        if (requests.all { it.method == "eth_getTransactionCount" && it.params.getOrNull(1) == "pending" }) {
+            lastTransactionEndpoint?.takeIf { it.getStats().isHealthy }?.let { return sendToEndpoint(it, send) }
+        }
+        val acceptingEndpoint = getAcceptingEndpoint(requests)
+        val preferredEndpoints = acceptingEndpoint?.let { listOf(it) + (rankedEndpoints - it) } ?: rankedEndpoints
+        val blockNumber = requests.mapNotNull { getRequiredBlockNumber(it) }.maxOrNull()
+            ?: return sendToBestEndpoints(preferredEndpoints, send)
+        val endpointsAtBlock = preferredEndpoints.filter { it.hasReachedBlock(blockNumber) }
+        if (endpointsAtBlock.isNotEmpty()) {
+            return sendToBestEndpoints(endpointsAtBlock, send)
+        }
+        return getEndpointsAtBlock(preferredEndpoints, blockNumber).thenCompose { updatedEndpointsAtBlock ->
+            if (updatedEndpointsAtBlock.isEmpty()) {
+                CompletableFuture<T>().apply {
+                    completeExceptionally(IOException("No endpoint has reached block $blockNumber"))
+                }
+            } else {
+                sendToBestEndpoints(updatedEndpointsAtBlock, send)
+            }
+        }
+    }
+
+    /**
+     * Sends a read to the first of the specified endpoints, hedged with the second if there is one.
+     *
+     * @param rankedEndpoints The endpoints to which the read may be sent, in order of preference.
+     * @param send A function that sends the read to the specified [Web3jService].
+     */
+    private fun <T> sendToBestEndpoints(
+        rankedEndpoints: List<Endpoint>,
+        send: (Web3jService) -> CompletableFuture<T>
+    ): CompletableFuture<T> {
+        return if (rankedEndpoints.size == 1) {
+            sendToEndpoint(rankedEndpoints.first(), send)
+        } else {
+            HedgedCall(rankedEndpoints[0], rankedEndpoints[1], send).result
+        }
+    }
+
+    /**
+     * Asks each of the specified endpoints for its newest block number with `eth_blockNumber`.
+     *
+     * @param rankedEndpoints The endpoints to ask, in order of preference.
+     * @param blockNumber The number of the block that an endpoint must have reached.
+     *
+     * @return A [CompletableFuture] that completes with those of [rankedEndpoints] that have reached the block with
+     * number [blockNumber], in order of preference, as soon as any endpoint is known to have reached it, or once every
+     * endpoint has answered or failed.
+     */
+    private fun getEndpointsAtBlock(
+        rankedEndpoints: List<Endpoint>,
+        blockNumber: BigInteger
+    ): CompletableFuture<List<Endpoint>> {
+        val result = CompletableFuture<List<Endpoint>>()
+        val pendingCount = AtomicInteger(rankedEndpoints.size)
+        rankedEndpoints.forEach { endpoint ->
+            sendToEndpoint(endpoint) { service ->
+                Request("eth_blockNumber", listOf<String>(), service, EthBlockNumber::class.java).sendAsync()
+            }.whenComplete { _, _ ->
+                val endpointsAtBlock = rankedEndpoints.filter { it.hasReachedBlock(blockNumber) }
+                if (endpointsAtBlock.isNotEmpty() || pendingCount.decrementAndGet() == 0) {
+                    result.complete(endpointsAtBlock)
+                }
+            }
+        }
+        return result
+    }
+
+    /**
+     * Returns the number of the block that an endpoint must have reached to answer the specified request correctly:
+     * the block requested by `eth_getBlockByNumber` or `eth_getBlockReceipts`, the block against the state of which
+     * `eth_call` and similar methods are executed, the last block of the range of an `eth_getLogs` filter, or, for
+     * `eth_getTransactionReceipt` and for `eth_getTransactionCount` of the latest or pending block, the newest block
+     * that any endpoint has returned. Returns `null` if the request does not specify a block by number, for example if
+     * it specifies the latest block.
+     */
+    private fun getRequiredBlockNumber(request: Request<*, *>): BigInteger? {
+        val blockParameter = when (request.method) {
+            "eth_getBlockByNumber", "eth_getBlockReceipts", "eth_getBlockTransactionCountByNumber" ->
+                request.params.getOrNull(0)
+            "eth_call", "eth_getBalance", "eth_getCode", "eth_getTransactionCount" -> request.params.getOrNull(1)
+            "eth_getLogs" -> ((request.params.getOrNull(0) as? EthFilter)?.toBlock as? DefaultBlockParameterNumber)
+                ?.blockNumber
+            "eth_getTransactionReceipt" -> return getNewestReachedBlockNumber()
+            else -> null
+        }
+        return when (blockParameter) {
+            is BigInteger -> blockParameter
+            "latest", "pending" -> if (request.method == "eth_getTransactionCount") {
+                getNewestReachedBlockNumber()
+            } else {
+                null
+            }
+            // Block hashes, which some of these methods accept in place of block numbers, are 32 bytes long
+            is String -> blockParameter.takeIf { it.startsWith("0x") && it.length <= 18 }?.let {
+                it.substring(2).toBigIntegerOrNull(16)
+            }
+            else -> null
+        }
+    }
+
+    /**
+     * Returns the numbers of the blocks that the specified response shows its endpoint to have reached: the result of
+     * `eth_blockNumber` or the number of a block returned by `eth_getBlockByNumber` or `eth_getBlockByHash`, including
+     * those of any such response in a batch.
+     */
+    private fun getReachedBlockNumbers(response: Any?): List<BigInteger> {
+        return when (response) {
+            is BatchResponse -> response.responses.flatMap { getReachedBlockNumbers(it) }
+            is EthBlockNumber -> listOfNotNull(response.takeIf { !it.hasError() && it.result != null }?.blockNumber)
+            is EthBlock -> listOfNotNull(response.block?.takeIf { it.numberRaw != null }?.number)
+            else -> listOf()
+        }
+    }
+
+    /**
+     * Returns the newest block number that any endpoint has returned, or `null` if none has returned one.
+     */
+    private fun getNewestReachedBlockNumber(): BigInteger? {
+        return endpoints.mapNotNull { it.getReachedBlockNumber() }.maxOrNull()
+    }
+
+    /**
+     * Records that the specified endpoint accepted the transactions that the specified response (or any response in
+     * the specified batch response) shows it to have accepted.
+     */
+    private fun recordAcceptedTransactions(endpoint: Endpoint, response: Any?) {
+        val transactionHashes = when (response) {
+            is BatchResponse -> response.responses
+            else -> listOf(response)
+        }.mapNotNull { (it as? EthSendTransaction)?.takeIf { !it.hasError() }?.transactionHash?.lowercase() }
+        if (transactionHashes.isEmpty()) {
+            return
+        }
+        synchronized(transactionEndpoints) {
+            transactionHashes.forEach { transactionEndpoints[it] = endpoint }
+        }
+        lastTransactionEndpoint = endpoint
+    }
+
+    /**
+     * Returns the endpoint that accepted a transaction whose receipt is requested by one of the specified requests,
+     * or `null` if there is no such endpoint.
+     */
+    private fun getAcceptingEndpoint(requests: List<Request<*, *>>): Endpoint? {
+        val transactionHashes = requests.filter { it.method == "eth_getTransactionReceipt" }
+            .mapNotNull { (it.params.getOrNull(0) as? String)?.lowercase() }
+        if (transactionHashes.isEmpty()) {
+            return null
+        }
+        return synchronized(transactionEndpoints) {
+            transactionHashes.firstNotNullOfOrNull { transactionEndpoints[it] }
+        }
+    }
+
+    /**
+     * Returns the endpoints in order of preference: healthy before unhealthy, then by ascending estimated latency (or
+     * ascending error rate, for unhealthy endpoints).
+     */
+    private fun rankEndpoints(): List<Endpoint> {
+        val (healthyEndpoints, unhealthyEndpoints) = endpoints.map { it.getStats() }
+            .zip(endpoints)
+            .partition { it.first.isHealthy }
+        return healthyEndpoints.sortedBy { it.first.estimatedLatency }.map { it.second } +
+                unhealthyEndpoints.sortedBy { it.first.errorRate }.map { it.second }
+    }
+
+    /**
+     * Sends a request to the specified endpoint, recording its latency or failure. Cancelling the returned
+     * [CompletableFuture] cancels the request, which is recorded as neither a success nor a failure.
+     */
+    private fun <T> sendToEndpoint(
+        endpoint: Endpoint,
+        send: (Web3jService) -> CompletableFuture<T>
+    ): CompletableFuture<T> {
+        val startTime = endpoint.startRequest()
+        val future = try {
+            send(endpoint.service)
+        } catch (exception: Exception) {
+            CompletableFuture<T>().apply { completeExceptionally(exception) }
+        }
+        val result = future.handle { response, throwable ->
+            val exception = unwrap(throwable)
+            if (exception == null) {
+                endpoint.recordSuccess(startTime)
+                getReachedBlockNumbers(response).maxOrNull()?.let { endpoint.recordReachedBlock(it) }
+                response
+            } else {
+                endpoint.recordError(startTime)
+                throw CompletionException(exception)
+            }
+        }
+        // Once the result is cancelled, the function passed to handle is never called
+        result.whenComplete { _, _ ->
+            if (result.isCancelled) {
+                endpoint.recordCancellation(startTime)
+                future.cancel(true)
+            }
+        }
+        return result
+    }
+
+    /**
+     * Waits for [future] to complete, and returns its result or throws the exception with which it failed, as a
+     * blocking [Web3jService] method would.
+     */
+    private fun <T> awaitResult(future: CompletableFuture<T>): T {
+        try {
+            return future.get()
+        } catch (exception: ExecutionException) {
+            throw exception.cause ?: exception
+        } catch (exception: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw InterruptedIOException("Interrupted while waiting for a response")
+        }
+    }
+
+    private fun unwrap(throwable: Throwable?): Throwable? {
+        return if (throwable is CompletionException && throwable.cause != null) throwable.cause else throwable
+    }
+
+    /**
+     * A read sent to [primary], which is hedged by sending a duplicate to [secondary] once the hedge delay of
+     * [primary] has passed or as soon as [primary] fails. Once either request succeeds, the other is cancelled, so that
+     * the losing endpoint is not kept busy with a request whose response would be ignored.
+     *
+     * @property result A [CompletableFuture] that completes with the first successful response, or with the last
+     * exception if both endpoints fail.
+     * @property requests The requests that have been sent to [primary] and [secondary].
+     * @property hedgeFuture The scheduled sending of the hedged request, which is cancelled if [primary] responds in
+     * time.
+     */
+    private inner class HedgedCall<T>(
+        primary: Endpoint,
+        private val secondary: Endpoint,
+        private val send: (Web3jService) -> CompletableFuture<T>,
+    ) {
+
+        val result = CompletableFuture<T>()
+
+        private val requests = mutableListOf<CompletableFuture<T>>()
+
+        private var pendingCount = 1
+
+        private var isHedged = false
+
+        private var isSucceeded = false
+
+        private val hedgeFuture: ScheduledFuture<*> =
+            scheduler.schedule(::hedge, primary.getHedgeDelay(), TimeUnit.MILLISECONDS)
+
+        init {
+            sendRequest(primary)
+        }
+
+        private fun hedge() {
+            synchronized(this) {
+                if (isHedged || result.isDone) {
+                    return
+                }
+                isHedged = true
+                pendingCount++
+            }
+            sendRequest(secondary)
+        }
+
+        private fun sendRequest(endpoint: Endpoint) {
+            val request = sendToEndpoint(endpoint, send)
+            val isAlreadySucceeded = synchronized(this) {
+                requests.add(request)
+                isSucceeded
+            }
+            if (isAlreadySucceeded) {
+                request.cancel(true)
+            }
+            request.whenComplete(::handleResponse)
+        }
+
+        private fun handleResponse(response: T?, throwable: Throwable?) {
+            if (throwable == null) {
+                hedgeFuture.cancel(false)
+                val sentRequests = synchronized(this) {
+                    isSucceeded = true
+                    requests.toList()
+                }
+                // Cancelling a request that has already completed has no effect
+                sentRequests.forEach { it.cancel(true) }
+                result.complete(response)
+                return
+            }
+            val isLastPending = synchronized(this) {
+                if (isSucceeded) {
+                    return
+                }
+                pendingCount--
+                pendingCount == 0 && isHedged
+            }
+            if (isLastPending) {
+                result.completeExceptionally(unwrap(throwable))
+            } else {
+                hedgeFuture.cancel(false)
+                hedge()
+            }
+        }
+
+    }
+
+    /**
+     * The latency and error rate of an endpoint.
+     *
+     * @property averageLatency The exponential moving average of the endpoint's latency in milliseconds, or `null` if
+     * the endpoint has never responded successfully.
+     * @property estimatedLatency The estimated latency of the endpoint in milliseconds, by which healthy endpoints are
+     * ranked.
+     * @property errorRate The exponential moving average of the proportion of requests to the endpoint that failed.
+     * @property isHealthy Whether the endpoint is currently healthy.
+     */
+    data class EndpointStats(
+        val averageLatency: Double?,
+        val estimatedLatency: Double,
+        val errorRate: Double,
+        val isHealthy: Boolean,
+    )
+
+    /**
+     * An endpoint and its recorded latencies and errors.
+     *
+     * @property service The [Web3jService] of the endpoint.
+     * @property latencies A ring buffer of the [latencySampleCount] most recent latencies of the endpoint.
+     * @property latencyCount The total number of latencies recorded.
+     * @property pendingStartTimes The [System.nanoTime] values at which the unanswered requests to the endpoint were
+     * sent.
+     * @property unhealthyUntil The time in milliseconds since the epoch until which the endpoint is unhealthy.
+     * @property reachedBlockNumber The newest block number that the endpoint has returned, or `null` if it has
+     * returned none.
+     */
+    private inner class Endpoint(val service: Web3jService) {
+
+        private val latencies = LongArray(latencySampleCount)
+
+        private var latencyCount = 0L
+
+        private var averageLatency: Double? = null
+
+        private var errorRate = 0.0
+
+        private var unhealthyUntil = 0L
+
+        private val pendingStartTimes = mutableListOf<Long>()
+
+        private var reachedBlockNumber: BigInteger? = null
+
+        /**
+         * Records that a request is being sent to this endpoint, and returns the time at which it was sent, which must
+         * be passed to [recordSuccess] or [recordError] once the request completes.
+         */
+        @Synchronized
+        fun startRequest(): Long {
+            val startTime = System.nanoTime()
+            pendingStartTimes.add(startTime)
+            return startTime
+        }
+
+        @Synchronized
+        fun recordSuccess(startTime: Long) {
+            recordLatency(startTime)
+            errorRate -= SMOOTHING_FACTOR * errorRate
+        }
+
+        /**
+         * Records that a request was cancelled. The time for which it waited is a lower bound of this endpoint's
+         * latency, so it is recorded as a latency, ensuring that an endpoint whose requests are cancelled because
+         * they are too slow is not treated as if it had never been used.
+         */
+        @Synchronized
+        fun recordCancellation(startTime: Long) {
+            recordLatency(startTime)
+        }
+
+        private fun recordLatency(startTime: Long) {
+            pendingStartTimes.remove(startTime)
+            val latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime)
+            latencies[(latencyCount % latencySampleCount).toInt()] = latency
+            latencyCount++
+            averageLatency = averageLatency?.let { it + SMOOTHING_FACTOR * (latency - it) } ?: latency.toDouble()
+        }
+
+        @Synchronized
+        fun recordError(startTime: Long) {
+            pendingStartTimes.remove(startTime)
+            errorRate += SMOOTHING_FACTOR * (1.0 - errorRate)
+            if (errorRate >= unhealthyErrorRate) {
+                unhealthyUntil = System.currentTimeMillis() + quarantinePeriod
+            }
+        }
+
+        @Synchronized
+        fun recordReachedBlock(blockNumber: BigInteger) {
+            reachedBlockNumber = reachedBlockNumber?.max(blockNumber) ?: blockNumber
+        }
+
+        @Synchronized
+        fun getReachedBlockNumber(): BigInteger? {
+            return reachedBlockNumber
+        }
+
+        /**
+         * Returns whether this endpoint is known to have reached the block with the specified number.
+         */
+        @Synchronized
+        fun hasReachedBlock(blockNumber: BigInteger): Boolean {
+            return reachedBlockNumber?.let { it >= blockNumber } ?: false
+        }
+
+        @Synchronized
+        fun getStats(): EndpointStats {
+            val pendingTime = pendingStartTimes.minOrNull()?.let {
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - it).toDouble()
+            } ?: 0.0
+            return EndpointStats(
+                averageLatency = averageLatency,
+                estimatedLatency = maxOf(averageLatency ?: 0.0, pendingTime),
+                errorRate = errorRate,
+                isHealthy = System.currentTimeMillis() >= unhealthyUntil,
+            )
+        }
+
+        /**
+         * Returns the 95th percentile of the recent latencies of this endpoint, or [defaultHedgeDelay] if fewer than
+         * [MIN_HEDGE_SAMPLE_COUNT] latencies have been recorded, but no less than [minHedgeDelay].
+         */
+        @Synchronized
+        fun getHedgeDelay(): Long {
+            if (latencyCount < MIN_HEDGE_SAMPLE_COUNT) {
+                return defaultHedgeDelay.coerceAtLeast(minHedgeDelay)
+            }
+            val sortedLatencies = latencies.copyOf(latencyCount.coerceAtMost(latencySampleCount.toLong()).toInt())
+                .sorted()
+            val index = (ceil(sortedLatencies.size * 0.95).toInt() - 1).coerceIn(0, sortedLatencies.size - 1)
+            return sortedLatencies[index].coerceAtLeast(minHedgeDelay)
+        }
+
+    }
+
+    companion object {
+
+        private const val SMOOTHING_FACTOR = 0.2
+
+        private const val MIN_HEDGE_SAMPLE_COUNT = 10L
+
+        /**
+         * The number of most recently accepted transactions for which the accepting endpoint is recorded.
+         */
+        private const val MAX_TRANSACTION_ENDPOINTS = 1_024
+
+        /**
+         * Methods that send transactions, which are never hedged.
+         */
+        private val transactionMethods = setOf("eth_sendRawTransaction", "eth_sendTransaction")
+
+        /**
+         * Methods that create, query or remove filters installed on a particular node.
+         */
+        private val filterMethods = setOf(
+            "eth_newFilter",
+            "eth_newBlockFilter",
+            "eth_newPendingTransactionFilter",
+            "eth_getFilterChanges",
+            "eth_getFilterLogs",
+            "eth_uninstallFilter",
+        )
+
+        /**
+         * Creates a [MultiEndpointService] that sends requests over HTTP to the nodes at the specified URLs, using an
+         * [AsyncHttpService] for each.
+         *
+         * @param urls A comma-separated list of node URLs.
+         */
+        fun fromURLs(urls: String?): MultiEndpointService {
+            val endpointURLs = urls?.split(",")?.map { it.trim() }?.filter { it.isNotEmpty() } ?: listOf()
+            return MultiEndpointService(
+                endpointURLs.ifEmpty { listOf(HttpService.DEFAULT_URL) }.map { AsyncHttpService(it) }
+            )
+        }
+
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import android.util.Log
+import io.reactivex.disposables.Disposable
+import kotlinx.coroutines.flow.MutableStateFlow
+import kotlinx.coroutines.flow.StateFlow
+import org.web3j.protocol.Web3j
+import org.web3j.protocol.websocket.WebSocketService
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+
+/**
+ * Subscribes to new block headers using `eth_subscribe("newHeads")` over a WebSocket connection to an EVM-compatible
+ * blockchain node, so that [BlockchainService] can learn of new blocks as soon as they are created without repeatedly
+ * requesting the newest block number.
+ *
+ * @property url The URL of the WebSocket endpoint of the node, beginning with `ws://` or `wss://`.
+ * @property logTag The tag passed to [Log] calls.
+ * @property webSocketService The [WebSocketService] used for the current subscription, or `null` if there is none.
+ * @property subscription The [Disposable] for the current subscription, or `null` if there is none.
+ * @property isSubscribed Indicates whether the subscription is currently active. This becomes false if the WebSocket
+ * connection is closed or the subscription fails, in which case [subscribe] must be called again.
+ * @property newestBlockNumber The number of the most recent block header received since [subscribe] last connected,
+ * or `null` if none has been received.
+ */
+class NewHeadsSubscription(private val url: String) {
+
+    private val logTag = "NewHeadsSubscription"
+
+    private var webSocketService: WebSocketService? = null
+
+    private var subscription: Disposable? = null
+
+    @Volatile
+    var isSubscribed = false
+        private set
+
+    private val _newestBlockNumber = MutableStateFlow<BigInteger?>(null)
+
+    val newestBlockNumber: StateFlow<BigInteger?> = _newestBlockNumber
+
+    /**
+     * Connects to [url] and subscribes to new block headers, updating [newestBlockNumber] each time one is received. If
+     * this is already subscribed, this does nothing. This blocks the calling thread until the connection is open.
+     *
+     * @return `true` if the subscription is active once this returns, or `false` if connecting or subscribing failed.
+     */
+    @Synchronized
+    fun subscribe(): Boolean {
+        if (isSubscribed) {
+            return true
+        }
+        closeConnection()
+        // A header received before a previous connection was lost may be stale by now
+        _newestBlockNumber.value = null
+        return try {
+            val newWebSocketService = WebSocketService(url, false)
+            newWebSocketService.connect({}, { handleDisconnection(newWebSocketService, it) }, {
+                handleDisconnection(newWebSocketService, null)
+            })
+            webSocketService = newWebSocketService
+            isSubscribed = true
+            subscription = Web3j.build(newWebSocketService).newHeadsNotifications().subscribe({
+                val blockNumber = Numeric.decodeQuantity(it.params.result.number)
+                Log.i(logTag, "subscribe: got new head $blockNumber")
+                _newestBlockNumber.value = blockNumber
+            }, {
+                handleDisconnection(newWebSocketService, it)
+            })
+            Log.i(logTag, "subscribe: subscribed to new heads at $url")
+            isSubscribed
+        } catch (exception: Exception) {
+            Log.w(logTag, "subscribe: failed to subscribe to new heads at $url", exception)
+            closeConnection()
+            false
+        }
+    }
+
+    /**
+     * Cancels the subscription and closes the WebSocket connection, if they exist.
+     */
+    @Synchronized
+    fun unsubscribe() {
+        closeConnection()
+        Log.i(logTag, "unsubscribe: unsubscribed from new heads at $url")
+    }
+
+    /**
+     * Called when the connection of [service] is closed or its subscription fails. If [service] is the current
+     * [webSocketService], this marks the subscription as inactive and closes the connection.
+     *
+     * @param service The [WebSocketService] whose connection was closed or whose subscription failed.
+     * @param throwable The reason for the failure, or `null` if the connection was closed.
+     */
+    @Synchronized
+    private fun handleDisconnection(service: WebSocketService, throwable: Throwable?) {
+        if (service !== webSocketService) {
+            return
+        }
+        if (throwable != null) {
+            Log.w(logTag, "handleDisconnection: lost new heads subscription at $url", throwable)
+        } else {
+            Log.w(logTag, "handleDisconnection: new heads connection at $url was closed")
+        }
+        closeConnection()
+    }
+
+    /**
+     * Disposes of [subscription] and closes [webSocketService], if they exist, and marks the subscription as inactive.
+     */
+    private fun closeConnection() {
+        isSubscribed = false
+        val oldSubscription = subscription
+        val oldWebSocketService = webSocketService
+        subscription = null
+        webSocketService = null
+        try {
+            oldSubscription?.dispose()
+            oldWebSocketService?.close()
+        } catch (exception: Exception) {
+            Log.w(logTag, "closeConnection: got exception while closing connection to $url", exception)
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import android.util.Log
+import kotlinx.coroutines.future.await
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import org.web3j.protocol.core.DefaultBlockParameter
+import java.math.BigInteger
+import java.util.*
+
+/**
+ * Hands out the nonces of transactions sent by [BlockchainService] locally, so that transactions sent in quick
+ * succession get distinct, consecutive nonces without waiting for the node to learn of each other, and so that a
+ * transaction that depends on another can be sent right after it.
+ *
+ * For each account, this tracks the lowest nonce that may still be unused, the nonces of transactions that have been
+ * sent but not yet confirmed, and nonces that have been reserved for transactions that are about to be signed and
+ * sent. Transactions are created well before they are sent (so that their fees can be shown to the user), and some are
+ * never sent at all, so a nonce is only reserved once a transaction is about to be signed, and every reservation is
+ * distinct, even for identical transactions. A reservation ends when [markSent] or [handleSendFailure] is called, and
+ * expires [reservationTimeout] milliseconds after it is made, so that the nonce of a transaction that fails before it
+ * is sent is handed out again rather than leaving a gap.
+ *
+ * This reconciles an account with the node, by requesting its pending transaction count with
+ * [eth_getTransactionCount](https://ethereum.github.io/execution-apis/api-documentation/), when the account is first
+ * used and whenever [requestReconciliation], [handleSendFailure] or [markDropped] has been called since. The node's
+ * pending transaction count is the lowest nonce for which it knows of no transaction, so every lower nonce is known
+ * to be used. A single node may lag behind the others or may not yet have received a transaction, so reconciliation
+ * never lowers the lowest nonce that may be unused, and never treats a sent transaction as dropped. The nonce of a
+ * sent transaction only becomes a gap once [markDropped] is called for it, after the transaction has gone
+ * unconfirmed for too long, and if the node's pending transaction count then shows that it does not know of the
+ * transaction. [reserveNonce] always hands out the lowest nonce that is neither sent nor reserved, so gaps are
+ * filled before new nonces are used.
+ *
+ * @property web3 The [CommutoWeb3j] instance from which this requests pending transaction counts.
+ * @property reservationTimeout The number of milliseconds after which a nonce reserved for a transaction that has not
+ * been sent may be handed out again, which must be longer than it takes to sign and send a transaction.
+ * @property mutex A [Mutex] that ensures nonces are handed out one at a time.
+ * @property accounts A map of lowercase account addresses to the [AccountNonces] of those accounts.
+ */
+class NonceManager(
+    private val web3: CommutoWeb3j,
+    private val reservationTimeout: Long = 60_000L,
+) {
+
+    private val logTag = "NonceManager"
+
+    private val mutex = Mutex()
+
+    private val accounts = HashMap<String, AccountNonces>()
+
+    /**
+     * Reserves and returns the lowest nonce of the specified account that is neither used by a sent transaction nor
+     * reserved, reconciling the account with the node first if necessary. This should be called right before the
+     * transaction that will use the nonce is signed and sent.
+     *
+     * @param address The address of the account that will send the transaction.
+     *
+     * @return The reserved nonce.
+     *
+     * @throws BlockchainServiceException if the account must be reconciled and the node responds with an error.
+     */
+    suspend fun reserveNonce(address: String): BigInteger {
+        return mutex.withLock {
+            val account = getReconciledAccount(address)
+            val currentTime = System.currentTimeMillis()
+            account.reservations.values.removeIf { it <= currentTime }
+            var nonce = account.baseNonce
+            while (nonce in account.sentNonces || nonce in account.reservations) {
+                nonce++
+            }
+            if (account.sentNonces.isNotEmpty() && nonce < account.sentNonces.last()) {
+                Log.i(logTag, "reserveNonce: filling gap at nonce $nonce for $address")
+            }
+            account.reservations[nonce] = currentTime + reservationTimeout
+            nonce
+        }
+    }
+
+    /**
+     * Records that the node has accepted a transaction with the specified nonce from the specified account, so that
+     * the nonce will not be handed out again.
+     *
+     * @param address The address of the account that sent the transaction.
+     * @param nonce The nonce of the transaction.
+     */
+    suspend fun markSent(address: String, nonce: BigInteger) {
+        mutex.withLock {
+            val account = accounts[address.lowercase()] ?: return
+            account.reservations.remove(nonce)
+            if (nonce >= account.baseNonce) {
+                account.sentNonces.add(nonce)
+            }
+        }
+    }
+
+    /**
+     * Records that a transaction with the specified nonce from the specified account has been confirmed, so that
+     * neither it nor any lower nonce will be handed out again.
+     *
+     * @param address The address of the account that sent the transaction.
+     * @param nonce The nonce of the transaction.
+     */
+    suspend fun markConfirmed(address: String, nonce: BigInteger) {
+        mutex.withLock {
+            val account = accounts[address.lowercase()] ?: return
+            if (nonce >= account.baseNonce) {
+                account.baseNonce = nonce + BigInteger.ONE
+                account.discardNoncesBelowBase()
+            }
+        }
+    }
+
+    /**
+     * Records that sending a transaction with the specified nonce from the specified account failed, so that the nonce
+     * may be handed out again, and ensures that the account is reconciled with the node before another nonce is handed
+     * out, since the node may or may not have received the transaction.
+     *
+     * @param address The address of the account that tried to send the transaction.
+     * @param nonce The nonce of the transaction.
+     */
+    suspend fun handleSendFailure(address: String, nonce: BigInteger) {
+        mutex.withLock {
+            val account = accounts[address.lowercase()] ?: return
+            account.reservations.remove(nonce)
+            account.sentNonces.remove(nonce)
+            account.needsReconciliation = true
+        }
+    }
+
+    /**
+     * Records that a transaction with the specified nonce from the specified account has gone unconfirmed for so long
+     * that it may have been dropped, so that the nonce may be handed out again if the node's pending transaction count
+     * shows that it does not know of the transaction, and ensures that the account is reconciled with the node before
+     * another nonce is handed out.
+     *
+     * @param address The address of the account that sent the transaction.
+     * @param nonce The nonce of the transaction.
+     */
+    suspend fun markDropped(address: String, nonce: BigInteger) {
+        mutex.withLock {
+            val account = accounts[address.lowercase()] ?: return
+            account.sentNonces.remove(nonce)
+            account.needsReconciliation = true
+        }
+    }
+
+    /**
+     * Ensures that the specified account is reconciled with the node before another nonce is handed out. This should
+     * be called when a transaction sent by the account may have been dropped.
+     *
+     * @param address The address of the account to be reconciled.
+     */
+    suspend fun requestReconciliation(address: String) {
+        mutex.withLock {
+            accounts[address.lowercase()]?.needsReconciliation = true
+        }
+    }
+
+    /**
+     * Returns the [AccountNonces] of the specified account, first reconciling them with the node if the account has
+     * not been used or if reconciliation has been requested. This must only be called while [mutex] is locked.
+     *
+     * @param address The address of the account.
+     *
+     * @throws BlockchainServiceException if the node responds with an error.
+     */
+    private suspend fun getReconciledAccount(address: String): AccountNonces {
+        val account = accounts.getOrPut(address.lowercase()) { AccountNonces() }
+        if (account.needsReconciliation) {
+            val response = web3.ethGetTransactionCount(address, DefaultBlockParameter.valueOf("pending"))
+                .sendAsync().await()
+            if (response.hasError()) {
+                throw BlockchainServiceException("Got error getting transaction count of $address: " +
+                        response.error.message)
+            }
+            val pendingTransactionCount = response.transactionCount
+            Log.i(logTag, "getReconciledAccount: reconciling $address with pending transaction count " +
+                    "$pendingTransactionCount, local base nonce was ${account.baseNonce}")
+            if (pendingTransactionCount > account.baseNonce) {
+                account.baseNonce = pendingTransactionCount
+                account.discardNoncesBelowBase()
+            }
+            account.needsReconciliation = false
+        }
+        return account
+    }
+
+    /**
+     * The nonces of a single account.
+     *
+     * @property baseNonce The lowest nonce that may not yet be used by a transaction known to the node.
+     * @property sentNonces The nonces, no lower than [baseNonce], of transactions that the node has accepted but that
+     * have not been confirmed.
+     * @property reservations A map of nonces, no lower than [baseNonce], reserved for transactions that are about to be
+     * sent, to the times in milliseconds since the epoch at which those reservations expire.
+     * @property needsReconciliation Indicates whether this must be reconciled with the node before another nonce is
+     * handed out.
+     */
+    private class AccountNonces {
+
+        var baseNonce: BigInteger = BigInteger.ZERO
+
+        val sentNonces = TreeSet<BigInteger>()
+
+        val reservations = HashMap<BigInteger, Long>()
+
+        var needsReconciliation = true
+
+        /**
+         * Removes every sent or reserved nonce that is lower than [baseNonce].
+         */
+        fun discardNoncesBelowBase() {
+            sentNonces.headSet(baseNonce).clear()
+            reservations.keys.removeIf { it < baseNonce }
+        }
+
+    }
+
+}
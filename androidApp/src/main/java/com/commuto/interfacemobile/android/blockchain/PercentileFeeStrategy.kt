@@ -0,0 +1,62 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.protocol.core.methods.response.EthFeeHistory
+import java.math.BigInteger
+import kotlin.math.floor
+
+/**
+ * The default [FeeStrategy]. This uses the average of the [rewardPercentile] priority fees of the last [blockCount]
+ * blocks as the max priority fee per gas, and the sum of that and the [baseFeePercentile] base fee per gas of those
+ * blocks as the max fee per gas.
+ *
+ * @property blockCount The number of most recent blocks for which fee history should be requested.
+ * @property rewardPercentile The percentile of the effective priority fees per gas of each block's transactions that
+ * is averaged to get the max priority fee per gas.
+ * @property baseFeePercentile The fraction, between zero and one, of the base fees per gas (including that of the next
+ * block) that are lower than or equal to the base fee per gas used to get the max fee per gas.
+ */
+class PercentileFeeStrategy(
+    override val blockCount: Int = 20,
+    private val rewardPercentile: Double = 75.0,
+    private val baseFeePercentile: Double = 0.75,
+) : FeeStrategy {
+
+    init {
+        require(blockCount > 0) { "PercentileFeeStrategy blockCount must be positive" }
+        require(rewardPercentile in 0.0..100.0) { "PercentileFeeStrategy rewardPercentile must be between 0 and 100" }
+        require(baseFeePercentile in 0.0..1.0) { "PercentileFeeStrategy baseFeePercentile must be between 0 and 1" }
+    }
+
+    override val rewardPercentiles: List<Double> = listOf(rewardPercentile)
+
+    /**
+     * Estimates the fees that an EIP1559 transaction should specify from the specified fee history, as described in
+     * this class's documentation. Blocks for which the node returned no reward (because they contain no transactions)
+     * are ignored when averaging priority fees, and if no block has a reward, the max priority fee per gas is zero.
+     *
+     * @param feeHistory Fee history for the most recent [blockCount] blocks, with rewards at [rewardPercentiles].
+     *
+     * @return A [FeeEstimate] containing the estimated fees.
+     *
+     * @throws IllegalStateException if [feeHistory] contains no base fees per gas.
+     */
+    override fun estimate(feeHistory: EthFeeHistory.FeeHistory): FeeEstimate {
+        // Web3j's FeeHistory throws rather than returning null if the node returned no rewards or base fees
+        val rewards = feeHistory.rewardRaw?.let { feeHistory.reward }.orEmpty().mapNotNull { it.firstOrNull() }
+        val maxPriorityFeePerGas = if (rewards.isEmpty()) {
+            BigInteger.ZERO
+        } else {
+            rewards.fold(BigInteger.ZERO, BigInteger::add).divide(BigInteger.valueOf(rewards.size.toLong()))
+        }
+        val baseFeesPerGas = feeHistory.baseFeePerGasRaw?.let { feeHistory.baseFeePerGas }.orEmpty().sorted()
+        check(baseFeesPerGas.isNotEmpty()) { "Fee history contains no base fees per gas" }
+        val percentileIndex = floor(baseFeePercentile * baseFeesPerGas.size).toInt()
+            .coerceAtMost(baseFeesPerGas.size - 1)
+        val baseFeePerGas = baseFeesPerGas[percentileIndex]
+        return FeeEstimate(
+            maxPriorityFeePerGas = maxPriorityFeePerGas,
+            maxFeePerGas = baseFeePerGas + maxPriorityFeePerGas,
+        )
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import java.math.BigInteger
+import java.util.*
+
+/**
+ * A recently parsed block, which [BlockchainService] keeps so that it can find the point at which the chain forked
+ * after a chain reorganization, and which offers and swaps were affected by events in blocks that are no longer part of
+ * the chain.
+ *
+ * @property number The block number of the block.
+ * @property hash The hash of the block.
+ * @property offerIDs The IDs of the offers for which events were found in the block.
+ * @property swapIDs The IDs of the swaps for which events were found in the block.
+ */
+data class RecentBlock(
+    val number: BigInteger,
+    val hash: String,
+    val offerIDs: Set<UUID>,
+    val swapIDs: Set<UUID>,
+)
@@ -0,0 +1,80 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.Deferred
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Coalesces concurrent identical read requests, so that callers asking for the same data at the same time share a
+ * single in-flight request rather than each sending their own.
+ *
+ * A request is identified by its JSON-RPC method, its params and the block tag as of which it is made. While a
+ * request is in flight, every identical request shares its [Deferred]. Once it completes, successfully or not, it is
+ * forgotten, so the next identical request is sent anew; this never returns results of requests that have already
+ * completed. A caller that shares a request may receive a result read slightly before it asked, but never one read
+ * before the request it shares was sent.
+ *
+ * Callers must not cancel the [Deferred]s returned by [coalesce], since other callers may be awaiting them.
+ *
+ * @property inFlightRequests A map of the [Key]s of the requests that are in flight to their [Deferred]s.
+ * @property requestCount The number of calls to [coalesce].
+ * @property coalescedRequestCount The number of calls to [coalesce] that shared a request that was already in flight.
+ */
+class RequestCoalescer {
+
+    private val inFlightRequests = ConcurrentHashMap<Key, Deferred<*>>()
+
+    private val requestCount = AtomicLong(0L)
+
+    private val coalescedRequestCount = AtomicLong(0L)
+
+    /**
+     * The proportion of calls to [coalesce] that shared a request that was already in flight, or zero if [coalesce]
+     * has never been called.
+     */
+    val dedupRate: Double
+        get() {
+            val requests = requestCount.get()
+            return if (requests > 0L) coalescedRequestCount.get().toDouble() / requests else 0.0
+        }
+
+    /**
+     * Returns the [Deferred] of the in-flight request with the specified method, params and block tag if there is
+     * one, or otherwise sends a new request with [send] and returns its [Deferred].
+     *
+     * @param method The JSON-RPC method of the request.
+     * @param params The params of the request, other than the block tag, which must implement [Any.equals] and
+     * [Any.hashCode] by value.
+     * @param blockTag The block tag or number as of which the request is made, or `null` if the method does not accept
+     * one.
+     * @param send A function that sends the request without suspending and returns its [Deferred].
+     *
+     * @return A [Deferred] with the result of the request.
+     */
+    fun <T> coalesce(method: String, params: List<Any?>, blockTag: String?, send: () -> Deferred<T>): Deferred<T> {
+        requestCount.incrementAndGet()
+        val key = Key(method, params, blockTag)
+        var isNewRequest = false
+        val deferred = inFlightRequests.computeIfAbsent(key) {
+            isNewRequest = true
+            send()
+        }
+        if (isNewRequest) {
+            deferred.invokeOnCompletion { inFlightRequests.remove(key, deferred) }
+        } else {
+            coalescedRequestCount.incrementAndGet()
+        }
+        @Suppress("UNCHECKED_CAST")
+        return deferred as Deferred<T>
+    }
+
+    /**
+     * Identifies a request.
+     *
+     * @property method The JSON-RPC method of the request.
+     * @property params The params of the request, other than the block tag.
+     * @property blockTag The block tag or number as of which the request is made, if any.
+     */
+    private data class Key(val method: String, val params: List<Any?>, val blockTag: String?)
+
+}
@@ -0,0 +1,160 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import java.math.BigInteger
+import java.util.*
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * A bounded, least-recently-used cache of on-chain offer or swap structs, keyed by chain ID and the ID of the offer or
+ * swap, and tagged with the number of the block as of which each struct was read. A cached `null` value indicates that
+ * no such offer or swap existed as of that block.
+ *
+ * Entries never expire on their own. Instead, [BlockchainService] invalidates the entry of an offer or swap whenever it
+ * handles an event that affects it, or when a chain reorganization removes such an event. A read that began before an
+ * invalidation may have returned data that the invalidation was meant to discard, so [put] rejects any value read
+ * before the most recent invalidation; callers get a [readStamp] before reading a struct and pass it to [put].
+ *
+ * Every method is synchronized and none suspend, so a [StructCache] may safely be used from any number of coroutines
+ * and threads.
+ *
+ * @param T The type of struct that this caches.
+ * @property capacity The maximum number of entries that this holds. Once it is full, adding an entry evicts the least
+ * recently used entry.
+ * @property entries The entries of this cache, ordered from least to most recently used.
+ * @property invalidationCount The number of times [invalidate] or [clear] has been called.
+ * @property hitCount The number of calls to [get] that found an entry.
+ * @property missCount The number of calls to [get] that found no entry.
+ */
+class StructCache<T>(private val capacity: Int) {
+
+    init {
+        require(capacity > 0) { "StructCache capacity must be positive" }
+    }
+
+    private val entries = object : LinkedHashMap<Key, Entry<T>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Key, Entry<T>>?): Boolean {
+            return size > capacity
+        }
+    }
+
+    private var invalidationCount = 0L
+
+    private val hitCount = AtomicLong(0L)
+
+    private val missCount = AtomicLong(0L)
+
+    /**
+     * The number of calls to [get] that found an entry.
+     */
+    val hits: Long
+        get() = hitCount.get()
+
+    /**
+     * The number of calls to [get] that found no entry.
+     */
+    val misses: Long
+        get() = missCount.get()
+
+    /**
+     * The number of entries that this currently holds.
+     */
+    val size: Int
+        @Synchronized get() = entries.size
+
+    /**
+     * Returns the cached entry for the offer or swap with the specified ID on the specified chain, or `null` if there
+     * is no such entry, and counts the call as a hit or a miss.
+     *
+     * @param chainID The ID of the chain on which the offer or swap exists.
+     * @param id The ID of the offer or swap.
+     *
+     * @return The [Entry] for the offer or swap, or `null` if it is not cached.
+     */
+    @Synchronized
+    fun get(chainID: BigInteger, id: UUID): Entry<T>? {
+        val entry = entries[Key(chainID, id)]
+        if (entry == null) {
+            missCount.incrementAndGet()
+        } else {
+            hitCount.incrementAndGet()
+        }
+        return entry
+    }
+
+    /**
+     * Returns a value that must be passed to [put] along with a struct that is read after this is called, so that
+     * the struct is not cached if any entry is invalidated while it is being read.
+     */
+    @Synchronized
+    fun readStamp(): Long {
+        return invalidationCount
+    }
+
+    /**
+     * Caches [struct] as the data of the offer or swap with the specified ID on the specified chain as of the specified
+     * block, unless an entry has been invalidated since [readStamp] was called, or the cache already holds data about
+     * the offer or swap as of a later block.
+     *
+     * @param chainID The ID of the chain on which the offer or swap exists.
+     * @param id The ID of the offer or swap.
+     * @param struct The on-chain data of the offer or swap, or `null` if no such offer or swap exists.
+     * @param blockNumber The number of the block as of which [struct] was read.
+     * @param readStamp The value returned by [readStamp] before [struct] was read.
+     *
+     * @return `true` if [struct] was cached, or `false` otherwise.
+     */
+    @Synchronized
+    fun put(chainID: BigInteger, id: UUID, struct: T?, blockNumber: BigInteger, readStamp: Long): Boolean {
+        if (readStamp != invalidationCount) {
+            return false
+        }
+        val key = Key(chainID, id)
+        val existingEntry = entries[key]
+        if (existingEntry != null && existingEntry.blockNumber > blockNumber) {
+            return false
+        }
+        entries[key] = Entry(struct, blockNumber)
+        return true
+    }
+
+    /**
+     * Removes the entries of the offers or swaps with the specified IDs on the specified chain, and prevents any
+     * struct read before this call from being cached.
+     *
+     * @param chainID The ID of the chain on which the offers or swaps exist.
+     * @param ids The IDs of the offers or swaps.
+     */
+    @Synchronized
+    fun invalidate(chainID: BigInteger, ids: Collection<UUID>) {
+        invalidationCount++
+        for (id in ids) {
+            entries.remove(Key(chainID, id))
+        }
+    }
+
+    /**
+     * Removes every entry, and prevents any struct read before this call from being cached.
+     */
+    @Synchronized
+    fun clear() {
+        invalidationCount++
+        entries.clear()
+    }
+
+    /**
+     * The key of an entry in a [StructCache].
+     *
+     * @property chainID The ID of the chain on which the offer or swap exists.
+     * @property id The ID of the offer or swap.
+     */
+    private data class Key(val chainID: BigInteger, val id: UUID)
+
+    /**
+     * An entry in a [StructCache].
+     *
+     * @property struct The on-chain data of the offer or swap, or `null` if no such offer or swap existed.
+     * @property blockNumber The number of the block as of which [struct] was read.
+     */
+    class Entry<T>(val struct: T?, val blockNumber: BigInteger)
+
+}
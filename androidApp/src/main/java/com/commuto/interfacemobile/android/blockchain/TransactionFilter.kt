@@ -0,0 +1,21 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.protocol.core.methods.response.Transaction
+
+/**
+ * Decides which transactions in a block are relevant to [BlockchainService] when its ingestion mode is
+ * [BlockchainIngestionMode.FULL_BLOCKS], so that it requests only the receipts of those transactions. The receipts of
+ * monitored transactions are always requested, whether or not this considers them relevant.
+ */
+interface TransactionFilter {
+
+    /**
+     * Indicates whether the receipt of the specified transaction may contain events that [BlockchainService] handles.
+     *
+     * @param transaction The full transaction object, as included in a block.
+     *
+     * @return `true` if the receipt of [transaction] should be requested and parsed, or `false` otherwise.
+     */
+    fun isRelevant(transaction: Transaction): Boolean
+
+}
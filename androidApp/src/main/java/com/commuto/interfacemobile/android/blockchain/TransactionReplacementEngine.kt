@@ -0,0 +1,178 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.web3j.crypto.RawTransaction
+import org.web3j.crypto.transaction.type.Transaction1559
+import java.math.BigInteger
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Decides when a sent EIP1559 transaction that has not been confirmed should be replaced by one with the same nonce
+ * and higher fees, creates such replacements, and keeps track of the hashes of every transaction sent in place of each
+ * original [BlockchainTransaction], so that [BlockchainService] can treat all of them as one logical transaction.
+ *
+ * The `n`th replacement of a transaction becomes due once [feeBumpBlockCounts]`[n]` blocks have been created since
+ * the original was sent, so a transaction is replaced at most as many times as [feeBumpBlockCounts] has elements. Nodes
+ * only accept a replacement if both its max fee per gas and its max priority fee per gas exceed those of the
+ * transaction it replaces by some minimum proportion (10% by default in Geth), so each replacement raises both by at
+ * least 12.5%, or to the current [FeeEstimate] if that is higher.
+ *
+ * @property feeBumpBlockCounts The numbers of blocks after which successive replacements become due, in ascending
+ * order.
+ * @property logicalTransactions A map of the hashes of original [BlockchainTransaction]s to the [LogicalTransaction]s
+ * that contain them.
+ */
+class TransactionReplacementEngine(private val feeBumpBlockCounts: List<Long> = listOf(3L, 6L, 12L, 24L)) {
+
+    init {
+        require(feeBumpBlockCounts.zipWithNext().all { (first, second) -> first < second }) {
+            "TransactionReplacementEngine feeBumpBlockCounts must be in ascending order"
+        }
+    }
+
+    private val logicalTransactions = ConcurrentHashMap<String, LogicalTransaction>()
+
+    /**
+     * Begins tracking the specified [BlockchainTransaction], which has just been sent, if it wraps an EIP1559
+     * transaction and [feeBumpBlockCounts] is not empty.
+     *
+     * @param transaction The [BlockchainTransaction] that has been sent.
+     * @param blockNumber The number of the newest block at the time [transaction] was sent.
+     */
+    fun handleSentTransaction(transaction: BlockchainTransaction, blockNumber: BigInteger) {
+        val rawTransaction = transaction.transaction
+        if (feeBumpBlockCounts.isEmpty() || rawTransaction?.transaction !is Transaction1559) {
+            return
+        }
+        logicalTransactions.putIfAbsent(
+            transaction.transactionHash,
+            LogicalTransaction(transaction, rawTransaction, blockNumber)
+        )
+    }
+
+    /**
+     * Returns the [LogicalTransaction]s that are due to be replaced as of the block with the specified number.
+     *
+     * @param newestBlockNumber The number of the newest block.
+     */
+    fun getTransactionsDueForReplacement(newestBlockNumber: BigInteger): List<LogicalTransaction> {
+        return logicalTransactions.values.filter { logicalTransaction ->
+            val feeBumpBlockCount = feeBumpBlockCounts.getOrNull(logicalTransaction.replacementCount)
+            feeBumpBlockCount != null &&
+                    newestBlockNumber - logicalTransaction.sentBlockNumber >= BigInteger.valueOf(feeBumpBlockCount)
+        }
+    }
+
+    /**
+     * Creates an unsigned replacement for the most recently sent transaction of [logicalTransaction], with the same
+     * nonce, gas limit, recipient, value and data, and with fees raised as described in this class's documentation.
+     *
+     * @param logicalTransaction The [LogicalTransaction] to be replaced.
+     * @param feeEstimate A [FeeEstimate] for a transaction to be included in one of the next blocks.
+     *
+     * @return The replacement [RawTransaction].
+     */
+    fun createReplacement(logicalTransaction: LogicalTransaction, feeEstimate: FeeEstimate): RawTransaction {
+        val currentTransaction = logicalTransaction.currentTransaction
+        val currentFees = currentTransaction.transaction as Transaction1559
+        val maxPriorityFeePerGas = bumpFee(currentFees.maxPriorityFeePerGas).max(feeEstimate.maxPriorityFeePerGas)
+        val maxFeePerGas = bumpFee(currentFees.maxFeePerGas).max(feeEstimate.maxFeePerGas).max(maxPriorityFeePerGas)
+        return RawTransaction.createTransaction(
+            currentFees.chainId,
+            currentTransaction.nonce,
+            currentTransaction.gasLimit,
+            currentTransaction.to,
+            currentTransaction.value,
+            currentTransaction.data,
+            maxPriorityFeePerGas,
+            maxFeePerGas
+        )
+    }
+
+    /**
+     * Records that a replacement for [logicalTransaction] has been sent.
+     *
+     * @param logicalTransaction The [LogicalTransaction] that has been replaced.
+     * @param replacement The replacement, created by [createReplacement].
+     * @param replacementHash The hash of the signed replacement.
+     */
+    fun handleSentReplacement(
+        logicalTransaction: LogicalTransaction,
+        replacement: RawTransaction,
+        replacementHash: String
+    ) {
+        logicalTransaction.currentTransaction = replacement
+        logicalTransaction.transactionHashes.add(replacementHash)
+        logicalTransaction.replacementCount++
+    }
+
+    /**
+     * Records that [logicalTransaction] should no longer be replaced, although the hashes of the transactions sent for
+     * it are still returned by [getTransactionHashes].
+     */
+    fun stopReplacing(logicalTransaction: LogicalTransaction) {
+        logicalTransaction.replacementCount = feeBumpBlockCounts.size
+    }
+
+    /**
+     * Returns the hashes of the original transaction with the specified hash and of all replacements sent for it, or
+     * a list containing only the specified hash if it is not the hash of a tracked original transaction.
+     *
+     * @param originalTransactionHash The hash of the original transaction.
+     */
+    fun getTransactionHashes(originalTransactionHash: String): List<String> {
+        return logicalTransactions[originalTransactionHash]?.transactionHashes?.toList()
+            ?: listOf(originalTransactionHash)
+    }
+
+    /**
+     * Stops tracking the logical transaction of the original transaction with the specified hash, and returns the
+     * hashes of the original transaction and of all replacements sent for it.
+     *
+     * @param originalTransactionHash The hash of the original transaction.
+     */
+    fun remove(originalTransactionHash: String): List<String> {
+        return logicalTransactions.remove(originalTransactionHash)?.transactionHashes?.toList()
+            ?: listOf(originalTransactionHash)
+    }
+
+    /**
+     * An original [BlockchainTransaction] and the replacements sent for it.
+     *
+     * @property transaction The original [BlockchainTransaction], which offer and swap state refers to.
+     * @property currentTransaction The most recently sent [RawTransaction] with the nonce of [transaction].
+     * @property sentBlockNumber The number of the newest block at the time [transaction] was sent.
+     * @property transactionHashes The hashes of [transaction] and of every replacement sent for it, in the order in
+     * which they were sent.
+     * @property replacementCount The number of replacements that have been sent for [transaction].
+     */
+    class LogicalTransaction(
+        val transaction: BlockchainTransaction,
+        currentTransaction: RawTransaction,
+        val sentBlockNumber: BigInteger,
+    ) {
+
+        @Volatile
+        var currentTransaction: RawTransaction = currentTransaction
+            internal set
+
+        val transactionHashes = CopyOnWriteArrayList(listOf(transaction.transactionHash))
+
+        @Volatile
+        var replacementCount = 0
+            internal set
+
+    }
+
+    companion object {
+
+        /**
+         * Returns [fee] raised by 12.5%, rounded up.
+         */
+        fun bumpFee(fee: BigInteger): BigInteger {
+            return fee + (fee + BigInteger.valueOf(7L)).divide(BigInteger.valueOf(8L))
+        }
+
+    }
+
+}
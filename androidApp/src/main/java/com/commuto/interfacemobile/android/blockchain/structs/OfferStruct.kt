@@ -1,5 +1,6 @@
 package com.commuto.interfacemobile.android.blockchain.structs
 
+import com.commuto.interfacemobile.android.contractwrapper.AbiReader
 import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
 import java.math.BigInteger
 
@@ -137,5 +138,41 @@ data class OfferStruct(
                 OfferStruct(offer, chainID)
             }
         }
+
+        /**
+         * Creates an [OfferStruct] directly from the ABI-encoded return data of a call to CommutoSwap's `getOffer`
+         * function and the specified [chainID] if the offer's `isCreated` property is true, or returns null if false.
+         * This reads each value with an [AbiReader] rather than decoding the data into a [CommutoSwap.Offer] first.
+         *
+         * @param returnData The ABI-encoded return data of a `getOffer` call.
+         * @param chainID The ID of the blockchain on which this offer exists.
+         *
+         * @return An [OfferStruct] derived from [returnData] and [chainID] if the offer's `isCreated` property is true,
+         * or null if false.
+         *
+         * @throws IllegalArgumentException if [returnData] is not a valid encoding of an on-chain Offer.
+         */
+        fun createFromGetOfferReturnData(returnData: ByteArray, chainID: BigInteger): OfferStruct? {
+            val offer = AbiReader(returnData).readTuple(0)
+            return if (!offer.readBool(0)) {
+                null
+            } else {
+                OfferStruct(
+                    isCreated = true,
+                    isTaken = offer.readBool(1),
+                    maker = offer.readAddress(2),
+                    interfaceID = offer.readDynamicBytes(3),
+                    stablecoin = offer.readAddress(4),
+                    amountLowerBound = offer.readUint(5),
+                    amountUpperBound = offer.readUint(6),
+                    securityDepositAmount = offer.readUint(7),
+                    serviceFeeRate = offer.readUint(8),
+                    direction = offer.readUint(9),
+                    settlementMethods = offer.readDynamicBytesArray(10),
+                    protocolVersion = offer.readUint(11),
+                    chainID = chainID,
+                )
+            }
+        }
     }
 }
\ No newline at end of file
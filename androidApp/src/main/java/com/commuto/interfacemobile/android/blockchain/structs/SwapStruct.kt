@@ -1,5 +1,6 @@
 package com.commuto.interfacemobile.android.blockchain.structs
 
+import com.commuto.interfacemobile.android.contractwrapper.AbiReader
 import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
 import java.math.BigInteger
 
@@ -192,6 +193,51 @@ data class SwapStruct(
                 SwapStruct(swap, chainID)
             }
         }
+
+        /**
+         * Creates a [SwapStruct] directly from the ABI-encoded return data of a call to CommutoSwap's `getSwap` function
+         * and the specified [chainID] if the swap's `isCreated` property is true, or returns null if false. This reads
+         * each value with an [AbiReader] rather than decoding the data into a [CommutoSwap.Swap] first.
+         *
+         * @param returnData The ABI-encoded return data of a `getSwap` call.
+         * @param chainID The ID of the blockchain on which this swap exists.
+         *
+         * @return A [SwapStruct] derived from [returnData] and [chainID] if the swap's `isCreated` property is true, or
+         * null if false.
+         *
+         * @throws IllegalArgumentException if [returnData] is not a valid encoding of an on-chain Swap.
+         */
+        fun createFromGetSwapReturnData(returnData: ByteArray, chainID: BigInteger): SwapStruct? {
+            val swap = AbiReader(returnData).readTuple(0)
+            return if (!swap.readBool(0)) {
+                null
+            } else {
+                SwapStruct(
+                    isCreated = true,
+                    requiresFill = swap.readBool(1),
+                    maker = swap.readAddress(2),
+                    makerInterfaceID = swap.readDynamicBytes(3),
+                    taker = swap.readAddress(4),
+                    takerInterfaceID = swap.readDynamicBytes(5),
+                    stablecoin = swap.readAddress(6),
+                    amountLowerBound = swap.readUint(7),
+                    amountUpperBound = swap.readUint(8),
+                    securityDepositAmount = swap.readUint(9),
+                    takenSwapAmount = swap.readUint(10),
+                    serviceFeeAmount = swap.readUint(11),
+                    serviceFeeRate = swap.readUint(12),
+                    direction = swap.readUint(13),
+                    settlementMethod = swap.readDynamicBytes(14),
+                    protocolVersion = swap.readUint(15),
+                    isPaymentSent = swap.readBool(16),
+                    isPaymentReceived = swap.readBool(17),
+                    hasBuyerClosed = swap.readBool(18),
+                    hasSellerClosed = swap.readBool(19),
+                    disputeRaiser = swap.readUint(20),
+                    chainID = chainID,
+                )
+            }
+        }
     }
 
 }
\ No newline at end of file
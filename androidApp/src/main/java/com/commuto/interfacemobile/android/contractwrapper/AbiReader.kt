@@ -0,0 +1,177 @@
+package com.commuto.interfacemobile.android.contractwrapper
+
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+
+/**
+ * Reads values from [ABI-encoded](https://docs.soliditylang.org/en/latest/abi-spec.html) data, such as the return data
+ * of a contract call or the data of an event log.
+ *
+ * Web3j's [org.web3j.abi.FunctionReturnDecoder] and our [TypeDecoder] work on hexadecimal [String]s, slicing out a new
+ * substring for every value, and use reflection to create each decoded value. Since the layout of the structs and
+ * events that we decode is known ahead of time, this instead reads values from a [ByteArray] using offset arithmetic,
+ * so that decoding a value only allocates the value itself.
+ *
+ * Values are addressed by the index of the 32-byte word at which they (or, for dynamic types, their offsets) are
+ * encoded, relative to the start of the tuple that this reads.
+ *
+ * @property data The ABI-encoded data.
+ * @property start The index in [data] at which the tuple that this reads begins.
+ */
+class AbiReader(private val data: ByteArray, private val start: Int = 0) {
+
+    /**
+     * Returns the index in [data] of the first byte of the word at index [word] of this tuple, ensuring that the whole
+     * word lies within [data].
+     *
+     * @throws IllegalArgumentException if the word does not lie within [data].
+     */
+    private fun wordStart(word: Int): Int {
+        val index = start + word * WORD_LENGTH
+        require(word >= 0 && index >= start && index + WORD_LENGTH <= data.size) {
+            "Word $word at offset $start is out of bounds of ${data.size} bytes of ABI data"
+        }
+        return index
+    }
+
+    /**
+     * Reads the word at index [word] as an unsigned integer that must fit in an [Int], such as the offset of a dynamic
+     * value or the length of a dynamic value.
+     *
+     * @throws IllegalArgumentException if the value does not fit in an [Int].
+     */
+    private fun readLength(word: Int): Int {
+        val index = wordStart(word)
+        for (i in index until index + WORD_LENGTH - 4) {
+            require(data[i] == 0.toByte()) { "Length or offset in word $word at offset $start is too large" }
+        }
+        val value = ((data[index + 28].toInt() and 0xff) shl 24) or
+                ((data[index + 29].toInt() and 0xff) shl 16) or
+                ((data[index + 30].toInt() and 0xff) shl 8) or
+                (data[index + 31].toInt() and 0xff)
+        require(value >= 0) { "Length or offset in word $word at offset $start is too large" }
+        return value
+    }
+
+    /**
+     * Reads the `uint` at word index [word].
+     */
+    fun readUint(word: Int): BigInteger {
+        val index = wordStart(word)
+        var firstNonZero = index
+        while (firstNonZero < index + WORD_LENGTH && data[firstNonZero] == 0.toByte()) {
+            firstNonZero++
+        }
+        val length = index + WORD_LENGTH - firstNonZero
+        return if (length < 8 || (length == 8 && data[firstNonZero] >= 0)) {
+            // Most values fit in a positive long, so we can avoid copying the word
+            var value = 0L
+            for (i in firstNonZero until index + WORD_LENGTH) {
+                value = (value shl 8) or (data[i].toLong() and 0xff)
+            }
+            BigInteger.valueOf(value)
+        } else {
+            BigInteger(1, data.copyOfRange(firstNonZero, index + WORD_LENGTH))
+        }
+    }
+
+    /**
+     * Reads the `bool` at word index [word].
+     */
+    fun readBool(word: Int): Boolean {
+        return data[wordStart(word) + WORD_LENGTH - 1] != 0.toByte()
+    }
+
+    /**
+     * Reads the `address` at word index [word], as a lowercase hexadecimal [String] beginning with "0x", in the same
+     * form as [org.web3j.abi.datatypes.Address.toString].
+     */
+    fun readAddress(word: Int): String {
+        val addressStart = wordStart(word) + WORD_LENGTH - ADDRESS_LENGTH
+        val characters = CharArray(2 + ADDRESS_LENGTH * 2)
+        characters[0] = '0'
+        characters[1] = 'x'
+        for (i in 0 until ADDRESS_LENGTH) {
+            val byte = data[addressStart + i].toInt()
+            characters[2 + i * 2] = HEX_DIGITS[(byte shr 4) and 0xf]
+            characters[3 + i * 2] = HEX_DIGITS[byte and 0xf]
+        }
+        return String(characters)
+    }
+
+    /**
+     * Reads the fixed-size `bytes<length>` value at word index [word].
+     */
+    fun readFixedBytes(word: Int, length: Int): ByteArray {
+        require(length in 1..WORD_LENGTH) { "Invalid fixed bytes length $length" }
+        val index = wordStart(word)
+        return data.copyOfRange(index, index + length)
+    }
+
+    /**
+     * Reads the dynamic `bytes` value whose offset is at word index [word].
+     */
+    fun readDynamicBytes(word: Int): ByteArray {
+        return readTuple(word).readBytesContents()
+    }
+
+    /**
+     * Reads the dynamic `bytes[]` value whose offset is at word index [word].
+     */
+    fun readDynamicBytesArray(word: Int): List<ByteArray> {
+        val array = readTuple(word)
+        val count = array.readLength(0)
+        // The offsets of the elements are relative to the word following the element count
+        val elements = AbiReader(data, array.start + WORD_LENGTH)
+        return List(count) { elements.readDynamicBytes(it) }
+    }
+
+    /**
+     * Returns an [AbiReader] for the dynamic tuple (or other dynamic value) whose offset is at word index [word].
+     */
+    fun readTuple(word: Int): AbiReader {
+        val tupleStart = start + readLength(word)
+        require(tupleStart >= start && tupleStart <= data.size) {
+            "Offset in word $word at offset $start is out of bounds of ${data.size} bytes of ABI data"
+        }
+        return AbiReader(data, tupleStart)
+    }
+
+    /**
+     * Reads the contents of the dynamic `bytes` value beginning at [start], which consists of a length word followed by
+     * that many bytes.
+     */
+    private fun readBytesContents(): ByteArray {
+        val length = readLength(0)
+        val contentsStart = start + WORD_LENGTH
+        require(contentsStart + length <= data.size && contentsStart + length >= contentsStart) {
+            "Dynamic bytes at offset $start of length $length are out of bounds of ${data.size} bytes of ABI data"
+        }
+        return data.copyOfRange(contentsStart, contentsStart + length)
+    }
+
+    companion object {
+        /**
+         * The length of an ABI word, in bytes.
+         */
+        const val WORD_LENGTH = 32
+
+        /**
+         * The length of an address, in bytes.
+         */
+        private const val ADDRESS_LENGTH = 20
+
+        /**
+         * The lowercase hexadecimal digits, used to convert addresses to [String]s.
+         */
+        private val HEX_DIGITS = "0123456789abcdef".toCharArray()
+
+        /**
+         * Creates an [AbiReader] for ABI-encoded data given as a hexadecimal [String], with or without a "0x" prefix.
+         */
+        fun fromHexString(hexData: String): AbiReader {
+            return AbiReader(Numeric.hexStringToByteArray(hexData))
+        }
+    }
+
+}
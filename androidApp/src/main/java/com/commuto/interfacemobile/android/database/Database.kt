@@ -23,6 +23,7 @@ internal class Database(databaseDriverFactory: DatabaseDriverFactory) {
         dbQuery.createKeyPairTable()
         dbQuery.createSwapTable()
         dbQuery.createUserSettlementMethodTable()
+        dbQuery.createBlockCheckpointTable()
     }
 
     /**
@@ -37,6 +38,7 @@ internal class Database(databaseDriverFactory: DatabaseDriverFactory) {
             dbQuery.removeAllPublicKeys()
             dbQuery.removeAllSwaps()
             dbQuery.removeAllUserSettlementMethods()
+            dbQuery.removeAllBlockCheckpoints()
         }
     }
 
@@ -120,6 +122,15 @@ internal class Database(databaseDriverFactory: DatabaseDriverFactory) {
         return dbQuery.selectUserSettlementMethodByID(id).executeAsList()
     }
 
+    /**
+     * Returns [BlockCheckpoint]s with the specified blockchain ID.
+     * @param chainID The ID of the blockchain for which checkpoints should be returned.
+     * @return A [List] of [BlockCheckpoint]s with chain IDs equal to [chainID].
+     */
+    internal fun selectBlockCheckpointByChainID(chainID: String): List<BlockCheckpoint> {
+        return dbQuery.selectBlockCheckpointByChainID(chainID).executeAsList()
+    }
+
     /**
      * Inserts an [Offer] into the database.
      * @param offer The [Offer] to be inserted in the database.
@@ -292,6 +303,19 @@ internal class Database(databaseDriverFactory: DatabaseDriverFactory) {
         )
     }
 
+    /**
+     * Inserts a [BlockCheckpoint] into the database, replacing any existing [BlockCheckpoint] with the same chain ID.
+     * This is done with a single statement, so the checkpoint is updated atomically.
+     * @param checkpoint The [BlockCheckpoint] to be inserted in the database.
+     */
+    internal fun insertOrReplaceBlockCheckpoint(checkpoint: BlockCheckpoint) {
+        dbQuery.insertOrReplaceBlockCheckpoint(
+            chainID = checkpoint.chainID,
+            blockNumber = checkpoint.blockNumber,
+            blockHash = checkpoint.blockHash
+        )
+    }
+
     /**
      * Updates the [Offer.havePublicKey] property of the [Offer] with the specified [offerID] and [chainID].
      * @param offerID The ID of the [Offer] to be updated.
@@ -1729,4 +1729,53 @@ open class DatabaseService(
         }
     }
 
+    /**
+     * Persistently stores the number and hash of the most recently parsed block of the blockchain with the specified
+     * chain ID, replacing any block checkpoint previously stored for that chain ID.
+     *
+     * @param chainID The ID of the blockchain to which the block belongs.
+     * @param blockNumber The number of the most recently parsed block.
+     * @param blockHash The hash of the most recently parsed block.
+     */
+    @OptIn(DelicateCoroutinesApi::class)
+    suspend fun storeBlockCheckpoint(chainID: String, blockNumber: Long, blockHash: String) {
+        withContext(databaseServiceContext) {
+            database.insertOrReplaceBlockCheckpoint(
+                BlockCheckpoint(
+                    chainID = chainID,
+                    blockNumber = blockNumber,
+                    blockHash = blockHash
+                )
+            )
+        }
+        Log.i(logTag, "storeBlockCheckpoint: stored block $blockNumber for chain ID $chainID")
+    }
+
+    /**
+     * Retrieves the persistently stored number and hash of the most recently parsed block of the blockchain with the
+     * specified chain ID, or returns null if no such block checkpoint is present.
+     *
+     * @param chainID The ID of the blockchain for which the block checkpoint should be returned.
+     *
+     * @return A [BlockCheckpoint] if one with the specified chain ID is found, or null if no such checkpoint is found.
+     *
+     * @throws IllegalStateException if multiple block checkpoints are found for a single chain ID.
+     */
+    @OptIn(DelicateCoroutinesApi::class)
+    suspend fun getBlockCheckpoint(chainID: String): BlockCheckpoint? {
+        val dbBlockCheckpoints: List<BlockCheckpoint> = withContext(databaseServiceContext) {
+            database.selectBlockCheckpointByChainID(chainID)
+        }
+        return if (dbBlockCheckpoints.size > 1) {
+            throw IllegalStateException("Multiple block checkpoints found with given chain id $chainID")
+        } else if (dbBlockCheckpoints.size == 1) {
+            Log.i(logTag, "getBlockCheckpoint: returning block ${dbBlockCheckpoints[0].blockNumber} for chain ID " +
+                    chainID)
+            dbBlockCheckpoints[0]
+        } else {
+            Log.i(logTag, "getBlockCheckpoint: no block checkpoint found for chain ID $chainID")
+            null
+        }
+    }
+
 }
\ No newline at end of file
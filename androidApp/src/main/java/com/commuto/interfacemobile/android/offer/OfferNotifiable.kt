@@ -4,6 +4,8 @@ import com.commuto.interfacemobile.android.blockchain.BlockchainTransaction
 import com.commuto.interfacemobile.android.blockchain.BlockchainTransactionException
 import com.commuto.interfacemobile.android.blockchain.events.commutoswap.*
 import com.commuto.interfacemobile.android.blockchain.events.erc20.ApprovalEvent
+import java.math.BigInteger
+import java.util.*
 import javax.inject.Singleton
 
 /**
@@ -74,4 +76,16 @@ interface OfferNotifiable {
      * @param event the [ServiceFeeRateChangedEvent] of which
      */
     suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent)
+
+    /**
+     * The method called by [com.commuto.interfacemobile.android.blockchain.BlockchainService] in order to notify the
+     * class implementing this interface that a chain reorganization has removed blocks containing events for the offers
+     * with the specified IDs. Events in the blocks that replaced the removed ones will be passed to the class
+     * implementing this interface as usual, so the implementation of this method should re-derive the state of the
+     * specified offers that was derived from events in the removed blocks. By default, this does nothing.
+     *
+     * @param offerIDs The IDs of the offers for which events were found in blocks removed by the reorganization.
+     * @param chainID The ID of the blockchain that was reorganized.
+     */
+    suspend fun handleChainReorganization(offerIDs: Set<UUID>, chainID: BigInteger) {}
 }
\ No newline at end of file
@@ -546,13 +546,16 @@ class OfferService (
                 databaseService.storeOfferSettlementMethods(offerForDatabase.id, offerForDatabase.chainID,
                     settlementMethodStrings)
                 Log.i(logTag, "approveTokenTransferToOpenOffer: signing transaction for ${newOffer.id}")
+                val transactionToSend = blockchainService.assignNonce(
+                    transaction = approveTokenTransferToOpenOfferTransaction
+                )
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = approveTokenTransferToOpenOfferTransaction,
+                    transaction = transactionToSend,
                     chainID = newOffer.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val blockchainTransactionForApprovingTransfer = BlockchainTransaction(
-                    transaction = approveTokenTransferToOpenOfferTransaction,
+                    transaction = transactionToSend,
                     transactionHash = Hash.sha3(signedTransactionHex),
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER
@@ -697,13 +700,14 @@ class OfferService (
                             "transaction created with offer ${offer.id}")
                 }
                 Log.i(logTag, "openOffer: signing transaction for ${offer.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = offerOpeningTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = offerOpeningTransaction,
+                    transaction = transactionToSend,
                     chainID = offer.chainID,
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val blockchainTransactionForOfferOpening = BlockchainTransaction(
-                    transaction = offerOpeningTransaction,
+                    transaction = transactionToSend,
                     transactionHash = Hash.sha3(signedTransactionHex),
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.OPEN_OFFER
@@ -895,14 +899,15 @@ class OfferService (
                     throw OfferServiceException("Transaction was null during cancelOffer call for ${offer.id}")
                 }
                 Log.i(logTag, "cancelOffer: signing transaction for ${offer.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = offerCancellationTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = offerCancellationTransaction,
+                    transaction = transactionToSend,
                     chainID = offer.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val transactionHash = Hash.sha3(signedTransactionHex)
                 val blockchainTransactionForOfferCancellation = BlockchainTransaction(
-                    transaction = offerCancellationTransaction,
+                    transaction = transactionToSend,
                     transactionHash = transactionHash,
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.CANCEL_OFFER,
@@ -1191,14 +1196,15 @@ class OfferService (
                             "transaction created with newSettlementMethods")
                 }
                 Log.i(logTag, "editOffer: signing transaction for ${offer.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = offerEditingTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = offerEditingTransaction,
+                    transaction = transactionToSend,
                     chainID = offer.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val transactionHash = Hash.sha3(signedTransactionHex)
                 val blockchainTransactionForOfferEditing = BlockchainTransaction(
-                    transaction = offerEditingTransaction,
+                    transaction = transactionToSend,
                     transactionHash = transactionHash,
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.EDIT_OFFER,
@@ -1431,13 +1437,16 @@ class OfferService (
                             "not match that of transaction created with supplied data")
                 }
                 Log.i(logTag, "approveTokenTransferToTakeOffer: signing transaction for ${offerToTake.id}")
+                val transactionToSend = blockchainService.assignNonce(
+                    transaction = approveTokenTransferToTakeOfferTransaction
+                )
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = approveTokenTransferToTakeOfferTransaction,
+                    transaction = transactionToSend,
                     chainID = offerToTake.chainID,
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val blockchainTransactionForApprovingTransfer = BlockchainTransaction(
-                    transaction = approveTokenTransferToTakeOfferTransaction,
+                    transaction = transactionToSend,
                     transactionHash = Hash.sha3(signedTransactionHex),
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_TAKE_OFFER
@@ -1710,13 +1719,14 @@ class OfferService (
                 )
                 databaseService.storeSwap(swap = swapForDatabase)
                 Log.i(logTag, "takeOffer: signing transaction for ${offerToTake.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = offerTakingTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = offerTakingTransaction,
+                    transaction = transactionToSend,
                     chainID = offerToTake.chainID,
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val blockchainTransactionForOfferTaking = BlockchainTransaction(
-                    transaction = offerTakingTransaction,
+                    transaction = transactionToSend,
                     transactionHash = Hash.sha3(signedTransactionHex),
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.TAKE_OFFER
@@ -3181,4 +3191,53 @@ class OfferService (
                 "${event.newServiceFeeRate}")
     }
 
+    /**
+     * The method called by [BlockchainService] to notify [OfferService] that a chain reorganization has removed blocks
+     * containing events for the offers with the specified IDs.
+     *
+     * This gets the current on-chain data of all such offers with a single call to [BlockchainService.getOffers]. If
+     * one of these offers does not exist on chain, but an [Offer] with the same ID and chain ID that was not made by
+     * the user of this interface exists in [offerTruthSource], then the event that opened the offer is no longer part
+     * of the chain, so this removes the offer from [offerTruthSource] on the main coroutine dispatcher, and then
+     * removes the offer and its settlement methods from persistent storage. (Offers made by the user are left alone,
+     * since the transaction that opened them may be included in a later block.) If the offer does exist on chain and
+     * has not been taken, was not made by the user, and does not exist in [offerTruthSource], then the event that
+     * canceled or took the offer is no longer part of the chain, so this restores the offer by handling an
+     * [OfferOpenedEvent] for it. Events in the blocks that replaced the removed ones will then be handled as usual.
+     *
+     * @param offerIDs The IDs of the offers for which events were found in blocks removed by the reorganization.
+     * @param chainID The ID of the blockchain that was reorganized.
+     */
+    override suspend fun handleChainReorganization(offerIDs: Set<UUID>, chainID: BigInteger) {
+        val offerStructs = blockchainService.getOffers(offerIDs)
+        for (offerID in offerIDs) {
+            val offerStruct = offerStructs[offerID]
+            val offer = offerTruthSource.offers[offerID]
+            if (offerStruct == null) {
+                if (offer != null && offer.chainID == chainID && !offer.isUserMaker) {
+                    Log.i(logTag, "handleChainReorganization: $offerID no longer exists on chain, removing from " +
+                            "offerTruthSource and persistent storage")
+                    withContext(Dispatchers.Main) {
+                        offerTruthSource.removeOffer(offerID)
+                    }
+                    val offerIDString = Base64.getEncoder().encodeToString(offerID.asByteArray())
+                    databaseService.deleteOffers(
+                        offerID = offerIDString,
+                        chainID = chainID.toString()
+                    )
+                    databaseService.deleteOfferSettlementMethods(
+                        offerID = offerIDString,
+                        chainID = chainID.toString()
+                    )
+                }
+            } else if (offer == null && offerStruct.chainID == chainID && !offerStruct.isTaken &&
+                keyManagerService.getKeyPair(offerStruct.interfaceID) == null) {
+                Log.i(logTag, "handleChainReorganization: $offerID is still open on chain, restoring")
+                handleOfferOpenedEvent(
+                    OfferOpenedEvent(offerID = offerID, interfaceID = offerStruct.interfaceID, chainID = chainID)
+                )
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -102,4 +102,16 @@ interface SwapNotifiable {
      * should handle in the implementation of this method.
      */
     suspend fun handleSellerClosedEvent(event: SellerClosedEvent)
+
+    /**
+     * The function called by [BlockchainService] in order to notify the class implementing this interface that a chain
+     * reorganization has removed blocks containing events for the swaps with the specified IDs. Events in the blocks
+     * that replaced the removed ones will be passed to the class implementing this interface as usual, so the
+     * implementation of this method should re-derive the state of the specified swaps that was derived from events in
+     * the removed blocks. By default, this does nothing.
+     *
+     * @param swapIDs The IDs of the swaps for which events were found in blocks removed by the reorganization.
+     * @param chainID The ID of the blockchain that was reorganized.
+     */
+    suspend fun handleChainReorganization(swapIDs: Set<UUID>, chainID: BigInteger) {}
 }
\ No newline at end of file
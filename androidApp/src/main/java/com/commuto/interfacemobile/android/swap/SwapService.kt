@@ -327,13 +327,16 @@ class SwapService @Inject constructor(
                             "of transaction created with supplied data for ${swapToFill.id}")
                 }
                 Log.i(logTag, "approveTokenTransferToFillSwap: signing transaction for ${swapToFill.id}")
+                val transactionToSend = blockchainService.assignNonce(
+                    transaction = approveTokenTransferToFillSwapTransaction
+                )
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = approveTokenTransferToFillSwapTransaction,
+                    transaction = transactionToSend,
                     chainID = swapToFill.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val blockchainTransactionForApprovingTransfer = BlockchainTransaction(
-                    transaction = approveTokenTransferToFillSwapTransaction,
+                    transaction = transactionToSend,
                     transactionHash = Hash.sha3(signedTransactionHex),
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_FILL_SWAP
@@ -475,13 +478,14 @@ class SwapService @Inject constructor(
                             "transaction created with swap ${swap.id}")
                 }
                 Log.i(logTag, "fillSwap: signing transaction for ${swap.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = swapFillingTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = swapFillingTransaction,
+                    transaction = transactionToSend,
                     chainID = swap.chainID,
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val blockchainTransactionForSwapFilling = BlockchainTransaction(
-                    transaction = swapFillingTransaction,
+                    transaction = transactionToSend,
                     transactionHash = Hash.sha3(signedTransactionHex),
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.FILL_SWAP
@@ -672,14 +676,15 @@ class SwapService @Inject constructor(
                             swap.id)
                 }
                 Log.i(logTag, "reportPaymentSent: signing transaction for ${swap.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = reportPaymentSentTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = reportPaymentSentTransaction,
+                    transaction = transactionToSend,
                     chainID = swap.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val transactionHash = Hash.sha3(signedTransactionHex)
                 val blockchainTransactionForReportingPaymentSent = BlockchainTransaction(
-                    transaction = reportPaymentSentTransaction,
+                    transaction = transactionToSend,
                     transactionHash = transactionHash,
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.REPORT_PAYMENT_SENT
@@ -873,14 +878,15 @@ class SwapService @Inject constructor(
                             swap.id)
                 }
                 Log.i(logTag, "reportPaymentReceived: signing transaction for ${swap.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = reportPaymentReceivedTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = reportPaymentReceivedTransaction,
+                    transaction = transactionToSend,
                     chainID = swap.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val transactionHash = Hash.sha3(signedTransactionHex)
                 val blockchainTransactionForReportingPaymentReceived = BlockchainTransaction(
-                    transaction = reportPaymentReceivedTransaction,
+                    transaction = transactionToSend,
                     transactionHash = transactionHash,
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.REPORT_PAYMENT_RECEIVED
@@ -1062,14 +1068,15 @@ class SwapService @Inject constructor(
                     throw SwapServiceException(message = "Transaction was null during closeSwap call for ${swap.id}")
                 }
                 Log.i(logTag, "closeSwap: signing transaction for ${swap.id}")
+                val transactionToSend = blockchainService.assignNonce(transaction = closeSwapTransaction)
                 val signedTransactionData = blockchainService.signTransaction(
-                    transaction = closeSwapTransaction,
+                    transaction = transactionToSend,
                     chainID = swap.chainID
                 )
                 val signedTransactionHex = Numeric.toHexString(signedTransactionData)
                 val transactionHash = Hash.sha3(signedTransactionHex)
                 val blockchainTransactionForClosingSwap = BlockchainTransaction(
-                    transaction = closeSwapTransaction,
+                    transaction = transactionToSend,
                     transactionHash = transactionHash,
                     latestBlockNumberAtCreation = blockchainService.newestBlockNum,
                     type = BlockchainTransactionType.CLOSE_SWAP
@@ -2361,4 +2368,116 @@ class SwapService @Inject constructor(
         }
     }
 
+    /**
+     * The function called by [BlockchainService] to notify [SwapService] that a chain reorganization has removed blocks
+     * containing events for the swaps with the specified IDs.
+     *
+     * For each such swap that exists in [swapTruthSource] with the specified chain ID, this gets the current on-chain
+     * swap data (with a single call to [BlockchainService.getSwaps] for all such swaps), and persistently updates the
+     * swap's [Swap.requiresFill], [Swap.isPaymentSent], [Swap.isPaymentReceived], [Swap.hasBuyerClosed] and
+     * [Swap.hasSellerClosed] properties to match the on-chain data. If the swap's state is one that is derived only
+     * from these properties (rather than one that indicates that the user is sending a transaction), this also
+     * persistently updates the swap's state to the one that corresponds to the on-chain data. Then this does the same
+     * to the [Swap] object on the main coroutine dispatcher. Events in the blocks that replaced the removed ones will
+     * then be handled as usual.
+     *
+     * @param swapIDs The IDs of the swaps for which events were found in blocks removed by the reorganization.
+     * @param chainID The ID of the blockchain that was reorganized.
+     */
+    override suspend fun handleChainReorganization(swapIDs: Set<UUID>, chainID: BigInteger) {
+        val encoder = Base64.getEncoder()
+        val knownSwapIDs = swapIDs.filter { swapID ->
+            val swap = swapTruthSource.swaps[swapID]
+            if (swap == null || swap.chainID != chainID) {
+                Log.i(logTag, "handleChainReorganization: $swapID not found in swapTruthSource")
+                false
+            } else {
+                true
+            }
+        }
+        if (knownSwapIDs.isEmpty()) {
+            return
+        }
+        val swapStructs = blockchainService.getSwaps(knownSwapIDs)
+        for (swapID in knownSwapIDs) {
+            val swap = swapTruthSource.swaps[swapID] ?: continue
+            val swapStruct = swapStructs[swapID]
+            if (swapStruct == null) {
+                Log.w(logTag, "handleChainReorganization: $swapID no longer exists on chain")
+                continue
+            }
+            val swapIDString = encoder.encodeToString(swapID.asByteArray())
+            Log.i(logTag, "handleChainReorganization: persistently updating on-chain properties of $swapID")
+            databaseService.updateSwapRequiresFill(
+                swapID = swapIDString,
+                chainID = chainID.toString(),
+                requiresFill = swapStruct.requiresFill
+            )
+            databaseService.updateSwapIsPaymentSent(
+                swapID = swapIDString,
+                chainID = chainID.toString(),
+                isPaymentSent = swapStruct.isPaymentSent
+            )
+            databaseService.updateSwapIsPaymentReceived(
+                swapID = swapIDString,
+                chainID = chainID.toString(),
+                isPaymentReceived = swapStruct.isPaymentReceived
+            )
+            databaseService.updateSwapHasBuyerClosed(
+                swapID = swapIDString,
+                chainID = chainID.toString(),
+                hasBuyerClosed = swapStruct.hasBuyerClosed
+            )
+            databaseService.updateSwapHasSellerClosed(
+                swapID = swapIDString,
+                chainID = chainID.toString(),
+                hasSellerClosed = swapStruct.hasSellerClosed
+            )
+            val onChainStates = setOf(
+                SwapState.AWAITING_FILLING,
+                SwapState.AWAITING_PAYMENT_SENT,
+                SwapState.AWAITING_PAYMENT_RECEIVED,
+                SwapState.AWAITING_CLOSING,
+                SwapState.CLOSED,
+            )
+            val newState = if (swap.state.value in onChainStates) {
+                val hasUserClosed = when (swap.role) {
+                    SwapRole.MAKER_AND_BUYER, SwapRole.TAKER_AND_BUYER -> swapStruct.hasBuyerClosed
+                    SwapRole.MAKER_AND_SELLER, SwapRole.TAKER_AND_SELLER -> swapStruct.hasSellerClosed
+                }
+                if (swapStruct.requiresFill) {
+                    SwapState.AWAITING_FILLING
+                } else if (!swapStruct.isPaymentSent) {
+                    SwapState.AWAITING_PAYMENT_SENT
+                } else if (!swapStruct.isPaymentReceived) {
+                    SwapState.AWAITING_PAYMENT_RECEIVED
+                } else if (!hasUserClosed) {
+                    SwapState.AWAITING_CLOSING
+                } else {
+                    SwapState.CLOSED
+                }
+            } else {
+                swap.state.value
+            }
+            if (newState != swap.state.value) {
+                Log.i(logTag, "handleChainReorganization: persistently updating state of $swapID to " +
+                        newState.asString)
+                databaseService.updateSwapState(
+                    swapID = swapIDString,
+                    chainID = chainID.toString(),
+                    state = newState.asString
+                )
+            }
+            Log.i(logTag, "handleChainReorganization: updating on-chain properties and state of $swapID")
+            withContext(Dispatchers.Main) {
+                swap.requiresFill = swapStruct.requiresFill
+                swap.isPaymentSent = swapStruct.isPaymentSent
+                swap.isPaymentReceived = swapStruct.isPaymentReceived
+                swap.hasBuyerClosed = swapStruct.hasBuyerClosed
+                swap.hasSellerClosed = swapStruct.hasSellerClosed
+                swap.state.value = newState
+            }
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,93 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.future.await
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+import org.web3j.protocol.core.DefaultBlockParameter
+import org.web3j.protocol.core.methods.request.Transaction
+import org.web3j.protocol.exceptions.ClientConnectionException
+import java.math.BigInteger
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Tests for [AsyncHttpService]
+ */
+class AsyncHttpServiceTest {
+
+    /**
+     * Ensures that [AsyncHttpService] completes many concurrent requests while executing no more than
+     * `maxConcurrentRequests` of them at once.
+     */
+    @Test
+    fun testConcurrentRequests() = runBlocking {
+        val concurrentCallCount = AtomicInteger(0)
+        val maxConcurrentCallCount = AtomicInteger(0)
+        val node = TestJsonRpcNode { method, _ ->
+            when (method) {
+                "eth_blockNumber" -> {
+                    maxConcurrentCallCount.accumulateAndGet(concurrentCallCount.incrementAndGet(), ::maxOf)
+                    Thread.sleep(50L)
+                    concurrentCallCount.decrementAndGet()
+                    "0x2a"
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val web3 = CommutoWeb3j(AsyncHttpService(node.url, maxConcurrentRequests = 8))
+        try {
+            val blockNumbers = (1..200).map {
+                async(Dispatchers.Default) { web3.ethBlockNumber().sendAsync().await().blockNumber }
+            }.awaitAll()
+            assertEquals(List(200) { BigInteger.valueOf(42L) }, blockNumbers)
+            assertEquals(200, node.callCount("eth_blockNumber"))
+            assertTrue(maxConcurrentCallCount.get() in 2..8)
+        } finally {
+            web3.shutdown()
+            node.stop()
+        }
+    }
+
+    /**
+     * Ensures that [AsyncHttpService] matches the responses of a batch request to its requests by ID, and fails with
+     * the same exception as [org.web3j.protocol.http.HttpService] when the node responds with an unsuccessful status.
+     */
+    @Test
+    fun testBatchesAndErrors() = runBlocking {
+        val isAvailable = AtomicBoolean(true)
+        val node = TestJsonRpcNode { method, params ->
+            if (!isAvailable.get()) {
+                throw TestJsonRpcNode.UnavailableException()
+            }
+            when (method) {
+                "eth_call" -> params[0].get("data").asText()
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val web3 = CommutoWeb3j(AsyncHttpService(node.url))
+        try {
+            val calls = listOf("0x01", "0x02", "0x03").map {
+                Transaction.createEthCallTransaction(null, "0x687f36336fcab8747be1d41366a416b41e7e1a96", it)
+            }
+            val ethCalls = web3.ethCallBatch(calls, DefaultBlockParameter.valueOf("latest")).await()
+            assertEquals(listOf("0x01", "0x02", "0x03"), ethCalls.map { it.value })
+            assertEquals(1, node.httpRequestCount.get())
+
+            isAvailable.set(false)
+            try {
+                web3.ethBlockNumber().sendAsync().await()
+                fail("Expected a ClientConnectionException")
+            } catch (exception: ClientConnectionException) {
+                assertTrue(exception.message!!.startsWith("Invalid response received: 503"))
+            }
+        } finally {
+            web3.shutdown()
+            node.stop()
+        }
+    }
+
+}
@@ -1,7 +1,10 @@
 package com.commuto.interfacemobile.android.blockchain
 
+import androidx.compose.runtime.mutableStateListOf
 import com.commuto.interfacemobile.android.blockchain.events.commutoswap.*
 import com.commuto.interfacemobile.android.blockchain.events.erc20.ApprovalEvent
+import com.commuto.interfacemobile.android.blockchain.structs.OfferStruct
+import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
 import com.commuto.interfacemobile.android.database.DatabaseService
 import com.commuto.interfacemobile.android.database.PreviewableDatabaseDriverFactory
 import com.commuto.interfacemobile.android.key.KeyManagerService
@@ -17,17 +20,41 @@ import io.ktor.client.plugins.*
 import io.ktor.client.plugins.contentnegotiation.*
 import io.ktor.client.request.*
 import io.ktor.serialization.kotlinx.json.*
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
 import kotlinx.coroutines.channels.Channel
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
 import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.setMain
 import kotlinx.coroutines.withTimeout
 import kotlinx.serialization.Serializable
 import org.junit.Assert.*
 import org.junit.Test
+import org.web3j.abi.EventEncoder
+import org.web3j.abi.FunctionEncoder
+import org.web3j.abi.datatypes.DynamicBytes
+import org.web3j.abi.datatypes.generated.Bytes16
+import org.web3j.contracts.eip20.generated.ERC20
+import org.web3j.crypto.Hash
+import org.web3j.crypto.RawTransaction
+import org.web3j.crypto.TransactionDecoder
+import org.web3j.crypto.transaction.type.Transaction1559
 import org.web3j.protocol.http.HttpService
+import org.web3j.utils.Numeric
+import java.io.File
+import java.io.InputStream
 import java.math.BigInteger
+import java.net.ConnectException
 import java.net.UnknownHostException
 import java.nio.ByteBuffer
 import java.util.*
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
 
 /**
  * Tests for [BlockchainService]
@@ -48,9 +75,12 @@ class BlockchainServiceTest {
         )
         OffersViewModel(offersService)
         val blockchainService = BlockchainService(
-            errorHandler = TestBlockchainExceptionHandler(),
+            exceptionHandler = TestBlockchainExceptionHandler(),
             offerService = offersService,
             swapService = TestSwapService(),
+            web3 = CommutoWeb3j(MultiEndpointService.fromURLs(System.getenv("BLOCKCHAIN_NODE"))),
+            commutoSwapAddress = "0x687F36336FCAB8747be1D41366A416b41E7E1a96",
+            databaseService = databaseService,
         )
         blockchainService.listenLoop()
     }
@@ -1028,4 +1058,2265 @@ class BlockchainServiceTest {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Ensures that [BlockchainService] gets the receipts of a block's transactions with JSON-RPC batch requests
+     * containing at most `receiptBatchSize` calls each, rather than with one HTTP request per transaction.
+     */
+    @Test
+    fun testBatchedReceiptFetching() = runBlocking {
+        val txHashes = (1..250).map {
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(it.toLong()), 64)
+        }
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x1"
+                "eth_getBlockByNumber" -> mapOf(
+                    "number" to "0x1",
+                    "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64),
+                    "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64),
+                    "transactions" to txHashes,
+                )
+                "eth_getTransactionReceipt" -> mapOf(
+                    "transactionHash" to params[0].asText(),
+                    "blockNumber" to "0x1",
+                    "to" to "0x0000000000000000000000000000000000000001",
+                    "status" to "0x1",
+                    "logs" to emptyList<Any>(),
+                )
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687F36336FCAB8747be1D41366A416b41E7E1a96",
+            receiptBatchSize = 100,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has finished parsing block 1
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(1, node.httpRequestCount("eth_getBlockByNumber"))
+        assertEquals(250, node.callCount("eth_getTransactionReceipt"))
+        // 250 receipts in batches of at most 100 receipts require exactly three HTTP requests
+        assertEquals(3, node.httpRequestCount("eth_getTransactionReceipt"))
+    }
+
+    /**
+     * Ensures that [BlockchainService] gets CommutoSwap events with `eth_getLogs` rather than by getting every block
+     * and receipt when its ingestion mode is [BlockchainIngestionMode.LOGS], and that it still detects failed monitored
+     * transactions, which emit no logs, without requesting the receipts of monitored transactions that cannot have been
+     * confirmed yet.
+     */
+    @Test
+    fun testLogIngestionMode() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val canceledOfferID = UUID.randomUUID()
+        val canceledOfferIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        canceledOfferIDBuffer.putLong(canceledOfferID.mostSignificantBits)
+        canceledOfferIDBuffer.putLong(canceledOfferID.leastSignificantBits)
+        val canceledOfferTransactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64)
+        val failedTransactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.TWO, 64)
+        val pendingTransactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(3L), 64)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x5"
+                // Only the failed transaction, with nonce 0, has been confirmed as of block 5
+                "eth_getTransactionCount" -> {
+                    assertEquals("0x5", params[1].asText())
+                    "0x1"
+                }
+                "eth_getLogs" -> {
+                    assertTrue(params[0].get("address").toString().lowercase().contains(commutoSwapAddress))
+                    assertEquals("0x1", params[0].get("fromBlock").asText())
+                    assertEquals("0x5", params[0].get("toBlock").asText())
+                    listOf(mapOf(
+                        "address" to commutoSwapAddress,
+                        "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+                        "data" to Numeric.toHexString(canceledOfferIDBuffer.array()),
+                        "blockNumber" to "0x2",
+                        "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.TWO, 64),
+                        "transactionHash" to canceledOfferTransactionHash,
+                        "transactionIndex" to "0x0",
+                        "logIndex" to "0x0",
+                        "removed" to false,
+                    ))
+                }
+                "eth_getTransactionReceipt" -> {
+                    assertEquals(failedTransactionHash, params[0].asText())
+                    mapOf(
+                        "transactionHash" to failedTransactionHash,
+                        "blockNumber" to "0x3",
+                        "to" to commutoSwapAddress,
+                        "status" to "0x0",
+                        "logs" to emptyList<Any>(),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val offerCanceledEventChannel = Channel<OfferCanceledEvent>()
+            val failedTransactionChannel = Channel<BlockchainTransaction>()
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {
+                failedTransactionChannel.send(transaction)
+            }
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                offerCanceledEventChannel.send(event)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            ingestionMode = BlockchainIngestionMode.LOGS,
+            logBlockRangeSize = 10L,
+        )
+        for ((nonce, transactionHash) in listOf(failedTransactionHash, pendingTransactionHash).withIndex()) {
+            blockchainService.addTransactionToMonitor(BlockchainTransaction(
+                transaction = RawTransaction.createTransaction(
+                    31337L,
+                    BigInteger.valueOf(nonce.toLong()),
+                    BigInteger.valueOf(100_000L),
+                    commutoSwapAddress,
+                    BigInteger.ZERO,
+                    "0x",
+                    BigInteger.valueOf(1_000_000_000L),
+                    BigInteger.valueOf(2_000_000_000L)
+                ),
+                transactionHash = transactionHash,
+                timeOfCreation = Date(),
+                latestBlockNumberAtCreation = BigInteger.ONE,
+                type = BlockchainTransactionType.CANCEL_OFFER,
+            ))
+        }
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(30_000) {
+                assertEquals(failedTransactionHash, offerService.failedTransactionChannel.receive().transactionHash)
+                val offerCanceledEvent = offerService.offerCanceledEventChannel.receive()
+                assertEquals(canceledOfferID, offerCanceledEvent.offerID)
+                assertEquals(BigInteger.valueOf(31337L), offerCanceledEvent.chainID)
+                // The listen loop gets the newest block number again once it has finished parsing the range
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertNull(blockchainService.getMonitoredTransaction(failedTransactionHash))
+        assertNotNull(blockchainService.getMonitoredTransaction(pendingTransactionHash))
+        assertEquals(1, node.callCount("eth_getLogs"))
+        assertEquals(0, node.callCount("eth_getBlockByNumber"))
+        assertEquals(1, node.callCount("eth_getTransactionCount"))
+        assertEquals(1, node.callCount("eth_getTransactionReceipt"))
+    }
+
+    /**
+     * Ensures that when [BlockchainService] must parse many blocks, it requests blocks ahead of the block it is parsing
+     * with a bounded window, while still passing events to [OfferNotifiable] in strict block and log order.
+     */
+    @Test
+    fun testCatchUpWithPrefetchWindow() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val blockCount = 30L
+        val transactionsPerBlock = 2L
+        val concurrentBlockRequests = AtomicInteger(0)
+        val maxConcurrentBlockRequests = AtomicInteger(0)
+        // The transaction with index i in block n has hash n * 1000 + i, and cancels the offer with ID UUID(n, i)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> Numeric.encodeQuantity(BigInteger.valueOf(blockCount))
+                "eth_getBlockByNumber" -> {
+                    maxConcurrentBlockRequests.accumulateAndGet(concurrentBlockRequests.incrementAndGet(), ::maxOf)
+                    // Simulate network latency
+                    Thread.sleep(50)
+                    concurrentBlockRequests.decrementAndGet()
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to (0 until transactionsPerBlock).map {
+                            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber * 1000 + it), 64)
+                        },
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    val transactionHash = params[0].asText()
+                    val blockNumber = Numeric.toBigInt(transactionHash).toLong() / 1000
+                    val transactionIndex = Numeric.toBigInt(transactionHash).toLong() % 1000
+                    val offerIDBuffer = ByteBuffer.wrap(ByteArray(32))
+                    offerIDBuffer.putLong(blockNumber)
+                    offerIDBuffer.putLong(transactionIndex)
+                    mapOf(
+                        "transactionHash" to transactionHash,
+                        "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "to" to commutoSwapAddress,
+                        "status" to "0x1",
+                        "logs" to listOf(mapOf(
+                            "address" to commutoSwapAddress,
+                            "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+                            "data" to Numeric.toHexString(offerIDBuffer.array()),
+                            "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                            "transactionHash" to transactionHash,
+                            "logIndex" to Numeric.encodeQuantity(BigInteger.valueOf(transactionIndex)),
+                        )),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            catchUpPrefetchWindowSize = 8,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has caught up
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        val expectedOfferIDs = (1..blockCount).flatMap { blockNumber ->
+            (0 until transactionsPerBlock).map { UUID(blockNumber, it) }
+        }
+        assertEquals(expectedOfferIDs, offerService.canceledOfferIDs)
+        assertEquals(blockCount.toInt(), node.callCount("eth_getBlockByNumber"))
+        assertTrue(maxConcurrentBlockRequests.get() in 2..8)
+        assertTrue(blockchainService.catchUpBlocksPerSecond > 0.0)
+    }
+
+    /**
+     * Ensures that [BlockchainService] resumes listening after the block checkpoint stored in [DatabaseService] for the
+     * chain to which it is connected, and that it updates the block checkpoint as it parses new blocks.
+     */
+    @Test
+    fun testResumeFromBlockCheckpoint() = runBlocking {
+        val databaseService = DatabaseService(PreviewableDatabaseDriverFactory())
+        databaseService.createTables()
+        // 0x7a69 = 31337
+        databaseService.storeBlockCheckpoint(
+            chainID = "31337",
+            blockNumber = 5L,
+            blockHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(5L), 64),
+        )
+        val requestedBlockNumbers = Collections.synchronizedList(mutableListOf<Long>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x6"
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    requestedBlockNumbers.add(blockNumber)
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to listOf<String>(),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+            databaseService = databaseService,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(listOf(6L), requestedBlockNumbers)
+        val blockCheckpoint = databaseService.getBlockCheckpoint("31337")
+        assertEquals(6L, blockCheckpoint!!.blockNumber)
+        assertEquals(Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(6L), 64), blockCheckpoint.blockHash)
+    }
+
+    /**
+     * Ensures that when the most recently parsed block is replaced by a chain reorganization, [BlockchainService]
+     * rewinds to the fork point, notifies [OfferNotifiable] of the offers affected by events in the replaced block, and
+     * then parses the blocks that replaced it.
+     */
+    @Test
+    fun testChainReorganization() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val forked = AtomicBoolean(false)
+        val blockNumberCalls = AtomicInteger(0)
+        /*
+        Each block contains one transaction that cancels an offer. Before the reorganization, the chain consists of
+        blocks 1 through 3, each with key equal to its number. Afterwards, block 3 is replaced by a block with key 103,
+        and is followed by a block with key 104. A block with key k has a hash of k, and contains a transaction with
+        hash 1000 + k, which cancels the offer with ID UUID(0, k).
+         */
+        fun hashOf(key: Long) = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(key), 64)
+        fun keyOf(blockNumber: Long) = if (forked.get() && blockNumber >= 3) 100 + blockNumber else blockNumber
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> {
+                    // The listen loop gets the newest block number again once it has parsed block 3
+                    if (blockNumberCalls.incrementAndGet() >= 2) {
+                        forked.set(true)
+                    }
+                    if (forked.get()) "0x4" else "0x3"
+                }
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    val key = keyOf(blockNumber)
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to hashOf(key),
+                        "parentHash" to hashOf(keyOf(blockNumber - 1)),
+                        "transactions" to listOf(hashOf(1000 + key)),
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    val transactionHash = params[0].asText()
+                    val key = Numeric.toBigInt(transactionHash).toLong() - 1000
+                    val blockNumber = key % 100
+                    val offerIDBuffer = ByteBuffer.wrap(ByteArray(32))
+                    offerIDBuffer.putLong(0L)
+                    offerIDBuffer.putLong(key)
+                    mapOf(
+                        "transactionHash" to transactionHash,
+                        "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "blockHash" to hashOf(key),
+                        "to" to commutoSwapAddress,
+                        "status" to "0x1",
+                        "logs" to listOf(mapOf(
+                            "address" to commutoSwapAddress,
+                            "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+                            "data" to Numeric.toHexString(offerIDBuffer.array()),
+                            "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                            "transactionHash" to transactionHash,
+                            "logIndex" to "0x0",
+                        )),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            val reorganizedOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+            override suspend fun handleChainReorganization(offerIDs: Set<UUID>, chainID: BigInteger) {
+                reorganizedOfferIDs.addAll(offerIDs)
+            }
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number a fourth time once it has parsed the new block 4
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 4) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(listOf(UUID(0L, 3L)), offerService.reorganizedOfferIDs)
+        assertEquals(
+            listOf(UUID(0L, 1L), UUID(0L, 2L), UUID(0L, 3L), UUID(0L, 103L), UUID(0L, 104L)),
+            offerService.canceledOfferIDs
+        )
+    }
+
+    /**
+     * Ensures that [BlockchainService] parses new blocks announced by a `newHeads` WebSocket subscription without
+     * polling for the newest block number, and that it falls back to polling when the WebSocket endpoint goes away.
+     */
+    @Test
+    fun testNewHeadsSubscription() = runBlocking {
+        val newestBlockNumber = AtomicLong(0L)
+        val requestedBlockNumbers = Collections.synchronizedList(mutableListOf<Long>())
+        fun hashOf(blockNumber: Long) = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> Numeric.encodeQuantity(BigInteger.valueOf(newestBlockNumber.get()))
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    requestedBlockNumbers.add(blockNumber)
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to hashOf(blockNumber),
+                        "parentHash" to hashOf(blockNumber - 1),
+                        "transactions" to listOf<String>(),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val webSocketNode = TestWebSocketNode()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+            newHeadsWebSocketURL = webSocketNode.url,
+            maxListenInterval = 200L,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        var blockNumberCallsWhileSubscribed = 0
+        try {
+            withTimeout(30_000) {
+                while (webSocketNode.subscriptionCount.get() < 1) {
+                    delay(10)
+                }
+                webSocketNode.sendNewHead(1L, hashOf(1L), hashOf(0L))
+                while (!requestedBlockNumbers.contains(1L)) {
+                    delay(10)
+                }
+                val blockNumberCallsBeforeHeads = node.callCount("eth_blockNumber")
+                for (blockNumber in 2L..3L) {
+                    webSocketNode.sendNewHead(blockNumber, hashOf(blockNumber), hashOf(blockNumber - 1))
+                    while (!requestedBlockNumbers.contains(blockNumber)) {
+                        delay(10)
+                    }
+                }
+                // Give the listen loop time to poll, if it were going to
+                delay(500)
+                blockNumberCallsWhileSubscribed = node.callCount("eth_blockNumber") - blockNumberCallsBeforeHeads
+                // Once the WebSocket endpoint goes away, new blocks should be found by polling
+                newestBlockNumber.set(4L)
+                webSocketNode.stop()
+                while (!requestedBlockNumbers.contains(4L)) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+            webSocketNode.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(0, blockNumberCallsWhileSubscribed)
+        assertEquals(listOf(1L, 2L, 3L, 4L), requestedBlockNumbers)
+    }
+
+    /**
+     * Ensures that [BlockchainService] gets the chain ID once when it begins listening rather than once per block, and
+     * that it gets the chain ID again after failing to reach the node, starting over if the chain has changed.
+     */
+    @Test
+    fun testChainIDCache() = runBlocking {
+        val chainID = AtomicLong(31337L)
+        val unavailableBlockNumberCallCount = AtomicInteger(0)
+        val requestedBlockNumbers = Collections.synchronizedList(mutableListOf<Long>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> Numeric.encodeQuantity(BigInteger.valueOf(chainID.get()))
+                "eth_blockNumber" -> {
+                    if (unavailableBlockNumberCallCount.getAndUpdate { maxOf(it - 1, 0) } > 0) {
+                        throw TestJsonRpcNode.UnavailableException()
+                    }
+                    "0x3"
+                }
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    requestedBlockNumbers.add(blockNumber)
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to listOf<String>(),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        var chainIDCallsBeforeDrop = 0
+        try {
+            withTimeout(30_000) {
+                while (requestedBlockNumbers.size < 3) {
+                    delay(10)
+                }
+                chainIDCallsBeforeDrop = node.callCount("eth_chainId")
+                // The node is briefly unreachable while getting the newest block number, and then serves another chain
+                chainID.set(1L)
+                unavailableBlockNumberCallCount.set(1)
+                while (requestedBlockNumbers.size < 6) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+        }
+        assertEquals(1, chainIDCallsBeforeDrop)
+        assertEquals(2, node.callCount("eth_chainId"))
+        assertEquals(BigInteger.ONE, blockchainService.getChainID())
+        assertEquals(2, node.callCount("eth_chainId"))
+        node.stop()
+        // Blocks are prefetched concurrently, so they may be requested in any order
+        assertEquals(listOf(1L, 2L, 3L), requestedBlockNumbers.subList(0, 3).sorted())
+        assertEquals(listOf(1L, 2L, 3L), requestedBlockNumbers.subList(3, 6).sorted())
+    }
+
+    /**
+     * ABI-encodes an open offer made by [maker] as the return data of CommutoSwap's `getOffer` function.
+     */
+    private fun encodeOfferReturnData(maker: String): String {
+        return "0x" + FunctionEncoder.encodeConstructor(listOf(CommutoSwap.Offer(
+            true,
+            false,
+            maker,
+            ByteArray(33) { it.toByte() },
+            "0x5fbdb2315678afecb367f032d93f642f64180aa3",
+            BigInteger.valueOf(10_000L),
+            BigInteger.valueOf(20_000L),
+            BigInteger.valueOf(2_000L),
+            BigInteger.valueOf(100L),
+            BigInteger.ONE,
+            listOf("""{"f":"USD","p":"1.00","m":"SWIFT"}""".toByteArray()),
+            BigInteger.ONE,
+        )))
+    }
+
+    /**
+     * Ensures that when a block contains many
+     * [OfferOpened](https://www.commuto.xyz/docs/technical-reference/core-tec-ref#offeropened) events,
+     * [BlockchainService] gets all of the opened offers with a single JSON-RPC batch request executed against
+     * the state of that block, and that [BlockchainService.getOffer] returns those offers while the events are
+     * handled. This also ensures that if the node cannot execute calls against the state of a block, the offers are
+     * instead requested individually as of the latest block.
+     */
+    @Test
+    fun testBatchedOfferLookups() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val offersPerBlock = 20L
+        val maker = "0xf39fd6e51aad88f6f4ce6ab8827279cfffb92266"
+        val offerReturnData = encodeOfferReturnData(maker)
+        val callBlockParameters = Collections.synchronizedList(mutableListOf<String>())
+        // Block n contains one transaction with hash n, which opens the offers with IDs UUID(n, i)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x2"
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to listOf(
+                            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64)
+                        ),
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    val transactionHash = params[0].asText()
+                    val blockNumber = Numeric.toBigInt(transactionHash).toLong()
+                    mapOf(
+                        "transactionHash" to transactionHash,
+                        "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "to" to commutoSwapAddress,
+                        "status" to "0x1",
+                        "logs" to (0 until offersPerBlock).map { index ->
+                            val offerIDBuffer = ByteBuffer.wrap(ByteArray(16))
+                            offerIDBuffer.putLong(blockNumber)
+                            offerIDBuffer.putLong(index)
+                            mapOf(
+                                "address" to commutoSwapAddress,
+                                "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFEROPENED_EVENT)),
+                                "data" to "0x" + FunctionEncoder.encodeConstructor(listOf(
+                                    Bytes16(offerIDBuffer.array()),
+                                    DynamicBytes(ByteArray(33) { it.toByte() }),
+                                )),
+                                "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                                "transactionHash" to transactionHash,
+                                "logIndex" to Numeric.encodeQuantity(BigInteger.valueOf(index)),
+                            )
+                        },
+                    )
+                }
+                "eth_call" -> {
+                    assertEquals(commutoSwapAddress, params[0].get("to").asText().lowercase())
+                    val blockParameter = params[1].asText()
+                    callBlockParameters.add(blockParameter)
+                    if (blockParameter == "0x2") {
+                        // Simulate a node that has pruned the state of block 2
+                        throw Exception("missing trie node")
+                    }
+                    offerReturnData
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            lateinit var blockchainService: BlockchainService
+            val openedOffers = Collections.synchronizedMap(mutableMapOf<UUID, OfferStruct?>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {
+                openedOffers[event.offerID] = blockchainService.getOffer(event.offerID)
+            }
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {}
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            callBatchSize = 50,
+        )
+        offerService.blockchainService = blockchainService
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has parsed both blocks
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals((2 * offersPerBlock).toInt(), offerService.openedOffers.size)
+        assertTrue(offerService.openedOffers.values.all {
+            it?.maker == maker && it.chainID == BigInteger.valueOf(31337L)
+        })
+        // The offers opened in block 1 are all requested as of block 1 in one HTTP request
+        assertEquals(List(offersPerBlock.toInt()) { "0x1" }, callBlockParameters.subList(0, offersPerBlock.toInt()))
+        // The batch request for block 2 fails, so each offer opened in block 2 is requested as of the latest block
+        assertEquals(
+            List(offersPerBlock.toInt()) { "0x2" } + List(offersPerBlock.toInt()) { "latest" },
+            callBlockParameters.subList(offersPerBlock.toInt(), callBlockParameters.size)
+        )
+        assertEquals(2 + offersPerBlock.toInt(), node.httpRequestCount("eth_call"))
+    }
+
+    /**
+     * Ensures that while [BlockchainService] is listening, [BlockchainService.getOffer] returns offers from
+     * [BlockchainService.offerStructCache] rather than calling `getOffer` again, that handling an event that affects an
+     * offer replaces its cached struct with one read as of the block containing the event, and that offers are neither
+     * cached nor returned from the cache while [BlockchainService] is not listening.
+     */
+    @Test
+    fun testStructCache() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val maker = "0xf39fd6e51aad88f6f4ce6ab8827279cfffb92266"
+        val offerReturnData = encodeOfferReturnData(maker)
+        val editedOfferID = UUID.randomUUID()
+        val editedOfferIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        editedOfferIDBuffer.putLong(editedOfferID.mostSignificantBits)
+        editedOfferIDBuffer.putLong(editedOfferID.leastSignificantBits)
+        val otherOfferID = UUID.randomUUID()
+        val transactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64)
+        val callBlockParameters = Collections.synchronizedList(mutableListOf<String>())
+        // Block 1 contains one transaction, which edits the offer with ID editedOfferID
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x1"
+                "eth_getBlockByNumber" -> mapOf(
+                    "number" to "0x1",
+                    "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64),
+                    "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64),
+                    "transactions" to listOf(transactionHash),
+                )
+                "eth_getTransactionReceipt" -> mapOf(
+                    "transactionHash" to transactionHash,
+                    "blockNumber" to "0x1",
+                    "to" to commutoSwapAddress,
+                    "status" to "0x1",
+                    "logs" to listOf(mapOf(
+                        "address" to commutoSwapAddress,
+                        "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFEREDITED_EVENT)),
+                        "data" to Numeric.toHexString(editedOfferIDBuffer.array()),
+                        "blockNumber" to "0x1",
+                        "transactionHash" to transactionHash,
+                        "logIndex" to "0x0",
+                    )),
+                )
+                "eth_call" -> {
+                    callBlockParameters.add(params[1].asText())
+                    offerReturnData
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            lateinit var blockchainService: BlockchainService
+            val editedOffers = Channel<OfferStruct?>(Channel.UNLIMITED)
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {
+                editedOffers.send(blockchainService.getOffer(event.offerID))
+            }
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {}
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+        )
+        offerService.blockchainService = blockchainService
+        val offerCache = blockchainService.offerStructCache
+
+        // Offers are not cached before listening begins, since their entries could not be invalidated
+        blockchainService.getOffer(editedOfferID)
+        blockchainService.getOffer(editedOfferID)
+        assertEquals(listOf("latest", "latest"), callBlockParameters.toList())
+        assertEquals(0, offerCache.size)
+
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(30_000) {
+                assertEquals(maker, offerService.editedOffers.receive()?.maker)
+                // The edited offer was read as of block 1 before the event was handled, and then returned from
+                // the cache
+                assertEquals(listOf("latest", "latest", "0x1"), callBlockParameters.toList())
+                assertEquals(1L, offerCache.hits)
+                assertEquals(BigInteger.ONE, offerCache.get(BigInteger.valueOf(31337L), editedOfferID)?.blockNumber)
+
+                assertEquals(maker, blockchainService.getOffer(editedOfferID)?.maker)
+                assertEquals(maker, blockchainService.getOffer(otherOfferID)?.maker)
+                assertEquals(maker, blockchainService.getOffer(otherOfferID)?.maker)
+                assertEquals(listOf("latest", "latest", "0x1", "latest"), callBlockParameters.toList())
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        // One hit while handling the event, one for the lookup above, one for editedOfferID and one for otherOfferID
+        assertEquals(4L, offerCache.hits)
+        assertEquals(1L, offerCache.misses)
+        assertEquals(0, offerCache.size)
+    }
+
+    /**
+     * Ensures that [BlockchainService] checks only monitored transactions whose timeout has passed, that it gets the
+     * receipts of all such transactions with a single JSON-RPC batch request, and that it does not check them again
+     * once they have been handled.
+     */
+    @Test
+    fun testExpiredMonitoredTransactionDeadlines() = runBlocking {
+        val expiredTransactionHashes = (1L..5L).map {
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(it), 64)
+        }
+        val pendingTransactionHashes = (6L..7L).map {
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(it), 64)
+        }
+        val requestedReceiptHashes = Collections.synchronizedList(mutableListOf<String>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x3"
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to listOf<String>(),
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    // None of the monitored transactions have been confirmed
+                    requestedReceiptHashes.add(params[0].asText())
+                    null
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val failedTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {
+                failedTransactionHashes.add(transaction.transactionHash)
+            }
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {}
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+            monitoredTransactionTimeout = 3_600_000L,
+        )
+        for (transactionHash in expiredTransactionHashes) {
+            blockchainService.addTransactionToMonitor(BlockchainTransaction(
+                transaction = null,
+                transactionHash = transactionHash,
+                timeOfCreation = Date(Date().time - 3_601_000L),
+                latestBlockNumberAtCreation = BigInteger.ZERO,
+                type = BlockchainTransactionType.CANCEL_OFFER,
+            ))
+        }
+        for (transactionHash in pendingTransactionHashes) {
+            blockchainService.addTransactionToMonitor(BlockchainTransaction(
+                transaction = null,
+                transactionHash = transactionHash,
+                timeOfCreation = Date(),
+                latestBlockNumberAtCreation = BigInteger.ZERO,
+                type = BlockchainTransactionType.CANCEL_OFFER,
+            ))
+        }
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has parsed all three blocks
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        // Transactions whose deadlines are equal may be checked in any order
+        assertEquals(expiredTransactionHashes, offerService.failedTransactionHashes.sorted())
+        assertEquals(expiredTransactionHashes, requestedReceiptHashes.sorted())
+        assertEquals(1, node.httpRequestCount("eth_getTransactionReceipt"))
+        for (transactionHash in expiredTransactionHashes) {
+            assertNull(blockchainService.getMonitoredTransaction(transactionHash))
+        }
+        for (transactionHash in pendingTransactionHashes) {
+            assertNotNull(blockchainService.getMonitoredTransaction(transactionHash))
+        }
+    }
+
+    /**
+     * Ensures that while [BlockchainService] is far behind the newest block, it handles monitored transactions as soon
+     * as it finds their receipts by polling for them, rather than when it parses the blocks containing them, and that
+     * it does not handle them again when it parses those blocks.
+     */
+    @Test
+    fun testConfirmationTracking() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val blockCount = 40L
+        val canceledOfferID = UUID.randomUUID()
+        val canceledOfferIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        canceledOfferIDBuffer.putLong(canceledOfferID.mostSignificantBits)
+        canceledOfferIDBuffer.putLong(canceledOfferID.leastSignificantBits)
+        val canceledOfferTransactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64)
+        val failedTransactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.TWO, 64)
+        val transactionBlockNumbers = mapOf(canceledOfferTransactionHash to 30L, failedTransactionHash to 31L)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> Numeric.encodeQuantity(BigInteger.valueOf(blockCount))
+                "eth_getBlockByNumber" -> {
+                    // Slow blocks keep the listen loop far behind the newest block for a while
+                    Thread.sleep(20L)
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to transactionBlockNumbers.filterValues { it == blockNumber }.keys.toList(),
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    val transactionHash = params[0].asText()
+                    val blockNumber = BigInteger.valueOf(transactionBlockNumbers.getValue(transactionHash))
+                    val isCanceledOfferTransaction = transactionHash == canceledOfferTransactionHash
+                    mapOf(
+                        "transactionHash" to transactionHash,
+                        "blockNumber" to Numeric.encodeQuantity(blockNumber),
+                        "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                        "to" to commutoSwapAddress,
+                        "status" to if (isCanceledOfferTransaction) "0x1" else "0x0",
+                        "logs" to if (isCanceledOfferTransaction) {
+                            listOf(mapOf(
+                                "address" to commutoSwapAddress,
+                                "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+                                "data" to Numeric.toHexString(canceledOfferIDBuffer.array()),
+                                "blockNumber" to Numeric.encodeQuantity(blockNumber),
+                                "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                                "transactionHash" to transactionHash,
+                                "transactionIndex" to "0x0",
+                                "logIndex" to "0x0",
+                                "removed" to false,
+                            ))
+                        } else {
+                            emptyList()
+                        },
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            val failedTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+            val blockRequestCounts = Collections.synchronizedList(mutableListOf<Int>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {
+                failedTransactionHashes.add(transaction.transactionHash)
+                blockRequestCounts.add(node.callCount("eth_getBlockByNumber"))
+            }
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+                blockRequestCounts.add(node.callCount("eth_getBlockByNumber"))
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+        )
+        for (transactionHash in transactionBlockNumbers.keys) {
+            blockchainService.addTransactionToMonitor(BlockchainTransaction(
+                transaction = null,
+                transactionHash = transactionHash,
+                timeOfCreation = Date(),
+                latestBlockNumberAtCreation = BigInteger.ZERO,
+                type = BlockchainTransactionType.CANCEL_OFFER,
+            ))
+        }
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has parsed every block
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(listOf(canceledOfferID), offerService.canceledOfferIDs)
+        assertEquals(listOf(failedTransactionHash), offerService.failedTransactionHashes)
+        // Both transactions were handled long before the blocks containing them were requested
+        assertEquals(2, offerService.blockRequestCounts.size)
+        assertTrue(offerService.blockRequestCounts.all { it < 30 })
+        for (transactionHash in transactionBlockNumbers.keys) {
+            assertNull(blockchainService.getMonitoredTransaction(transactionHash))
+        }
+    }
+
+    /**
+     * Ensures that [BlockchainService] replaces a monitored transaction that has not been confirmed with transactions
+     * with the same nonce and higher fees on schedule, and handles it once when one of these replacements is confirmed.
+     */
+    @Test
+    fun testFeeBumping() {
+        bumpFees(lostResponseReplacementNumber = null)
+    }
+
+    /**
+     * Ensures that when the node receives a replacement but the response to
+     * [eth_sendRawTransaction](https://ethereum.github.io/execution-apis/api-documentation/) is lost,
+     * [BlockchainService] keeps monitoring the replacement, handles the monitored transaction when that replacement
+     * is confirmed, and keeps replacing it on schedule without reporting an error.
+     */
+    @Test
+    fun testReplacementSendException() {
+        bumpFees(lostResponseReplacementNumber = 1)
+    }
+
+    /**
+     * Sends a monitored transaction that is replaced once blocks 4 and 7 are created, and of which the first
+     * replacement is confirmed in block 8, and ensures that [BlockchainService] replaces it with transactions with
+     * the same nonce and higher fees, and handles it once, as a failed transaction, for the original transaction.
+     *
+     * @param lostResponseReplacementNumber The number of the replacement that the node receives but to which it
+     * responds with an HTTP error, or `null` if the node responds to every replacement.
+     */
+    private fun bumpFees(lostResponseReplacementNumber: Int?) = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val newestBlockNumber = AtomicLong(0L)
+        val sentTransactions = Collections.synchronizedList(mutableListOf<String>())
+        val sentTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                // Each time the newest block number is requested, another block has been created
+                "eth_blockNumber" -> Numeric.encodeQuantity(BigInteger.valueOf(
+                    newestBlockNumber.updateAndGet { (it + 1L).coerceAtMost(10L) }
+                ))
+                "eth_feeHistory" -> mapOf(
+                    "oldestBlock" to "0x1",
+                    "baseFeePerGas" to listOf("0x7", "0x7"),
+                    "gasUsedRatio" to listOf(0.1),
+                    "reward" to listOf(listOf("0x1")),
+                )
+                "eth_sendRawTransaction" -> {
+                    sentTransactions.add(params[0].asText())
+                    val transactionHash = Hash.sha3(params[0].asText()).also { sentTransactionHashes.add(it) }
+                    if (sentTransactions.size - 1 == lostResponseReplacementNumber) {
+                        throw TestJsonRpcNode.UnavailableException()
+                    }
+                    transactionHash
+                }
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        // The first replacement is confirmed in block 8
+                        "transactions" to if (blockNumber == 8L) listOf(sentTransactionHashes[1]) else emptyList(),
+                    )
+                }
+                "eth_getTransactionReceipt" -> mapOf(
+                    "transactionHash" to params[0].asText(),
+                    "blockNumber" to "0x8",
+                    "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(8L), 64),
+                    "to" to commutoSwapAddress,
+                    "status" to "0x0",
+                    "logs" to emptyList<Any>(),
+                )
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val failedTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {
+                failedTransactionHashes.add(transaction.transactionHash)
+            }
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {}
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+        )
+        val chainID = BigInteger.valueOf(31337L)
+        val rawTransaction = RawTransaction.createTransaction(
+            chainID.toLong(),
+            BigInteger.valueOf(5L),
+            BigInteger.valueOf(100_000L),
+            commutoSwapAddress,
+            BigInteger.ZERO,
+            "0x",
+            BigInteger.valueOf(1_000_000_000L),
+            BigInteger.valueOf(2_000_000_000L)
+        )
+        val signedTransactionHex = Numeric.toHexString(blockchainService.signTransaction(rawTransaction, chainID))
+        val transaction = BlockchainTransaction(
+            transaction = rawTransaction,
+            transactionHash = Hash.sha3(signedTransactionHex),
+            timeOfCreation = Date(),
+            latestBlockNumberAtCreation = BigInteger.ONE,
+            type = BlockchainTransactionType.CANCEL_OFFER,
+        )
+        assertFalse(blockchainService.sendTransaction(transaction, signedTransactionHex, chainID).hasError())
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(30_000) {
+                while (offerService.failedTransactionHashes.isEmpty()) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        // The original was sent with block 1 as the newest, so it was replaced once blocks 4 and 7 were created
+        assertEquals(3, sentTransactions.size)
+        val sentRawTransactions = sentTransactions.map { TransactionDecoder.decode(it) }
+        assertTrue(sentRawTransactions.all { it.nonce == rawTransaction.nonce && it.data == rawTransaction.data })
+        for ((previous, replacement) in sentRawTransactions.zipWithNext()) {
+            val previousFees = previous.transaction as Transaction1559
+            val replacementFees = replacement.transaction as Transaction1559
+            assertTrue(replacementFees.maxPriorityFeePerGas * BigInteger.valueOf(8L) >=
+                    previousFees.maxPriorityFeePerGas * BigInteger.valueOf(9L))
+            assertTrue(replacementFees.maxFeePerGas * BigInteger.valueOf(8L) >=
+                    previousFees.maxFeePerGas * BigInteger.valueOf(9L))
+        }
+        // Offer state refers to the original, so the failure is reported for the original
+        assertEquals(listOf(transaction.transactionHash), offerService.failedTransactionHashes)
+        for (transactionHash in sentTransactionHashes) {
+            assertNull(blockchainService.getMonitoredTransaction(transactionHash))
+        }
+    }
+
+    /**
+     * Ensures that [BlockchainService] keeps listening, backing off between attempts, while the node cannot be
+     * connected to, and resumes parsing blocks once it can be.
+     */
+    @Test
+    fun testConnectExceptionRecovery() = runBlocking {
+        val node = TestJsonRpcNode { method, _ ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x1"
+                "eth_getBlockByNumber" -> mapOf(
+                    "number" to "0x1",
+                    "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64),
+                    "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64),
+                    "transactions" to listOf<String>(),
+                )
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        // The node cannot be connected to for the first few requests
+        val refusedConnectionCount = AtomicInteger(0)
+        val httpService = object : HttpService(node.url) {
+            override fun performIO(request: String): InputStream {
+                if (refusedConnectionCount.incrementAndGet() <= 3) {
+                    throw ConnectException("Connection refused")
+                }
+                return super.performIO(request)
+            }
+        }
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(httpService),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+            minErrorBackoff = 10L,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(10_000) {
+                while (node.callCount("eth_getBlockByNumber") == 0) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertTrue(exceptionHandler.gotError)
+        assertTrue(refusedConnectionCount.get() > 3)
+    }
+
+    /**
+     * Ensures that when a replacement of a monitored token transfer approval transaction is confirmed,
+     * [BlockchainService] passes the resulting [ApprovalEvent] to [OfferService] with the hash of the original
+     * transaction, to which the offer refers, so that the offer's approval is completed.
+     */
+    @OptIn(ExperimentalCoroutinesApi::class)
+    @Test
+    fun testReplacementApprovalEvent() = runBlocking {
+        Dispatchers.setMain(UnconfinedTestDispatcher())
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val tokenAddress = "0x5fbdb2315678afecb367f032d93f642f64180aa3"
+        val newestBlockNumber = AtomicLong(0L)
+        val sentTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                // Each time the newest block number is requested, another block has been created
+                "eth_blockNumber" -> Numeric.encodeQuantity(BigInteger.valueOf(
+                    newestBlockNumber.updateAndGet { (it + 1L).coerceAtMost(10L) }
+                ))
+                "eth_feeHistory" -> mapOf(
+                    "oldestBlock" to "0x1",
+                    "baseFeePerGas" to listOf("0x7", "0x7"),
+                    "gasUsedRatio" to listOf(0.1),
+                    "reward" to listOf(listOf("0x1")),
+                )
+                "eth_sendRawTransaction" -> Hash.sha3(params[0].asText()).also { sentTransactionHashes.add(it) }
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        // The first replacement is confirmed in block 8
+                        "transactions" to if (blockNumber == 8L) listOf(sentTransactionHashes[1]) else emptyList(),
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    // Only the first replacement is confirmed
+                    if (params[0].asText() != sentTransactionHashes[1]) {
+                        null
+                    } else {
+                        mapOf(
+                            "transactionHash" to params[0].asText(),
+                            "blockNumber" to "0x8",
+                            "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(8L), 64),
+                            "to" to tokenAddress,
+                            "status" to "0x1",
+                            "logs" to listOf(mapOf(
+                                "address" to tokenAddress,
+                                "topics" to listOf(
+                                    EventEncoder.encode(ERC20.APPROVAL_EVENT),
+                                    Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(commutoSwapAddress), 64),
+                                    Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(commutoSwapAddress), 64),
+                                ),
+                                "data" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.TEN, 64),
+                                "blockNumber" to "0x8",
+                                "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(8L), 64),
+                                "transactionHash" to params[0].asText(),
+                                "transactionIndex" to "0x0",
+                                "logIndex" to "0x0",
+                                "removed" to false,
+                            )),
+                        )
+                    }
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        val databaseService = DatabaseService(PreviewableDatabaseDriverFactory())
+        databaseService.createTables()
+        val offerService = OfferService(
+            databaseService,
+            KeyManagerService(databaseService),
+            TestSwapService(),
+        )
+        val offerTruthSource = TestOfferTruthSource()
+        offerService.setOfferTruthSource(offerTruthSource)
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+        )
+        val chainID = BigInteger.valueOf(31337L)
+        val rawTransaction = RawTransaction.createTransaction(
+            chainID.toLong(),
+            BigInteger.valueOf(5L),
+            BigInteger.valueOf(100_000L),
+            tokenAddress,
+            BigInteger.ZERO,
+            "0x",
+            BigInteger.valueOf(1_000_000_000L),
+            BigInteger.valueOf(2_000_000_000L)
+        )
+        val signedTransactionHex = Numeric.toHexString(blockchainService.signTransaction(rawTransaction, chainID))
+        val transaction = BlockchainTransaction(
+            transaction = rawTransaction,
+            transactionHash = Hash.sha3(signedTransactionHex),
+            timeOfCreation = Date(),
+            latestBlockNumberAtCreation = BigInteger.ONE,
+            type = BlockchainTransactionType.APPROVE_TOKEN_TRANSFER_TO_OPEN_OFFER,
+        )
+
+        val offer = Offer(
+            isCreated = true,
+            isTaken = false,
+            id = UUID.randomUUID(),
+            maker = "0x0000000000000000000000000000000000000000",
+            interfaceID = ByteArray(0),
+            stablecoin = tokenAddress,
+            amountLowerBound = BigInteger.ZERO,
+            amountUpperBound = BigInteger.ZERO,
+            securityDepositAmount = BigInteger.ZERO,
+            serviceFeeRate = BigInteger.ZERO,
+            direction = OfferDirection.BUY,
+            settlementMethods = mutableStateListOf(),
+            protocolVersion = BigInteger.ZERO,
+            chainID = chainID,
+            havePublicKey = true,
+            isUserMaker = true,
+            state = OfferState.APPROVE_TRANSFER_TRANSACTION_SENT
+        )
+        offer.approvingToOpenState.value = TokenTransferApprovalState.AWAITING_TRANSACTION_CONFIRMATION
+        offer.approvingToOpenTransaction = transaction
+        offerTruthSource.offers[offer.id] = offer
+
+        assertFalse(blockchainService.sendTransaction(transaction, signedTransactionHex, chainID).hasError())
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(30_000) {
+                while (offer.approvingToOpenState.value != TokenTransferApprovalState.COMPLETED) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        // The original was replaced once blocks 4 and 7 were created, and the first replacement was confirmed
+        assertEquals(3, sentTransactionHashes.size)
+        assertEquals(OfferState.AWAITING_OPENING, offer.state)
+        assertNull(offer.approvingToOpenException)
+        for (transactionHash in sentTransactionHashes) {
+            assertNull(blockchainService.getMonitoredTransaction(transactionHash))
+        }
+    }
+
+    /**
+     * Ensures that [BlockchainService] requests no receipts for blocks with `logsBloom` fields showing that they
+     * contain no CommutoSwap events, unless they contain monitored transactions, and reports the resulting skip rate.
+     */
+    @Test
+    fun testLogsBloomPrefilter() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val canceledOfferID = UUID.randomUUID()
+        val canceledOfferIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        canceledOfferIDBuffer.putLong(canceledOfferID.mostSignificantBits)
+        canceledOfferIDBuffer.putLong(canceledOfferID.leastSignificantBits)
+        val offerCanceledTopic = EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)
+        fun createLogsBloom(vararg values: String): String {
+            val bloom = ByteArray(256)
+            for (bitIndex in values.flatMap { LogsBloom.getBitIndices(it).toList() }) {
+                bloom[255 - bitIndex / 8] = (bloom[255 - bitIndex / 8].toInt() or (1 shl (bitIndex % 8))).toByte()
+            }
+            return Numeric.toHexString(bloom)
+        }
+        val transactionHashes = (1L..4L).map { Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(it), 64) }
+        // Block 2 contains an OfferCanceled event, block 3 contains only a call to CommutoSwap that emitted no handled
+        // event, and block 4 contains a monitored transaction that failed
+        val logsBlooms = listOf(
+            createLogsBloom(),
+            createLogsBloom(commutoSwapAddress, offerCanceledTopic),
+            createLogsBloom(commutoSwapAddress),
+            createLogsBloom(),
+        )
+        val requestedReceiptHashes = Collections.synchronizedList(mutableListOf<String>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x4"
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toInt()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber.toLong())),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber.toLong()), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1L), 64
+                        ),
+                        "logsBloom" to logsBlooms[blockNumber - 1],
+                        "transactions" to listOf(transactionHashes[blockNumber - 1]),
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    val transactionHash = params[0].asText()
+                    requestedReceiptHashes.add(transactionHash)
+                    val blockNumber = BigInteger.valueOf(transactionHashes.indexOf(transactionHash) + 1L)
+                    val isCanceledOfferTransaction = transactionHash == transactionHashes[1]
+                    mapOf(
+                        "transactionHash" to transactionHash,
+                        "blockNumber" to Numeric.encodeQuantity(blockNumber),
+                        "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                        "to" to commutoSwapAddress,
+                        "status" to if (isCanceledOfferTransaction) "0x1" else "0x0",
+                        "logs" to if (isCanceledOfferTransaction) {
+                            listOf(mapOf(
+                                "address" to commutoSwapAddress,
+                                "topics" to listOf(offerCanceledTopic),
+                                "data" to Numeric.toHexString(canceledOfferIDBuffer.array()),
+                                "blockNumber" to Numeric.encodeQuantity(blockNumber),
+                                "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                                "transactionHash" to transactionHash,
+                                "transactionIndex" to "0x0",
+                                "logIndex" to "0x0",
+                                "removed" to false,
+                            ))
+                        } else {
+                            emptyList()
+                        },
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            val failedTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {
+                failedTransactionHashes.add(transaction.transactionHash)
+            }
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+        )
+        blockchainService.addTransactionToMonitor(BlockchainTransaction(
+            transaction = null,
+            transactionHash = transactionHashes[3],
+            timeOfCreation = Date(),
+            latestBlockNumberAtCreation = BigInteger.ZERO,
+            type = BlockchainTransactionType.CANCEL_OFFER,
+        ))
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has parsed every block
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(listOf(transactionHashes[1], transactionHashes[3]), requestedReceiptHashes.sorted())
+        assertEquals(listOf(canceledOfferID), offerService.canceledOfferIDs)
+        assertEquals(listOf(transactionHashes[3]), offerService.failedTransactionHashes)
+        // Blocks 1 through 3 were checked, and blocks 1 and 3 were skipped
+        assertEquals(2.0 / 3.0, blockchainService.logsBloomSkipRate, 0.0001)
+    }
+
+    /**
+     * Parses three blocks of five transactions each from a [TestJsonRpcNode] that either supports
+     * `eth_getBlockReceipts` or answers it with a "Method not found" error, and ensures that the OfferCanceled event
+     * emitted by a transaction in the second block is handled.
+     *
+     * @param supportsBlockReceipts Whether the node supports `eth_getBlockReceipts`.
+     * @param erroredBlockNumber The number of a block for which the node answers `eth_getBlockReceipts` with an error
+     * other than "Method not found", or `null` if there is none.
+     *
+     * @return The [TestJsonRpcNode], which has been stopped.
+     */
+    private fun parseBlocksWithBlockReceipts(
+        supportsBlockReceipts: Boolean,
+        erroredBlockNumber: Long? = null,
+    ): TestJsonRpcNode = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val canceledOfferID = UUID.randomUUID()
+        val canceledOfferIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        canceledOfferIDBuffer.putLong(canceledOfferID.mostSignificantBits)
+        canceledOfferIDBuffer.putLong(canceledOfferID.leastSignificantBits)
+        val canceledOfferTransactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(23L), 64)
+        fun getTransactionHashes(blockNumber: Long) = (1L..5L).map {
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber * 10L + it), 64)
+        }
+        fun createReceipt(transactionHash: String): Map<String, Any> {
+            val blockNumber = BigInteger.valueOf(Numeric.toBigInt(transactionHash).toLong() / 10L)
+            return mapOf(
+                "transactionHash" to transactionHash,
+                "blockNumber" to Numeric.encodeQuantity(blockNumber),
+                "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                "to" to commutoSwapAddress,
+                "status" to "0x1",
+                "logs" to if (transactionHash == canceledOfferTransactionHash) {
+                    listOf(mapOf(
+                        "address" to commutoSwapAddress,
+                        "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+                        "data" to Numeric.toHexString(canceledOfferIDBuffer.array()),
+                        "blockNumber" to Numeric.encodeQuantity(blockNumber),
+                        "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                        "transactionHash" to transactionHash,
+                        "transactionIndex" to "0x2",
+                        "logIndex" to "0x0",
+                        "removed" to false,
+                    ))
+                } else {
+                    emptyList()
+                },
+            )
+        }
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x3"
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to getTransactionHashes(blockNumber),
+                    )
+                }
+                "eth_getBlockReceipts" -> {
+                    // Blocks are requested by hash, and the hash of each block is its zero-padded block number
+                    val blockNumber = Numeric.toBigInt(params[0].asText()).toLong()
+                    if (!supportsBlockReceipts) {
+                        throw TestJsonRpcNode.JsonRpcException(-32601, "the method eth_getBlockReceipts does not exist")
+                    } else if (blockNumber == erroredBlockNumber) {
+                        throw TestJsonRpcNode.JsonRpcException(-32000, "request timed out")
+                    }
+                    getTransactionHashes(blockNumber).map { createReceipt(it) }
+                }
+                "eth_getTransactionReceipt" -> createReceipt(params[0].asText())
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            // Blocks are parsed one at a time, so that support is detected before the second block is requested
+            catchUpPrefetchWindowSize = 1,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number for a fourth time once it has parsed every block
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 4) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(listOf(canceledOfferID), offerService.canceledOfferIDs)
+        node
+    }
+
+    /**
+     * Ensures that [BlockchainService] gets all the receipts of a block with a single `eth_getBlockReceipts` call when
+     * the node supports it.
+     */
+    @Test
+    fun testBlockReceipts() {
+        val node = parseBlocksWithBlockReceipts(supportsBlockReceipts = true)
+        assertEquals(3, node.callCount("eth_getBlockReceipts"))
+        assertEquals(0, node.callCount("eth_getTransactionReceipt"))
+    }
+
+    /**
+     * Ensures that when a node that supports `eth_getBlockReceipts` answers it with an error other than "Method not
+     * found", [BlockchainService] gets the receipts of only that block per transaction, and keeps using
+     * `eth_getBlockReceipts` for later blocks.
+     */
+    @Test
+    fun testBlockReceiptsError() {
+        val node = parseBlocksWithBlockReceipts(supportsBlockReceipts = true, erroredBlockNumber = 1L)
+        assertEquals(3, node.callCount("eth_getBlockReceipts"))
+        assertEquals(5, node.callCount("eth_getTransactionReceipt"))
+    }
+
+    /**
+     * Ensures that [BlockchainService] detects that a node does not support `eth_getBlockReceipts` from its first
+     * response, and then gets receipts per transaction without calling `eth_getBlockReceipts` again.
+     */
+    @Test
+    fun testBlockReceiptsFallback() {
+        val node = parseBlocksWithBlockReceipts(supportsBlockReceipts = false)
+        assertEquals(1, node.callCount("eth_getBlockReceipts"))
+        assertEquals(15, node.callCount("eth_getTransactionReceipt"))
+    }
+
+    /**
+     * Ensures that when its ingestion mode is [BlockchainIngestionMode.FULL_BLOCKS], [BlockchainService] requests
+     * blocks with full transaction objects, and requests only the receipts of monitored transactions and of
+     * transactions that its [TransactionFilter] considers relevant.
+     */
+    @Test
+    fun testFullBlockTransactionFiltering() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val otherAddress = "0x0000000000000000000000000000000000000001"
+        val canceledOfferID = UUID.randomUUID()
+        val canceledOfferIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        canceledOfferIDBuffer.putLong(canceledOfferID.mostSignificantBits)
+        canceledOfferIDBuffer.putLong(canceledOfferID.leastSignificantBits)
+        val transactionHashes = (1L..5L).map { Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(it), 64) }
+        // The second transaction is sent to CommutoSwap and the fourth is monitored
+        val canceledOfferTransactionHash = transactionHashes[1]
+        val monitoredTransactionHash = transactionHashes[3]
+        val requestedReceiptHashes = Collections.synchronizedList(mutableListOf<String>())
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x1"
+                "eth_getBlockByNumber" -> {
+                    assertTrue(params[1].asBoolean())
+                    mapOf(
+                        "number" to "0x1",
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ZERO, 64),
+                        "transactions" to transactionHashes.map {
+                            mapOf(
+                                "hash" to it,
+                                "blockNumber" to "0x1",
+                                "from" to otherAddress,
+                                "to" to if (it == canceledOfferTransactionHash) commutoSwapAddress else otherAddress,
+                                "input" to "0x",
+                            )
+                        },
+                    )
+                }
+                "eth_getTransactionReceipt" -> {
+                    val transactionHash = params[0].asText()
+                    requestedReceiptHashes.add(transactionHash)
+                    val isCanceledOfferTransaction = transactionHash == canceledOfferTransactionHash
+                    mapOf(
+                        "transactionHash" to transactionHash,
+                        "blockNumber" to "0x1",
+                        "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64),
+                        "to" to if (isCanceledOfferTransaction) commutoSwapAddress else otherAddress,
+                        "status" to if (isCanceledOfferTransaction) "0x1" else "0x0",
+                        "logs" to if (isCanceledOfferTransaction) {
+                            listOf(mapOf(
+                                "address" to commutoSwapAddress,
+                                "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+                                "data" to Numeric.toHexString(canceledOfferIDBuffer.array()),
+                                "blockNumber" to "0x1",
+                                "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64),
+                                "transactionHash" to transactionHash,
+                                "transactionIndex" to "0x1",
+                                "logIndex" to "0x0",
+                                "removed" to false,
+                            ))
+                        } else {
+                            emptyList()
+                        },
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            val failedTransactionHashes = Collections.synchronizedList(mutableListOf<String>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {
+                failedTransactionHashes.add(transaction.transactionHash)
+            }
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            ingestionMode = BlockchainIngestionMode.FULL_BLOCKS,
+        )
+        blockchainService.addTransactionToMonitor(BlockchainTransaction(
+            transaction = null,
+            transactionHash = monitoredTransactionHash,
+            timeOfCreation = Date(),
+            latestBlockNumberAtCreation = BigInteger.ZERO,
+            type = BlockchainTransactionType.CANCEL_OFFER,
+        ))
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // The listen loop gets the newest block number again once it has finished parsing block 1
+            withTimeout(30_000) {
+                while (node.callCount("eth_blockNumber") < 2) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertFalse(exceptionHandler.gotError)
+        assertEquals(listOf(canceledOfferTransactionHash, monitoredTransactionHash), requestedReceiptHashes.sorted())
+        assertEquals(listOf(canceledOfferID), offerService.canceledOfferIDs)
+        assertEquals(listOf(monitoredTransactionHash), offerService.failedTransactionHashes)
+    }
+
+    /**
+     * Ensures that [BlockchainService] backs off exponentially while the node keeps failing, reporting that it is
+     * doing so with [BlockchainService.listenMode], rather than retrying immediately, and that it stops listening
+     * promptly while backing off.
+     */
+    @Test
+    fun testErrorBackoff() = runBlocking {
+        val node = TestJsonRpcNode { method, _ ->
+            when (method) {
+                "eth_chainId" -> throw TestJsonRpcNode.UnavailableException()
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+            minErrorBackoff = 100L,
+            maxErrorBackoff = 60_000L,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            // Waits of at least 50, 100, 200 and 400 ms must follow the first four failures
+            delay(1_000L)
+            assertEquals(ListenMode.BACKING_OFF, blockchainService.listenMode.value)
+        } finally {
+            withTimeout(5_000) {
+                blockchainService.stopListening()
+                listenJob.join()
+            }
+            node.stop()
+        }
+        assertTrue(exceptionHandler.gotError)
+        assertTrue(node.callCount("eth_chainId") in 2..6)
+    }
+
+    /**
+     * Ensures that concurrent calls to [BlockchainService.getServiceFeeRateAsync] and to [BlockchainService.getOffer]
+     * for the same offer share single in-flight requests, that a call made once those requests have completed sends a
+     * new request, and that [BlockchainService.requestDedupRate] reports the proportion of shared reads.
+     */
+    @Test
+    fun testRequestCoalescing() = runBlocking {
+        val maker = "0xf39fd6e51aad88f6f4ce6ab8827279cfffb92266"
+        val offerReturnData = encodeOfferReturnData(maker)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> {
+                    Thread.sleep(200L)
+                    "0x7a69"
+                }
+                "eth_call" -> {
+                    Thread.sleep(200L)
+                    // A call to serviceFeeRate has only a function selector, while a call to getOffer has an ID too
+                    if (params[0].get("data").asText().length > 10) {
+                        offerReturnData
+                    } else {
+                        Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(100L), 64)
+                    }
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        val blockchainService = BlockchainService(
+            exceptionHandler = TestBlockchainExceptionHandler(),
+            offerService = TestOfferService(),
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+        )
+        val offerID = UUID.randomUUID()
+        try {
+            val serviceFeeRates = (1..5).map { blockchainService.getServiceFeeRateAsync() }.awaitAll()
+            assertEquals(List(5) { BigInteger.valueOf(100L) }, serviceFeeRates)
+            val offers = (1..5).map { async(Dispatchers.IO) { blockchainService.getOffer(offerID) } }.awaitAll()
+            assertEquals(List(5) { maker }, offers.map { it?.maker })
+            assertEquals(1, node.callCount("eth_chainId"))
+            assertEquals(2, node.callCount("eth_call"))
+            // 4 calls to getServiceFeeRateAsync, 4 calls to getChainID and 4 calls to getOffer shared requests
+            assertEquals(12.0 / 15.0, blockchainService.requestDedupRate, 0.0001)
+
+            assertEquals(BigInteger.valueOf(100L), blockchainService.getServiceFeeRateAsync().await())
+            assertEquals(3, node.callCount("eth_call"))
+        } finally {
+            node.stop()
+        }
+    }
+
+    /**
+     * Ensures that when [BlockchainService] is far behind the newest block, as after a fresh install, it backfills by
+     * requesting the logs of several block ranges at once, replays their events in `(blockNumber, logIndex)` order,
+     * reports its progress, stores a block checkpoint after each range, and resumes after the last replayed range when
+     * interrupted, without replaying any event twice. The newest blocks are then parsed one at a time.
+     */
+    @Test
+    fun testBackfill() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val databaseService = DatabaseService(PreviewableDatabaseDriverFactory())
+        databaseService.createTables()
+        val requestedRangeStarts = Collections.synchronizedList(mutableListOf<Long>())
+        val concurrentGetLogsCount = AtomicInteger(0)
+        val maxConcurrentGetLogsCount = AtomicInteger(0)
+        val hasFailed = AtomicBoolean(false)
+        fun createOfferID(blockNumber: Long, logIndex: Long) = UUID(blockNumber, logIndex)
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x64"
+                "eth_getLogs" -> {
+                    val fromBlockNumber = Numeric.decodeQuantity(params[0].get("fromBlock").asText()).toLong()
+                    val toBlockNumber = Numeric.decodeQuantity(params[0].get("toBlock").asText()).toLong()
+                    requestedRangeStarts.add(fromBlockNumber)
+                    maxConcurrentGetLogsCount.accumulateAndGet(concurrentGetLogsCount.incrementAndGet(), ::maxOf)
+                    Thread.sleep(50L)
+                    concurrentGetLogsCount.decrementAndGet()
+                    // The backfill is interrupted the first time the range beginning with block 41 is requested
+                    if (fromBlockNumber == 41L && hasFailed.compareAndSet(false, true)) {
+                        throw TestJsonRpcNode.UnavailableException()
+                    }
+                    // Blocks ending in 5 contain two OfferCanceled events, which are returned out of order
+                    (fromBlockNumber..toBlockNumber).filter { it % 10L == 5L }.flatMap { blockNumber ->
+                        listOf(1L, 0L).map { logIndex ->
+                            createOfferCanceledLog(
+                                commutoSwapAddress,
+                                blockNumber,
+                                logIndex,
+                                createOfferID(blockNumber, logIndex)
+                            )
+                        }
+                    }
+                }
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText()).toLong()
+                    mapOf(
+                        "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                        "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+                        "parentHash" to Numeric.toHexStringWithPrefixZeroPadded(
+                            BigInteger.valueOf(blockNumber - 1), 64
+                        ),
+                        "transactions" to listOf<String>(),
+                    )
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val exceptionHandler = TestBlockchainExceptionHandler()
+        val blockchainService = BlockchainService(
+            exceptionHandler = exceptionHandler,
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            databaseService = databaseService,
+            logBlockRangeSize = 10L,
+            recentBlockBufferSize = 5,
+            minErrorBackoff = 10L,
+            backfillThreshold = 20L,
+            backfillConcurrency = 3,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(30_000) {
+                while (databaseService.getBlockCheckpoint("31337")?.blockNumber != 100L) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+            node.stop()
+        }
+        assertTrue(exceptionHandler.gotError)
+        // The backfill resumed after the last range replayed before the interruption, which was at least the range
+        // beginning with block 11, since the range beginning with block 41 is only requested once it has been replayed
+        val backfillProgress = blockchainService.backfillProgress.value!!
+        val resumeBlockNumber = backfillProgress.fromBlockNumber.toLong()
+        assertTrue(resumeBlockNumber in listOf(21L, 31L, 41L))
+        assertEquals(
+            (1L until resumeBlockNumber step 10L).toList(),
+            requestedRangeStarts.filter { it < resumeBlockNumber }.sorted()
+        )
+        assertEquals((1L..91L step 10L).toList(), requestedRangeStarts.distinct().sorted())
+        assertTrue(maxConcurrentGetLogsCount.get() in 2..3)
+        assertEquals(BigInteger.valueOf(95L), backfillProgress.toBlockNumber)
+        assertTrue(backfillProgress.isComplete)
+        assertEquals(1.0, backfillProgress.fraction, 0.0)
+        val expectedOfferIDs = (5L..95L step 10L).flatMap { listOf(createOfferID(it, 0L), createOfferID(it, 1L)) }
+        assertEquals(expectedOfferIDs, offerService.canceledOfferIDs.toList())
+        // Blocks 96 through 100 were parsed one at a time
+        assertEquals(0, node.callCount("eth_getTransactionReceipt"))
+    }
+
+    /**
+     * Creates a JSON-RPC log object emitting an OfferCanceled event for the specified offer in the block with the
+     * specified number, which has a hash derived from its number, in a transaction with the same hash.
+     */
+    private fun createOfferCanceledLog(
+        commutoSwapAddress: String,
+        blockNumber: Long,
+        logIndex: Long,
+        offerID: UUID
+    ): Map<String, Any> {
+        val offerIDBuffer = ByteBuffer.wrap(ByteArray(32))
+        offerIDBuffer.putLong(offerID.mostSignificantBits)
+        offerIDBuffer.putLong(offerID.leastSignificantBits)
+        return mapOf(
+            "address" to commutoSwapAddress,
+            "topics" to listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT)),
+            "data" to Numeric.toHexString(offerIDBuffer.array()),
+            "blockNumber" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+            "blockHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+            "transactionHash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber), 64),
+            "transactionIndex" to "0x0",
+            "logIndex" to Numeric.encodeQuantity(BigInteger.valueOf(logIndex)),
+            "removed" to false,
+        )
+    }
+
+    /**
+     * Ensures that [BlockchainService] journals the CommutoSwap events that it handles, and that
+     * [BlockchainService.replayEventJournal] handles them again in the order in which they were emitted using only the
+     * journal, without requesting any logs from the node.
+     */
+    @Test
+    fun testReplayEventJournal() = runBlocking {
+        val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+        val eventJournalDirectory = File.createTempFile("event_journals", "")
+        eventJournalDirectory.delete()
+        eventJournalDirectory.deleteOnExit()
+        val offerIDs = List(4) { UUID.randomUUID() }
+        val node = TestJsonRpcNode { method, _ ->
+            when (method) {
+                "eth_chainId" -> "0x7a69"
+                "eth_blockNumber" -> "0x3"
+                "eth_getLogs" -> listOf(
+                    createOfferCanceledLog(commutoSwapAddress, 1L, 0L, offerIDs[0]),
+                    createOfferCanceledLog(commutoSwapAddress, 3L, 1L, offerIDs[3]),
+                    createOfferCanceledLog(commutoSwapAddress, 3L, 0L, offerIDs[2]),
+                    createOfferCanceledLog(commutoSwapAddress, 2L, 4L, offerIDs[1]),
+                )
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+
+        class TestOfferService : OfferNotifiable {
+            val canceledOfferIDs = Collections.synchronizedList(mutableListOf<UUID>())
+            override suspend fun handleFailedTransaction(
+                transaction: BlockchainTransaction,
+                exception: BlockchainTransactionException
+            ) {}
+            override suspend fun handleTokenTransferApprovalEvent(event: ApprovalEvent) {}
+            override suspend fun handleOfferOpenedEvent(event: OfferOpenedEvent) {}
+            override suspend fun handleOfferEditedEvent(event: OfferEditedEvent) {}
+            override suspend fun handleOfferCanceledEvent(event: OfferCanceledEvent) {
+                canceledOfferIDs.add(event.offerID)
+            }
+            override suspend fun handleOfferTakenEvent(event: OfferTakenEvent) {}
+            override suspend fun handleServiceFeeRateChangedEvent(event: ServiceFeeRateChangedEvent) {}
+        }
+
+        val offerService = TestOfferService()
+        val blockchainService = BlockchainService(
+            exceptionHandler = TestBlockchainExceptionHandler(),
+            offerService = offerService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            ingestionMode = BlockchainIngestionMode.LOGS,
+            eventJournalDirectory = eventJournalDirectory,
+        )
+        val listenJob = launch(Dispatchers.IO) {
+            blockchainService.listenLoop()
+        }
+        try {
+            withTimeout(10_000) {
+                while (offerService.canceledOfferIDs.size < offerIDs.size) {
+                    delay(10)
+                }
+            }
+        } finally {
+            blockchainService.stopListening()
+            listenJob.join()
+        }
+        assertEquals(offerIDs, offerService.canceledOfferIDs.toList())
+        val getLogsCallCount = node.callCount("eth_getLogs")
+
+        val replayingOfferService = TestOfferService()
+        val replayingBlockchainService = BlockchainService(
+            exceptionHandler = TestBlockchainExceptionHandler(),
+            offerService = replayingOfferService,
+            swapService = TestSwapService(),
+            web3 = CommutoWeb3j(HttpService(node.url)),
+            commutoSwapAddress = commutoSwapAddress,
+            ingestionMode = BlockchainIngestionMode.LOGS,
+            eventJournalDirectory = eventJournalDirectory,
+        )
+        try {
+            assertEquals(offerIDs.size, replayingBlockchainService.replayEventJournal())
+            assertEquals(2, replayingBlockchainService.replayEventJournal(BigInteger.valueOf(3L)))
+        } finally {
+            node.stop()
+        }
+        assertEquals(offerIDs + offerIDs.drop(2), replayingOfferService.canceledOfferIDs.toList())
+        assertEquals(getLogsCallCount, node.callCount("eth_getLogs"))
+    }
+}
@@ -0,0 +1,179 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.web3j.abi.EventEncoder
+import org.web3j.abi.FunctionEncoder
+import org.web3j.abi.TypeReference
+import org.web3j.abi.datatypes.DynamicBytes
+import org.web3j.abi.datatypes.Event
+import org.web3j.abi.datatypes.Type
+import org.web3j.abi.datatypes.generated.Bytes16
+import org.web3j.abi.datatypes.generated.Uint256
+import org.web3j.contracts.eip20.generated.ERC20
+import org.web3j.crypto.Credentials
+import org.web3j.protocol.Web3j
+import org.web3j.protocol.core.methods.response.BaseEventResponse
+import org.web3j.protocol.core.methods.response.Log
+import org.web3j.protocol.core.methods.response.TransactionReceipt
+import org.web3j.protocol.http.HttpService
+import org.web3j.tx.gas.DefaultGasProvider
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import java.nio.ByteBuffer
+import java.util.*
+
+/**
+ * Tests for [CommutoEventDecoder]
+ */
+class CommutoEventDecoderTest {
+
+    private val commutoSwapAddress = "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+
+    private val tokenAddress = "0x5fbdb2315678afecb367f032d93f642f64180aa3"
+
+    private val ownerAddress = "0xf39fd6e51aad88f6f4ce6ab8827279cfffb92266"
+
+    private val spenderAddress = "0x70997970c51812dc3a010c7d01b50e0d17dc79c8"
+
+    /**
+     * Creates a [Log] emitting [event] with the specified non-indexed [values] and additional [indexedTopics].
+     */
+    private fun createLog(
+        address: String,
+        event: Event,
+        values: List<Type<*>>,
+        logIndex: Int,
+        indexedTopics: List<String> = emptyList()
+    ): Log {
+        val log = Log()
+        log.address = address
+        log.topics = listOf(EventEncoder.encode(event)) + indexedTopics
+        log.data = "0x" + FunctionEncoder.encodeConstructor(values)
+        log.setLogIndex(Numeric.encodeQuantity(BigInteger.valueOf(logIndex.toLong())))
+        return log
+    }
+
+    /**
+     * Creates a [Bytes16] containing the bytes of a new random [UUID].
+     */
+    private fun randomID(): Bytes16 {
+        val uuid = UUID.randomUUID()
+        val buffer = ByteBuffer.wrap(ByteArray(16))
+        buffer.putLong(uuid.mostSignificantBits)
+        buffer.putLong(uuid.leastSignificantBits)
+        return Bytes16(buffer.array())
+    }
+
+    /**
+     * Creates a [TransactionReceipt] containing [eventCount] logs, cycling through every CommutoSwap event that
+     * [BlockchainService] handles, an ERC20 Approval event and an unrelated event.
+     */
+    private fun createReceipt(eventCount: Int): TransactionReceipt {
+        val unrelatedEvent = Event("Unrelated", listOf(TypeReference.create(Uint256::class.java)))
+        val logs = (0 until eventCount).map { index ->
+            when (index % 12) {
+                0 -> createLog(commutoSwapAddress, CommutoSwap.OFFEROPENED_EVENT,
+                    listOf(randomID(), DynamicBytes(ByteArray(20) { it.toByte() })), index)
+                1 -> createLog(commutoSwapAddress, CommutoSwap.OFFEREDITED_EVENT, listOf(randomID()), index)
+                2 -> createLog(commutoSwapAddress, CommutoSwap.OFFERCANCELED_EVENT, listOf(randomID()), index)
+                3 -> createLog(commutoSwapAddress, CommutoSwap.OFFERTAKEN_EVENT,
+                    listOf(randomID(), DynamicBytes(ByteArray(33) { it.toByte() })), index)
+                4 -> createLog(commutoSwapAddress, CommutoSwap.SERVICEFEERATECHANGED_EVENT,
+                    listOf(Uint256(BigInteger.valueOf(index.toLong()))), index)
+                5 -> createLog(commutoSwapAddress, CommutoSwap.SWAPFILLED_EVENT, listOf(randomID()), index)
+                6 -> createLog(commutoSwapAddress, CommutoSwap.PAYMENTSENT_EVENT, listOf(randomID()), index)
+                7 -> createLog(commutoSwapAddress, CommutoSwap.PAYMENTRECEIVED_EVENT, listOf(randomID()), index)
+                8 -> createLog(commutoSwapAddress, CommutoSwap.BUYERCLOSED_EVENT, listOf(randomID()), index)
+                9 -> createLog(commutoSwapAddress, CommutoSwap.SELLERCLOSED_EVENT, listOf(randomID()), index)
+                10 -> createLog(tokenAddress, ERC20.APPROVAL_EVENT, listOf(Uint256(BigInteger.TEN.pow(18))), index,
+                    listOf(
+                        Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(ownerAddress), 64),
+                        Numeric.toHexStringWithPrefixZeroPadded(Numeric.toBigInt(spenderAddress), 64),
+                    ))
+                else -> createLog(tokenAddress, unrelatedEvent, listOf(Uint256(BigInteger.ONE)), index)
+            }
+        }
+        val receipt = TransactionReceipt()
+        receipt.status = "0x1"
+        receipt.logs = logs
+        return receipt
+    }
+
+    /**
+     * Returns the type, [Log] and decoded values of [eventResponse] in a form that can be compared with [assertEquals].
+     */
+    private fun fieldsOf(eventResponse: Any): List<Any?> {
+        val values: List<Any?> = when (eventResponse) {
+            is CommutoSwap.OfferOpenedEventResponse -> listOf(eventResponse.offerID.toList(),
+                eventResponse.interfaceId.toList())
+            is CommutoSwap.OfferEditedEventResponse -> listOf(eventResponse.offerID.toList())
+            is CommutoSwap.OfferCanceledEventResponse -> listOf(eventResponse.offerID.toList())
+            is CommutoSwap.OfferTakenEventResponse -> listOf(eventResponse.offerID.toList(),
+                eventResponse.takerInterfaceId.toList())
+            is CommutoSwap.ServiceFeeRateChangedEventResponse -> listOf(eventResponse.newServiceFeeRate)
+            is CommutoSwap.SwapFilledEventResponse -> listOf(eventResponse.swapID.toList())
+            is CommutoSwap.PaymentSentEventResponse -> listOf(eventResponse.swapID.toList())
+            is CommutoSwap.PaymentReceivedEventResponse -> listOf(eventResponse.swapID.toList())
+            is CommutoSwap.BuyerClosedEventResponse -> listOf(eventResponse.swapID.toList())
+            is CommutoSwap.SellerClosedEventResponse -> listOf(eventResponse.swapID.toList())
+            is ERC20.ApprovalEventResponse -> return listOf(eventResponse::class, eventResponse.log,
+                eventResponse._owner, eventResponse._spender, eventResponse._value)
+            else -> throw IllegalStateException("Unexpected event response type ${eventResponse::class}")
+        }
+        return listOf(eventResponse::class, (eventResponse as BaseEventResponse).log) + values
+    }
+
+    /**
+     * Extracts CommutoSwap events from [receipt] using the generated [CommutoSwap] extractors, one event type at a
+     * time, as [BlockchainService] did before it used [CommutoEventDecoder].
+     */
+    private fun extractWithGeneratedExtractors(
+        commutoSwap: CommutoSwap,
+        receipt: TransactionReceipt
+    ): List<BaseEventResponse> {
+        return listOf(
+            commutoSwap.getOfferOpenedEvents(receipt),
+            commutoSwap.getOfferEditedEvents(receipt),
+            commutoSwap.getOfferCanceledEvents(receipt),
+            commutoSwap.getOfferTakenEvents(receipt),
+            commutoSwap.getServiceFeeRateChangedEvents(receipt),
+            commutoSwap.getSwapFilledEvents(receipt),
+            commutoSwap.getPaymentSentEvents(receipt),
+            commutoSwap.getPaymentReceivedEvents(receipt),
+            commutoSwap.getBuyerClosedEvents(receipt),
+            commutoSwap.getSellerClosedEvents(receipt),
+        ).flatten()
+    }
+
+    /**
+     * Ensures that [CommutoEventDecoder] decodes exactly the same CommutoSwap and ERC20 Approval events as the generated
+     * contract wrapper extractors, in the order in which they appear in the receipt.
+     */
+    @Test
+    fun testDecodeEvents() {
+        val web3 = Web3j.build(HttpService("http://localhost:8545"))
+        val credentials = Credentials.create("0x59c6995e998f97a5a0044966f0945389dc9e86dae88c7a8412f4603b6b78690d")
+        val commutoSwap = CommutoSwap.load(commutoSwapAddress, web3, credentials, DefaultGasProvider())
+        val erc20 = ERC20.load(tokenAddress, web3, credentials, DefaultGasProvider())
+        val decoder = CommutoEventDecoder()
+        val receipt = createReceipt(eventCount = 1_200)
+
+        val expectedCommutoSwapEvents = extractWithGeneratedExtractors(commutoSwap, receipt)
+        val commutoSwapEvents = decoder.decodeCommutoSwapEvents(receipt.logs)
+        assertEquals(1_000, commutoSwapEvents.size)
+        assertEquals(
+            expectedCommutoSwapEvents.map { fieldsOf(it) }.sortedBy { (it[1] as Log).logIndex },
+            commutoSwapEvents.map { fieldsOf(it) }
+        )
+        assertEquals(receipt.logs.filter { it.address == commutoSwapAddress }, commutoSwapEvents.map { it.log })
+
+        val approvalEvents = decoder.decodeApprovalEvents(receipt.logs)
+        assertEquals(100, approvalEvents.size)
+        assertEquals(erc20.getApprovalEvents(receipt).map { fieldsOf(it) }, approvalEvents.map { fieldsOf(it) })
+        assertEquals(ownerAddress, approvalEvents.first()._owner)
+        assertEquals(spenderAddress, approvalEvents.first()._spender)
+    }
+
+}
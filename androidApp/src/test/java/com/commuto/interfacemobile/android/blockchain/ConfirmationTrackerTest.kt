@@ -0,0 +1,57 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+import java.util.*
+
+/**
+ * Tests for [ConfirmationTracker]
+ */
+class ConfirmationTrackerTest {
+
+    /**
+     * Ensures that [ConfirmationTracker] makes its first poll due immediately, backs off after polls that find no
+     * receipts, and makes a poll due soon again once a new transaction is monitored.
+     */
+    @Test
+    fun testAdaptivePollInterval() {
+        val confirmationTracker = ConfirmationTracker(minPollInterval = 50L, maxPollInterval = 60_000L)
+        assertTrue(confirmationTracker.isPollDue)
+        confirmationTracker.handlePoll(foundReceipts = true)
+        assertFalse(confirmationTracker.isPollDue)
+        Thread.sleep(60L)
+        assertTrue(confirmationTracker.isPollDue)
+        // After enough polls without receipts, the next poll is far in the future
+        repeat(12) { confirmationTracker.handlePoll(foundReceipts = false) }
+        Thread.sleep(60L)
+        assertFalse(confirmationTracker.isPollDue)
+        confirmationTracker.handleNewTransaction()
+        Thread.sleep(60L)
+        assertTrue(confirmationTracker.isPollDue)
+    }
+
+    /**
+     * Ensures that [ConfirmationTracker] reports transactions handled by polls as handled, regardless of the case of
+     * their hashes, until the blocks containing them have been parsed.
+     */
+    @Test
+    fun testHandledTransactions() {
+        val confirmationTracker = ConfirmationTracker()
+        val offerID = UUID.randomUUID()
+        val swapID = UUID.randomUUID()
+        confirmationTracker.addHandledTransaction("0xABC", BigInteger.valueOf(5L), setOf(offerID), setOf())
+        confirmationTracker.addHandledTransaction("0xdef", BigInteger.valueOf(7L), setOf(), setOf(swapID))
+        assertTrue(confirmationTracker.isHandled("0xabc"))
+        assertTrue(confirmationTracker.isHandled("0xDEF"))
+        assertFalse(confirmationTracker.isHandled("0x123"))
+        assertEquals(listOf<ConfirmationTracker.HandledTransaction>(),
+            confirmationTracker.removeHandledTransactions(BigInteger.valueOf(4L)))
+
+        val removedTransactions = confirmationTracker.removeHandledTransactions(BigInteger.valueOf(6L))
+        assertEquals(listOf(setOf(offerID)), removedTransactions.map { it.offerIDs })
+        assertFalse(confirmationTracker.isHandled("0xabc"))
+        assertTrue(confirmationTracker.isHandled("0xdef"))
+    }
+
+}
@@ -0,0 +1,111 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import com.commuto.interfacemobile.android.contractwrapper.CommutoSwap
+import org.junit.Assert.*
+import org.junit.Test
+import org.web3j.abi.EventEncoder
+import org.web3j.protocol.core.methods.response.Log
+import org.web3j.utils.Numeric
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.math.BigInteger
+
+/**
+ * Tests for [EventJournal]
+ */
+class EventJournalTest {
+
+    /**
+     * Creates a [Log] emitting an OfferCanceled event in the block with the specified number, at the specified log
+     * index.
+     */
+    private fun createLog(blockNumber: Long, logIndex: Long, blockHashSeed: Long = blockNumber): Log {
+        return Log(
+            false,
+            Numeric.encodeQuantity(BigInteger.valueOf(logIndex)),
+            "0x0",
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockNumber * 100L + logIndex), 64),
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(blockHashSeed), 64),
+            Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+            "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+            Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(logIndex + 1L), 64),
+            null,
+            listOf(EventEncoder.encode(CommutoSwap.OFFERCANCELED_EVENT))
+        )
+    }
+
+    /**
+     * Creates a file for an [EventJournal] that is deleted when the JVM exits.
+     */
+    private fun createJournalFile(): File {
+        return File.createTempFile("events", ".journal").apply { deleteOnExit() }
+    }
+
+    /**
+     * Ensures that [EventJournal] returns every appended log exactly as it was appended, in `(blockNumber, logIndex)`
+     * order, that a log appended again replaces the earlier one, that logs are returned from the specified block, and
+     * that the journal can be reopened.
+     */
+    @Test
+    fun testAppendAndRead() {
+        val file = createJournalFile()
+        val eventJournal = EventJournal(file)
+        assertEquals(listOf<Log>(), eventJournal.read())
+        eventJournal.append(listOf(createLog(5L, 1L), createLog(5L, 0L)))
+        // Events of a monitored transaction may be handled before the events of earlier blocks
+        eventJournal.append(listOf(createLog(9L, 0L)))
+        eventJournal.append(listOf(createLog(7L, 3L)))
+        eventJournal.append(listOf(createLog(9L, 0L)))
+        val expectedLogs = listOf(createLog(5L, 0L), createLog(5L, 1L), createLog(7L, 3L), createLog(9L, 0L))
+        assertEquals(expectedLogs, eventJournal.read())
+        assertEquals(expectedLogs.drop(2), eventJournal.read(BigInteger.valueOf(6L)))
+        eventJournal.close()
+
+        val reopenedEventJournal = EventJournal(file)
+        assertEquals(expectedLogs, reopenedEventJournal.read())
+        reopenedEventJournal.close()
+    }
+
+    /**
+     * Ensures that a rewind discards the events of every later block that were appended before it, but not those
+     * appended after it.
+     */
+    @Test
+    fun testRewind() {
+        val eventJournal = EventJournal(createJournalFile())
+        eventJournal.append(listOf(createLog(5L, 0L), createLog(6L, 0L), createLog(7L, 0L)))
+        eventJournal.rewind(BigInteger.valueOf(5L))
+        eventJournal.append(listOf(createLog(6L, 1L, blockHashSeed = 600L)))
+        assertEquals(listOf(createLog(5L, 0L), createLog(6L, 1L, blockHashSeed = 600L)), eventJournal.read())
+        eventJournal.close()
+    }
+
+    /**
+     * Ensures that [EventJournal] truncates an incomplete or corrupt record at the end of its file when opened, keeping
+     * every complete record, and that it refuses to open a file that is not an event journal.
+     */
+    @Test
+    fun testRecovery() {
+        val file = createJournalFile()
+        val eventJournal = EventJournal(file)
+        eventJournal.append(listOf(createLog(5L, 0L)))
+        val validLength = file.length()
+        eventJournal.append(listOf(createLog(6L, 0L)))
+        eventJournal.close()
+        // Simulate a crash while the second record was being written
+        RandomAccessFile(file, "rw").use { it.setLength(file.length() - 3L) }
+
+        val recoveredEventJournal = EventJournal(file)
+        assertEquals(validLength, file.length())
+        assertEquals(listOf(createLog(5L, 0L)), recoveredEventJournal.read())
+        recoveredEventJournal.append(listOf(createLog(7L, 0L)))
+        assertEquals(listOf(createLog(5L, 0L), createLog(7L, 0L)), recoveredEventJournal.read())
+        recoveredEventJournal.close()
+
+        val otherFile = createJournalFile()
+        otherFile.writeText("not an event journal")
+        assertThrows(IOException::class.java) { EventJournal(otherFile) }
+    }
+
+}
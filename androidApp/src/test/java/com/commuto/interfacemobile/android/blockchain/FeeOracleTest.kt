@@ -0,0 +1,165 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+import org.web3j.protocol.ObjectMapperFactory
+import org.web3j.protocol.core.methods.response.EthFeeHistory
+import org.web3j.protocol.http.HttpService
+import java.math.BigInteger
+
+/**
+ * Tests for [FeeOracle] and [PercentileFeeStrategy]
+ */
+class FeeOracleTest {
+
+    private val gwei = BigInteger.TEN.pow(9)
+
+    /**
+     * An `eth_feeHistory` result for five busy blocks, requested with a reward percentile of 75.
+     */
+    private val busyFeeHistory = """
+        {
+          "oldestBlock": "0x10d4f1a",
+          "baseFeePerGas": ["0x6fc23ac00", "0x773594000", "0x6c088e200", "0x826299e00", "0x737be7600", "0x7aef40a00"],
+          "gasUsedRatio": [0.6273, 0.3101, 0.9958, 0.2211, 0.7544],
+          "reward": [["0x77359400"], ["0x59682f00"], ["0x3b9aca00"], ["0xb2d05e00"], ["0x9502f900"]]
+        }
+    """.trimIndent()
+
+    /**
+     * An `eth_feeHistory` result for three quiet blocks, requested with a reward percentile of 75. The first block
+     * contains no transactions, for which some nodes return a reward of zero and others return no reward at all.
+     */
+    private val quietFeeHistory = """
+        {
+          "oldestBlock": "0x2a",
+          "baseFeePerGas": ["0x7", "0x7", "0x8", "0x7"],
+          "gasUsedRatio": [0.0, 0.0, 0.0312],
+          "reward": [["0x0"], [], ["0x3b9aca00"]]
+        }
+    """.trimIndent()
+
+    /**
+     * An `eth_feeHistory` result for two blocks, requested with no reward percentiles.
+     */
+    private val rewardlessFeeHistory = """
+        {
+          "oldestBlock": "0x2a",
+          "baseFeePerGas": ["0x3b9aca00", "0x3b9aca00", "0x3b9aca00"],
+          "gasUsedRatio": [0.5, 0.5]
+        }
+    """.trimIndent()
+
+    /**
+     * Parses [json] as the result of an `eth_feeHistory` call.
+     */
+    private fun parseFeeHistory(json: String): EthFeeHistory.FeeHistory {
+        return ObjectMapperFactory.getObjectMapper().readValue(json, EthFeeHistory.FeeHistory::class.java)
+    }
+
+    /**
+     * Ensures that [PercentileFeeStrategy] averages the rewards of every block to get the max priority fee per gas, and
+     * adds this to the 75th percentile base fee per gas to get the max fee per gas.
+     */
+    @Test
+    fun testPercentileFeeStrategy() {
+        val feeEstimate = PercentileFeeStrategy().estimate(parseFeeHistory(busyFeeHistory))
+        // (2 + 1.5 + 1 + 3 + 2.5) / 5 gwei
+        assertEquals(BigInteger.TWO * gwei, feeEstimate.maxPriorityFeePerGas)
+        // The sorted base fees are 29, 30, 31, 32, 33 and 35 gwei, and the 75th percentile is at index 4
+        assertEquals(BigInteger.valueOf(35L) * gwei, feeEstimate.maxFeePerGas)
+
+        val quietFeeEstimate = PercentileFeeStrategy().estimate(parseFeeHistory(quietFeeHistory))
+        assertEquals(gwei / BigInteger.TWO, quietFeeEstimate.maxPriorityFeePerGas)
+        assertEquals(gwei / BigInteger.TWO + BigInteger.valueOf(8L), quietFeeEstimate.maxFeePerGas)
+
+        val rewardlessFeeEstimate = PercentileFeeStrategy().estimate(parseFeeHistory(rewardlessFeeHistory))
+        assertEquals(BigInteger.ZERO, rewardlessFeeEstimate.maxPriorityFeePerGas)
+        assertEquals(gwei, rewardlessFeeEstimate.maxFeePerGas)
+
+        assertThrows(IllegalStateException::class.java) {
+            PercentileFeeStrategy().estimate(parseFeeHistory("""{"oldestBlock": "0x1", "baseFeePerGas": []}"""))
+        }
+    }
+
+    /**
+     * Ensures that [FeeOracle] requests fee history once per newest block even when many estimates are requested at
+     * once, and requests it for every estimate when the newest block number is not known.
+     */
+    @Test
+    fun testFeeOracleCachesPerBlock() = runBlocking {
+        val requestedNewestBlocks = mutableListOf<String>()
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_feeHistory" -> {
+                    synchronized(requestedNewestBlocks) {
+                        requestedNewestBlocks.add(params[1].asText())
+                    }
+                    ObjectMapperFactory.getObjectMapper().readTree(busyFeeHistory)
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        try {
+            var newestBlockNumber: BigInteger? = BigInteger.valueOf(5L)
+            val feeOracle = FeeOracle(CommutoWeb3j(HttpService(node.url))) { newestBlockNumber }
+            val feeEstimates = List(10) { async { feeOracle.getFeeEstimate() } }.awaitAll()
+            assertEquals(1, node.callCount("eth_feeHistory"))
+            assertEquals(1, feeEstimates.toSet().size)
+            assertEquals(BigInteger.TWO * gwei, feeEstimates.first().maxPriorityFeePerGas)
+
+            newestBlockNumber = BigInteger.valueOf(6L)
+            feeOracle.getFeeEstimate()
+            feeOracle.getFeeEstimate()
+            assertEquals(2, node.callCount("eth_feeHistory"))
+
+            newestBlockNumber = null
+            feeOracle.getFeeEstimate()
+            feeOracle.getFeeEstimate()
+            assertEquals(4, node.callCount("eth_feeHistory"))
+            assertEquals(listOf("0x5", "0x6", "latest", "latest"), requestedNewestBlocks)
+        } finally {
+            node.stop()
+        }
+    }
+
+    /**
+     * Ensures that [FeeOracle] requests the fee history that its [FeeStrategy] declares, and returns the estimate of
+     * that strategy.
+     */
+    @Test
+    fun testCustomFeeStrategy() = runBlocking {
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_feeHistory" -> {
+                    assertEquals(BigInteger.valueOf(4L), BigInteger(params[0].asText().removePrefix("0x"), 16))
+                    assertEquals(listOf(10.0, 90.0), params[2].map { it.asDouble() })
+                    ObjectMapperFactory.getObjectMapper().readTree(busyFeeHistory)
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        // Pays the highest 90th percentile reward on top of the highest base fee
+        val cautiousFeeStrategy = object : FeeStrategy {
+            override val blockCount = 4
+            override val rewardPercentiles = listOf(10.0, 90.0)
+            override fun estimate(feeHistory: EthFeeHistory.FeeHistory): FeeEstimate {
+                val maxPriorityFeePerGas = feeHistory.reward.maxOf { it.last() }
+                return FeeEstimate(maxPriorityFeePerGas, feeHistory.baseFeePerGas.maxOf { it } + maxPriorityFeePerGas)
+            }
+        }
+        try {
+            val feeOracle = FeeOracle(CommutoWeb3j(HttpService(node.url)), cautiousFeeStrategy) { BigInteger.ONE }
+            val feeEstimate = feeOracle.getFeeEstimate()
+            assertEquals(BigInteger.valueOf(3L) * gwei, feeEstimate.maxPriorityFeePerGas)
+            assertEquals(BigInteger.valueOf(38L) * gwei, feeEstimate.maxFeePerGas)
+            assertEquals(1, node.callCount("eth_feeHistory"))
+        } finally {
+            node.stop()
+        }
+    }
+
+}
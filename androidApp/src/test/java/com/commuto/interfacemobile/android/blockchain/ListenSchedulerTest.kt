@@ -0,0 +1,84 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import kotlinx.coroutines.withTimeout
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+import kotlin.random.Random
+
+/**
+ * Tests for [ListenScheduler]
+ */
+class ListenSchedulerTest {
+
+    /**
+     * Ensures that [ListenScheduler] reports that the listen loop is catching up while it is more than one block
+     * behind, and that once it is following, it waits until the next block is expected, based on the observed block
+     * interval, and then polls with a doubling interval.
+     */
+    @Test
+    fun testPacing() {
+        val listenScheduler = ListenScheduler(minPollInterval = 10L, maxPollInterval = 1_000L)
+        listenScheduler.handleNewestBlock(BigInteger.valueOf(10L), BigInteger.ZERO)
+        assertEquals(ListenMode.CATCHING_UP, listenScheduler.mode.value)
+        // No block interval has been observed yet, so this polls with a doubling interval
+        assertEquals(10L, listenScheduler.getIdleDelay())
+        assertEquals(20L, listenScheduler.getIdleDelay())
+
+        listenScheduler.handleNewestBlock(BigInteger.valueOf(10L), BigInteger.valueOf(9L))
+        assertEquals(ListenMode.FOLLOWING, listenScheduler.mode.value)
+        Thread.sleep(200L)
+        listenScheduler.handleNewestBlock(BigInteger.valueOf(11L), BigInteger.valueOf(10L))
+        val blockInterval = listenScheduler.blockInterval
+        assertNotNull(blockInterval)
+        assertTrue(blockInterval!! in 200L..400L)
+        // The next block is expected about one block interval after the newest block was observed
+        val idleDelay = listenScheduler.getIdleDelay()
+        assertTrue(idleDelay in 150L..blockInterval)
+
+        Thread.sleep(blockInterval)
+        // The next block is overdue, so this polls with a doubling interval again
+        assertEquals(10L, listenScheduler.getIdleDelay())
+        assertEquals(20L, listenScheduler.getIdleDelay())
+    }
+
+    /**
+     * Ensures that [ListenScheduler] backs off exponentially with jitter after consecutive errors, up to its maximum
+     * backoff, and starts over after a success.
+     */
+    @Test
+    fun testErrorBackoff() {
+        val listenScheduler = ListenScheduler(minErrorBackoff = 100L, maxErrorBackoff = 1_000L, random = Random(42))
+        for (backoff in listOf(100L, 200L, 400L, 800L, 1_000L, 1_000L)) {
+            assertTrue(listenScheduler.handleError() in (backoff / 2L)..backoff)
+            assertEquals(ListenMode.BACKING_OFF, listenScheduler.mode.value)
+        }
+        listenScheduler.handleSuccess()
+        assertTrue(listenScheduler.handleError() in 50L..100L)
+        listenScheduler.handleNewestBlock(BigInteger.ONE, BigInteger.ONE)
+        assertEquals(ListenMode.FOLLOWING, listenScheduler.mode.value)
+    }
+
+    /**
+     * Ensures that [ListenScheduler.wake] ends a [ListenScheduler.sleep] in progress.
+     */
+    @Test
+    fun testWake() = runBlocking {
+        val listenScheduler = ListenScheduler()
+        val startTime = System.currentTimeMillis()
+        withTimeout(5_000) {
+            val sleepJob = launch {
+                listenScheduler.sleep(60_000L)
+            }
+            // Let the sleep begin
+            delay(50L)
+            listenScheduler.wake()
+            sleepJob.join()
+        }
+        assertTrue(System.currentTimeMillis() - startTime < 5_000L)
+    }
+
+}
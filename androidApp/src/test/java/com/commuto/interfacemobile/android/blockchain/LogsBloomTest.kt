@@ -0,0 +1,43 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.web3j.utils.Numeric
+
+/**
+ * Tests for [LogsBloom]
+ */
+class LogsBloomTest {
+
+    /**
+     * Ensures that [LogsBloom.getBitIndices] gets bit indices from the low 11 bits of the first three pairs of bytes of
+     * a value's Keccak-256 hash, and that [LogsBloom.mightContain] finds them in the byte order of a `logsBloom` field.
+     */
+    @Test
+    fun testBitIndices() {
+        // The Keccak-256 hash of no bytes is 0xc5d2460186f7233c...
+        val bitIndices = LogsBloom.getBitIndices("0x")
+        assertArrayEquals(intArrayOf(0x5d2, 0x601, 0x6f7), bitIndices)
+
+        val bloom = ByteArray(256)
+        for (bitIndex in bitIndices) {
+            bloom[255 - bitIndex / 8] = (bloom[255 - bitIndex / 8].toInt() or (1 shl (bitIndex % 8))).toByte()
+        }
+        val logsBloom = LogsBloom.fromHex(Numeric.toHexString(bloom))
+        assertNotNull(logsBloom)
+        assertTrue(logsBloom!!.mightContain(bitIndices))
+        assertFalse(logsBloom.mightContain(intArrayOf(0x5d2, 0x601, 0x6f6)))
+        assertFalse(LogsBloom(ByteArray(256)).mightContain(bitIndices))
+    }
+
+    /**
+     * Ensures that [LogsBloom.fromHex] returns `null` for a missing or malformed `logsBloom` field.
+     */
+    @Test
+    fun testFromHex() {
+        assertNull(LogsBloom.fromHex(null))
+        assertNull(LogsBloom.fromHex("0x00"))
+        assertNotNull(LogsBloom.fromHex(Numeric.toHexString(ByteArray(256))))
+    }
+
+}
@@ -0,0 +1,278 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.web3j.protocol.Web3j
+import org.web3j.protocol.core.DefaultBlockParameter
+import org.web3j.protocol.core.DefaultBlockParameterName
+import org.web3j.protocol.core.methods.request.EthFilter
+import org.web3j.protocol.http.HttpService
+import org.web3j.utils.Numeric
+import java.io.IOException
+import java.math.BigInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Tests for [MultiEndpointService]
+ */
+class MultiEndpointServiceTest {
+
+    /**
+     * Creates a [TestJsonRpcNode] that answers every call with the specified block number after the specified delay.
+     */
+    private fun createNode(delay: Long, blockNumber: Long): TestJsonRpcNode {
+        return TestJsonRpcNode { _, _ ->
+            Thread.sleep(delay)
+            "0x" + blockNumber.toString(16)
+        }
+    }
+
+    /**
+     * Creates a [TestJsonRpcNode] that answers calls after the specified delay as a node whose newest block has the
+     * number in [newestBlockNumber] would: it returns no block for later block numbers, and no logs for a range that
+     * ends after its newest block.
+     */
+    private fun createChainNode(delay: Long, newestBlockNumber: AtomicLong): TestJsonRpcNode {
+        return TestJsonRpcNode { method, params ->
+            Thread.sleep(delay)
+            when (method) {
+                "eth_blockNumber" -> Numeric.encodeQuantity(BigInteger.valueOf(newestBlockNumber.get()))
+                "eth_getBlockByNumber" -> {
+                    val blockNumber = Numeric.decodeQuantity(params[0].asText())
+                    if (blockNumber > BigInteger.valueOf(newestBlockNumber.get())) {
+                        null
+                    } else {
+                        mapOf(
+                            "number" to Numeric.encodeQuantity(blockNumber),
+                            "hash" to Numeric.toHexStringWithPrefixZeroPadded(blockNumber, 64),
+                            "transactions" to listOf<String>(),
+                        )
+                    }
+                }
+                "eth_getLogs" -> listOf<Any>()
+                else -> throw IllegalArgumentException("Unexpected method $method")
+            }
+        }
+    }
+
+    /**
+     * Ensures that [MultiEndpointService] sends reads of a block only to endpoints that have reached that block, even
+     * if a lagging endpoint has a lower latency, that it asks every endpoint for its newest block number if none is
+     * known to have reached the block, and that the read fails if none has.
+     */
+    @Test
+    fun testBlockRouting() {
+        val aheadBlockNumber = AtomicLong(10L)
+        val aheadNode = createChainNode(delay = 50L, newestBlockNumber = aheadBlockNumber)
+        val laggingNode = createChainNode(delay = 0L, newestBlockNumber = AtomicLong(5L))
+        val service = MultiEndpointService(
+            listOf(HttpService(aheadNode.url), HttpService(laggingNode.url)),
+            defaultHedgeDelay = 10_000L
+        )
+        val web3 = Web3j.build(service)
+        try {
+            // Both endpoints are tried once, after which the lagging endpoint is preferred since it is faster
+            repeat(3) { web3.ethBlockNumber().send() }
+            assertEquals(1, aheadNode.callCount("eth_blockNumber"))
+            assertEquals(2, laggingNode.callCount("eth_blockNumber"))
+
+            val block = web3.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(8L)), false)
+                .send().block
+            assertEquals(BigInteger.valueOf(8L), block.number)
+            web3.ethGetLogs(
+                EthFilter(
+                    DefaultBlockParameter.valueOf(BigInteger.ONE),
+                    DefaultBlockParameter.valueOf(BigInteger.valueOf(8L)),
+                    "0x687f36336fcab8747be1d41366a416b41e7e1a96"
+                )
+            ).send()
+            assertEquals(0, laggingNode.callCount("eth_getBlockByNumber"))
+            assertEquals(0, laggingNode.callCount("eth_getLogs"))
+            assertEquals(1, aheadNode.callCount("eth_getBlockByNumber"))
+            assertEquals(1, aheadNode.callCount("eth_getLogs"))
+
+            // Blocks that both endpoints have reached are read from the faster one
+            web3.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(3L)), false).send()
+            assertEquals(1, laggingNode.callCount("eth_getBlockByNumber"))
+
+            // Neither endpoint has returned block 12, so each is asked for its newest block number first
+            aheadBlockNumber.set(12L)
+            val newBlock = web3.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(12L)), false)
+                .send().block
+            assertEquals(BigInteger.valueOf(12L), newBlock.number)
+            assertEquals(2, aheadNode.callCount("eth_blockNumber"))
+            assertEquals(2, aheadNode.callCount("eth_getBlockByNumber"))
+
+            assertThrows(IOException::class.java) {
+                web3.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(20L)), false).send()
+            }
+            assertEquals(2, aheadNode.callCount("eth_getBlockByNumber"))
+            assertEquals(1, laggingNode.callCount("eth_getBlockByNumber"))
+        } finally {
+            web3.shutdown()
+            aheadNode.stop()
+            laggingNode.stop()
+        }
+    }
+
+    /**
+     * Ensures that [MultiEndpointService] requests pending transaction counts from the endpoint that accepted the
+     * most recent transaction, even if another endpoint has a lower latency, and only requests receipts from endpoints
+     * that have reached the newest block returned by any endpoint.
+     */
+    @Test
+    fun testTransactionRouting() {
+        val transactionHash = Numeric.toHexStringWithPrefixZeroPadded(BigInteger.ONE, 64)
+        val acceptingNode = TestJsonRpcNode { method, _ ->
+            Thread.sleep(50L)
+            when (method) {
+                "eth_blockNumber" -> "0xa"
+                "eth_getBlockByNumber" -> mapOf(
+                    "number" to "0x8",
+                    "hash" to Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(8L), 64),
+                    "transactions" to listOf<String>(),
+                )
+                "eth_sendRawTransaction" -> transactionHash
+                "eth_getTransactionCount" -> "0x3"
+                "eth_getTransactionReceipt" -> null
+                else -> throw IllegalArgumentException("Unexpected method $method")
+            }
+        }
+        // This endpoint is faster, but lags behind and has not received the transaction
+        val laggingNode = TestJsonRpcNode { method, _ ->
+            when (method) {
+                "eth_blockNumber" -> "0x5"
+                "eth_getTransactionCount" -> "0x2"
+                "eth_getTransactionReceipt" -> null
+                else -> throw IllegalArgumentException("Unexpected method $method")
+            }
+        }
+        val service = MultiEndpointService(
+            listOf(HttpService(acceptingNode.url), HttpService(laggingNode.url)),
+            defaultHedgeDelay = 10_000L
+        )
+        val web3 = Web3j.build(service)
+        try {
+            // Neither endpoint has been used, so the transaction is sent to the first
+            assertEquals(transactionHash, web3.ethSendRawTransaction("0x1234").send().transactionHash)
+            repeat(3) { web3.ethBlockNumber().send() }
+            assertEquals(3, laggingNode.callCount("eth_blockNumber"))
+            web3.ethGetBlockByNumber(DefaultBlockParameter.valueOf(BigInteger.valueOf(8L)), false).send()
+            assertEquals(1, acceptingNode.callCount("eth_getBlockByNumber"))
+
+            val transactionCount = web3.ethGetTransactionCount(
+                "0x70997970c51812dc3a010c7d01b50e0d17dc79c8",
+                DefaultBlockParameterName.PENDING
+            ).send().transactionCount
+            assertEquals(BigInteger.valueOf(3L), transactionCount)
+            assertEquals(0, laggingNode.callCount("eth_getTransactionCount"))
+
+            web3.ethGetTransactionReceipt(transactionHash).send()
+            web3.ethGetTransactionReceipt(Numeric.toHexStringWithPrefixZeroPadded(BigInteger.valueOf(2L), 64)).send()
+            assertEquals(2, acceptingNode.callCount("eth_getTransactionReceipt"))
+            assertEquals(0, laggingNode.callCount("eth_getTransactionReceipt"))
+        } finally {
+            web3.shutdown()
+            acceptingNode.stop()
+            laggingNode.stop()
+        }
+    }
+
+    /**
+     * Ensures that [MultiEndpointService] tries every endpoint and then routes reads to the endpoint with the lowest
+     * latency.
+     */
+    @Test
+    fun testLatencyRouting() {
+        val slowNode = createNode(delay = 100L, blockNumber = 1L)
+        val fastNode = createNode(delay = 0L, blockNumber = 2L)
+        val service = MultiEndpointService(
+            listOf(HttpService(slowNode.url), HttpService(fastNode.url)),
+            defaultHedgeDelay = 10_000L
+        )
+        val web3 = Web3j.build(service)
+        try {
+            repeat(10) { web3.ethBlockNumber().send() }
+            assertEquals(BigInteger.valueOf(2L), web3.ethBlockNumber().send().blockNumber)
+            assertEquals(1, slowNode.callCount("eth_blockNumber"))
+            assertEquals(10, fastNode.callCount("eth_blockNumber"))
+            val endpointStats = service.endpointStats
+            assertTrue(endpointStats[0].averageLatency!! > endpointStats[1].averageLatency!!)
+        } finally {
+            web3.shutdown()
+            slowNode.stop()
+            fastNode.stop()
+        }
+    }
+
+    /**
+     * Ensures that [MultiEndpointService] hedges a read that the best endpoint has not answered once the hedge delay
+     * has passed, using the first response and cancelling the other request without counting it as an error, and that
+     * it does not hedge transactions.
+     */
+    @Test
+    fun testHedging() {
+        val slowNode = createNode(delay = 2_000L, blockNumber = 1L)
+        val fastNode = createNode(delay = 0L, blockNumber = 2L)
+        val service = MultiEndpointService(
+            listOf(HttpService(slowNode.url), HttpService(fastNode.url)),
+            defaultHedgeDelay = 50L
+        )
+        val web3 = Web3j.build(service)
+        try {
+            val startTime = System.currentTimeMillis()
+            // The slow node has never been used, so it is tried first
+            assertEquals(BigInteger.valueOf(2L), web3.ethBlockNumber().send().blockNumber)
+            assertTrue(System.currentTimeMillis() - startTime < 1_000L)
+            assertEquals(1, slowNode.callCount("eth_blockNumber"))
+            assertEquals(1, fastNode.callCount("eth_blockNumber"))
+            // The cancelled request is recorded with the latency it had reached, rather than as pending or failed
+            val slowEndpointStats = service.endpointStats[0]
+            assertTrue(slowEndpointStats.averageLatency!! < 1_000.0)
+            assertEquals(0.0, slowEndpointStats.errorRate, 0.0)
+
+            web3.ethSendRawTransaction("0x1234").send()
+            assertEquals(0, slowNode.callCount("eth_sendRawTransaction"))
+            assertEquals(1, fastNode.callCount("eth_sendRawTransaction"))
+        } finally {
+            web3.shutdown()
+            slowNode.stop()
+            fastNode.stop()
+        }
+    }
+
+    /**
+     * Ensures that [MultiEndpointService] immediately retries a read that fails on one endpoint with another endpoint,
+     * and stops routing reads to an endpoint that has become unhealthy.
+     */
+    @Test
+    fun testFailover() {
+        val unavailableNode = TestJsonRpcNode { _, _ -> throw TestJsonRpcNode.UnavailableException() }
+        val healthyNode = createNode(delay = 0L, blockNumber = 2L)
+        val service = MultiEndpointService(
+            listOf(HttpService(unavailableNode.url), HttpService(healthyNode.url)),
+            defaultHedgeDelay = 10_000L,
+            unhealthyErrorRate = 0.3,
+            quarantinePeriod = 60_000L,
+        )
+        val web3 = Web3j.build(service)
+        try {
+            val startTime = System.currentTimeMillis()
+            repeat(10) {
+                assertEquals(BigInteger.valueOf(2L), web3.ethBlockNumber().send().blockNumber)
+            }
+            assertTrue(System.currentTimeMillis() - startTime < 5_000L)
+            val endpointStats = service.endpointStats
+            assertFalse(endpointStats[0].isHealthy)
+            assertTrue(endpointStats[1].isHealthy)
+            // Once the unavailable endpoint has failed often enough, it is no longer tried
+            assertTrue(unavailableNode.httpRequestCount.get() < 10)
+            assertEquals(10, healthyNode.callCount("eth_blockNumber"))
+        } finally {
+            web3.shutdown()
+            unavailableNode.stop()
+            healthyNode.stop()
+        }
+    }
+
+}
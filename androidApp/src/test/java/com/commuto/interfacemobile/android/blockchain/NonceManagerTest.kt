@@ -0,0 +1,139 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.web3j.protocol.http.HttpService
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+
+/**
+ * Tests for [NonceManager]
+ */
+class NonceManagerTest {
+
+    private val address = "0x70997970c51812dc3a010c7d01b50e0d17dc79c8"
+
+    /**
+     * The pending transaction count that the node returns.
+     */
+    @Volatile
+    private var pendingTransactionCount = 0L
+
+    /**
+     * Runs [test] with a [TestJsonRpcNode] that answers `eth_getTransactionCount` with [pendingTransactionCount].
+     */
+    private fun withNode(test: suspend CoroutineScope.(TestJsonRpcNode, CommutoWeb3j) -> Unit) = runBlocking {
+        val node = TestJsonRpcNode { method, params ->
+            when (method) {
+                "eth_getTransactionCount" -> {
+                    assertEquals(address, params[0].asText())
+                    assertEquals("pending", params[1].asText())
+                    Numeric.encodeQuantity(BigInteger.valueOf(pendingTransactionCount))
+                }
+                else -> throw Exception("Unexpected method $method")
+            }
+        }
+        try {
+            test(node, CommutoWeb3j(HttpService(node.url)))
+        } finally {
+            node.stop()
+        }
+    }
+
+    /**
+     * Ensures that [NonceManager] hands out distinct, consecutive nonces to transactions sent at once after requesting
+     * the pending transaction count only once, and never hands out a reserved or sent nonce again.
+     */
+    @Test
+    fun testConsecutiveNonces() = withNode { node, web3 ->
+        pendingTransactionCount = 7L
+        val nonceManager = NonceManager(web3)
+        val nonces = List(10) { index ->
+            async { nonceManager.reserveNonce(address) }
+        }.awaitAll()
+        assertEquals((7L..16L).map { BigInteger.valueOf(it) }, nonces.sorted())
+        assertEquals(BigInteger.valueOf(17L), nonceManager.reserveNonce(address))
+        assertEquals(1, node.callCount("eth_getTransactionCount"))
+
+        nonceManager.markSent(address, nonces[3])
+        assertEquals(BigInteger.valueOf(18L), nonceManager.reserveNonce(address))
+        assertEquals(1, node.callCount("eth_getTransactionCount"))
+    }
+
+    /**
+     * Ensures that [NonceManager] reconciles with the node after a transaction could not be sent, and fills the gap
+     * that this leaves with the next nonce it hands out.
+     */
+    @Test
+    fun testSendFailure() = withNode { node, web3 ->
+        val nonceManager = NonceManager(web3)
+        val firstNonce = nonceManager.reserveNonce(address)
+        val secondNonce = nonceManager.reserveNonce(address)
+        val thirdNonce = nonceManager.reserveNonce(address)
+        nonceManager.markSent(address, firstNonce)
+        nonceManager.markSent(address, thirdNonce)
+        nonceManager.handleSendFailure(address, secondNonce)
+
+        // The node has the first transaction, and queues the third until one with the second nonce is sent
+        pendingTransactionCount = 1L
+        assertEquals(secondNonce, nonceManager.reserveNonce(address))
+        assertEquals(2, node.callCount("eth_getTransactionCount"))
+        assertEquals(BigInteger.valueOf(3L), nonceManager.reserveNonce(address))
+    }
+
+    /**
+     * Ensures that [NonceManager] hands out the nonce of a dropped transaction again only once the transaction is
+     * marked as dropped and the node does not know of it, that a node reporting a lower pending transaction count
+     * never makes it hand out a used nonce, and that it never hands out a nonce lower than that of a confirmed
+     * transaction.
+     */
+    @Test
+    fun testDroppedAndConfirmedTransactions() = withNode { node, web3 ->
+        val nonceManager = NonceManager(web3)
+        val firstNonce = nonceManager.reserveNonce(address)
+        val secondNonce = nonceManager.reserveNonce(address)
+        nonceManager.markSent(address, firstNonce)
+        nonceManager.markSent(address, secondNonce)
+
+        // A node that has not yet received either transaction does not make them look dropped
+        nonceManager.requestReconciliation(address)
+        assertEquals(BigInteger.valueOf(2L), nonceManager.reserveNonce(address))
+        assertEquals(2, node.callCount("eth_getTransactionCount"))
+
+        // The first transaction has gone unconfirmed for too long, and the node does not know of it
+        nonceManager.markDropped(address, firstNonce)
+        assertEquals(firstNonce, nonceManager.reserveNonce(address))
+        assertEquals(3, node.callCount("eth_getTransactionCount"))
+
+        // The second transaction has gone unconfirmed for too long, but the node knows of it
+        pendingTransactionCount = 2L
+        nonceManager.markDropped(address, secondNonce)
+        assertEquals(BigInteger.valueOf(3L), nonceManager.reserveNonce(address))
+
+        nonceManager.markConfirmed(address, BigInteger.valueOf(5L))
+        assertEquals(BigInteger.valueOf(6L), nonceManager.reserveNonce(address))
+
+        pendingTransactionCount = 0L
+        nonceManager.requestReconciliation(address)
+        assertEquals(BigInteger.valueOf(7L), nonceManager.reserveNonce(address))
+    }
+
+    /**
+     * Ensures that [NonceManager] hands out the nonce of a transaction that was never sent again once its reservation
+     * has expired.
+     */
+    @Test
+    fun testReservationExpiry() = withNode { _, web3 ->
+        pendingTransactionCount = 3L
+        val nonceManager = NonceManager(web3, reservationTimeout = 0L)
+        assertEquals(BigInteger.valueOf(3L), nonceManager.reserveNonce(address))
+        assertEquals(BigInteger.valueOf(3L), nonceManager.reserveNonce(address))
+        nonceManager.markSent(address, BigInteger.valueOf(3L))
+        assertEquals(BigInteger.valueOf(4L), nonceManager.reserveNonce(address))
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+
+/**
+ * Tests for [RequestCoalescer]
+ */
+class RequestCoalescerTest {
+
+    /**
+     * Ensures that [RequestCoalescer] shares an in-flight request only with identical requests, forgets it once it
+     * completes, successfully or not, and reports the proportion of shared requests.
+     */
+    @Test
+    fun testCoalescing() = runBlocking {
+        val requestCoalescer = RequestCoalescer()
+        assertEquals(0.0, requestCoalescer.dedupRate, 0.0)
+        var sentRequestCount = 0
+        val firstRequest = CompletableDeferred<String>()
+        val send = {
+            sentRequestCount++
+            firstRequest
+        }
+
+        val first = requestCoalescer.coalesce("eth_call", listOf("getOffer", 1), "latest", send)
+        val second = requestCoalescer.coalesce("eth_call", listOf("getOffer", 1), "latest", send)
+        assertSame(first, second)
+        // Requests with different params or block tags are not shared
+        requestCoalescer.coalesce("eth_call", listOf("getOffer", 2), "latest") { CompletableDeferred<String>() }
+        requestCoalescer.coalesce("eth_call", listOf("getOffer", 1), "0x1") { CompletableDeferred<String>() }
+        assertEquals(1, sentRequestCount)
+        assertEquals(0.25, requestCoalescer.dedupRate, 0.0001)
+
+        firstRequest.complete("result")
+        assertEquals("result", second.await())
+        val failedRequest = CompletableDeferred<String>()
+        val third = requestCoalescer.coalesce("eth_call", listOf("getOffer", 1), "latest") { failedRequest }
+        assertNotSame(first, third)
+
+        failedRequest.completeExceptionally(BlockchainServiceException("Call failed"))
+        val fourth = requestCoalescer.coalesce("eth_call", listOf("getOffer", 1), "latest") {
+            CompletableDeferred("result")
+        }
+        assertEquals("result", fourth.await())
+        assertEquals(1.0 / 6.0, requestCoalescer.dedupRate, 0.0001)
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.runBlocking
+import org.junit.Assert.*
+import org.junit.Test
+import java.math.BigInteger
+import java.util.*
+
+/**
+ * Tests for [StructCache]
+ */
+class StructCacheTest {
+
+    private val chainID = BigInteger.valueOf(31337L)
+
+    /**
+     * Ensures that [StructCache] counts hits and misses, caches `null` structs, keys entries by chain ID as well as ID,
+     * and evicts the least recently used entry once it is full.
+     */
+    @Test
+    fun testLeastRecentlyUsedEviction() {
+        val cache = StructCache<String>(capacity = 2)
+        val firstID = UUID.randomUUID()
+        val secondID = UUID.randomUUID()
+        val thirdID = UUID.randomUUID()
+        assertNull(cache.get(chainID, firstID))
+        assertTrue(cache.put(chainID, firstID, "first", BigInteger.ONE, cache.readStamp()))
+        assertTrue(cache.put(chainID, secondID, null, BigInteger.ONE, cache.readStamp()))
+        assertEquals("first", cache.get(chainID, firstID)?.struct)
+        val secondEntry = cache.get(chainID, secondID)
+        assertNotNull(secondEntry)
+        assertNull(secondEntry?.struct)
+        assertNull(cache.get(BigInteger.ONE, firstID))
+        // The first entry was used less recently than the second, so it is evicted
+        cache.get(chainID, secondID)
+        assertTrue(cache.put(chainID, thirdID, "third", BigInteger.TWO, cache.readStamp()))
+        assertEquals(2, cache.size)
+        assertNull(cache.get(chainID, firstID))
+        assertEquals(BigInteger.TWO, cache.get(chainID, thirdID)?.blockNumber)
+        assertEquals(4L, cache.hits)
+        assertEquals(3L, cache.misses)
+    }
+
+    /**
+     * Ensures that [StructCache] does not cache a struct read before an invalidation, nor replace a struct read as of a
+     * later block with one read as of an earlier block.
+     */
+    @Test
+    fun testInvalidation() {
+        val cache = StructCache<String>(capacity = 10)
+        val id = UUID.randomUUID()
+        val otherID = UUID.randomUUID()
+        assertTrue(cache.put(chainID, id, "block 2", BigInteger.TWO, cache.readStamp()))
+        assertFalse(cache.put(chainID, id, "block 1", BigInteger.ONE, cache.readStamp()))
+        assertEquals("block 2", cache.get(chainID, id)?.struct)
+
+        val readStamp = cache.readStamp()
+        cache.invalidate(chainID, listOf(id))
+        assertNull(cache.get(chainID, id))
+        // This was read before the invalidation, so it may reflect the state that the invalidation discarded
+        assertFalse(cache.put(chainID, otherID, "stale", BigInteger.TEN, readStamp))
+        assertNull(cache.get(chainID, otherID))
+        assertTrue(cache.put(chainID, id, "block 3", BigInteger.valueOf(3L), cache.readStamp()))
+
+        cache.clear()
+        assertEquals(0, cache.size)
+    }
+
+    /**
+     * Ensures that [StructCache] stays within its capacity and counts every lookup when used by many coroutines at
+     * once.
+     */
+    @Test
+    fun testConcurrentAccess() = runBlocking {
+        val cache = StructCache<Int>(capacity = 50)
+        val ids = List(200) { UUID.randomUUID() }
+        val coroutineCount = 16
+        val iterations = 10_000
+        val jobs = List(coroutineCount) { coroutineIndex ->
+            launch(Dispatchers.Default) {
+                repeat(iterations) { iteration ->
+                    val id = ids[(coroutineIndex * 31 + iteration) % ids.size]
+                    if (cache.get(chainID, id) == null) {
+                        cache.put(chainID, id, iteration, BigInteger.valueOf(iteration.toLong()), cache.readStamp())
+                    }
+                    if (iteration % 1_000 == 0) {
+                        cache.invalidate(chainID, listOf(id))
+                    }
+                }
+            }
+        }
+        jobs.forEach { it.join() }
+        assertTrue(cache.size <= 50)
+        assertEquals((coroutineCount * iterations).toLong(), cache.hits + cache.misses)
+        assertTrue(cache.hits > 0L)
+    }
+
+}
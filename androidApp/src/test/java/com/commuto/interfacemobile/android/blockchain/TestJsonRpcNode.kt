@@ -0,0 +1,135 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import com.fasterxml.jackson.databind.JsonNode
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.databind.node.ArrayNode
+import com.fasterxml.jackson.databind.node.ObjectNode
+import com.sun.net.httpserver.HttpServer
+import java.net.InetSocketAddress
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A minimal stand-in for an EVM-compatible JSON-RPC node, used to test [BlockchainService] without a real blockchain.
+ * It serves single and batched JSON-RPC requests over HTTP on a random local port (handling concurrent requests
+ * concurrently), answers each call by passing the method name and params to [handler], and counts the HTTP requests
+ * and JSON-RPC calls that it receives.
+ *
+ * @property handler A function that accepts a JSON-RPC method name and its params, and returns the result of the
+ * call, which will be serialized to JSON. If this throws an [UnavailableException], the whole HTTP request is answered
+ * with status 503, as if the node were briefly unreachable. If this throws a [JsonRpcException], the call is answered
+ * with a JSON-RPC error with the exception's code, and if this throws any other exception, the call is answered with
+ * a JSON-RPC error with code -32000.
+ * @property httpRequestCount The number of HTTP requests that this node has received.
+ * @property callCounts A map of JSON-RPC method names to the number of times that method has been called.
+ * @property httpRequestCounts A map of JSON-RPC method names to the number of HTTP requests that contained at least
+ * one call to that method.
+ */
+class TestJsonRpcNode(private val handler: (method: String, params: JsonNode) -> Any?) {
+
+    private val mapper = ObjectMapper()
+
+    private val executor = Executors.newCachedThreadPool()
+
+    private val server: HttpServer = HttpServer.create(InetSocketAddress("127.0.0.1", 0), 0)
+
+    val httpRequestCount = AtomicInteger(0)
+
+    val callCounts = ConcurrentHashMap<String, AtomicInteger>()
+
+    val httpRequestCounts = ConcurrentHashMap<String, AtomicInteger>()
+
+    init {
+        server.createContext("/") { exchange ->
+            httpRequestCount.incrementAndGet()
+            val requestNode = mapper.readTree(exchange.requestBody)
+            val responseNode = try {
+                if (requestNode is ArrayNode) {
+                    requestNode.map { it.get("method").asText() }.toSet().forEach {
+                        httpRequestCounts.getOrPut(it) { AtomicInteger(0) }.incrementAndGet()
+                    }
+                    mapper.createArrayNode().addAll(requestNode.map { handleCall(it) })
+                } else {
+                    httpRequestCounts.getOrPut(requestNode.get("method").asText()) { AtomicInteger(0) }
+                        .incrementAndGet()
+                    handleCall(requestNode)
+                }
+            } catch (exception: UnavailableException) {
+                exchange.sendResponseHeaders(503, -1)
+                exchange.close()
+                return@createContext
+            }
+            val responseBytes = mapper.writeValueAsBytes(responseNode)
+            exchange.responseHeaders.add("Content-Type", "application/json")
+            exchange.sendResponseHeaders(200, responseBytes.size.toLong())
+            exchange.responseBody.use { it.write(responseBytes) }
+        }
+        server.executor = executor
+        server.start()
+    }
+
+    /**
+     * The URL at which this node is listening for requests.
+     */
+    val url: String
+        get() = "http://127.0.0.1:${server.address.port}/"
+
+    /**
+     * Returns the number of times the JSON-RPC method with the specified name has been called.
+     */
+    fun callCount(method: String): Int {
+        return callCounts[method]?.get() ?: 0
+    }
+
+    /**
+     * Returns the number of HTTP requests that contained at least one call to the JSON-RPC method with the specified
+     * name.
+     */
+    fun httpRequestCount(method: String): Int {
+        return httpRequestCounts[method]?.get() ?: 0
+    }
+
+    /**
+     * Stops this node.
+     */
+    fun stop() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    /**
+     * Answers a single JSON-RPC call.
+     */
+    private fun handleCall(call: JsonNode): ObjectNode {
+        val method = call.get("method").asText()
+        callCounts.getOrPut(method) { AtomicInteger(0) }.incrementAndGet()
+        val response = mapper.createObjectNode()
+        response.put("jsonrpc", "2.0")
+        response.set<JsonNode>("id", call.get("id"))
+        try {
+            response.set<JsonNode>("result", mapper.valueToTree(handler(method, call.get("params"))))
+        } catch (exception: UnavailableException) {
+            throw exception
+        } catch (exception: Throwable) {
+            val error = mapper.createObjectNode()
+            error.put("code", (exception as? JsonRpcException)?.code ?: -32000)
+            error.put("message", exception.message ?: "error")
+            response.set<JsonNode>("error", error)
+        }
+        return response
+    }
+
+    /**
+     * Thrown by a [handler] to make this node answer the HTTP request containing a call with status 503 (Service
+     * Unavailable) rather than with a JSON-RPC response.
+     */
+    class UnavailableException : Exception("Service unavailable")
+
+    /**
+     * Thrown by a [handler] to make this node answer a call with a JSON-RPC error with the specified code, such as
+     * -32601 (Method not found).
+     */
+    class JsonRpcException(val code: Int, message: String) : Exception(message)
+
+}
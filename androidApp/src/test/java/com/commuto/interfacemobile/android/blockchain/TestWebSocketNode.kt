@@ -0,0 +1,104 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.java_websocket.WebSocket
+import org.java_websocket.handshake.ClientHandshake
+import org.java_websocket.server.WebSocketServer
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+import java.net.InetSocketAddress
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * A minimal stand-in for the WebSocket endpoint of an EVM-compatible JSON-RPC node, used to test [BlockchainService]'s
+ * `newHeads` subscription without a real blockchain. It listens on a random local port, answers `eth_subscribe` and
+ * `eth_unsubscribe` calls, and sends block headers to subscribers when [sendNewHead] is called.
+ *
+ * @property subscriptionCount The number of `eth_subscribe` calls that this node has received.
+ * @property startedLatch A [CountDownLatch] that is counted down once this node has started listening.
+ */
+class TestWebSocketNode : WebSocketServer(InetSocketAddress("127.0.0.1", 0)) {
+
+    private val mapper = ObjectMapper()
+
+    val subscriptionCount = AtomicInteger(0)
+
+    private val startedLatch = CountDownLatch(1)
+
+    init {
+        isReuseAddr = true
+        start()
+        check(startedLatch.await(10, TimeUnit.SECONDS)) { "TestWebSocketNode did not start" }
+    }
+
+    /**
+     * The URL at which this node is listening for connections.
+     */
+    val url: String
+        get() = "ws://127.0.0.1:$port"
+
+    /**
+     * Sends a `newHeads` notification with the specified block number, hash and parent hash to every connected
+     * subscriber.
+     */
+    fun sendNewHead(blockNumber: Long, hash: String, parentHash: String) {
+        val notification = mapOf(
+            "jsonrpc" to "2.0",
+            "method" to "eth_subscription",
+            "params" to mapOf(
+                "subscription" to "0x1",
+                "result" to mapOf(
+                    "number" to Numeric.encodeQuantity(BigInteger.valueOf(blockNumber)),
+                    "hash" to hash,
+                    "parentHash" to parentHash,
+                ),
+            ),
+        )
+        broadcast(mapper.writeValueAsString(notification))
+    }
+
+    /**
+     * Closes the connections of all connected subscribers, without stopping this node.
+     */
+    fun dropConnections() {
+        connections.forEach { it.close() }
+    }
+
+    override fun onStart() {
+        startedLatch.countDown()
+    }
+
+    override fun onOpen(conn: WebSocket, handshake: ClientHandshake) {}
+
+    override fun onClose(conn: WebSocket, code: Int, reason: String, remote: Boolean) {}
+
+    override fun onMessage(conn: WebSocket, message: String) {
+        val call = mapper.readTree(message)
+        val response = mutableMapOf<String, Any?>(
+            "jsonrpc" to "2.0",
+            "id" to call.get("id").asLong(),
+        )
+        val method = call.get("method").asText()
+        when (method) {
+            "eth_subscribe" -> {
+                response["result"] = "0x1"
+            }
+            "eth_unsubscribe" -> {
+                response["result"] = true
+            }
+            else -> {
+                response["error"] = mapOf("code" to -32601, "message" to "Method not found")
+            }
+        }
+        conn.send(mapper.writeValueAsString(response))
+        // Only count the subscription once its ID has been sent, so that notifications sent after this aren't lost
+        if (method == "eth_subscribe") {
+            subscriptionCount.incrementAndGet()
+        }
+    }
+
+    override fun onError(conn: WebSocket?, ex: Exception) {}
+
+}
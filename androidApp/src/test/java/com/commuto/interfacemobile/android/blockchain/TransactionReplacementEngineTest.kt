@@ -0,0 +1,80 @@
+package com.commuto.interfacemobile.android.blockchain
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.web3j.crypto.RawTransaction
+import org.web3j.crypto.transaction.type.Transaction1559
+import java.math.BigInteger
+import java.util.*
+
+/**
+ * Tests for [TransactionReplacementEngine]
+ */
+class TransactionReplacementEngineTest {
+
+    private fun createTransaction(transactionHash: String, rawTransaction: RawTransaction?): BlockchainTransaction {
+        return BlockchainTransaction(
+            transaction = rawTransaction,
+            transactionHash = transactionHash,
+            timeOfCreation = Date(),
+            latestBlockNumberAtCreation = BigInteger.ONE,
+            type = BlockchainTransactionType.CANCEL_OFFER,
+        )
+    }
+
+    private val rawTransaction = RawTransaction.createTransaction(
+        31337L,
+        BigInteger.valueOf(5L),
+        BigInteger.valueOf(100_000L),
+        "0x687f36336fcab8747be1d41366a416b41e7e1a96",
+        BigInteger.ZERO,
+        "0x1234",
+        BigInteger.valueOf(1_000L),
+        BigInteger.valueOf(2_000L)
+    )
+
+    /**
+     * Ensures that [TransactionReplacementEngine] makes replacements due on schedule, creates replacements with the
+     * same nonce and fees raised by at least 12.5% or to the fee estimate, and tracks the hashes of all replacements.
+     */
+    @Test
+    fun testReplacementSchedule() {
+        val engine = TransactionReplacementEngine(feeBumpBlockCounts = listOf(2L, 5L))
+        engine.handleSentTransaction(createTransaction("0x01", rawTransaction), BigInteger.TEN)
+        // Only EIP1559 transactions are tracked
+        engine.handleSentTransaction(createTransaction("0x02", null), BigInteger.TEN)
+        assertEquals(listOf<TransactionReplacementEngine.LogicalTransaction>(),
+            engine.getTransactionsDueForReplacement(BigInteger.valueOf(11L)))
+
+        val firstDueTransaction = engine.getTransactionsDueForReplacement(BigInteger.valueOf(12L)).single()
+        val firstReplacement = engine.createReplacement(
+            firstDueTransaction,
+            FeeEstimate(maxPriorityFeePerGas = BigInteger.ONE, maxFeePerGas = BigInteger.valueOf(5_000L))
+        )
+        val firstReplacementFees = firstReplacement.transaction as Transaction1559
+        assertEquals(rawTransaction.nonce, firstReplacement.nonce)
+        assertEquals(rawTransaction.data, firstReplacement.data)
+        assertEquals(BigInteger.valueOf(1_125L), firstReplacementFees.maxPriorityFeePerGas)
+        assertEquals(BigInteger.valueOf(5_000L), firstReplacementFees.maxFeePerGas)
+        engine.handleSentReplacement(firstDueTransaction, firstReplacement, "0x03")
+        assertEquals(listOf<TransactionReplacementEngine.LogicalTransaction>(),
+            engine.getTransactionsDueForReplacement(BigInteger.valueOf(14L)))
+
+        val secondDueTransaction = engine.getTransactionsDueForReplacement(BigInteger.valueOf(15L)).single()
+        val secondReplacementFees = engine.createReplacement(
+            secondDueTransaction,
+            FeeEstimate(maxPriorityFeePerGas = BigInteger.ONE, maxFeePerGas = BigInteger.ONE)
+        ).transaction as Transaction1559
+        assertEquals(BigInteger.valueOf(1_266L), secondReplacementFees.maxPriorityFeePerGas)
+        assertEquals(BigInteger.valueOf(5_625L), secondReplacementFees.maxFeePerGas)
+        engine.stopReplacing(secondDueTransaction)
+        assertEquals(listOf<TransactionReplacementEngine.LogicalTransaction>(),
+            engine.getTransactionsDueForReplacement(BigInteger.valueOf(100L)))
+
+        assertEquals(listOf("0x01", "0x03"), engine.getTransactionHashes("0x01"))
+        assertEquals(listOf("0x02"), engine.getTransactionHashes("0x02"))
+        assertEquals(listOf("0x01", "0x03"), engine.remove("0x01"))
+        assertEquals(listOf("0x01"), engine.getTransactionHashes("0x01"))
+    }
+
+}
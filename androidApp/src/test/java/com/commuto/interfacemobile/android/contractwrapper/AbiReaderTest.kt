@@ -0,0 +1,165 @@
+package com.commuto.interfacemobile.android.contractwrapper
+
+import com.commuto.interfacemobile.android.blockchain.structs.OfferStruct
+import com.commuto.interfacemobile.android.blockchain.structs.SwapStruct
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertThrows
+import org.junit.Test
+import org.web3j.abi.FunctionReturnDecoder
+import org.web3j.abi.TypeReference
+import org.web3j.abi.datatypes.Function
+import org.web3j.abi.datatypes.Type
+import org.web3j.utils.Numeric
+import java.math.BigInteger
+
+/**
+ * Tests for [AbiReader]
+ */
+class AbiReaderTest {
+
+    private val chainID = BigInteger.valueOf(31337L)
+
+    private val offer = CommutoSwap.Offer(
+        true,
+        false,
+        "0xf39fd6e51aad88f6f4ce6ab8827279cfffb92266",
+        ByteArray(33) { it.toByte() },
+        "0x5fbdb2315678afecb367f032d93f642f64180aa3",
+        BigInteger.valueOf(10_000L) * BigInteger.TEN.pow(18),
+        BigInteger.valueOf(20_000L) * BigInteger.TEN.pow(18),
+        BigInteger.valueOf(2_000L) * BigInteger.TEN.pow(18),
+        BigInteger.valueOf(100L),
+        BigInteger.ONE,
+        listOf(
+            """{"f":"USD","p":"1.00","m":"SWIFT"}""".toByteArray(),
+            """{"f":"EUR","p":"0.98","m":"SEPA"}""".toByteArray(),
+            ByteArray(0),
+        ),
+        BigInteger.ONE,
+    )
+
+    private val swap = CommutoSwap.Swap(
+        true,
+        true,
+        "0xf39fd6e51aad88f6f4ce6ab8827279cfffb92266",
+        ByteArray(33) { it.toByte() },
+        "0x70997970c51812dc3a010c7d01b50e0d17dc79c8",
+        ByteArray(65) { (it * 3).toByte() },
+        "0x5fbdb2315678afecb367f032d93f642f64180aa3",
+        BigInteger.valueOf(10_000L) * BigInteger.TEN.pow(18),
+        BigInteger.valueOf(20_000L) * BigInteger.TEN.pow(18),
+        BigInteger.valueOf(2_000L) * BigInteger.TEN.pow(18),
+        BigInteger.valueOf(15_000L) * BigInteger.TEN.pow(18),
+        BigInteger.TWO.pow(256) - BigInteger.ONE,
+        BigInteger.valueOf(100L),
+        BigInteger.ONE,
+        """{"f":"USD","p":"1.00","m":"SWIFT"}""".toByteArray(),
+        BigInteger.ONE,
+        true,
+        false,
+        false,
+        true,
+        BigInteger.TWO,
+    )
+
+    /**
+     * ABI-encodes [struct] as the return data of a function that returns it.
+     */
+    private fun encodeReturnData(struct: Type<*>): String {
+        return "0x" + CommutoFunctionEncoder().encodeWithSelector("", listOf(struct))
+    }
+
+    /**
+     * Decodes [returnData] as the return data of `getOffer`, as [CommutoSwap.getOffer] does.
+     */
+    private fun decodeOfferWithTypeDecoder(returnData: String): OfferStruct? {
+        val function = Function(
+            CommutoSwap.FUNC_GETOFFER,
+            listOf(),
+            listOf(object : TypeReference<CommutoSwap.Offer>() {})
+        )
+        val decodedOffer = FunctionReturnDecoderForDynamicArrayOfBytes.decode(returnData, function.outputParameters)
+            .first() as CommutoSwap.Offer
+        return OfferStruct.createFromGetOfferResponse(decodedOffer, chainID)
+    }
+
+    /**
+     * Decodes [returnData] as the return data of `getSwap`, as [CommutoSwap.getSwap] does.
+     */
+    private fun decodeSwapWithTypeDecoder(returnData: String): SwapStruct? {
+        val function = Function(
+            CommutoSwap.FUNC_GETSWAP,
+            listOf(),
+            listOf(object : TypeReference<CommutoSwap.Swap>() {})
+        )
+        val decodedSwap = FunctionReturnDecoder.decode(returnData, function.outputParameters)
+            .first() as CommutoSwap.Swap
+        return SwapStruct.createFromGetSwapResponse(decodedSwap, chainID)
+    }
+
+    /**
+     * Ensures that [OfferStruct.createFromGetOfferReturnData] creates the same [OfferStruct] as decoding `getOffer`
+     * return data with [FunctionReturnDecoderForDynamicArrayOfBytes].
+     */
+    @Test
+    fun testDecodeOffer() {
+        val returnData = encodeReturnData(offer)
+        val returnDataBytes = Numeric.hexStringToByteArray(returnData)
+        val expectedOfferStruct = decodeOfferWithTypeDecoder(returnData)
+        val offerStruct = OfferStruct.createFromGetOfferReturnData(returnDataBytes, chainID)
+        // OfferStruct compares settlement methods by reference, so we compare them separately
+        assertEquals(
+            expectedOfferStruct?.copy(settlementMethods = listOf()),
+            offerStruct?.copy(settlementMethods = listOf())
+        )
+        assertEquals(
+            expectedOfferStruct?.settlementMethods?.map { it.toList() },
+            offerStruct?.settlementMethods?.map { it.toList() }
+        )
+        assertEquals(offer.maker, offerStruct?.maker)
+        assertEquals(3, offerStruct?.settlementMethods?.size)
+
+        val notCreatedOffer = CommutoSwap.Offer(false, false, "0x0000000000000000000000000000000000000000",
+            ByteArray(0), "0x0000000000000000000000000000000000000000", BigInteger.ZERO, BigInteger.ZERO,
+            BigInteger.ZERO, BigInteger.ZERO, BigInteger.ZERO, listOf(ByteArray(0)), BigInteger.ZERO)
+        assertNull(OfferStruct.createFromGetOfferReturnData(
+            Numeric.hexStringToByteArray(encodeReturnData(notCreatedOffer)),
+            chainID
+        ))
+    }
+
+    /**
+     * Ensures that [SwapStruct.createFromGetSwapReturnData] creates the same [SwapStruct] as decoding `getSwap` return
+     * data with Web3j's [FunctionReturnDecoder].
+     */
+    @Test
+    fun testDecodeSwap() {
+        val returnData = encodeReturnData(swap)
+        val expectedSwapStruct = decodeSwapWithTypeDecoder(returnData)
+        val swapStruct = SwapStruct.createFromGetSwapReturnData(Numeric.hexStringToByteArray(returnData), chainID)
+        assertEquals(expectedSwapStruct, swapStruct)
+        assertEquals(swap.taker, swapStruct?.taker)
+        assertEquals(BigInteger.TWO.pow(256) - BigInteger.ONE, swapStruct?.serviceFeeAmount)
+        assertEquals(swap.amountUpperBound, swapStruct?.amountUpperBound)
+    }
+
+    /**
+     * Ensures that [AbiReader] rejects data in which an offset or length points beyond the end of the data.
+     */
+    @Test
+    fun testOutOfBoundsData() {
+        val returnData = Numeric.hexStringToByteArray(encodeReturnData(offer))
+        assertThrows(IllegalArgumentException::class.java) {
+            OfferStruct.createFromGetOfferReturnData(returnData.copyOf(returnData.size - 32), chainID)
+        }
+        // Replace the offset of the offer tuple with one that points past the end of the data
+        val badOffset = returnData.copyOf()
+        badOffset[31] = 0xff.toByte()
+        badOffset[30] = 0xff.toByte()
+        assertThrows(IllegalArgumentException::class.java) {
+            OfferStruct.createFromGetOfferReturnData(badOffset, chainID)
+        }
+    }
+
+}
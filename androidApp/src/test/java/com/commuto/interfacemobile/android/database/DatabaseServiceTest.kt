@@ -2451,4 +2451,18 @@ class DatabaseServiceTest {
         assertEquals(pubKey!!.publicKey, "pub_key")
     }
 
+    @Test
+    fun testStoreAndGetBlockCheckpoint() = runBlocking {
+        databaseService.storeBlockCheckpoint("31337", 5L, "a_block_hash")
+        val expectedBlockCheckpoint = BlockCheckpoint("31337", 5L, "a_block_hash")
+        assertEquals(expectedBlockCheckpoint, databaseService.getBlockCheckpoint("31337"))
+        // This should replace the existing block checkpoint rather than adding another
+        databaseService.storeBlockCheckpoint("31337", 6L, "another_block_hash")
+        // This should not throw, since only one block checkpoint should exist for this chain ID
+        val blockCheckpoint = databaseService.getBlockCheckpoint("31337")
+        assertEquals(6L, blockCheckpoint!!.blockNumber)
+        assertEquals("another_block_hash", blockCheckpoint.blockHash)
+        assertNull(databaseService.getBlockCheckpoint("1"))
+    }
+
 }
\ No newline at end of file